@@ -1,15 +1,18 @@
 package simpledb.common;
 
 import simpledb.storage.BufferPool;
+import simpledb.storage.EvictionPolicy;
 import simpledb.storage.LogFile;
 
 import java.io.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Database is a class that initializes several static variables used by the
  * database system (the catalog, the buffer pool, and the log files, in
- * particular.)
+ * particular.) The pool of worker threads that run parts of a query in
+ * parallel is shared by every instance and survives {@link #reset}.
  * <p>
  * Provides a set of methods that can be used to access these variables from
  * anywhere.
@@ -24,6 +27,9 @@ public class Database {
     private final static String LOGFILENAME = "log";
     private final LogFile _logfile;
 
+    private static final ForkJoinPool _workers =
+            new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+
     private Database() {
         _catalog = new Catalog();
         _bufferpool = new BufferPool(BufferPool.DEFAULT_PAGES);
@@ -53,6 +59,14 @@ public class Database {
         return _instance.get()._catalog;
     }
 
+    /**
+     * Return the pool that operators running parts of a plan in parallel,
+     * and the optimizer searching for join orders, run their workers on
+     */
+    public static ForkJoinPool getWorkerPool() {
+        return _workers;
+    }
+
     /**
      * Method used for testing -- create a new instance of the buffer pool and
      * return it
@@ -70,6 +84,22 @@ public class Database {
         return _instance.get()._bufferpool;
     }
 
+    /**
+     * Method used for testing and benchmarks -- create a new instance of the
+     * buffer pool that evicts pages with the given policy and return it
+     */
+    public static BufferPool resetBufferPool(int pages, EvictionPolicy policy) {
+        java.lang.reflect.Field bufferPoolF=null;
+        try {
+            bufferPoolF = Database.class.getDeclaredField("_bufferpool");
+            bufferPoolF.setAccessible(true);
+            bufferPoolF.set(_instance.get(), new BufferPool(pages, policy));
+        } catch (NoSuchFieldException | IllegalAccessException | IllegalArgumentException | SecurityException e) {
+            e.printStackTrace();
+        }
+        return _instance.get()._bufferpool;
+    }
+
     // reset the database, used for unit tests only.
     public static void reset() {
         _instance.set(new Database());
@@ -1,21 +1,41 @@
 package simpledb.execution;
 
+import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Type;
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
 import simpledb.transaction.TransactionAbortedException;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
  * min). Note that we only support aggregates over a single column, grouped by a
  * single column.
+ * <p>
+ * A child that produces batches is aggregated a batch at a time when the
+ * aggregator can read the batch's columns directly (see
+ * {@link Aggregator#mergesBatches}), and the groups can be read back as
+ * batches too.
+ * <p>
+ * An Aggregate can also be given its input in parts, e.g. scans of ranges of
+ * the pages of a table, which it aggregates in parallel: a worker thread
+ * aggregates each part on its own, and the groups the workers found are then
+ * merged in hash partitions of the group key, one partition per worker. Each
+ * group keeps its count and sum, so AVG is merged like the others.
  */
-public class Aggregate extends Operator {
+public class Aggregate extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
 
@@ -33,20 +53,48 @@ public class Aggregate extends Operator {
      * @param aop    The aggregation operator to use
      */
     private OpIterator child_;
+    private OpIterator[] parts_; //并行聚合时的各部分输入,否则为null
+    private Type gfieldType_;
+    private Type afieldType_;
     private Aggregator aggregator_;
     private int gfield_;
     private int afield_;
     private Aggregator.Op aop_;
     private TupleDesc desc_;
     private OpIterator opIt_;
+    private transient TupleBatch batch_;
 
     private void MergeToAggregator() throws IllegalArgumentException,DbException,TransactionAbortedException{
-        while (child_.hasNext()) {
-            Tuple tup = child_.next();
-            aggregator_.mergeTupleIntoGroup(tup);
+        mergeInto(child_,aggregator_);
+    }
+
+    /**
+     * Merge every tuple of an open child into aggregator, a batch at a time
+     * if the child produces batches and the aggregator reads their columns.
+     */
+    private static void mergeInto(OpIterator child,Aggregator aggregator) throws DbException,TransactionAbortedException {
+        //聚合器要逐行转成Tuple时,批次只是多拷贝一次
+        if (child instanceof BatchIterator && aggregator.mergesBatches()) {
+            TupleBatch batch;
+            while ((batch = ((BatchIterator) child).nextBatch()) != null) {
+                aggregator.mergeBatchIntoGroups(batch);
+            }
+            return;
+        }
+        while (child.hasNext()) {
+            Tuple tup = child.next();
+            aggregator.mergeTupleIntoGroup(tup);
         }
     }
 
+    /** @return a new, empty aggregator for this operator's fields */
+    private Aggregator createAggregator() {
+        if (afieldType_.equals(Type.INT_TYPE)) {
+            return new IntegerAggregator(gfield_,gfieldType_,afield_,aop_);
+        }
+        return new StringAggregator(gfield_,gfieldType_,afield_,aop_);
+    }
+
     public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop)  {
         // some code goes here
         gfield_ = gfield;
@@ -59,11 +107,10 @@ public class Aggregate extends Operator {
         if (gfield != -1) {
             gfieldType = desc.getFieldType(gfield);
         }
-        if (afieldType.equals(Type.INT_TYPE)) {
-            aggregator_  = new IntegerAggregator(gfield,gfieldType,afield,aop);
-        } else {
-            aggregator_ = new StringAggregator(gfield,gfieldType,afield,aop);
-        }
+        gfieldType_ = gfieldType;
+        afieldType_ = afieldType;
+        aggregator_ = createAggregator();
+        parts_ = null;
         String[] names;
         Type[] types;
         if (gfield != -1) {
@@ -73,19 +120,37 @@ public class Aggregate extends Operator {
             names[0] = desc.getFieldName(gfield);
             types[0] = gfieldType;
             names[1] = null;
-            types[1] = afieldType;
+            types[1] = Type.INT_TYPE; //聚合的结果总是整数,COUNT字符串列也一样
         } else {
             names = new String[1];
             types = new Type[1];
 
             names[0] = null;
-            types[0] = afieldType;
+            types[0] = Type.INT_TYPE;
         }
 
         desc_ = new TupleDesc(types,names);
         opIt_ = null;
     }
 
+    /**
+     * Constructor for an aggregate over the union of several parts of the
+     * input, which are aggregated in parallel.
+     *
+     * @param parts The OpIterators that together feed us tuples; they must
+     *              have the same TupleDesc and may be read by different
+     *              threads at the same time
+     */
+    public Aggregate(OpIterator[] parts, int afield, int gfield, Aggregator.Op aop) {
+        this(parts[0],afield,gfield,aop);
+        parts_ = parts;
+    }
+
+    /** @return true if the input comes in parts that are aggregated in parallel */
+    public boolean isParallel() {
+        return parts_ != null;
+    }
+
     /**
      * @return If this aggregate is accompanied by a groupby, return the groupby
      * field index in the <b>INPUT</b> tuples. If not, return
@@ -139,10 +204,16 @@ public class Aggregate extends Operator {
     public void open() throws NoSuchElementException, DbException,
             TransactionAbortedException {
         // some code goes here
-        child_.open();
-        if (opIt_ == null) {
-            MergeToAggregator();
-            opIt_ = aggregator_.iterator();
+        if (parts_ != null) {
+            if (opIt_ == null) {
+                opIt_ = aggregateInParallel();
+            }
+        } else {
+            child_.open();
+            if (opIt_ == null) {
+                MergeToAggregator();
+                opIt_ = aggregator_.iterator();
+            }
         }
         opIt_.open();
         super.open();
@@ -164,6 +235,143 @@ public class Aggregate extends Operator {
         return null;
     }
 
+    /**
+     * Aggregate the parts on worker threads. Each worker merges its part into
+     * an aggregator of its own and sorts the groups it found into as many hash
+     * partitions of the group key as there are parts; then a worker per
+     * partition merges the states of the partition's groups from every part.
+     *
+     * @return an iterator over the groups of all partitions
+     */
+    private OpIterator aggregateInParallel() throws DbException,TransactionAbortedException {
+        final int n = parts_.length;
+        final Aggregator[] partials = new Aggregator[n];
+        final int[][][] byPartition = new int[n][][]; //每个部分的组号,按分区分开
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int w = 0; w < n; w ++) {
+            final int part = w;
+            tasks.add(() -> {
+                Aggregator aggregator = createAggregator();
+                parts_[part].open();
+                try {
+                    mergeInto(parts_[part],aggregator);
+                } finally {
+                    parts_[part].close();
+                }
+                partials[part] = aggregator;
+                byPartition[part] = partition(aggregator,n);
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        final List<List<Tuple>> results = new ArrayList<List<Tuple>>(Collections.nCopies(n,(List<Tuple>) null));
+        tasks.clear();
+        for (int p = 0; p < n; p ++) {
+            final int partition = p;
+            tasks.add(() -> {
+                Aggregator merged = createAggregator();
+                for (int w = 0; w < n; w ++) {
+                    for (int group : byPartition[w][partition]) {
+                        merged.mergeState(partials[w].groupKey(group),partials[w].groupState(group));
+                    }
+                }
+                results.set(partition,groupTuples(merged));
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (List<Tuple> result : results) {
+            tuples.addAll(result);
+        }
+        return new TupleIterator(desc_,tuples);
+    }
+
+    /** @return the ids of the groups of aggregator, split into n hash partitions of their keys */
+    private static int[][] partition(Aggregator aggregator,int n) {
+        int groups = aggregator.numGroups();
+        int[] of = new int[groups];
+        int[] sizes = new int[n];
+        for (int g = 0; g < groups; g ++) {
+            Field key = aggregator.groupKey(g);
+            of[g] = key == null ? 0 : (key.hashCode() & 0x7fffffff) % n;
+            sizes[of[g]] ++;
+        }
+        int[][] result = new int[n][];
+        for (int p = 0; p < n; p ++) {
+            result[p] = new int[sizes[p]];
+            sizes[p] = 0;
+        }
+        for (int g = 0; g < groups; g ++) {
+            result[of[g]][sizes[of[g]] ++] = g;
+        }
+        return result;
+    }
+
+    /** @return the output tuple of every group of aggregator */
+    private List<Tuple> groupTuples(Aggregator aggregator) {
+        List<Tuple> tuples = new ArrayList<Tuple>(aggregator.numGroups());
+        for (int g = 0; g < aggregator.numGroups(); g ++) {
+            Tuple tuple = new Tuple(desc_);
+            IntField value = new IntField(aggregator.groupState(g).getValue(aop_));
+            if (gfield_ == Aggregator.NO_GROUPING) {
+                tuple.setField(0,value);
+            } else {
+                tuple.setField(0,aggregator.groupKey(g));
+                tuple.setField(1,value);
+            }
+            tuples.add(tuple);
+        }
+        return tuples;
+    }
+
+    /**
+     * Run tasks on the shared worker pool and wait for all of them.
+     *
+     * @throws DbException or TransactionAbortedException as the first task
+     *         that failed threw it
+     */
+    private static void runAll(List<Callable<Void>> tasks) throws DbException,TransactionAbortedException {
+        //自己接住异常,池会把受检异常包成RuntimeException
+        final AtomicReference<Exception> failed = new AtomicReference<Exception>();
+        List<ForkJoinTask<?>> running = new ArrayList<ForkJoinTask<?>>();
+        for (final Callable<Void> task : tasks) {
+            running.add(Database.getWorkerPool().submit(() -> {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    failed.compareAndSet(null,e);
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : running) {
+            task.quietlyJoin();
+        }
+        Exception failure = failed.get();
+        if (failure instanceof DbException) {
+            throw (DbException) failure;
+        } else if (failure instanceof TransactionAbortedException) {
+            throw (TransactionAbortedException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new DbException("parallel aggregation failed: " + failure);
+        }
+    }
+
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (batch_ == null) {
+            batch_ = new TupleBatch(desc_);
+        }
+        batch_.clear();
+        while (!batch_.isFull() && opIt_.hasNext()) {
+            batch_.add(opIt_.next());
+        }
+        return batch_.numRows() > 0 ? batch_ : null;
+    }
+
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
         close();
@@ -189,13 +397,18 @@ public class Aggregate extends Operator {
     public void close() {
         // some code goes here
         opIt_.close();
-        child_.close();
+        if (parts_ == null) {
+            child_.close();
+        }
         super.close();
     }
 
     @Override
     public OpIterator[] getChildren() {
         // some code goes here
+        if (parts_ != null) {
+            return parts_;
+        }
         OpIterator[] opit = new OpIterator[1];
         opit[0] = child_;
         return opit;
@@ -205,6 +418,9 @@ public class Aggregate extends Operator {
     public void setChildren(OpIterator[] children) {
         // some code goes here
         child_ = children[0];
+        if (parts_ != null) {
+            parts_ = children;
+        }
     }
 
 }
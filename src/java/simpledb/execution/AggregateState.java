@@ -0,0 +1,91 @@
+package simpledb.execution;
+
+import java.io.Serializable;
+
+/**
+ * The running state of one aggregate group: a count, a sum, a minimum and a
+ * maximum, kept as primitives and updated as each value is merged in. A group
+ * takes the same few bytes whether it aggregates ten values or a billion, and
+ * every aggregate is read off the state without going over the input again:
+ * AVG is the sum divided by the count.
+ * <p>
+ * The sum is a long, so SUM and AVG over many ints do not overflow until the
+ * result is returned as an int.
+ */
+public class AggregateState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long count_;
+    private long sum_;
+    private int min_;
+    private int max_;
+
+    public AggregateState() {
+        count_ = 0;
+        sum_ = 0;
+        min_ = Integer.MAX_VALUE;
+        max_ = Integer.MIN_VALUE;
+    }
+
+    /** Merge one integer value into the group. */
+    public void add(int value) {
+        count_ ++;
+        sum_ += value;
+        if (value < min_) {
+            min_ = value;
+        }
+        if (value > max_) {
+            max_ = value;
+        }
+    }
+
+    /** Count one value that is not an integer; only COUNT is defined then. */
+    public void addCount() {
+        count_ ++;
+    }
+
+    /** Merge the state of another part of the same group into this one. */
+    public void merge(AggregateState other) {
+        count_ += other.count_;
+        sum_ += other.sum_;
+        min_ = Math.min(min_,other.min_);
+        max_ = Math.max(max_,other.max_);
+    }
+
+    public long getCount() {
+        return count_;
+    }
+
+    public long getSum() {
+        return sum_;
+    }
+
+    public int getMin() {
+        return min_;
+    }
+
+    public int getMax() {
+        return max_;
+    }
+
+    /**
+     * @return the value of the aggregate over everything merged so far
+     */
+    public int getValue(Aggregator.Op what) {
+        switch (what) {
+            case COUNT:
+                return (int) count_;
+            case SUM:
+                return (int) sum_;
+            case AVG:
+                return count_ == 0 ? 0 : (int) (sum_ / count_);
+            case MIN:
+                return min_;
+            case MAX:
+                return max_;
+            default:
+                return 0; //SUM_COUNT和SC_AVG暂且不做
+        }
+    }
+}
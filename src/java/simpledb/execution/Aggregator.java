@@ -1,5 +1,6 @@
 package simpledb.execution;
 
+import simpledb.storage.Field;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleIterator;
 
@@ -79,10 +80,54 @@ public interface Aggregator extends Serializable {
      */
     void mergeTupleIntoGroup(Tuple tup);
 
+    /**
+     * Merge the selected rows of a batch into the aggregate, grouping as
+     * indicated in the constructor. By default each row is turned into a
+     * Tuple and merged on its own.
+     */
+    default void mergeBatchIntoGroups(TupleBatch batch) {
+        for (int i = 0; i < batch.numRows(); i++)
+            mergeTupleIntoGroup(batch.getTuple(i));
+    }
+
+    /**
+     * @return true if {@link #mergeBatchIntoGroups} reads the columns of a
+     *         batch without building a Tuple or Field per row, so that it is
+     *         worth feeding this aggregator batches rather than tuples
+     */
+    default boolean mergesBatches() {
+        return false;
+    }
+
     /**
      * Create a OpIterator over group aggregate results.
      * @see TupleIterator for a possible helper
      */
     OpIterator iterator();
+
+    /**
+     * @return the number of groups merged so far; groups are numbered from 0
+     *         in the order they were first seen
+     */
+    int numGroups();
+
+    /**
+     * @return the value of the group-by field of a group, or null if there
+     *         is no grouping
+     */
+    Field groupKey(int group);
+
+    /**
+     * @return the running state of a group
+     */
+    AggregateState groupState(int group);
+
+    /**
+     * Merge the state of a group that another aggregator computed over other
+     * tuples into the group with the same key, creating it if it is new. This
+     * is how aggregates computed over parts of the input in parallel are put
+     * together; key is null if there is no grouping.
+     */
+    void mergeState(Field key, AggregateState state);
     
 }
@@ -0,0 +1,24 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * An OpIterator that can also hand out its rows a {@link TupleBatch} at a
+ * time, which saves the calls, the Tuple and the Field objects that every
+ * row costs through next(). After open() a consumer reads either rows or
+ * batches, not both; rewind() and close() work as for rows.
+ * <p>
+ * An operator that produces batches takes them from its children with
+ * {@link TupleBatch#next}, which copies the rows of a child that produces
+ * only rows into batches, so the two kinds of operators can be mixed in one
+ * plan. {@link BatchRows} turns batches back into rows.
+ */
+public interface BatchIterator extends OpIterator {
+
+    /**
+     * @return the next batch of rows, or null if there are no more; the batch
+     *         is only valid until the next call, which may reuse it
+     */
+    TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+}
@@ -94,6 +94,9 @@ public class Delete extends Operator {
             boolean insertOk = true;
             try {
                 Database.getBufferPool().deleteTuple(tid_,tuple);
+            } catch (TransactionAbortedException e) {
+                //拿不到排他锁时事务必须中止,不能当作这一条失败继续执行
+                throw e;
             } catch (Exception e) {
                 insertOk = false;
             }
@@ -0,0 +1,221 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts tuples within a memory budget. Tuples are buffered until the buffer
+ * would exceed the budget; the buffer is then sorted and written to a
+ * {@link SpillFile} as a sorted run. Once all tuples are added the runs are
+ * merged k ways at a time with a heap, in extra passes if there are more runs
+ * than the budget has room for read buffers, until one merge over the
+ * remaining runs yields the sorted output. If every tuple fits in the budget
+ * nothing is written and the output is read straight from memory.
+ * <p>
+ * {@link #rewind} restarts that last merge over the same runs, so the output
+ * can be read again without sorting again. The sort is stable. Tuples read
+ * back from a run are new tuples without a RecordId.
+ */
+public class ExternalSorter {
+
+    /** The memory budget used when none is given. */
+    public static final long DEFAULT_MEMORY_BYTES = 16L << 20;
+    /** The buffer each run gets while it is written or merged. */
+    public static final int RUN_BUFFER_BYTES = 64 << 10;
+
+    private final TupleDesc td_;
+    private final Comparator<Tuple> cmp_;
+    private final long memoryBytes_;
+    private final long tupleBytes_; //一个元组在堆上大概占多少字节
+    private final int fanIn_; //一次最多合并几个run
+
+    private ArrayList<Tuple> buffer_;
+    private final List<SpillFile> runs_;
+    private boolean finished_;
+    private int pos_; //没有run时在buffer_里读到的位置
+    private Merge merge_; //有run时最后一趟合并
+
+    /**
+     * @param td the TupleDesc of the tuples to sort
+     * @param cmp the order to sort them in
+     * @param memoryBytes how much heap the buffered tuples and run buffers may take
+     */
+    public ExternalSorter(TupleDesc td, Comparator<Tuple> cmp, long memoryBytes) {
+        td_ = td;
+        cmp_ = cmp;
+        memoryBytes_ = memoryBytes;
+        tupleBytes_ = SpillFile.estimateTupleBytes(td);
+        fanIn_ = (int) Math.max(2,Math.min(1024,memoryBytes / RUN_BUFFER_BYTES));
+        buffer_ = new ArrayList<>();
+        runs_ = new ArrayList<>();
+        finished_ = false;
+        pos_ = 0;
+        merge_ = null;
+    }
+
+    /** Add a tuple to sort; this may write the tuples buffered so far to a run. */
+    public void add(Tuple t) throws DbException {
+        if (finished_) {
+            throw new IllegalStateException("add after finish in ExternalSorter");
+        }
+        if (!buffer_.isEmpty() && (buffer_.size() + 1) * tupleBytes_ > memoryBytes_) {
+            spill();
+        }
+        buffer_.add(t);
+    }
+
+    /** Call once every tuple is added, before reading the output. */
+    public void finish() throws DbException {
+        finished_ = true;
+        if (runs_.isEmpty()) {
+            buffer_.sort(cmp_);
+            pos_ = 0;
+            return;
+        }
+        if (!buffer_.isEmpty()) {
+            spill();
+        }
+        buffer_ = null;
+        //run太多时每趟把相邻的fanIn_个run合并成一个,保持run的先后次序,直到一趟能合并完
+        while (runs_.size() > fanIn_) {
+            List<SpillFile> merged = new ArrayList<>();
+            for (int from = 0; from < runs_.size(); from += fanIn_) {
+                List<SpillFile> inputs = runs_.subList(from,Math.min(runs_.size(),from + fanIn_));
+                merged.add(mergeToRun(inputs));
+            }
+            runs_.clear();
+            runs_.addAll(merged);
+        }
+        merge_ = new Merge(runs_);
+    }
+
+    /** @return the number of runs the output is merged from; 0 if it was sorted in memory */
+    public int getRunCount() {
+        return runs_.size();
+    }
+
+    public boolean hasNext() throws DbException {
+        if (merge_ != null) {
+            return merge_.hasNext();
+        }
+        return buffer_ != null && pos_ < buffer_.size();
+    }
+
+    public Tuple next() throws DbException {
+        if (merge_ != null) {
+            return merge_.next();
+        }
+        return buffer_.get(pos_ ++);
+    }
+
+    /** Start reading the sorted output from the beginning again. */
+    public void rewind() throws DbException {
+        if (merge_ != null) {
+            merge_.close();
+            merge_ = new Merge(runs_);
+        }
+        pos_ = 0;
+    }
+
+    /** Release the buffered tuples and delete the runs. */
+    public void close() {
+        if (merge_ != null) {
+            merge_.close();
+            merge_ = null;
+        }
+        for (SpillFile r : runs_) {
+            r.delete();
+        }
+        runs_.clear();
+        buffer_ = null;
+    }
+
+    /** Merge runs into a new run and delete them. */
+    private SpillFile mergeToRun(List<SpillFile> inputs) throws DbException {
+        if (inputs.size() == 1) {
+            return inputs.get(0);
+        }
+        Merge merge = new Merge(inputs);
+        SpillFile out = new SpillFile(td_,RUN_BUFFER_BYTES);
+        try {
+            while (merge.hasNext()) {
+                out.write(merge.next());
+            }
+        } finally {
+            merge.close();
+        }
+        for (SpillFile r : inputs) {
+            r.delete();
+        }
+        out.finishWrite();
+        return out;
+    }
+
+    private void spill() throws DbException {
+        buffer_.sort(cmp_);
+        SpillFile out = new SpillFile(td_,RUN_BUFFER_BYTES);
+        for (Tuple t : buffer_) {
+            out.write(t);
+        }
+        out.finishWrite();
+        runs_.add(out);
+        buffer_.clear();
+    }
+
+    /** The head tuple of one run in a merge. */
+    private static class Head {
+        final Tuple tuple;
+        final int run;
+
+        Head(Tuple tuple, int run) {
+            this.tuple = tuple;
+            this.run = run;
+        }
+    }
+
+    /** A k-way merge of sorted runs; equal tuples come out in run order, which keeps the sort stable. */
+    private class Merge {
+        private final SpillFile.Reader[] readers_;
+        private final PriorityQueue<Head> heap_;
+
+        Merge(List<SpillFile> runs) throws DbException {
+            readers_ = new SpillFile.Reader[runs.size()];
+            heap_ = new PriorityQueue<>(Math.max(1,runs.size()),(a,b) -> {
+                int c = cmp_.compare(a.tuple,b.tuple);
+                return c != 0 ? c : Integer.compare(a.run,b.run);
+            });
+            for (int i = 0; i < readers_.length; i ++) {
+                readers_[i] = runs.get(i).reader(RUN_BUFFER_BYTES);
+                Tuple t = readers_[i].next();
+                if (t != null) {
+                    heap_.add(new Head(t,i));
+                }
+            }
+        }
+
+        boolean hasNext() {
+            return !heap_.isEmpty();
+        }
+
+        Tuple next() throws DbException {
+            Head h = heap_.poll();
+            Tuple t = readers_[h.run].next();
+            if (t != null) {
+                heap_.add(new Head(t,h.run));
+            }
+            return h.tuple;
+        }
+
+        void close() {
+            for (SpillFile.Reader r : readers_) {
+                r.close();
+            }
+        }
+    }
+}
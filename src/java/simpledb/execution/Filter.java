@@ -8,14 +8,17 @@ import simpledb.storage.TupleDesc;
 import java.util.*;
 
 /**
- * Filter is an operator that implements a relational select.
+ * Filter is an operator that implements a relational select. It also filters
+ * batches: each batch of its child loses the rows that fail the predicate
+ * from its selection.
  */
-public class Filter extends Operator {
+public class Filter extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
 
     private Predicate predicate_;
     private OpIterator child_;
+    private transient TupleBatch batch_;
     /**
      * Constructor accepts a predicate to apply and a child operator to read
      * tuples to filter from.
@@ -82,6 +85,20 @@ public class Filter extends Operator {
         return null;
     }
 
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (batch_ == null) {
+            batch_ = new TupleBatch(child_.getTupleDesc());
+        }
+        TupleBatch batch;
+        while ((batch = TupleBatch.next(child_,batch_)) != null) {
+            predicate_.filter(batch);
+            if (batch.numRows() > 0) {
+                return batch;
+            }
+        }
+        return null;
+    }
+
     @Override
     public OpIterator[] getChildren() {
         // some code goes here
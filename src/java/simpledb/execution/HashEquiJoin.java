@@ -2,6 +2,8 @@ package simpledb.execution;
 
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.Field;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 
@@ -9,20 +11,36 @@ import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * HashEquiJoin is a hybrid hash join. child1 is read once and split by a hash
+ * of the join key into PARTITIONS partitions. Partitions stay in memory until
+ * the memory budget is exceeded; then the largest one is written to a
+ * {@link SpillFile} and its later tuples follow it there. child2 is read once:
+ * tuples of in-memory partitions are probed straight away and the others are
+ * written to the probe-side file of their partition. Each spilled pair of
+ * files is then joined on its own. A pair whose build side still does not fit
+ * is partitioned again with another hash, up to MAX_DEPTH times; a pair that
+ * cannot be split, because one key covers most of it, is joined a budget-sized
+ * chunk of its build side at a time.
+ * <p>
+ * The joined rows can also be read as batches, which are filled straight
+ * from the matching pairs of tuples.
  */
-public class HashEquiJoin extends Operator {
+public class HashEquiJoin extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     private final JoinPredicate pred;
     private OpIterator child1, child2;
     private final TupleDesc comboTD;
+    private final long memoryBytes;
     transient private Tuple t1 = null;
     transient private Tuple t2 = null;
+    transient private TupleBatch batch = null;
 
     /**
      * Constructor. Accepts to children to join and the predicate to join them
      * on
-     * 
+     *
      * @param p
      *            The predicate to use to join the children
      * @param child1
@@ -31,9 +49,18 @@ public class HashEquiJoin extends Operator {
      *            Iterator for the right(inner) relation to join
      */
     public HashEquiJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, ExternalSorter.DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * Constructor for a join whose hash table of child1 tuples may take at
+     * most memoryBytes of heap; partitions beyond it are spilled to disk.
+     */
+    public HashEquiJoin(JoinPredicate p, OpIterator child1, OpIterator child2, long memoryBytes) {
         this.pred = p;
         this.child1 = child1;
         this.child2 = child2;
+        this.memoryBytes = memoryBytes;
         comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
     }
 
@@ -44,7 +71,7 @@ public class HashEquiJoin extends Operator {
     public TupleDesc getTupleDesc() {
         return comboTD;
     }
-    
+
     public String getJoinField1Name()
     {
 	return this.child1.getTupleDesc().getFieldName(this.pred.getField1());
@@ -54,48 +81,343 @@ public class HashEquiJoin extends Operator {
     {
 	return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
     }
-    
-    final Map<Object, List<Tuple>> map = new HashMap<>();
-    public final static int MAP_SIZE = 20000;
 
-    private boolean loadMap() throws DbException, TransactionAbortedException {
-        int cnt = 0;
-        map.clear();
+    public final static int PARTITIONS = 32;
+    public final static int MAX_DEPTH = 3;
+    private final static int SPILL_BUFFER_BYTES = 8 << 10;
+
+    /**
+     * @return the partition of key when partitioning for the depth-th time;
+     *         each depth mixes the hash with a different seed
+     */
+    static int partition(Field key, int depth) {
+        int h = key.hashCode() ^ (depth * 0x9E3779B9);
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h & (PARTITIONS - 1);
+    }
+
+    /*
+     * A hash table over child1 tuples. keys maps each distinct join value to
+     * an id; head and tail hold the first and last tuple with that value, and
+     * next chains the tuples of one value in the order they were added.
+     * Tuples are referred to by their index in tuples.
+     */
+    private static class BuildTable {
+        final KeyTable keys;
+        final ArrayList<Tuple> tuples = new ArrayList<>();
+        int[] head = new int[64];
+        int[] tail = new int[64];
+        int[] next = new int[64];
+
+        BuildTable(Type keyType) {
+            keys = KeyTable.forType(keyType);
+        }
+
+        void add(Tuple t, Field key) {
+            int cnt = tuples.size();
+            int distinct = keys.size();
+            int id = keys.getOrAdd(key);
+            if (id == head.length) {
+                head = Arrays.copyOf(head, id * 2);
+                tail = Arrays.copyOf(tail, id * 2);
+            }
+            if (cnt == next.length) {
+                next = Arrays.copyOf(next, cnt * 2);
+            }
+            next[cnt] = -1;
+            if (id == distinct) {
+                head[id] = cnt;
+            } else {
+                next[tail[id]] = cnt;
+            }
+            tail[id] = cnt;
+            tuples.add(t);
+        }
+
+        /** @return the index of the first tuple with this key, or -1 */
+        int find(Field key) {
+            int id = keys.find(key);
+            return id == -1 ? -1 : head[id];
+        }
+    }
+
+    /** One partition of both children that was spilled to disk. */
+    private static class Pair {
+        final SpillFile build;
+        final SpillFile probe;
+        final int depth; //分区时用的depth,0为第一次分区
+
+        Pair(SpillFile build, SpillFile probe, int depth) {
+            this.build = build;
+            this.probe = probe;
+            this.depth = depth;
+        }
+
+        void delete() {
+            build.delete();
+            probe.delete();
+        }
+    }
+
+    transient Type keyType = null;
+    transient long budget = 0; //内存里能放多少个child1元组
+    transient BuildTable memTable = null; //没有溢出的分区
+    transient SpillFile[] probeParts = null; //溢出分区的child2元组,没溢出的分区为null
+    transient boolean firstPass = false; //第一遍读child2时要把溢出分区的元组写进probeParts
+    transient ArrayList<Pair> spilled = null; //第一次分区溢出的,close时删除
+    transient ArrayDeque<Pair> work = null; //这一遍还没有连接的溢出分区
+
+    transient BuildTable table = null; //正在探测的表
+    transient Pair current = null; //正在连接的溢出分区,探测child2时为null
+    transient SpillFile.Reader probeReader = null;
+    transient SpillFile.Reader chunkReader = null; //按块连接时build一侧的读取位置
+
+    /** the index in table.tuples of the next child1 tuple that matches t2, or -1 */
+    transient int match = -1;
+
+    private long budgetTuples() {
+        return budget;
+    }
+
+    /**
+     * @return how many child1 tuples of td the hash table holds in
+     *         memoryBytes before partitions are spilled to disk
+     */
+    public static long budgetTuples(TupleDesc td, long memoryBytes) {
+        return Math.max(1, memoryBytes / SpillFile.estimateTupleBytes(td));
+    }
+
+    /** Read and partition child1, keeping what fits in memTable. */
+    @SuppressWarnings("unchecked")
+    private void build() throws DbException, TransactionAbortedException {
+        ArrayList<Tuple>[] parts = new ArrayList[PARTITIONS];
+        SpillFile[] buildParts = new SpillFile[PARTITIONS];
+        for (int p = 0; p < PARTITIONS; p++)
+            parts[p] = new ArrayList<>();
+        long resident = 0;
         while (child1.hasNext()) {
-            t1 = child1.next();
-            List<Tuple> list = map.computeIfAbsent(t1.getField(pred.getField1()), k -> new ArrayList<>());
-            list.add(t1);
-            if (cnt++ == MAP_SIZE)
-                return true;
+            Tuple t = child1.next();
+            int p = partition(t.getField(pred.getField1()), 0);
+            if (buildParts[p] != null) {
+                buildParts[p].write(t);
+                continue;
+            }
+            parts[p].add(t);
+            if (++resident > budgetTuples()) {
+                // 超出预算,把内存里最大的分区写到磁盘
+                int largest = -1;
+                for (int q = 0; q < PARTITIONS; q++) {
+                    if (parts[q] != null && (largest == -1 || parts[q].size() > parts[largest].size()))
+                        largest = q;
+                }
+                buildParts[largest] = new SpillFile(child1.getTupleDesc(), SPILL_BUFFER_BYTES);
+                for (Tuple s : parts[largest])
+                    buildParts[largest].write(s);
+                resident -= parts[largest].size();
+                parts[largest] = null;
+            }
         }
-        return cnt > 0;
 
+        memTable = new BuildTable(keyType);
+        spilled = new ArrayList<>();
+        probeParts = null;
+        for (int p = 0; p < PARTITIONS; p++) {
+            if (parts[p] != null) {
+                for (Tuple t : parts[p])
+                    memTable.add(t, t.getField(pred.getField1()));
+            } else {
+                if (probeParts == null)
+                    probeParts = new SpillFile[PARTITIONS];
+                probeParts[p] = new SpillFile(child2.getTupleDesc(), SPILL_BUFFER_BYTES);
+                spilled.add(new Pair(buildParts[p], probeParts[p], 0));
+            }
+        }
+    }
+
+    /** Start a pass that probes memTable with child2 and then joins the spilled partitions. */
+    private void startPass() {
+        table = memTable;
+        current = null;
+        work = new ArrayDeque<>(spilled);
+        match = -1;
     }
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
         child2.open();
-        loadMap();
+        keyType = child1.getTupleDesc().getFieldType(pred.getField1());
+        budget = budgetTuples(child1.getTupleDesc(), memoryBytes);
+        build();
+        firstPass = true;
+        startPass();
         super.open();
     }
 
+    /** Close the readers of the current pass and delete the files it made. */
+    private void endPass() {
+        if (probeReader != null) {
+            probeReader.close();
+            probeReader = null;
+        }
+        if (chunkReader != null) {
+            chunkReader.close();
+            chunkReader = null;
+        }
+        if (current != null && current.depth > 0)
+            current.delete();
+        current = null;
+        if (work != null) {
+            for (Pair pair : work) {
+                if (pair.depth > 0)
+                    pair.delete();
+            }
+            work = null;
+        }
+        table = null;
+    }
+
     public void close() {
         super.close();
         child2.close();
         child1.close();
+        endPass();
+        if (spilled != null) {
+            for (Pair pair : spilled)
+                pair.delete();
+            spilled = null;
+        }
         this.t1=null;
         this.t2=null;
-        this.listIt=null;
-        this.map.clear();
+        this.match=-1;
+        this.memTable=null;
+        this.probeParts=null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        child1.rewind();
+        if (firstPass) {
+            // 溢出分区的child2元组还没写完,先把child2读完
+            while (nextFromChild2() != null)
+                ;
+            firstPass = false;
+        }
+        endPass();
         child2.rewind();
+        startPass();
     }
 
-    transient Iterator<Tuple> listIt = null;
+    /** @return the next child2 tuple that belongs to a partition in memory, or null */
+    private Tuple nextFromChild2() throws DbException, TransactionAbortedException {
+        while (child2.hasNext()) {
+            Tuple t = child2.next();
+            Field f = t.getField(pred.getField2());
+            if (f.getType() != keyType)
+                continue;
+            if (probeParts == null)
+                return t;
+            int p = partition(f, 0);
+            if (probeParts[p] == null)
+                return t;
+            if (firstPass)
+                probeParts[p].write(t);
+        }
+        return null;
+    }
+
+    /** Fill table with the next chunk of the current pair's build side; @return false if it is used up */
+    private boolean loadChunk() throws DbException {
+        table = new BuildTable(keyType);
+        long budget = budgetTuples();
+        Tuple t;
+        while (table.tuples.size() < budget && (t = chunkReader.next()) != null)
+            table.add(t, t.getField(pred.getField1()));
+        return !table.tuples.isEmpty();
+    }
+
+    /** Split pair by the next hash and queue the parts to be joined next. */
+    private void repartition(Pair pair) throws DbException {
+        int depth = pair.depth + 1;
+        SpillFile[] build = new SpillFile[PARTITIONS];
+        SpillFile[] probe = new SpillFile[PARTITIONS];
+        for (int p = 0; p < PARTITIONS; p++) {
+            build[p] = new SpillFile(child1.getTupleDesc(), SPILL_BUFFER_BYTES);
+            probe[p] = new SpillFile(child2.getTupleDesc(), SPILL_BUFFER_BYTES);
+        }
+        SpillFile.Reader in = pair.build.reader(SPILL_BUFFER_BYTES);
+        for (Tuple t = in.next(); t != null; t = in.next())
+            build[partition(t.getField(pred.getField1()), depth)].write(t);
+        in.close();
+        in = pair.probe.reader(SPILL_BUFFER_BYTES);
+        for (Tuple t = in.next(); t != null; t = in.next())
+            probe[partition(t.getField(pred.getField2()), depth)].write(t);
+        in.close();
+        for (int p = PARTITIONS - 1; p >= 0; p--) {
+            // 一个分区都没分开时,键大多相同,再分区也没用,直接按块连接
+            int d = build[p].size() == pair.build.size() ? MAX_DEPTH : depth;
+            work.addFirst(new Pair(build[p], probe[p], d));
+        }
+    }
+
+    /**
+     * The current probe input is used up: set up the table and probe input of
+     * the next chunk or spilled pair.
+     *
+     * @return false if there is nothing left to join
+     */
+    private boolean nextTable() throws DbException {
+        if (probeReader != null) {
+            probeReader.close();
+            probeReader = null;
+        }
+        if (chunkReader != null) {
+            if (loadChunk()) {
+                probeReader = current.probe.reader(SPILL_BUFFER_BYTES);
+                return true;
+            }
+            chunkReader.close();
+            chunkReader = null;
+        }
+        if (current != null && current.depth > 0)
+            current.delete();
+        current = null;
+        firstPass = false;
+
+        while (!work.isEmpty()) {
+            Pair pair = work.poll();
+            current = pair;
+            if (pair.build.size() == 0 || pair.probe.size() == 0) {
+                if (pair.depth > 0)
+                    pair.delete();
+                current = null;
+                continue;
+            }
+            if (pair.build.size() <= budgetTuples()) {
+                table = new BuildTable(keyType);
+                SpillFile.Reader in = pair.build.reader(SPILL_BUFFER_BYTES);
+                for (Tuple t = in.next(); t != null; t = in.next())
+                    table.add(t, t.getField(pred.getField1()));
+                in.close();
+                probeReader = pair.probe.reader(SPILL_BUFFER_BYTES);
+                return true;
+            }
+            if (pair.depth < MAX_DEPTH) {
+                repartition(pair);
+                if (pair.depth > 0)
+                    pair.delete();
+                current = null;
+                continue;
+            }
+            chunkReader = pair.build.reader(SPILL_BUFFER_BYTES);
+            loadChunk();
+            probeReader = pair.probe.reader(SPILL_BUFFER_BYTES);
+            return true;
+        }
+        table = null;
+        return false;
+    }
 
     /**
      * Returns the next tuple generated by the join, or null if there are no
@@ -111,13 +433,11 @@ public class HashEquiJoin extends Operator {
      * <p>
      * For example, if one tuple is {1,2,3} and the other tuple is {1,5,6},
      * joined on equality of the first column, then this returns {1,2,3,1,5,6}.
-     * 
+     *
      * @return The next matching tuple.
      * @see JoinPredicate#filter
      */
     private Tuple processList() {
-        t1 = listIt.next();
-
         int td1n = t1.getTupleDesc().numFields();
         int td2n = t2.getTupleDesc().numFields();
 
@@ -132,32 +452,47 @@ public class HashEquiJoin extends Operator {
     }
 
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        if (listIt != null && listIt.hasNext()) {
-            return processList();
-        }
+        return advance() ? processList() : null;
+    }
 
-        // loop around child2
-        while (child2.hasNext()) {
-            t2 = child2.next();
+    /**
+     * Fill a batch with the next joined rows, writing the fields of each pair
+     * of matching tuples into its columns without building a combined Tuple.
+     */
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (batch == null)
+            batch = new TupleBatch(comboTD);
+        batch.clear();
+        while (!batch.isFull() && advance())
+            batch.add(t1, t2);
+        return batch.numRows() > 0 ? batch : null;
+    }
 
-            // if match, create a combined tuple and fill it with the values
-            // from both tuples
-            List<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
+    /**
+     * Move t1 and t2 on to the next pair of matching tuples.
+     *
+     * @return false if there are no more
+     */
+    private boolean advance() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (match != -1) {
+                t1 = table.tuples.get(match);
+                match = table.next[match];
+                return true;
+            }
+            if (table == null) {
+                return false;
+            }
+            t2 = current == null ? nextFromChild2() : probeReader.next();
+            if (t2 != null) {
+                match = table.find(t2.getField(pred.getField2()));
                 continue;
-            listIt = l.iterator();
-
-            return processList();
-
-        }
-
-        // child2 is done: advance child1
-        child2.rewind();
-        if (loadMap()) {
-            return fetchNext();
+            }
+            // the probe input is done: move on to the next spilled partition
+            if (!nextTable()) {
+                return false;
+            }
         }
-
-        return null;
     }
 
     @Override
@@ -170,5 +505,5 @@ public class HashEquiJoin extends Operator {
         this.child1 = children[0];
         this.child2 = children[1];
     }
-    
+
 }
@@ -0,0 +1,309 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeScan;
+import simpledb.index.BTreeSearchIterator;
+import simpledb.storage.DbFile;
+import simpledb.storage.Field;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The IndexNestedLoopJoin operator joins child1 with a table that has a
+ * BTreeFile index on its join field. Instead of scanning child2, it looks up
+ * the tuples that match each child1 tuple with
+ * {@link BTreeFile#indexIterator}, and applies the Filters above the scan in
+ * child2 to them, as well as the key range of a {@link BTreeScan} (see
+ * {@link #canProbe}).
+ * <p>
+ * child1 is read in batches that are sorted on the join key before probing,
+ * so the probes of a batch go along the leaf chain in key order and a probe
+ * whose key lies on the leaf the last one ended on, or on the next leaf, does
+ * not descend from the root again. For EQUALS the matches of a key are kept
+ * for the child1 tuples that follow with the same key. LIKE and NOT_EQUALS
+ * are not supported.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** How many child1 tuples are sorted and probed together by default */
+    public static final int DEFAULT_BATCH_TUPLES = 4096;
+
+    private final JoinPredicate pred;
+    private OpIterator child1, child2;
+    private final TupleDesc comboTD;
+    private final int batchTuples;
+
+    // the indexed table under child2 and the filters above its scan
+    private final int tableId;
+    private final TransactionId tid;
+    private final List<Predicate> filters;
+
+    /**
+     * Constructor. Accepts the child to probe with, the indexed plan to probe
+     * and the predicate to join them on.
+     *
+     * @throws IllegalArgumentException if the predicate is LIKE or
+     *         NOT_EQUALS, or child2 cannot be probed on its join field
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, DEFAULT_BATCH_TUPLES);
+    }
+
+    /**
+     * Constructor for a join that sorts batchTuples child1 tuples at a time.
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, OpIterator child1, OpIterator child2, int batchTuples) {
+        if (p.getOperator() == Predicate.Op.LIKE || p.getOperator() == Predicate.Op.NOT_EQUALS) {
+            throw new IllegalArgumentException("IndexNestedLoopJoin does not support " + p.getOperator());
+        }
+        OpIterator scan = scanUnder(child2);
+        if (scan == null || !canProbe(child2, p.getField2())) {
+            throw new IllegalArgumentException("child2 has no index on field " + p.getField2());
+        }
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.batchTuples = Math.max(1, batchTuples);
+        this.filters = new ArrayList<>();
+        for (OpIterator op = child2; op instanceof Filter; op = ((Filter) op).getChildren()[0])
+            filters.add(((Filter) op).getPredicate());
+        if (scan instanceof BTreeScan) {
+            // 探查不走这个扫描,它的索引范围也当作过滤条件
+            BTreeScan bs = (BTreeScan) scan;
+            this.tableId = bs.getTableId();
+            this.tid = bs.getTransactionId();
+            for (IndexPredicate ip : new IndexPredicate[] { bs.getIndexPredicate(), bs.getUpperBound() }) {
+                if (ip != null)
+                    filters.add(new Predicate(bs.getKeyField(), ip.getOp(), ip.getField()));
+            }
+        } else {
+            this.tableId = ((SeqScan) scan).getTableId();
+            this.tid = ((SeqScan) scan).getTransactionId();
+        }
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /**
+     * @return the SeqScan or BTreeScan under the Filters of plan, or null if
+     *         plan is not such a scan
+     */
+    private static OpIterator scanUnder(OpIterator plan) {
+        while (plan instanceof Filter)
+            plan = ((Filter) plan).getChildren()[0];
+        return plan instanceof SeqScan || plan instanceof BTreeScan ? plan : null;
+    }
+
+    /**
+     * @return true if plan is a scan of a BTreeFile keyed on field, under any
+     *         number of Filters, so its tuples can be looked up by field
+     */
+    public static boolean canProbe(OpIterator plan, int field) {
+        OpIterator scan = scanUnder(plan);
+        if (scan == null)
+            return false;
+        int tableId = scan instanceof BTreeScan ? ((BTreeScan) scan).getTableId()
+                : ((SeqScan) scan).getTableId();
+        DbFile f = Database.getCatalog().getDatabaseFile(tableId);
+        return f instanceof BTreeFile && ((BTreeFile) f).keyField() == field;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public String getJoinField1Name() {
+        return this.child1.getTupleDesc().getFieldName(this.pred.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    /** @return how many times the probes have descended from the root of the index */
+    public int getDescents() {
+        return probe == null ? 0 : probe.getDescents();
+    }
+
+    /** @return the operator the index is searched with: child2 key OP child1 key */
+    private Predicate.Op indexOp() {
+        switch (pred.getOperator()) {
+        case LESS_THAN:
+            return Predicate.Op.GREATER_THAN;
+        case LESS_THAN_OR_EQ:
+            return Predicate.Op.GREATER_THAN_OR_EQ;
+        case GREATER_THAN:
+            return Predicate.Op.LESS_THAN;
+        case GREATER_THAN_OR_EQ:
+            return Predicate.Op.LESS_THAN_OR_EQ;
+        default:
+            return Predicate.Op.EQUALS;
+        }
+    }
+
+    private transient BTreeFile index = null;
+    private transient BTreeSearchIterator probe = null;
+    private transient boolean typesMatch = false;
+
+    // the current batch of child1 tuples, sorted on the join key
+    private transient Tuple[] batch = null;
+    private transient int batchSize = 0;
+    private transient int batchPos = 0;
+
+    // the child1 tuple being joined; for EQUALS the matches of its key
+    private transient Tuple outer = null;
+    private transient ArrayList<Tuple> matches = null;
+    private transient Field matchKey = null;
+    private transient int matchPos = 0;
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        index = (BTreeFile) Database.getCatalog().getDatabaseFile(tableId);
+        typesMatch = child1.getTupleDesc().getFieldType(pred.getField1())
+                == index.getTupleDesc().getFieldType(pred.getField2());
+        child1.open();
+        batch = new Tuple[batchTuples];
+        resetState();
+        super.open();
+    }
+
+    private void resetState() {
+        batchSize = 0;
+        batchPos = 0;
+        outer = null;
+        matches = null;
+        matchKey = null;
+        matchPos = 0;
+    }
+
+    public void close() {
+        super.close();
+        child1.close();
+        if (probe != null)
+            probe.close();
+        probe = null;
+        index = null;
+        batch = null;
+        outer = null;
+        matches = null;
+        matchKey = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        // the probe iterator stays open; its next seek starts from where it is
+        resetState();
+    }
+
+    /** Read the next batch of child1 tuples and sort it on the join key. */
+    private boolean fillBatch() throws DbException, TransactionAbortedException {
+        batchSize = 0;
+        batchPos = 0;
+        while (batchSize < batch.length && child1.hasNext())
+            batch[batchSize++] = child1.next();
+        // 稳定排序,同一批里键相同的元组保持child1的顺序
+        Arrays.sort(batch, 0, batchSize, new TupleComparator(pred.getField1(), true));
+        return batchSize > 0;
+    }
+
+    /** Point the probe iterator at the child2 tuples matching key. */
+    private void seek(Field key) throws DbException, TransactionAbortedException {
+        IndexPredicate ipred = new IndexPredicate(indexOp(), key);
+        if (probe == null) {
+            probe = index.indexIterator(tid, ipred);
+            probe.open();
+        } else {
+            probe.seek(ipred);
+        }
+    }
+
+    /** @return the next tuple from the probe iterator that passes child2's filters */
+    private Tuple nextMatch() throws DbException, TransactionAbortedException {
+        while (probe.hasNext()) {
+            Tuple t = probe.next();
+            boolean pass = true;
+            for (Predicate f : filters) {
+                if (!f.filter(t)) {
+                    pass = false;
+                    break;
+                }
+            }
+            if (pass)
+                return t;
+        }
+        return null;
+    }
+
+    /** @return the fields of a and then b in one tuple */
+    private Tuple combine(Tuple a, Tuple b) {
+        int td1n = a.getTupleDesc().numFields();
+        int td2n = b.getTupleDesc().numFields();
+        Tuple t = new Tuple(comboTD);
+        for (int i = 0; i < td1n; i++)
+            t.setField(i, a.getField(i));
+        for (int i = 0; i < td2n; i++)
+            t.setField(td1n + i, b.getField(i));
+        return t;
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (!typesMatch)
+            return null;
+        boolean equals = pred.getOperator() == Predicate.Op.EQUALS;
+        while (true) {
+            if (outer != null) {
+                if (equals) {
+                    if (matchPos < matches.size())
+                        return combine(outer, matches.get(matchPos++));
+                } else {
+                    Tuple t = nextMatch();
+                    if (t != null)
+                        return combine(outer, t);
+                }
+                outer = null;
+            }
+            if (batchPos == batchSize && !fillBatch())
+                return null;
+            outer = batch[batchPos];
+            batch[batchPos++] = null;
+            Field key = outer.getField(pred.getField1());
+            if (!equals) {
+                seek(key);
+            } else if (matchKey == null || !matchKey.equals(key)) {
+                seek(key);
+                matches = new ArrayList<>();
+                for (Tuple t = nextMatch(); t != null; t = nextMatch())
+                    matches.add(t);
+                matchKey = key;
+                matchPos = 0;
+            } else {
+                matchPos = 0;
+            }
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+}
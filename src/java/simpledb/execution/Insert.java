@@ -103,6 +103,9 @@ public class Insert extends Operator {
             boolean insertOk = true;
             try {
                 Database.getBufferPool().insertTuple(tid_,tableId_,tuple);
+            } catch (TransactionAbortedException e) {
+                //拿不到排他锁时事务必须中止,不能当作这一条失败继续执行
+                throw e;
             } catch (Exception e) {
                 insertOk = false;
             }
@@ -0,0 +1,131 @@
+package simpledb.execution;
+
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+
+import java.util.Arrays;
+
+/**
+ * A {@link KeyTable} for INT_TYPE keys. Keys are stored unboxed next to
+ * their ids in a flat int array of slots, probed linearly, and the table is
+ * kept at most half full. Callers that already have the int can use {@link #find(int)} and
+ * {@link #getOrAdd(int)} and never create a Field.
+ */
+public class IntKeyTable implements KeyTable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int EMPTY = -1;
+
+    private int[] slots_; //每个槽占两格:键和id,id为EMPTY表示空槽,一次探测只读一条缓存行
+    private int mask_;
+    private int shift_; //32减去槽数的位数,槽号取散列值的高位
+    private int[] keys_; //按id排列的键
+    private int size_;
+
+    public IntKeyTable() {
+        this(16);
+    }
+
+    /** @param expected the number of keys to make room for up front */
+    public IntKeyTable(int expected) {
+        int capacity = 16;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+        keys_ = new int[Math.max(8,expected)];
+        size_ = 0;
+    }
+
+    private void allocate(int capacity) {
+        slots_ = new int[capacity * 2];
+        for (int i = 1; i < slots_.length; i += 2) {
+            slots_[i] = EMPTY;
+        }
+        mask_ = capacity - 1;
+        shift_ = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /** 乘法散列取高位,连续的整数也能均匀分布到各个槽 */
+    private int slot(int key) {
+        return (key * 0x9E3779B9) >>> shift_;
+    }
+
+    /** @return the id of key, or -1 if it was never added */
+    public int find(int key) {
+        int slot = slot(key);
+        while (true) {
+            int id = slots_[2 * slot + 1];
+            if (id == EMPTY) {
+                return -1;
+            }
+            if (slots_[2 * slot] == key) {
+                return id;
+            }
+            slot = (slot + 1) & mask_;
+        }
+    }
+
+    /** @return the id of key, adding it with the next free id if it is new */
+    public int getOrAdd(int key) {
+        int slot = slot(key);
+        while (true) {
+            int id = slots_[2 * slot + 1];
+            if (id == EMPTY) {
+                break;
+            }
+            if (slots_[2 * slot] == key) {
+                return id;
+            }
+            slot = (slot + 1) & mask_;
+        }
+        int id = size_ ++;
+        if (id == keys_.length) {
+            keys_ = Arrays.copyOf(keys_,keys_.length * 2);
+        }
+        keys_[id] = key;
+        slots_[2 * slot] = key;
+        slots_[2 * slot + 1] = id;
+        if (size_ * 4 > slots_.length) {
+            grow();
+        }
+        return id;
+    }
+
+    private void grow() {
+        allocate((mask_ + 1) * 2);
+        for (int id = 0; id < size_; id ++) {
+            int slot = slot(keys_[id]);
+            while (slots_[2 * slot + 1] != EMPTY) {
+                slot = (slot + 1) & mask_;
+            }
+            slots_[2 * slot] = keys_[id];
+            slots_[2 * slot + 1] = id;
+        }
+    }
+
+    /** @return the key with the given id */
+    public int getInt(int id) {
+        return keys_[id];
+    }
+
+    @Override
+    public int find(Field key) {
+        return find(((IntField) key).getValue());
+    }
+
+    @Override
+    public int getOrAdd(Field key) {
+        return getOrAdd(((IntField) key).getValue());
+    }
+
+    @Override
+    public int size() {
+        return size_;
+    }
+
+    @Override
+    public Field getKey(int id) {
+        return new IntField(keys_[id]);
+    }
+}
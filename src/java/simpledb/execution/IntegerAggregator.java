@@ -36,7 +36,8 @@ public class IntegerAggregator implements Aggregator {
     private Type gbfieldtype_;
     private int afield_;
     private Op what_;
-    private HashMap<Field,ArrayList<IntField>> GpMap_; //key为gbfield的值,value是afield的值
+    private KeyTable groups_; //gbfield的值到组号,nogroup时为null
+    private ArrayList<AggregateState> states_; //按组号存放每一组的聚合状态
     private TupleDesc desc_;
 
     public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
@@ -46,7 +47,8 @@ public class IntegerAggregator implements Aggregator {
         afield_ = afield;
         what_ = what;
         desc_ = null;
-        GpMap_ = new HashMap<Field,ArrayList<IntField>>();
+        groups_ = null;
+        states_ = new ArrayList<AggregateState>();
     }
 
     /**
@@ -56,9 +58,8 @@ public class IntegerAggregator implements Aggregator {
      * @param tup
      *            the Tuple containing an aggregate field and a group-by field
      */
-    private void setTupleDesc(Tuple tup) {
+    private void setTupleDesc(TupleDesc tupleDesc) {
         if (desc_ == null) {
-            TupleDesc tupleDesc = tup.getTupleDesc();
             String[] names;
             Type[] types;
             if (gbfield_ < tupleDesc.numFields() && gbfield_ != -1) {
@@ -79,18 +80,15 @@ public class IntegerAggregator implements Aggregator {
             desc_ = new TupleDesc(types,names);
         }
     }
-    //当noGroup的时候就是只有一个null,以及对应的一个list.
-    //如果不是则每一个feild就对应一个list
+    //当noGroup的时候就是只有一个null,以及对应的一个状态.
+    //如果不是则每一个feild就对应一个状态,只保存计数、和、最小值和最大值
     private void updateValue(Field key,IntField value) {
-        if (!GpMap_.containsKey(key)) {
-            GpMap_.put(key, new ArrayList<IntField>());
-        }
-        GpMap_.get(key).add(value);
+        stateOf(key).add(value.getValue());
     }
 
     public void mergeTupleIntoGroup(Tuple tup) throws NoSuchElementException{
         // some code goes here
-        setTupleDesc(tup);
+        setTupleDesc(tup.getTupleDesc());
         //在下面应该区分是否是-1的情况
         Field gpfield;
         IntField afield;
@@ -106,6 +104,84 @@ public class IntegerAggregator implements Aggregator {
         updateValue(gpfield,afield);
     }
 
+    /** Batches are read from their int arrays unless the groups are strings. */
+    @Override
+    public boolean mergesBatches() {
+        return gbfield_ == -1 || gbfieldtype_ == Type.INT_TYPE;
+    }
+
+    /**
+     * Merge a batch into the aggregate straight from its int arrays; groups
+     * on an INT_TYPE field are looked up without creating Fields.
+     */
+    @Override
+    public void mergeBatchIntoGroups(TupleBatch batch) {
+        setTupleDesc(batch.getTupleDesc());
+        int[] values = batch.intColumn(afield_);
+        int n = batch.numRows();
+        if (gbfield_ == -1) {
+            AggregateState state = stateOf(null);
+            for (int i = 0; i < n; i ++) {
+                state.add(values[batch.row(i)]);
+            }
+        } else if (gbfieldtype_ == Type.INT_TYPE) {
+            if (groups_ == null) {
+                groups_ = KeyTable.forType(Type.INT_TYPE);
+            }
+            IntKeyTable groups = (IntKeyTable) groups_;
+            int[] keys = batch.intColumn(gbfield_);
+            for (int i = 0; i < n; i ++) {
+                int r = batch.row(i);
+                int id = groups.getOrAdd(keys[r]);
+                if (id == states_.size()) {
+                    states_.add(new AggregateState());
+                }
+                states_.get(id).add(values[r]);
+            }
+        } else {
+            for (int i = 0; i < n; i ++) {
+                int r = batch.row(i);
+                stateOf(batch.getField(gbfield_,r)).add(values[r]);
+            }
+        }
+    }
+
+    /**
+     * @return the state of the group gpfield belongs to, creating it for a
+     *         new group; gpfield is null if there is no grouping
+     */
+    private AggregateState stateOf(Field gpfield) {
+        int id;
+        if (gpfield == null) {
+            id = 0;
+        } else {
+            if (groups_ == null) {
+                groups_ = KeyTable.forType(gpfield.getType());
+            }
+            id = groups_.getOrAdd(gpfield);
+        }
+        if (id == states_.size()) {
+            states_.add(new AggregateState());
+        }
+        return states_.get(id);
+    }
+
+    public int numGroups() {
+        return states_.size();
+    }
+
+    public Field groupKey(int group) {
+        return groups_ == null ? null : groups_.getKey(group);
+    }
+
+    public AggregateState groupState(int group) {
+        return states_.get(group);
+    }
+
+    public void mergeState(Field key,AggregateState state) {
+        stateOf(key).merge(state);
+    }
+
     /**
      * Create a OpIterator over group aggregate results.
      * 
@@ -125,27 +201,23 @@ public class IntegerAggregator implements Aggregator {
     public class IntegerAggregatorOpIterator implements OpIterator {
 
         private IntegerAggregator aggregator_;
-        private Iterator<Field> gvalueIt_;
-        private Field currGroup_;
+        private int nextGroup_; //下一个要输出的组号,-1表示没有open
 
 
 
         public IntegerAggregatorOpIterator(IntegerAggregator iaggregator) {
             aggregator_ = iaggregator;
-            gvalueIt_ = null;
-            currGroup_ = null;
+            nextGroup_ = -1;
         }
 
         @Override
         public void open() throws DbException, TransactionAbortedException {
-            gvalueIt_ = aggregator_.GpMap_.keySet().iterator();
-            currGroup_ = null;
+            nextGroup_ = 0;
         }
 
         @Override
         public void close() {
-            currGroup_ = null;
-            gvalueIt_ = null;
+            nextGroup_ = -1;
         }
 
         @Override
@@ -154,56 +226,18 @@ public class IntegerAggregator implements Aggregator {
             open();
         }
 
-        private IntField getValue(Field key) {
-            ArrayList<IntField> intlist = aggregator_.GpMap_.get(key);
-            //Iterator<IntField> intIt = aggregator_.GpMap_.get(key).iterator();
-            Op what = aggregator_.what_;
-            IntField intField;
-            if (what.equals(Op.COUNT)) {
-                intField = new IntField(intlist.size());
-            } else if (what.equals(Op.AVG)) {
-                int sum = 0;
-                for (IntField field: intlist) {
-                    sum += field.getValue();
-                }
-                intField = new IntField(sum / intlist.size());
-            } else if (what.equals(Op.SUM)) {
-                int sum = 0;
-                for (IntField field: intlist) {
-                    sum += field.getValue();
-                }
-                intField = new IntField(sum);
-            } else if (what.equals(Op.MIN)) {
-                int min = 0x0fffffff;
-                for (IntField field: intlist) {
-                    min = Integer.min(min,field.getValue());
-                }
-                intField = new IntField(min);
-            } else if (what.equals(Op.MAX)) {
-                int max = 0x80000000;
-                for (IntField field: intlist) {
-                    max = Integer.max(max,field.getValue());
-                }
-                intField = new IntField(max);
-            } else if (what.equals(Op.SC_AVG)) {
-                intField = new IntField(0); //暂且不做
-
-            } else /*if (what.equals(Op.SUM_COUNT)) */{//也就是对应的SUM_COUNT的情况
-                intField = new IntField(0); //暂且不做
-            }
-            return intField;
-        }
         @Override
         public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
-            Tuple tuple = null;
-            tuple = new Tuple(aggregator_.desc_);
-            currGroup_ = gvalueIt_.next();
-            IntField intField = getValue(currGroup_);
-            if (aggregator_.gbfield_ == -1 && aggregator_.GpMap_.containsKey(null)) { //这个时候就只会固定在第一个null为key的里面
+            if (!hasNext()) {
+                throw new NoSuchElementException("no more groups in IntegerAggregator");
+            }
+            int id = nextGroup_ ++;
+            Tuple tuple = new Tuple(aggregator_.desc_);
+            IntField intField = new IntField(aggregator_.states_.get(id).getValue(aggregator_.what_));
+            if (aggregator_.groups_ == null) { //nogroup时只有组号0
                 tuple.setField(0,intField);
-
             } else {
-                tuple.setField(0,currGroup_);
+                tuple.setField(0,aggregator_.groups_.getKey(id));
                 tuple.setField(1,intField);
             }
             return tuple;
@@ -211,7 +245,7 @@ public class IntegerAggregator implements Aggregator {
 
         @Override
         public boolean hasNext() throws DbException, TransactionAbortedException {
-            return gvalueIt_.hasNext();
+            return nextGroup_ >= 0 && nextGroup_ < aggregator_.states_.size();
         }
         @Override
         public TupleDesc getTupleDesc() {
@@ -1,8 +1,10 @@
 package simpledb.execution;
 
+import simpledb.common.Database;
 import simpledb.optimizer.JoinOptimizer;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
+import simpledb.storage.BufferPool;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 
@@ -10,10 +12,19 @@ import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * It is a block nested loops join: child1 is read a block of tuples at a
+ * time, and each scan of child2 is matched against the whole block, so child2
+ * is scanned once per block instead of once per child1 tuple. A block holds
+ * as many tuples as fit on blockPages heap pages; by default the buffer pool
+ * size less the pages that child2's scan and the output need.
  */
 public class Join extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** Buffer pool pages the default block leaves for child2 and the output */
+    public static final int RESERVED_PAGES = 2;
     //child1,2指的是两个关系,两个关系中只有符合某个条件的元组才是可返回的Tuple
     /**
      * Constructor. Accepts two children to join and the predicate to join them
@@ -29,16 +40,40 @@ public class Join extends Operator {
     private JoinPredicate joinPredicate_;
     private OpIterator child1_;
     private OpIterator child2_;
-    private Tuple currTuple1_;
     private Tuple currTuple2_;
+    private final int blockPages_;
+    //当前块里的child1元组,以及currTuple2_下一个要比较的位置
+    private transient ArrayList<Tuple> block_;
+    private transient int blockPos_;
+    private transient int blockTuples_;
+    private transient boolean joinedBlock_;
 
     public Join(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p,child1,child2,0);
+    }
+
+    /**
+     * Constructor for a join whose blocks of child1 tuples fill blockPages
+     * pages; 0 sizes them to the buffer pool when the join is opened.
+     */
+    public Join(JoinPredicate p, OpIterator child1, OpIterator child2, int blockPages) {
         // some code goes here
         joinPredicate_ = p;
         child1_ = child1;
         child2_ = child2;
-        currTuple1_ = null;
-        currTuple1_ = null;
+        blockPages_ = blockPages;
+        currTuple2_ = null;
+    }
+
+    /** @return the block size in pages a join opened now would use by default */
+    public static int defaultBlockPages() {
+        return Math.max(1,Database.getBufferPool().getNumPages() - RESERVED_PAGES);
+    }
+
+    /** @return how many tuples of td fill pages heap pages */
+    public static int blockTuples(TupleDesc td, int pages) {
+        int perPage = (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
+        return Math.max(1,perPage) * Math.max(1,pages);
     }
 
     public JoinPredicate getJoinPredicate() {
@@ -85,12 +120,17 @@ public class Join extends Operator {
         super.open();
         child1_.open();
         child2_.open();
+        blockTuples_ = blockTuples(child1_.getTupleDesc(),
+                blockPages_ > 0 ? blockPages_ : defaultBlockPages());
+        block_ = new ArrayList<>();
+        blockPos_ = 0;
+        joinedBlock_ = false;
     }
 
     public void close() {
         // some code goes here
-        currTuple1_ = null;
         currTuple2_ = null;
+        block_ = null;
 
         child1_.close();
         child2_.close();
@@ -99,8 +139,10 @@ public class Join extends Operator {
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
-        currTuple1_ =null;
         currTuple2_ = null;
+        block_.clear();
+        blockPos_ = 0;
+        joinedBlock_ = false;
 
         child1_.rewind();
         child2_.rewind();
@@ -144,31 +186,42 @@ public class Join extends Operator {
 
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // some code goes here
-        while (currTuple1_ != null || child1_.hasNext()) {
-            if (currTuple1_ == null) {
-                if (child1_.hasNext()) {
-                    currTuple1_ = child1_.next();
-                } else {
-                    return null;
+        while (true) {
+            if (currTuple2_ != null) {
+                while (blockPos_ < block_.size()) {
+                    Tuple tuple = joinTuples(block_.get(blockPos_++),currTuple2_);
+                    if (tuple != null) {
+                        return tuple;
+                    }
                 }
+                currTuple2_ = null;
             }
-            if (!child2_.hasNext()) {
-                if(child1_.hasNext()){
-                    child2_.rewind();
-                    currTuple1_ = child1_.next();
-                }else{
-                    return null;
-                }
-            }
-            while (child2_.hasNext()) {
+            if (!block_.isEmpty() && child2_.hasNext()) {
                 currTuple2_ = child2_.next();
-                Tuple tuple = joinTuples(currTuple1_,currTuple2_);
-                if (tuple != null) {
-                    return tuple;
-                }
+                blockPos_ = 0;
+                continue;
+            }
+            //child2已经和这个块比完了,读下一个块并重新扫描child2
+            if (!nextBlock()) {
+                return null;
             }
         }
-        return null;
+    }
+
+    /** Read the next block of child1 tuples, rewinding child2 after the first. */
+    private boolean nextBlock() throws TransactionAbortedException, DbException {
+        block_.clear();
+        while (block_.size() < blockTuples_ && child1_.hasNext()) {
+            block_.add(child1_.next());
+        }
+        if (block_.isEmpty()) {
+            return false;
+        }
+        if (joinedBlock_) {
+            child2_.rewind();
+        }
+        joinedBlock_ = true;
+        return true;
     }
 
     @Override
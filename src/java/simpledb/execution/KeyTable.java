@@ -0,0 +1,42 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.Field;
+
+import java.io.Serializable;
+
+/**
+ * A hash table that maps the distinct values of a key column to dense ids
+ * 0, 1, 2, ... in the order they were first added. Operators keep their
+ * per-key state in lists or arrays indexed by the id, so the table itself
+ * holds no objects per key.
+ * <p>
+ * Each key type has its own open-addressing table with linear probing over
+ * flat arrays; use {@link #forType} to get the one for a column.
+ */
+public interface KeyTable extends Serializable {
+
+    /** @return the id of key, or -1 if it was never added */
+    int find(Field key);
+
+    /** @return the id of key, adding it with the next free id if it is new */
+    int getOrAdd(Field key);
+
+    /** @return the number of distinct keys added */
+    int size();
+
+    /** @return the key with the given id */
+    Field getKey(int id);
+
+    /** @return an empty table for keys of the given type */
+    static KeyTable forType(Type type) {
+        switch (type) {
+            case INT_TYPE:
+                return new IntKeyTable();
+            case STRING_TYPE:
+                return new StringKeyTable();
+            default:
+                throw new IllegalArgumentException("no key table for type " + type);
+        }
+    }
+}
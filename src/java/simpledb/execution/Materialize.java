@@ -0,0 +1,143 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.*;
+
+/**
+ * The Materialize operator reads its child to the end when it is opened and
+ * hands out the same tuples again after every rewind, without running the
+ * child again. It sits under a nested loops {@link Join} whose inner side is
+ * itself a join, which would otherwise be computed once per block of the
+ * outer side. The tuples are kept in memory up to a memory budget; a child
+ * with more is written to a {@link SpillFile} and read back from there.
+ */
+public class Materialize extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private OpIterator child_;
+    private final long memoryBytes_;
+    //溢出到文件时tuples_为null
+    private transient List<Tuple> tuples_;
+    private transient SpillFile file_;
+    private transient SpillFile.Reader reader_;
+    private transient int pos_;
+
+    /**
+     * Constructor.
+     *
+     * @param child the plan whose tuples are read once and replayed
+     */
+    public Materialize(OpIterator child) {
+        this(child,ExternalSorter.DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * Constructor for an operator that keeps at most memoryBytes of tuples on
+     * the heap, and spills them all to disk beyond that.
+     */
+    public Materialize(OpIterator child, long memoryBytes) {
+        child_ = child;
+        memoryBytes_ = memoryBytes;
+    }
+
+    /** @return the name of this operator in query plans */
+    public String getName() {
+        return "materialize";
+    }
+
+    /** @return whether the child's tuples did not fit in memory and were spilled */
+    public boolean isSpilled() {
+        return file_ != null;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child_.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        TupleDesc td = child_.getTupleDesc();
+        long fit = Math.max(1,memoryBytes_ / SpillFile.estimateTupleBytes(td));
+        tuples_ = new ArrayList<>();
+        file_ = null;
+        child_.open();
+        try {
+            while (child_.hasNext()) {
+                Tuple t = child_.next();
+                if (tuples_ != null && tuples_.size() < fit) {
+                    tuples_.add(t);
+                    continue;
+                }
+                if (tuples_ != null) {
+                    //放不下了,把已经读到的也写到文件里
+                    file_ = new SpillFile(td,ExternalSorter.RUN_BUFFER_BYTES);
+                    for (Tuple old : tuples_) {
+                        file_.write(old);
+                    }
+                    tuples_ = null;
+                }
+                file_.write(t);
+            }
+        } catch (DbException | TransactionAbortedException | RuntimeException e) {
+            if (file_ != null) {
+                file_.delete();
+                file_ = null;
+            }
+            throw e;
+        } finally {
+            child_.close();
+        }
+        start();
+        super.open();
+    }
+
+    private void start() throws DbException {
+        pos_ = 0;
+        if (file_ != null) {
+            reader_ = file_.reader(ExternalSorter.RUN_BUFFER_BYTES);
+        }
+    }
+
+    public void close() {
+        super.close();
+        if (reader_ != null) {
+            reader_.close();
+            reader_ = null;
+        }
+        if (file_ != null) {
+            file_.delete();
+            file_ = null;
+        }
+        tuples_ = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (reader_ != null) {
+            reader_.close();
+            reader_ = null;
+        }
+        start();
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        if (file_ != null) {
+            return reader_.next();
+        }
+        return pos_ < tuples_.size() ? tuples_.get(pos_++) : null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { child_ };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        child_ = children[0];
+    }
+}
@@ -9,18 +9,20 @@ import simpledb.storage.TupleDesc;
 import java.util.*;
 
 /**
- * OrderBy is an operator that implements a relational ORDER BY.
+ * OrderBy is an operator that implements a relational ORDER BY. The child's
+ * tuples are sorted with an {@link ExternalSorter}, so an input larger than
+ * the memory budget is sorted in runs on disk and merged.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
     private OpIterator child;
     private final TupleDesc td;
-    private final List<Tuple> childTups = new ArrayList<>();
     private final int orderByField;
     private final String orderByFieldName;
-    private Iterator<Tuple> it;
     private final boolean asc;
+    private final long memoryBytes;
+    private transient ExternalSorter sorter;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -33,11 +35,23 @@ public class OrderBy extends Operator {
      *            the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, OpIterator child) {
+        this(orderbyField, asc, child, ExternalSorter.DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts within the given memory budget.
+     *
+     * @param memoryBytes
+     *            how much heap the sort may hold; beyond it, sorted runs are
+     *            written to temporary files and merged.
+     */
+    public OrderBy(int orderbyField, boolean asc, OpIterator child, long memoryBytes) {
         this.child = child;
         td = child.getTupleDesc();
         this.orderByField = orderbyField;
         this.orderByFieldName = td.getFieldName(orderbyField);
         this.asc = asc;
+        this.memoryBytes = memoryBytes;
     }
     
     public boolean isASC()
@@ -62,21 +76,25 @@ public class OrderBy extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
-        // load all the tuples in a collection, and sort it
+        // sort all the tuples, spilling sorted runs to disk past the budget
+        sorter = new ExternalSorter(td, new TupleComparator(orderByField, asc), memoryBytes);
         while (child.hasNext())
-            childTups.add(child.next());
-        childTups.sort(new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+            sorter.add(child.next());
+        sorter.finish();
         super.open();
     }
 
     public void close() {
         super.close();
-        it = null;
+        if (sorter != null) {
+            sorter.close();
+            sorter = null;
+        }
     }
 
-    public void rewind() {
-        it = childTups.iterator();
+    /** Reads the sorted output again; the child is not read or sorted again. */
+    public void rewind() throws DbException {
+        sorter.rewind();
     }
 
     /**
@@ -86,9 +104,9 @@ public class OrderBy extends Operator {
      * @return The next tuple in the ordering, or null if there are no more
      *         tuples
      */
-    protected Tuple fetchNext() throws NoSuchElementException {
-        if (it != null && it.hasNext()) {
-            return it.next();
+    protected Tuple fetchNext() throws NoSuchElementException, DbException {
+        if (sorter != null && sorter.hasNext()) {
+            return sorter.next();
         } else
             return null;
     }
@@ -1,6 +1,9 @@
 package simpledb.execution;
 
+import simpledb.common.Type;
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -118,4 +121,80 @@ public class Predicate implements Serializable {
         String msg = String.format("f = %d op = %s operand = %s",field_,op_.toString(),operand_.toString());
         return msg;
     }
+
+    /**
+     * Drop the rows of batch that do not pass this predicate from its
+     * selection. INT_TYPE columns and non-LIKE comparisons of STRING_TYPE
+     * columns are compared in the batch's arrays; other comparisons go
+     * through Field objects.
+     */
+    public void filter(TupleBatch batch) {
+        int n = batch.numRows();
+        int[] sel = batch.selection();
+        int[] out = batch.selectionBuffer();
+        int kept = 0;
+        Type type = batch.getTupleDesc().getFieldType(field_);
+        if (type == Type.INT_TYPE && operand_ instanceof IntField) {
+            int[] col = batch.intColumn(field_);
+            int c = ((IntField) operand_).getValue();
+            for (int i = 0; i < n; i++) {
+                int r = sel == null ? i : sel[i];
+                if (compare(op_,Integer.compare(col[r],c))) {
+                    out[kept++] = r;
+                }
+            }
+        } else if (type == Type.STRING_TYPE && operand_ instanceof StringField && op_ != Op.LIKE) {
+            byte[] col = batch.stringColumn(field_);
+            int[] lens = batch.stringLengths(field_);
+            byte[] c = new byte[Type.STRING_LEN];
+            int clen = TupleBatch.encode(((StringField) operand_).getValue(),c,0);
+            for (int i = 0; i < n; i++) {
+                int r = sel == null ? i : sel[i];
+                if (compare(op_,compareBytes(col,r * Type.STRING_LEN,lens[r],c,clen))) {
+                    out[kept++] = r;
+                }
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                int r = batch.row(i);
+                if (batch.getField(field_,r).compare(op_,operand_)) {
+                    out[kept++] = r;
+                }
+            }
+        }
+        batch.select(out,kept);
+    }
+
+    /** @return whether a comparison that came out as cmp satisfies op */
+    private static boolean compare(Op op, int cmp) {
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return cmp == 0;
+            case NOT_EQUALS:
+                return cmp != 0;
+            case GREATER_THAN:
+                return cmp > 0;
+            case GREATER_THAN_OR_EQ:
+                return cmp >= 0;
+            case LESS_THAN:
+                return cmp < 0;
+            case LESS_THAN_OR_EQ:
+                return cmp <= 0;
+            default:
+                return false;
+        }
+    }
+
+    /** 按无符号字节比较,和一字节一个字符的字符串按String.compareTo比较的结果一致 */
+    private static int compareBytes(byte[] a, int off, int alen, byte[] b, int blen) {
+        int len = Math.min(alen,blen);
+        for (int i = 0; i < len; i++) {
+            int d = (a[off + i] & 0xff) - (b[i] & 0xff);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return alen - blen;
+    }
 }
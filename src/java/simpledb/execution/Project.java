@@ -9,14 +9,18 @@ import simpledb.storage.TupleDesc;
 import java.util.*;
 
 /**
- * Project is an operator that implements a relational projection.
+ * Project is an operator that implements a relational projection: it keeps
+ * some fields of its child's tuples, in a given order. A projected batch
+ * shares the column arrays of its child's batch.
  */
-public class Project extends Operator {
+public class Project extends Operator implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
     private OpIterator child;
     private final TupleDesc td;
     private final List<Integer> outFieldIds;
+    private final int[] outColumns;
+    private transient TupleBatch batch;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -42,6 +46,9 @@ public class Project extends Operator {
             fieldAr[i] = childtd.getFieldName(fieldList.get(i));
         }
         td = new TupleDesc(types, fieldAr);
+        outColumns = new int[fieldList.size()];
+        for (int i = 0; i < outColumns.length; i++)
+            outColumns[i] = fieldList.get(i);
     }
 
     public TupleDesc getTupleDesc() {
@@ -81,6 +88,13 @@ public class Project extends Operator {
         return newTuple;
     }
 
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (batch == null)
+            batch = new TupleBatch(child.getTupleDesc());
+        TupleBatch b = TupleBatch.next(child, batch);
+        return b == null ? null : b.project(outColumns, td);
+    }
+
     @Override
     public OpIterator[] getChildren() {
         return new OpIterator[]{this.child};
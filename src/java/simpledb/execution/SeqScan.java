@@ -13,9 +13,9 @@ import java.util.*;
 /**
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
- * disk).
+ * disk). It can also hand out the tuples a {@link TupleBatch} at a time.
  */
-public class SeqScan implements OpIterator {
+public class SeqScan implements BatchIterator {
 
     private static final long serialVersionUID = 1L;
 
@@ -25,6 +25,9 @@ public class SeqScan implements OpIterator {
     private int tableId_;
     private String tableAlias_;
     private TupleDesc tupleDesc_;
+    private transient TupleBatch batch_;
+    private int firstPage_;
+    private int endPage_; //-1表示扫描到最后一页
 
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -64,6 +67,24 @@ public class SeqScan implements OpIterator {
             index ++;
         }
         tupleDesc_ = new TupleDesc(types,names);
+        firstPage_ = 0;
+        endPage_ = -1;
+    }
+
+    /**
+     * Creates a scan of pages firstPage to endPage - 1 of a HeapFile, so
+     * that several scans can read one table in parallel.
+     *
+     * @throws IllegalArgumentException if the table is not a HeapFile
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int firstPage, int endPage) {
+        this(tid, tableid, tableAlias);
+        if (!(dbFile_ instanceof HeapFile)) {
+            throw new IllegalArgumentException("only a HeapFile can be scanned by page range");
+        }
+        firstPage_ = firstPage;
+        endPage_ = endPage;
+        Iterator_ = ((HeapFile) dbFile_).iterator(tid_, firstPage, endPage);
     }
 
     /**
@@ -76,6 +97,35 @@ public class SeqScan implements OpIterator {
         //return null;
     }
 
+    /**
+     * @return the id of the table the operator scans
+     * */
+    public int getTableId() {
+        return tableId_;
+    }
+
+    /**
+     * @return the first page the operator scans
+     * */
+    public int getFirstPage() {
+        return firstPage_;
+    }
+
+    /**
+     * @return one past the last page the operator scans, or -1 if it scans
+     *       to the end of the table
+     * */
+    public int getEndPage() {
+        return endPage_;
+    }
+
+    /**
+     * @return the transaction the operator scans the table as a part of
+     * */
+    public TransactionId getTransactionId() {
+        return tid_;
+    }
+
     /**
      * @return Return the alias of the table this operator scans.
      * */
@@ -138,6 +188,22 @@ public class SeqScan implements OpIterator {
         return Iterator_.next();
     }
 
+    /**
+     * Heap pages hold their rows as Tuples, so a batch is copied from those
+     * Tuples; it saves the operators above the scan their per-row calls and
+     * objects, but not the scan its own.
+     */
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (batch_ == null) {
+            batch_ = new TupleBatch(tupleDesc_);
+        }
+        batch_.clear();
+        while (!batch_.isFull() && Iterator_.hasNext()) {
+            batch_.add(Iterator_.next());
+        }
+        return batch_.numRows() > 0 ? batch_ : null;
+    }
+
     public void close() {
         // some code goes here
         Iterator_.close();
@@ -0,0 +1,306 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.index.BTreeScan;
+import simpledb.storage.Field;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+/**
+ * The SortMergeJoin operator joins two inputs that are sorted ascending on
+ * their join fields. An input that does not already arrive in that order
+ * (see {@link #sortedOn}) is sorted first with an {@link ExternalSorter}.
+ * <p>
+ * For EQUALS both inputs are merged in one pass; the child2 tuples of one key
+ * are held in memory while the child1 tuples with that key go by. For the
+ * other predicates the tuples that match an outer tuple are a prefix of the
+ * sorted inner input, so each outer tuple reads the inner input from its start
+ * only as far as the predicate holds: child1 is the outer input for
+ * GREATER_THAN, GREATER_THAN_OR_EQ and NOT_EQUALS (where the prefix is the
+ * whole input), and child2 for LESS_THAN and LESS_THAN_OR_EQ. LIKE is not
+ * supported.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private final JoinPredicate pred;
+    private OpIterator child1, child2;
+    private final TupleDesc comboTD;
+    private final long memoryBytes;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join
+     * them on.
+     *
+     * @throws IllegalArgumentException if the predicate is LIKE
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, ExternalSorter.DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * Constructor for a join that sorts each unsorted child within half of
+     * memoryBytes.
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2, long memoryBytes) {
+        if (p.getOperator() == Predicate.Op.LIKE) {
+            throw new IllegalArgumentException("SortMergeJoin does not support LIKE");
+        }
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.memoryBytes = memoryBytes;
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /**
+     * @return the index of the field op's tuples come out sorted ascending
+     *         on, or -1 if the order is not known
+     */
+    public static int sortedOn(OpIterator op) {
+        if (op instanceof OrderBy) {
+            OrderBy o = (OrderBy) op;
+            return o.isASC() ? o.getOrderByField() : -1;
+        } else if (op instanceof BTreeScan) {
+            return ((BTreeScan) op).getKeyField();
+        } else if (op instanceof Filter) {
+            return sortedOn(((Filter) op).getChildren()[0]);
+        } else if (op instanceof SortMergeJoin) {
+            return ((SortMergeJoin) op).getSortedField();
+        }
+        return -1;
+    }
+
+    /** @return the index of the output field this join's tuples come out sorted on */
+    public int getSortedField() {
+        if (innerIsChild1()) {
+            return child1.getTupleDesc().numFields() + pred.getField2();
+        }
+        return pred.getField1();
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public String getJoinField1Name() {
+        return this.child1.getTupleDesc().getFieldName(this.pred.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    /** LESS_THAN连接时,匹配一个child2元组的child1元组是child1的前缀,所以child2在外层 */
+    private boolean innerIsChild1() {
+        Predicate.Op op = pred.getOperator();
+        return op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ;
+    }
+
+    /** A child read in ascending order of one field, sorted first if it is not already. */
+    private class SortedInput {
+        private final OpIterator child;
+        private final int field;
+        private ExternalSorter sorter = null;
+        private Tuple peeked = null;
+
+        SortedInput(OpIterator child, int field) {
+            this.child = child;
+            this.field = field;
+        }
+
+        void open() throws DbException, TransactionAbortedException {
+            child.open();
+            if (sortedOn(child) != field) {
+                sorter = new ExternalSorter(child.getTupleDesc(), new TupleComparator(field, true), memoryBytes / 2);
+                while (child.hasNext())
+                    sorter.add(child.next());
+                sorter.finish();
+            }
+            peeked = null;
+        }
+
+        boolean hasNext() throws DbException, TransactionAbortedException {
+            if (peeked != null)
+                return true;
+            return sorter != null ? sorter.hasNext() : child.hasNext();
+        }
+
+        Tuple peek() throws DbException, TransactionAbortedException {
+            if (peeked == null)
+                peeked = sorter != null ? sorter.next() : child.next();
+            return peeked;
+        }
+
+        Tuple next() throws DbException, TransactionAbortedException {
+            Tuple t = peek();
+            peeked = null;
+            return t;
+        }
+
+        Field key(Tuple t) {
+            return t.getField(field);
+        }
+
+        void rewind() throws DbException, TransactionAbortedException {
+            peeked = null;
+            if (sorter != null)
+                sorter.rewind();
+            else
+                child.rewind();
+        }
+
+        void close() {
+            peeked = null;
+            if (sorter != null) {
+                sorter.close();
+                sorter = null;
+            }
+            child.close();
+        }
+    }
+
+    private transient SortedInput left = null;
+    private transient SortedInput right = null;
+    private transient boolean typesMatch = false;
+
+    // EQUALS: the child2 tuples whose key is groupKey, and the next one to pair with t1
+    private transient ArrayList<Tuple> group = null;
+    private transient Field groupKey = null;
+    private transient int groupPos = 0;
+    private transient Tuple t1 = null;
+
+    // other predicates: the outer tuple whose prefix of the inner input is being read
+    private transient Tuple outer = null;
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        left = new SortedInput(child1, pred.getField1());
+        right = new SortedInput(child2, pred.getField2());
+        left.open();
+        right.open();
+        typesMatch = child1.getTupleDesc().getFieldType(pred.getField1())
+                == child2.getTupleDesc().getFieldType(pred.getField2());
+        resetState();
+        super.open();
+    }
+
+    private void resetState() {
+        group = new ArrayList<>();
+        groupKey = null;
+        groupPos = 0;
+        t1 = null;
+        outer = null;
+    }
+
+    public void close() {
+        super.close();
+        if (left != null) {
+            left.close();
+            right.close();
+        }
+        left = null;
+        right = null;
+        group = null;
+        groupKey = null;
+        t1 = null;
+        outer = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        left.rewind();
+        right.rewind();
+        resetState();
+    }
+
+    /** @return the fields of a and then b in one tuple */
+    private Tuple combine(Tuple a, Tuple b) {
+        int td1n = a.getTupleDesc().numFields();
+        int td2n = b.getTupleDesc().numFields();
+        Tuple t = new Tuple(comboTD);
+        for (int i = 0; i < td1n; i++)
+            t.setField(i, a.getField(i));
+        for (int i = 0; i < td2n; i++)
+            t.setField(td1n + i, b.getField(i));
+        return t;
+    }
+
+    private static boolean less(Field a, Field b) {
+        return a.compare(Predicate.Op.LESS_THAN, b);
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (!typesMatch)
+            return null;
+        if (pred.getOperator() == Predicate.Op.EQUALS)
+            return fetchNextEquals();
+        return fetchNextPrefix();
+    }
+
+    private Tuple fetchNextEquals() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (t1 != null && groupPos < group.size())
+                return combine(t1, group.get(groupPos++));
+            if (!left.hasNext())
+                return null;
+            t1 = left.next();
+            groupPos = 0;
+            Field k = left.key(t1);
+            if (groupKey != null && groupKey.equals(k))
+                continue;
+            // 跳过child2里比k小的键,再收集等于k的那一组
+            group.clear();
+            groupKey = null;
+            while (right.hasNext() && less(right.key(right.peek()), k))
+                right.next();
+            while (right.hasNext() && right.key(right.peek()).equals(k))
+                group.add(right.next());
+            if (!group.isEmpty())
+                groupKey = k;
+        }
+    }
+
+    private Tuple fetchNextPrefix() throws TransactionAbortedException, DbException {
+        boolean flipped = innerIsChild1();
+        SortedInput outerIn = flipped ? right : left;
+        SortedInput innerIn = flipped ? left : right;
+        boolean wholeInner = pred.getOperator() == Predicate.Op.NOT_EQUALS;
+        while (true) {
+            if (outer != null) {
+                while (innerIn.hasNext()) {
+                    Tuple inner = innerIn.next();
+                    Tuple a = flipped ? inner : outer;
+                    Tuple b = flipped ? outer : inner;
+                    if (pred.filter(a, b))
+                        return combine(a, b);
+                    if (!wholeInner)
+                        break; // the inner input is sorted, so nothing after this matches either
+                }
+                outer = null;
+            }
+            if (!outerIn.hasNext())
+                return null;
+            outer = outerIn.next();
+            innerIn.rewind();
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+}
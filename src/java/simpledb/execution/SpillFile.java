@@ -0,0 +1,153 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.io.*;
+
+/**
+ * A temporary file of tuples that an operator writes once and reads back any
+ * number of times, for the runs of an external sort or the partitions of a
+ * hash join. Only field values are written: an INT takes 4 bytes and a STRING
+ * is written with writeUTF, not padded to STRING_LEN as on a page. Tuples read
+ * back are new tuples without a RecordId.
+ * <p>
+ * The file is not registered with deleteOnExit, whose registry only grows:
+ * the operator that creates it must {@link #delete} it when it closes or
+ * fails.
+ */
+class SpillFile {
+
+    private final TupleDesc td_;
+    private final File file_;
+    private DataOutputStream out_; //写完后为null
+    private long tuples_;
+
+    /**
+     * A rough size of a tuple of td on the heap, to tell how many tuples fit
+     * in a memory budget before they must be spilled: the Tuple and its field
+     * list, an object per field and the bytes of its value.
+     */
+    static long estimateTupleBytes(TupleDesc td) {
+        return 48 + td.numFields() * 32L + td.getSize();
+    }
+
+    /**
+     * Create an empty file to write tuples of td to.
+     *
+     * @param bufferBytes the size of the write buffer
+     */
+    SpillFile(TupleDesc td, int bufferBytes) throws DbException {
+        td_ = td;
+        try {
+            file_ = File.createTempFile("simpledb-spill",".tmp");
+        } catch (IOException e) {
+            throw new DbException("cant create spill file: " + e.getMessage());
+        }
+        try {
+            out_ = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file_),bufferBytes));
+        } catch (IOException e) {
+            file_.delete();
+            throw new DbException("cant create spill file: " + e.getMessage());
+        }
+        tuples_ = 0;
+    }
+
+    void write(Tuple t) throws DbException {
+        try {
+            for (int i = 0; i < td_.numFields(); i ++) {
+                Field f = t.getField(i);
+                if (td_.getFieldType(i) == Type.INT_TYPE) {
+                    out_.writeInt(((IntField) f).getValue());
+                } else {
+                    out_.writeUTF(((StringField) f).getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new DbException("cant write spill file: " + e.getMessage());
+        }
+        tuples_ ++;
+    }
+
+    /** Flush what was written; the file can be read after this. */
+    void finishWrite() throws DbException {
+        if (out_ == null) {
+            return;
+        }
+        try {
+            out_.close();
+        } catch (IOException e) {
+            throw new DbException("cant write spill file: " + e.getMessage());
+        }
+        out_ = null;
+    }
+
+    /** @return the number of tuples written */
+    long size() {
+        return tuples_;
+    }
+
+    /** @return a reader from the first tuple of the file */
+    Reader reader(int bufferBytes) throws DbException {
+        finishWrite();
+        return new Reader(bufferBytes);
+    }
+
+    void delete() {
+        if (out_ != null) {
+            try {
+                out_.close();
+            } catch (IOException ignored) {
+            }
+            out_ = null;
+        }
+        file_.delete();
+    }
+
+    class Reader {
+        private final DataInputStream in_;
+        private long left_;
+
+        private Reader(int bufferBytes) throws DbException {
+            try {
+                in_ = new DataInputStream(new BufferedInputStream(new FileInputStream(file_),bufferBytes));
+            } catch (IOException e) {
+                throw new DbException("cant open spill file: " + e.getMessage());
+            }
+            left_ = tuples_;
+        }
+
+        /** @return the next tuple of the file, or null at its end */
+        Tuple next() throws DbException {
+            if (left_ == 0) {
+                return null;
+            }
+            left_ --;
+            Tuple t = new Tuple(td_);
+            try {
+                for (int i = 0; i < td_.numFields(); i ++) {
+                    if (td_.getFieldType(i) == Type.INT_TYPE) {
+                        t.setField(i,new IntField(in_.readInt()));
+                    } else {
+                        t.setField(i,new StringField(in_.readUTF(),Type.STRING_LEN));
+                    }
+                }
+            } catch (IOException e) {
+                throw new DbException("cant read spill file: " + e.getMessage());
+            }
+            return t;
+        }
+
+        void close() {
+            try {
+                in_.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
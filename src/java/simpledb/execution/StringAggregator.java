@@ -6,8 +6,6 @@ import simpledb.storage.*;
 import simpledb.transaction.TransactionAbortedException;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 /**
@@ -29,7 +27,8 @@ public class StringAggregator implements Aggregator {
     private Type gbfieldtype_;
     private int afield_;
     private Op what_;
-    private HashMap<Field,ArrayList<StringField>> GpMap_; //key为gbfield的值,value是afield的值
+    private KeyTable groups_; //gbfield的值到组号,nogroup时为null
+    private ArrayList<AggregateState> states_; //按组号存放每一组的聚合状态
     private TupleDesc desc_;
 
 
@@ -43,7 +42,8 @@ public class StringAggregator implements Aggregator {
         afield_ = afield;
         what_ = what;
         desc_ = null;
-        GpMap_ = new HashMap<Field,ArrayList<StringField>>();
+        groups_ = null;
+        states_ = new ArrayList<AggregateState>();
     }
 
     /**
@@ -79,7 +79,6 @@ public class StringAggregator implements Aggregator {
         setTupleDesc(tup);
 
         Field gpfield;
-        StringField afield;
         if (gbfield_ != -1) {
             gpfield = tup.getField(gbfield_);
             if (gpfield == null) {
@@ -88,12 +87,44 @@ public class StringAggregator implements Aggregator {
         } else {
             gpfield = null;
         }
-        afield = (StringField) tup.getField(afield_);
+        //只支持COUNT,不需要保存字符串本身
+        stateOf(gpfield).addCount();
+    }
 
-        if (!GpMap_.containsKey(gpfield)) {
-            GpMap_.put(gpfield, new ArrayList<StringField>());
+    /**
+     * @return the state of the group gpfield belongs to, creating it for a
+     *         new group; gpfield is null if there is no grouping
+     */
+    private AggregateState stateOf(Field gpfield) {
+        int id;
+        if (gpfield == null) {
+            id = 0;
+        } else {
+            if (groups_ == null) {
+                groups_ = KeyTable.forType(gpfield.getType());
+            }
+            id = groups_.getOrAdd(gpfield);
+        }
+        if (id == states_.size()) {
+            states_.add(new AggregateState());
         }
-        GpMap_.get(gpfield).add(afield);
+        return states_.get(id);
+    }
+
+    public int numGroups() {
+        return states_.size();
+    }
+
+    public Field groupKey(int group) {
+        return groups_ == null ? null : groups_.getKey(group);
+    }
+
+    public AggregateState groupState(int group) {
+        return states_.get(group);
+    }
+
+    public void mergeState(Field key,AggregateState state) {
+        stateOf(key).merge(state);
     }
 
     /**
@@ -114,25 +145,21 @@ public class StringAggregator implements Aggregator {
 
     public class StringAggregatorOpIterator implements OpIterator {
         private StringAggregator aggregator_;
-        private Iterator<Field> gvalueIt_;
-        private Field currGroup_;
+        private int nextGroup_; //下一个要输出的组号,-1表示没有open
 
         public StringAggregatorOpIterator(StringAggregator saggregator) {
             aggregator_ = saggregator;
-            gvalueIt_ = null;
-            currGroup_ = null;
+            nextGroup_ = -1;
         }
 
         @Override
         public void open() throws DbException, TransactionAbortedException {
-            gvalueIt_ = aggregator_.GpMap_.keySet().iterator();
-            currGroup_ = null;
+            nextGroup_ = 0;
         }
 
         @Override
         public void close() {
-            currGroup_ = null;
-            gvalueIt_ = null;
+            nextGroup_ = -1;
         }
 
         @Override
@@ -143,15 +170,17 @@ public class StringAggregator implements Aggregator {
 
         @Override
         public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
-            Tuple tuple = null;
-            tuple = new Tuple(aggregator_.desc_);
-            currGroup_ = gvalueIt_.next();
-            IntField intfield = new IntField(aggregator_.GpMap_.get(currGroup_).size());
+            if (!hasNext()) {
+                throw new NoSuchElementException("no more groups in StringAggregator");
+            }
+            int id = nextGroup_ ++;
+            Tuple tuple = new Tuple(aggregator_.desc_);
+            IntField intfield = new IntField(aggregator_.states_.get(id).getValue(aggregator_.what_));
 
-            if (aggregator_.gbfield_ == -1 && aggregator_.GpMap_.containsKey(null)) { //这个时候就只会固定在第一个null为key的里面
+            if (aggregator_.groups_ == null) { //nogroup时只有组号0
                 tuple.setField(0,intfield);
             } else {
-                tuple.setField(0,currGroup_);
+                tuple.setField(0,aggregator_.groups_.getKey(id));
                 tuple.setField(1,intfield);
             }
             return tuple;
@@ -162,7 +191,7 @@ public class StringAggregator implements Aggregator {
 
         @Override
         public boolean hasNext() throws DbException, TransactionAbortedException {
-            return gvalueIt_.hasNext();
+            return nextGroup_ >= 0 && nextGroup_ < aggregator_.states_.size();
         }
         @Override
         public TupleDesc getTupleDesc() {
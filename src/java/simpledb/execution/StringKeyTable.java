@@ -0,0 +1,138 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.Field;
+import simpledb.storage.StringField;
+
+import java.util.Arrays;
+
+/**
+ * A {@link KeyTable} for STRING_TYPE keys. The characters of all keys are
+ * copied into one flat char array and a key is a slice of it. Each slot holds
+ * the hash of its key next to the id, so a probe only looks at the slice when
+ * the hashes match, and the table keeps no String or Field per key.
+ * <p>
+ * Slices hold chars rather than bytes: StringField serializes only the low
+ * byte of each char, so distinct strings can share a byte encoding.
+ */
+public class StringKeyTable implements KeyTable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int EMPTY = -1;
+
+    private int[] slots_; //每个槽占两格:散列值和id,id为EMPTY表示空槽
+    private int mask_;
+    private int shift_; //32减去槽数的位数,槽号取散列值的高位
+    private char[] chars_; //所有键的字符首尾相接
+    private int used_;
+    private int[] spans_; //按id排列,每个键占两格:在chars_里的起点和长度
+    private int size_;
+
+    public StringKeyTable() {
+        allocate(16);
+        chars_ = new char[256];
+        used_ = 0;
+        spans_ = new int[16];
+        size_ = 0;
+    }
+
+    private void allocate(int capacity) {
+        slots_ = new int[capacity * 2];
+        for (int i = 1; i < slots_.length; i += 2) {
+            slots_[i] = EMPTY;
+        }
+        mask_ = capacity - 1;
+        shift_ = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /** String缓存了hashCode,这里只再乘一次,槽号取它的高位 */
+    private static int hash(String s) {
+        return s.hashCode() * 0x9E3779B9;
+    }
+
+    private boolean matches(int id, String s) {
+        int len = s.length();
+        if (spans_[2 * id + 1] != len) {
+            return false;
+        }
+        int off = spans_[2 * id];
+        for (int i = 0; i < len; i ++) {
+            if (chars_[off + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the slot holding s, or the empty slot where it belongs */
+    private int probe(int hash, String s) {
+        int slot = hash >>> shift_;
+        while (true) {
+            int id = slots_[2 * slot + 1];
+            if (id == EMPTY || (slots_[2 * slot] == hash && matches(id,s))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask_;
+        }
+    }
+
+    @Override
+    public int find(Field key) {
+        String s = ((StringField) key).getValue();
+        return slots_[2 * probe(hash(s),s) + 1];
+    }
+
+    @Override
+    public int getOrAdd(Field key) {
+        String s = ((StringField) key).getValue();
+        int hash = hash(s);
+        int slot = probe(hash,s);
+        if (slots_[2 * slot + 1] != EMPTY) {
+            return slots_[2 * slot + 1];
+        }
+        int len = s.length();
+        int id = size_ ++;
+        if (2 * id == spans_.length) {
+            spans_ = Arrays.copyOf(spans_,spans_.length * 2);
+        }
+        if (used_ + len > chars_.length) {
+            chars_ = Arrays.copyOf(chars_,Math.max(chars_.length * 2,used_ + len));
+        }
+        s.getChars(0,len,chars_,used_);
+        spans_[2 * id] = used_;
+        spans_[2 * id + 1] = len;
+        used_ += len;
+        slots_[2 * slot] = hash;
+        slots_[2 * slot + 1] = id;
+        if (size_ * 4 > slots_.length) {
+            grow();
+        }
+        return id;
+    }
+
+    private void grow() {
+        int[] old = slots_;
+        allocate((mask_ + 1) * 2);
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i + 1] == EMPTY) {
+                continue;
+            }
+            int slot = old[i] >>> shift_;
+            while (slots_[2 * slot + 1] != EMPTY) {
+                slot = (slot + 1) & mask_;
+            }
+            slots_[2 * slot] = old[i];
+            slots_[2 * slot + 1] = old[i + 1];
+        }
+    }
+
+    @Override
+    public int size() {
+        return size_;
+    }
+
+    @Override
+    public Field getKey(int id) {
+        return new StringField(new String(chars_,spans_[2 * id],spans_[2 * id + 1]),Type.STRING_LEN);
+    }
+}
@@ -0,0 +1,228 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * A batch of up to a fixed number of rows stored by column. An INT_TYPE
+ * column is an int array; a STRING_TYPE column is a byte array holding each
+ * row's string in a slot of Type.STRING_LEN bytes, one byte per character as
+ * on a page, with the lengths in an int array.
+ * <p>
+ * A batch may carry a selection vector: the positions of the rows that are
+ * still in it, so a filter drops rows without moving any values. Rows are
+ * addressed by their physical position; {@link #numRows} and {@link #row}
+ * go over the selected ones.
+ */
+public class TupleBatch {
+
+    /** How many rows a batch holds by default */
+    public static final int DEFAULT_ROWS = 1024;
+
+    private final TupleDesc td;
+    private final int capacity;
+    private final int[][] ints;     // 每个INT列一个数组,字符串列为null
+    private final byte[][] strings; // 每个字符串列一块,第r行在r*STRING_LEN处
+    private final int[][] lengths;  // 字符串列每一行的长度
+    private int size;
+    private int[] sel;              // 选中的行号,null表示所有行都在
+    private int selSize;
+    private int[] selBuffer = null;
+
+    public TupleBatch(TupleDesc td) {
+        this(td, DEFAULT_ROWS);
+    }
+
+    public TupleBatch(TupleDesc td, int capacity) {
+        this.td = td;
+        this.capacity = capacity;
+        int n = td.numFields();
+        ints = new int[n][];
+        strings = new byte[n][];
+        lengths = new int[n][];
+        for (int i = 0; i < n; i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                ints[i] = new int[capacity];
+            } else {
+                strings[i] = new byte[capacity * Type.STRING_LEN];
+                lengths[i] = new int[capacity];
+            }
+        }
+    }
+
+    /** A batch over the given columns of another batch, sharing their arrays. */
+    private TupleBatch(TupleDesc td, TupleBatch src, int[] columns) {
+        this.td = td;
+        this.capacity = src.capacity;
+        ints = new int[columns.length][];
+        strings = new byte[columns.length][];
+        lengths = new int[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            ints[i] = src.ints[columns[i]];
+            strings[i] = src.strings[columns[i]];
+            lengths[i] = src.lengths[columns[i]];
+        }
+        size = src.size;
+        sel = src.sel;
+        selSize = src.selSize;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the number of selected rows */
+    public int numRows() {
+        return sel == null ? size : selSize;
+    }
+
+    /** @return the physical position of the i-th selected row */
+    public int row(int i) {
+        return sel == null ? i : sel[i];
+    }
+
+    /** @return true if no more rows can be added */
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /** Empty the batch so it can be filled again. */
+    public void clear() {
+        size = 0;
+        sel = null;
+        selSize = 0;
+    }
+
+    /** @return the values of an INT_TYPE column, by physical row */
+    public int[] intColumn(int col) {
+        return ints[col];
+    }
+
+    /** @return the bytes of a STRING_TYPE column; row r starts at r * Type.STRING_LEN */
+    public byte[] stringColumn(int col) {
+        return strings[col];
+    }
+
+    /** @return the lengths of the strings of a STRING_TYPE column, by physical row */
+    public int[] stringLengths(int col) {
+        return lengths[col];
+    }
+
+    /**
+     * @return the selection vector, or null if every row is selected; its
+     *         first numRows() entries are the selected rows
+     */
+    public int[] selection() {
+        return sel;
+    }
+
+    /**
+     * Keep only the rows whose positions are the first n entries of rows,
+     * which must be selected rows in ascending order.
+     */
+    public void select(int[] rows, int n) {
+        sel = rows;
+        selSize = n;
+    }
+
+    /** @return an array that can hold a selection vector for this batch */
+    public int[] selectionBuffer() {
+        if (sel != null)
+            return sel;
+        if (selBuffer == null)
+            selBuffer = new int[capacity];
+        return selBuffer;
+    }
+
+    /** Append the fields of t as a new row. */
+    public void add(Tuple t) {
+        setFields(size, 0, t);
+        size++;
+    }
+
+    /** Append the fields of a followed by the fields of b as a new row. */
+    public void add(Tuple a, Tuple b) {
+        setFields(size, 0, a);
+        setFields(size, a.getTupleDesc().numFields(), b);
+        size++;
+    }
+
+    private void setFields(int r, int first, Tuple t) {
+        int n = t.getTupleDesc().numFields();
+        for (int i = 0; i < n; i++) {
+            int col = first + i;
+            Field f = t.getField(i);
+            if (ints[col] != null) {
+                ints[col][r] = ((IntField) f).getValue();
+            } else {
+                lengths[col][r] = encode(((StringField) f).getValue(), strings[col], r * Type.STRING_LEN);
+            }
+        }
+    }
+
+    /**
+     * Write the low byte of each character of s, at most Type.STRING_LEN of
+     * them, as StringField.serialize does.
+     *
+     * @return the number of bytes written
+     */
+    static int encode(String s, byte[] dst, int off) {
+        int len = Math.min(s.length(), Type.STRING_LEN);
+        for (int i = 0; i < len; i++)
+            dst[off + i] = (byte) s.charAt(i);
+        return len;
+    }
+
+    /** @return the string with the given bytes, one character per byte */
+    static String decode(byte[] src, int off, int len) {
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++)
+            chars[i] = (char) (src[off + i] & 0xff);
+        return new String(chars);
+    }
+
+    /** @return the field of column col in physical row r */
+    public Field getField(int col, int r) {
+        if (ints[col] != null)
+            return new IntField(ints[col][r]);
+        return new StringField(decode(strings[col], r * Type.STRING_LEN, lengths[col][r]), Type.STRING_LEN);
+    }
+
+    /** @return the i-th selected row as a Tuple */
+    public Tuple getTuple(int i) {
+        int r = row(i);
+        Tuple t = new Tuple(td);
+        for (int col = 0; col < td.numFields(); col++)
+            t.setField(col, getField(col, r));
+        return t;
+    }
+
+    /**
+     * @return a batch of the given columns of this one, in that order, with
+     *         the same rows selected; it shares this batch's arrays
+     */
+    public TupleBatch project(int[] columns, TupleDesc td) {
+        return new TupleBatch(td, this, columns);
+    }
+
+    /**
+     * @return the next batch of op: from {@link BatchIterator#nextBatch} if op
+     *         produces batches, else the next rows of op copied into reuse,
+     *         which is cleared first; null if op has no more rows
+     */
+    public static TupleBatch next(OpIterator op, TupleBatch reuse)
+            throws DbException, TransactionAbortedException {
+        if (op instanceof BatchIterator)
+            return ((BatchIterator) op).nextBatch();
+        reuse.clear();
+        while (!reuse.isFull() && op.hasNext())
+            reuse.add(op.next());
+        return reuse.numRows() > 0 ? reuse : null;
+    }
+}
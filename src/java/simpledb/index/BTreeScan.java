@@ -5,6 +5,7 @@ import simpledb.common.DbException;
 import simpledb.common.Type;
 import simpledb.execution.IndexPredicate;
 import simpledb.execution.OpIterator;
+import simpledb.storage.DbFile;
 import simpledb.storage.DbFileIterator;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
@@ -25,9 +26,12 @@ public class BTreeScan implements OpIterator {
 	private final TransactionId tid;
 	private TupleDesc myTd;
 	private IndexPredicate ipred = null;
+	private IndexPredicate upper = null;
 	private transient DbFileIterator it;
 	private String tablename;
 	private String alias;
+	private int tableId;
+	private int keyField;
 
 	/**
 	 * Creates a B+ tree scan over the specified table as a part of the
@@ -49,8 +53,26 @@ public class BTreeScan implements OpIterator {
 	 *            in sorted order
 	 */
 	public BTreeScan(TransactionId tid, int tableid, String tableAlias, IndexPredicate ipred) {
+		this(tid, tableid, tableAlias, ipred, null);
+	}
+
+	/**
+	 * Creates a B+ tree scan over a range of keys, which reads the leaf chain
+	 * from the first key matching ipred and stops at the first key that does
+	 * not match upper.
+	 *
+	 * @param ipred
+	 *            The index predicate to match; it must not be null
+	 * @param upper
+	 *            The LESS_THAN or LESS_THAN_OR_EQ predicate that ends the
+	 *            range, or null if the scan reads to the end of the tree
+	 * @see #BTreeScan(TransactionId, int, String, IndexPredicate)
+	 */
+	public BTreeScan(TransactionId tid, int tableid, String tableAlias, IndexPredicate ipred,
+			IndexPredicate upper) {
 		this.tid = tid;
 		this.ipred = ipred;
+		this.upper = upper;
 		reset(tableid,tableAlias);
 	}
 
@@ -71,6 +93,26 @@ public class BTreeScan implements OpIterator {
 		return this.alias;
 	}
 
+	/** @return the id of the table this operator scans */
+	public int getTableId() {
+		return this.tableId;
+	}
+
+	/** @return the transaction this scan is running as a part of */
+	public TransactionId getTransactionId() {
+		return this.tid;
+	}
+
+	/** @return the index predicate the scan starts from, or null if it reads the whole tree */
+	public IndexPredicate getIndexPredicate() {
+		return this.ipred;
+	}
+
+	/** @return the predicate that ends the range of the scan, or null if there is none */
+	public IndexPredicate getUpperBound() {
+		return this.upper;
+	}
+
 	/**
 	 * Reset the tableid, and tableAlias of this operator.
 	 * @param tableid
@@ -86,12 +128,15 @@ public class BTreeScan implements OpIterator {
 	public void reset(int tableid, String tableAlias) {
 		this.isOpen=false;
 		this.alias = tableAlias;
+		this.tableId = tableid;
 		this.tablename = Database.getCatalog().getTableName(tableid);
+		DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+		this.keyField = file instanceof BTreeFile ? ((BTreeFile) file).keyField() : -1;
 		if(ipred == null) {
-			this.it = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+			this.it = file.iterator(tid);
 		}
 		else {
-			this.it = ((BTreeFile) Database.getCatalog().getDatabaseFile(tableid)).indexIterator(tid, ipred);
+			this.it = ((BTreeFile) Database.getCatalog().getDatabaseFile(tableid)).indexIterator(tid, ipred, upper);
 		}
 		myTd = Database.getCatalog().getTupleDesc(tableid);
 		String[] newNames = new String[myTd.numFields()];
@@ -106,6 +151,14 @@ public class BTreeScan implements OpIterator {
 		myTd = new TupleDesc(newTypes, newNames);
 	}
 
+	/**
+	 * @return the index of the field the tuples come out sorted on (the key
+	 *         field of the B+ tree), or -1 if the table is not a B+ tree
+	 */
+	public int getKeyField() {
+		return this.keyField;
+	}
+
 	public BTreeScan(TransactionId tid, int tableid, IndexPredicate ipred) {
 		this(tid, tableid, Database.getCatalog().getTableName(tableid), ipred);
 	}
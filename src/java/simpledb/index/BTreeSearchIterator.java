@@ -0,0 +1,207 @@
+package simpledb.index;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.execution.IndexPredicate;
+import simpledb.execution.Predicate.Op;
+import simpledb.storage.AbstractDbFileIterator;
+import simpledb.storage.Field;
+import simpledb.storage.Tuple;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Helper class that implements the DbFileIterator for search tuples on a
+ * B+ Tree File.
+ * <p>
+ * An open iterator can be moved on to another predicate with {@link #seek}.
+ * When the new key lies on the leaf page the iterator is on, or on the page
+ * right after it, the search starts there instead of descending from the
+ * root again, so a series of probes with ascending keys walks the leaf chain
+ * in order.
+ * <p>
+ * An upper bound can be given next to the predicate, so that a range such as
+ * {@code key > a and key < b} is read from the leaf holding a along the leaf
+ * chain, and stops at the first key that is not below b instead of going on
+ * to the end of the tree.
+ */
+public class BTreeSearchIterator extends AbstractDbFileIterator {
+
+	Iterator<Tuple> it = null;
+	BTreeLeafPage curp = null;
+
+	final TransactionId tid;
+	final BTreeFile f;
+	IndexPredicate ipred;
+	// 范围的上界,没有时为null
+	final IndexPredicate upper;
+	private int descents = 0;
+
+	/**
+	 * Constructor for this iterator
+	 * @param f - the BTreeFile containing the tuples
+	 * @param tid - the transaction id
+	 * @param ipred - the predicate to filter on
+	 */
+	public BTreeSearchIterator(BTreeFile f, TransactionId tid, IndexPredicate ipred) {
+		this(f, tid, ipred, null);
+	}
+
+	/**
+	 * Constructor for an iterator over a range of keys
+	 * @param f - the BTreeFile containing the tuples
+	 * @param tid - the transaction id
+	 * @param ipred - the predicate to filter on
+	 * @param upper - the upper bound of the range, a LESS_THAN or
+	 *        LESS_THAN_OR_EQ predicate, or null if there is none
+	 */
+	public BTreeSearchIterator(BTreeFile f, TransactionId tid, IndexPredicate ipred, IndexPredicate upper) {
+		if(upper != null && upper.getOp() != Op.LESS_THAN && upper.getOp() != Op.LESS_THAN_OR_EQ)
+			throw new IllegalArgumentException("upper bound must be LESS_THAN or LESS_THAN_OR_EQ, not " + upper.getOp());
+		this.f = f;
+		this.tid = tid;
+		this.ipred = ipred;
+		this.upper = upper;
+	}
+
+	/**
+	 * Open this iterator by getting an iterator on the first leaf page applicable
+	 * for the given predicate operation
+	 */
+	public void open() throws DbException, TransactionAbortedException {
+		curp = null;
+		start();
+	}
+
+	/**
+	 * Move this open iterator on to the tuples matching another predicate,
+	 * starting from the current leaf page when the search key lies on it or on
+	 * its right sibling.
+	 *
+	 * @param ipred - the predicate to filter on from now on
+	 */
+	public void seek(IndexPredicate ipred) throws DbException, TransactionAbortedException {
+		super.close(); // drop the tuple hasNext() may have read for the old predicate
+		this.ipred = ipred;
+		start();
+	}
+
+	/** @return how many times this iterator has descended from the root */
+	public int getDescents() {
+		return descents;
+	}
+
+	private void start() throws DbException, TransactionAbortedException {
+		Op op = ipred.getOp();
+		if(op == Op.EQUALS || op == Op.GREATER_THAN || op == Op.GREATER_THAN_OR_EQ) {
+			BTreeLeafPage page = nearbyLeaf(ipred.getField());
+			curp = page != null ? page : descend(ipred.getField());
+		}
+		else {
+			curp = descend(null);
+		}
+		it = curp.iterator();
+	}
+
+	private BTreeLeafPage descend(Field key) throws DbException, TransactionAbortedException {
+		BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(
+				tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
+		descents++;
+		return f.findLeafPage(tid, rootPtr.getRootId(), key);
+	}
+
+	/**
+	 * @return the current leaf page or its right sibling if the left-most tuple
+	 *         with a key of at least key must be on it, or null if the search
+	 *         has to start from the root
+	 */
+	private BTreeLeafPage nearbyLeaf(Field key) throws DbException, TransactionAbortedException {
+		if(curp == null || curp.getNumTuples() == 0)
+			return null;
+		Field first = curp.iterator().next().getField(f.keyField());
+		Field last = curp.reverseIterator().next().getField(f.keyField());
+		// 第一个键等于key时,相同的键可能还在左边的页上
+		if(first.compare(Op.LESS_THAN, key) && !last.compare(Op.LESS_THAN, key))
+			return curp;
+		if(!last.compare(Op.LESS_THAN, key))
+			return null;
+		// 当前页的键都比key小,key要么在右边的兄弟页上,要么更远
+		BTreePageId nextp = curp.getRightSiblingId();
+		if(nextp == null)
+			return curp;
+		BTreeLeafPage next = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
+				nextp, Permissions.READ_ONLY);
+		if(next.getNumTuples() > 0
+				&& !next.reverseIterator().next().getField(f.keyField()).compare(Op.LESS_THAN, key))
+			return next;
+		return null;
+	}
+
+	/**
+	 * Read the next tuple either from the current page if it has more tuples matching
+	 * the predicate or from the next page by following the right sibling pointer.
+	 * 
+	 * @return the next tuple matching the predicate, or null if none exists
+	 */
+	@Override
+	protected Tuple readNext() throws TransactionAbortedException, DbException,
+	NoSuchElementException {
+		while (it != null) {
+
+			while (it.hasNext()) {
+				Tuple t = it.next();
+				// 键是有序的,过了上界后面都不会满足
+				if (upper != null && !t.getField(f.keyField()).compare(upper.getOp(), upper.getField())) {
+					return null;
+				}
+				if (t.getField(f.keyField()).compare(ipred.getOp(), ipred.getField())) {
+					return t;
+				}
+				else if(ipred.getOp() == Op.LESS_THAN || ipred.getOp() == Op.LESS_THAN_OR_EQ) {
+					// if the predicate was not satisfied and the operation is less than, we have
+					// hit the end
+					return null;
+				}
+				else if(ipred.getOp() == Op.EQUALS && 
+						t.getField(f.keyField()).compare(Op.GREATER_THAN, ipred.getField())) {
+					// if the tuple is now greater than the field passed in and the operation
+					// is equals, we have reached the end
+					return null;
+				}
+			}
+
+			BTreePageId nextp = curp.getRightSiblingId();
+			// if there are no more pages to the right, end the iteration
+			if(nextp == null) {
+				return null;
+			}
+			else {
+				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
+						nextp, Permissions.READ_ONLY);
+				it = curp.iterator();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * rewind this iterator back to the beginning of the tuples
+	 */
+	public void rewind() throws DbException, TransactionAbortedException {
+		close();
+		open();
+	}
+
+	/**
+	 * close the iterator
+	 */
+	public void close() {
+		super.close();
+		it = null;
+	}
+}
@@ -0,0 +1,213 @@
+package simpledb.optimizer;
+
+import simpledb.ParsingException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tables of a query and the joins between them, as a graph whose
+ * relations are numbered so that a set of relations is a bitmask of their
+ * numbers. {@link #enumeratePairs} visits every pair of disjoint, connected
+ * sets of relations that some join connects, which are the only pairs a plan
+ * without cross products joins, using the DPccp algorithm of Moerkotte and
+ * Neumann.
+ */
+public class JoinGraph {
+
+    /** The most relations a graph can have, so that every set fits a long */
+    public static final int MAX_RELATIONS = 63;
+
+    /** Receives the pairs of sets of relations found by {@link #enumeratePairs} */
+    public interface PairVisitor {
+        void visit(long left, long right);
+    }
+
+    private final List<LogicalJoinNode> joins;
+    private final List<String> aliases = new ArrayList<>();
+    private final Map<String, Integer> numbers = new HashMap<>();
+    // 每个连接两边的关系编号
+    private final int[] from, to;
+    private final long[] neighbours;
+    private final int[][] incident;
+
+    /**
+     * Constructor.
+     *
+     * @param joins the joins of the query, each between two tables with
+     *              different aliases; its relations are numbered in the order
+     *              their aliases first appear
+     * @throws ParsingException if the joins reach more than
+     *                          {@link #MAX_RELATIONS} tables
+     */
+    public JoinGraph(List<LogicalJoinNode> joins) throws ParsingException {
+        this.joins = joins;
+        from = new int[joins.size()];
+        to = new int[joins.size()];
+        for (int i = 0; i < joins.size(); i++) {
+            from[i] = number(joins.get(i).t1Alias);
+            to[i] = number(joins.get(i).t2Alias);
+        }
+        if (aliases.size() > MAX_RELATIONS)
+            throw new ParsingException("Too many tables in one join: " + aliases.size());
+        int n = aliases.size();
+        neighbours = new long[n];
+        int[] degree = new int[n];
+        for (int i = 0; i < from.length; i++) {
+            neighbours[from[i]] |= 1L << to[i];
+            neighbours[to[i]] |= 1L << from[i];
+            degree[from[i]]++;
+            degree[to[i]]++;
+        }
+        incident = new int[n][];
+        for (int r = 0; r < n; r++)
+            incident[r] = new int[degree[r]];
+        for (int i = 0; i < from.length; i++) {
+            incident[from[i]][--degree[from[i]]] = i;
+            incident[to[i]][--degree[to[i]]] = i;
+        }
+    }
+
+    private int number(String alias) {
+        Integer r = numbers.get(alias);
+        if (r == null) {
+            r = aliases.size();
+            aliases.add(alias);
+            numbers.put(alias, r);
+        }
+        return r;
+    }
+
+    /** @return how many relations the graph has */
+    public int size() {
+        return aliases.size();
+    }
+
+    /** @return the set of all relations */
+    public long all() {
+        return (1L << size()) - 1;
+    }
+
+    /** @return the alias of relation r */
+    public String alias(int r) {
+        return aliases.get(r);
+    }
+
+    /** @return the number of the relation with the given alias, or -1 */
+    public int relation(String alias) {
+        Integer r = numbers.get(alias);
+        return r == null ? -1 : r;
+    }
+
+    /** @return the join numbered e, in the order the joins were given */
+    public LogicalJoinNode join(int e) {
+        return joins.get(e);
+    }
+
+    /** @return how many joins the graph has */
+    public int numJoins() {
+        return joins.size();
+    }
+
+    /** @return the relation of the first table of join e */
+    public int from(int e) {
+        return from[e];
+    }
+
+    /** @return the relation of the second table of join e */
+    public int to(int e) {
+        return to[e];
+    }
+
+    /** @return the joins that have relation r on one side */
+    public int[] incident(int r) {
+        return incident[r];
+    }
+
+    /** @return the relations outside set that a join connects to set */
+    public long neighbours(long set) {
+        long n = 0;
+        for (long rest = set; rest != 0; rest &= rest - 1)
+            n |= neighbours[Long.numberOfTrailingZeros(rest)];
+        return n & ~set;
+    }
+
+    /**
+     * @return the joins between a relation of left and one of right, which
+     *         must be disjoint
+     */
+    public List<Integer> joinsBetween(long left, long right) {
+        // 从小的一边找
+        long small = Long.bitCount(left) <= Long.bitCount(right) ? left : right;
+        long other = small == left ? right : left;
+        List<Integer> es = new ArrayList<>();
+        for (long rest = small; rest != 0; rest &= rest - 1) {
+            int r = Long.numberOfTrailingZeros(rest);
+            for (int e : incident[r]) {
+                int o = from[e] == r ? to[e] : from[e];
+                if ((other & (1L << o)) != 0)
+                    es.add(e);
+            }
+        }
+        return es;
+    }
+
+    /** The relations numbered up to and including r */
+    private static long upTo(int r) {
+        return (1L << (r + 1)) - 1;
+    }
+
+    /**
+     * Visit each pair of disjoint connected sets of relations that a join
+     * connects, once and in one of its two orders. A pair is visited only
+     * after every pair whose union is one of its two sets, so a visitor can
+     * build the best plan for the union of the pair from the best plans of
+     * its sets.
+     */
+    public void enumeratePairs(PairVisitor v) {
+        for (int r = size() - 1; r >= 0; r--) {
+            long s = 1L << r;
+            emitSet(s, v);
+            enumerateSets(s, upTo(r), v);
+        }
+    }
+
+    /** Extend the connected set s by neighbours outside excluded, emitting each set found. */
+    private void enumerateSets(long s, long excluded, PairVisitor v) {
+        long n = neighbours(s) & ~excluded;
+        if (n == 0)
+            return;
+        // 子集按数值从小到大枚举,一个集合的子集总在它之前
+        for (long sub = -n & n; sub != 0; sub = (sub - n) & n)
+            emitSet(s | sub, v);
+        for (long sub = -n & n; sub != 0; sub = (sub - n) & n)
+            enumerateSets(s | sub, excluded | n, v);
+    }
+
+    /** Visit the pairs of the connected set s1 with each connected complement joined to it. */
+    private void emitSet(long s1, PairVisitor v) {
+        long excluded = s1 | upTo(Long.numberOfTrailingZeros(s1));
+        long n = neighbours(s1) & ~excluded;
+        // 从编号大的邻居开始
+        for (long rest = n; rest != 0; ) {
+            int r = 63 - Long.numberOfLeadingZeros(rest);
+            rest &= ~(1L << r);
+            long s2 = 1L << r;
+            v.visit(s1, s2);
+            enumerateComplements(s1, s2, excluded | (upTo(r) & n), v);
+        }
+    }
+
+    /** Extend the complement s2 of s1 by neighbours outside excluded, visiting each pair. */
+    private void enumerateComplements(long s1, long s2, long excluded, PairVisitor v) {
+        long n = neighbours(s2) & ~excluded;
+        if (n == 0)
+            return;
+        for (long sub = -n & n; sub != 0; sub = (sub - n) & n)
+            v.visit(s1, s2 | sub);
+        for (long sub = -n & n; sub != 0; sub = (sub - n) & n)
+            enumerateComplements(s1, s2 | sub, excluded | n, v);
+    }
+}
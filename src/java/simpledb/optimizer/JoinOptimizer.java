@@ -3,9 +3,14 @@ package simpledb.optimizer;
 import simpledb.common.Database;
 import simpledb.ParsingException;
 import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.DbFile;
 import simpledb.storage.TupleDesc;
 
 import java.util.*;
+import java.util.concurrent.RecursiveAction;
 
 import javax.swing.*;
 import javax.swing.tree.*;
@@ -16,6 +21,78 @@ import javax.swing.tree.*;
  * logical plan.
  */
 public class JoinOptimizer {
+
+    /**
+     * The physical join operators orderJoins chooses among, for each join
+     * the one its cost model estimates cheapest; of equally cheap ones, the
+     * one declared first.
+     */
+    public enum Algorithm {
+        /** {@link Join} with blocks filling the buffer pool */
+        BLOCK_NESTED_LOOPS("block nested loops"),
+        /** {@link Join} with blocks of one page */
+        NESTED_LOOPS("nested loops"),
+        /** {@link HashEquiJoin} building a hash table of the outer side */
+        HASH("hash"),
+        /** {@link IndexNestedLoopJoin} probing a BTreeFile of the inner table */
+        INDEX_NESTED_LOOPS("index nested loops");
+
+        private final String name;
+
+        Algorithm(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final Algorithm[] ALGORITHMS = Algorithm.values();
+
+    /**
+     * The most tables {@link #orderJoins} can search exhaustively; its memo
+     * has an entry for every set of them
+     */
+    public static final int MAX_DP_RELATIONS = 20;
+
+    /** Tables above which orderJoins orders joins greedily by default */
+    public static final int DEFAULT_MAX_DP_RELATIONS = 16;
+
+    /** Tables from which orderJoins searches in parallel by default */
+    public static final int DEFAULT_PARALLEL_DP_RELATIONS = 10;
+
+    /** Sets of tables one task of a parallel search costs at least */
+    static final int MIN_SETS_PER_TASK = 64;
+
+    private static int maxDpRelations = 0;
+    private static int parallelDpRelations = 0;
+
+    /** Set the most tables orderJoins searches exhaustively, ordering the
+     *  joins of more greedily; 0 means {@link #DEFAULT_MAX_DP_RELATIONS}. It
+     *  is capped at {@link #MAX_DP_RELATIONS}.
+     */
+    public static void setMaxDpRelations(int tables) {
+        maxDpRelations = tables;
+    }
+
+    private static int maxDpRelations() {
+        return Math.min(MAX_DP_RELATIONS, maxDpRelations > 0 ? maxDpRelations : DEFAULT_MAX_DP_RELATIONS);
+    }
+
+    /** Set how many tables a query needs for orderJoins to cost the sets of
+     *  tables of each size in parallel; 0 means
+     *  {@link #DEFAULT_PARALLEL_DP_RELATIONS}.
+     */
+    public static void setParallelDpRelations(int tables) {
+        parallelDpRelations = tables;
+    }
+
+    private static int parallelDpRelations() {
+        return parallelDpRelations > 0 ? parallelDpRelations : DEFAULT_PARALLEL_DP_RELATIONS;
+    }
+
     final LogicalPlan p;
     final List<LogicalJoinNode> joins;
 
@@ -39,6 +116,12 @@ public class JoinOptimizer {
      * inner/outer here -- because OpIterator's don't provide any cardinality
      * estimates, and stats only has information about the base tables. For this
      * reason, the plan1
+     * <p>
+     * A join orderJoins chose an {@link Algorithm} for is run with it, unless
+     * both children arrive sorted on the join fields, when merging them is
+     * cheaper still. Other joins are probed through an index, hashed or
+     * nested loops joins by their predicate. The inner side of a nested
+     * loops join is materialized unless it is a scan of a table.
      * 
      * @param lj
      *            The join being considered
@@ -72,27 +155,61 @@ public class JoinOptimizer {
         }
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
-
-        if (lj.p == Predicate.Op.EQUALS) {
+        Algorithm algorithm = lj.algorithm;
+        if (algorithm == Algorithm.INDEX_NESTED_LOOPS && !IndexNestedLoopJoin.canProbe(plan2, t2id)
+                || algorithm == Algorithm.HASH && lj.p != Predicate.Op.EQUALS)
+            algorithm = null;
+
+        if (lj.p != Predicate.Op.LIKE && SortMergeJoin.sortedOn(plan1) == t1id
+                && SortMergeJoin.sortedOn(plan2) == t2id) {
+            // both sides already arrive sorted on the join key: merge them without sorting
+            j = new SortMergeJoin(p, plan1, plan2);
+        } else if (algorithm == Algorithm.HASH) {
+            j = new HashEquiJoin(p, plan1, plan2);
+        } else if (algorithm == Algorithm.INDEX_NESTED_LOOPS) {
+            j = new IndexNestedLoopJoin(p, plan1, plan2);
+        } else if (algorithm == Algorithm.BLOCK_NESTED_LOOPS) {
+            j = new Join(p, plan1, materialized(plan2));
+        } else if (algorithm == Algorithm.NESTED_LOOPS) {
+            j = new Join(p, plan1, materialized(plan2), 1);
+        } else if (lj.p == Predicate.Op.EQUALS && IndexNestedLoopJoin.canProbe(plan2, t2id)) {
+            // the inner side is a table indexed on the join key: look its matches up
+            j = new IndexNestedLoopJoin(p, plan1, plan2);
+        } else if (lj.p == Predicate.Op.EQUALS) {
 
             try {
                 // dynamically load HashEquiJoin -- if it doesn't exist, just
                 // fall back on regular join
                 Class<?> c = Class.forName("simpledb.execution.HashEquiJoin");
-                java.lang.reflect.Constructor<?> ct = c.getConstructors()[0];
+                java.lang.reflect.Constructor<?> ct = c.getConstructor(
+                        JoinPredicate.class, OpIterator.class, OpIterator.class);
                 j = (OpIterator) ct
                         .newInstance(new Object[] { p, plan1, plan2 });
             } catch (Exception e) {
-                j = new Join(p, plan1, plan2);
+                j = new Join(p, plan1, materialized(plan2));
             }
         } else {
-            j = new Join(p, plan1, plan2);
+            j = new Join(p, plan1, materialized(plan2));
         }
 
         return j;
 
     }
 
+    /**
+     * @return plan, or a {@link Materialize} of it if it is not a scan of a
+     *         table, so that a nested loops join rereads its result rather
+     *         than computing it again for every block of its outer side
+     */
+    private static OpIterator materialized(OpIterator plan) {
+        OpIterator scan = plan;
+        while (scan instanceof Filter)
+            scan = ((Filter) scan).getChildren()[0];
+        if (scan instanceof SeqScan || scan instanceof BTreeScan || scan instanceof Materialize)
+            return plan;
+        return new Materialize(plan);
+    }
+
     /**
      * Estimate the cost of a join.
      * 
@@ -126,13 +243,115 @@ public class JoinOptimizer {
             // You do not need to implement proper support for these for Lab 3.
             return card1 + cost1 + cost2;
         } else {
-            // Insert your code here.
-            // HINT: You may need to use the variable "j" if you implemented
-            // a join algorithm that's more complicated than a basic
-            // nested-loops join.
-            double cost = cost1 + card1 * cost2 + card1 * card2;
+            // Join reads the left-hand side in blocks sized to the buffer
+            // pool and scans the right-hand side once per block
+            double blocks = Math.ceil((double) card1 / estimateBlockTuples(j));
+            double cost = cost1 + blocks * cost2 + (double) card1 * card2;
+            return cost;
+        }
+    }
+
+    /**
+     * @return how many left-hand tuples of j a block of {@link Join} holds,
+     *         sized from the left-hand table's tuples, or 1 if that table is
+     *         not known; a block fills the buffer pool by default
+     */
+    private int estimateBlockTuples(LogicalJoinNode j) {
+        return estimateBlockTuples(j, Join.defaultBlockPages());
+    }
+
+    private int estimateBlockTuples(LogicalJoinNode j, int pages) {
+        TupleDesc td = estimateTupleDesc(j.t1Alias);
+        return td == null ? 1 : Join.blockTuples(td, pages);
+    }
+
+    /** @return the TupleDesc of the table with the given alias, or null if it is not known */
+    private TupleDesc estimateTupleDesc(String alias) {
+        Integer tableId = alias == null ? null : p.getTableId(alias);
+        return tableId == null ? null : Database.getCatalog().getTupleDesc(tableId);
+    }
+
+    /**
+     * Estimate the cost of a join by {@link Join} with blocks of one page:
+     * the right-hand side is scanned once per page of left-hand tuples.
+     * Parameters as for {@link #estimateJoinCost}.
+     */
+    public double estimateNestedLoopsJoinCost(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2) {
+        if (j instanceof LogicalSubplanJoinNode)
+            return estimateJoinCost(j, card1, card2, cost1, cost2);
+        double blocks = Math.ceil((double) card1 / estimateBlockTuples(j, 1));
+        return cost1 + blocks * cost2 + (double) card1 * card2;
+    }
+
+    /**
+     * Estimate the cost of a join by {@link HashEquiJoin}: both sides are
+     * read once, and each tuple is hashed once. Left-hand tuples beyond the
+     * hash table's memory budget are spilled, and the same share of the
+     * right-hand tuples with them; each spilled page is written and read
+     * back, at the I/O cost of a page of a table without stats of its own.
+     * Parameters as for {@link #estimateJoinCost}.
+     *
+     * @return An estimate of the cost of this join, or Double.MAX_VALUE if
+     *         it is not an equality join
+     */
+    public double estimateHashJoinCost(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2) {
+        if (j instanceof LogicalSubplanJoinNode || j.p != Predicate.Op.EQUALS)
+            return Double.MAX_VALUE;
+        double cost = cost1 + cost2 + card1 + card2;
+        TupleDesc td1 = estimateTupleDesc(j.t1Alias), td2 = estimateTupleDesc(j.t2Alias);
+        if (td1 == null || td2 == null)
             return cost;
+        long fit = HashEquiJoin.budgetTuples(td1, ExternalSorter.DEFAULT_MEMORY_BYTES);
+        if (card1 > fit) {
+            double spilled = 1 - (double) fit / card1;
+            double bytes = spilled * ((double) card1 * td1.getSize() + (double) card2 * td2.getSize());
+            cost += 2 * Math.ceil(bytes / BufferPool.getPageSize()) * TableStats.IOCOSTPERPAGE;
         }
+        return cost;
+    }
+
+    /**
+     * Estimate the cost of a join that looks up the matches of each outer
+     * tuple in a BTreeFile index on the inner table's join field, as
+     * {@link IndexNestedLoopJoin} does. The outer tuples are probed in sorted
+     * batches, so each batch reads a leaf page at most once; every probe also
+     * pays for a search of the index.
+     *
+     * @param j
+     *            A LogicalJoinNode whose right-hand side is a base table
+     * @param card1
+     *            Estimated cardinality of the left-hand side of the query
+     * @param card2
+     *            Estimated cardinality of the right-hand side of the query
+     * @param cost1
+     *            Estimated cost of one full scan of the left-hand side
+     * @param cost2
+     *            Estimated cost of one full scan of the right-hand table
+     * @return An estimate of the cost of this join, or Double.MAX_VALUE if
+     *         the right-hand table has no index on the join field
+     */
+    public double estimateIndexJoinCost(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2) {
+        if (j instanceof LogicalSubplanJoinNode || j.p != Predicate.Op.EQUALS
+                || p.getTableId(j.t2Alias) == null)
+            return Double.MAX_VALUE;
+        int tableId = p.getTableId(j.t2Alias);
+        DbFile f = Database.getCatalog().getDatabaseFile(tableId);
+        if (!(f instanceof BTreeFile))
+            return Double.MAX_VALUE;
+        BTreeFile index = (BTreeFile) f;
+        // named the way SeqScan names the field
+        String keyName = String.valueOf(index.getTupleDesc().getFieldName(index.keyField()));
+        if (!keyName.equals(j.f2PureName))
+            return Double.MAX_VALUE;
+        int pages = Math.max(1, index.numPages());
+        double pageCost = cost2 / pages;
+        double batches = Math.ceil((double) card1 / IndexNestedLoopJoin.DEFAULT_BATCH_TUPLES);
+        double leafReads = Math.min(card1, batches * pages);
+        double search = Math.log(card2 + 2) / Math.log(2);
+        return cost1 + leafReads * pageCost + card1 * search + Math.max(card1, card2);
     }
 
     /**
@@ -186,7 +405,7 @@ public class JoinOptimizer {
                 result = Integer.max(card1,card2);
             }
         } else {
-            result = card1 * card2 * 3 / 10;
+            result = (int) Math.min(Integer.MAX_VALUE, (long) card1 * card2 * 3 / 10);
         }
         if (result <= 0) {
             result = 1;
@@ -194,41 +413,22 @@ public class JoinOptimizer {
         return result;
     }
 
-    /**
-     * Helper method to enumerate all of the subsets of a given size of a
-     * specified vector.
-     * 
-     * @param v
-     *            The vector whose subsets are desired
-     * @param size
-     *            The size of the subsets of interest
-     * @return a set of all subsets of the specified size
-     */
-    public <T> Set<Set<T>> enumerateSubsets(List<T> v, int size) {
-        Set<Set<T>> els = new HashSet<>();
-        els.add(new HashSet<>());
-        // Iterator<Set> it;
-        // long start = System.currentTimeMillis();
-
-        for (int i = 0; i < size; i++) {
-            Set<Set<T>> newels = new HashSet<>();
-            for (Set<T> s : els) {
-                for (T t : v) {
-                    Set<T> news = new HashSet<>(s);
-                    if (news.add(t))
-                        newels.add(news);
-                }
-            }
-            els = newels;
-        }
-
-        return els;
-
-    }
-
     /**
      * Compute a logical, reasonably efficient join on the specified tables. See
      * PS4 for hints on how this should be implemented.
+     * <p>
+     * The tables are numbered as the relations of a {@link JoinGraph}, and the
+     * best plan for each connected set of them is kept in a {@link PlanMemo}
+     * indexed by the bitmask of the set. Sets are built up from the pairs of
+     * connected sets a join connects, so no plan with a cross product is
+     * considered, and either set may itself be a join: plans are bushy trees,
+     * not only left-deep ones. Each join is costed by the cheapest
+     * {@link Algorithm}, which is recorded on the join for
+     * {@link #instantiateJoin} and, with explain, printed with the estimated
+     * cost of the others. From {@link #setParallelDpRelations}
+     * tables on, the sets of each size are costed in parallel once all
+     * smaller sets are done; above {@link #setMaxDpRelations} tables the
+     * joins are ordered greedily instead. Joins with a subquery are done last.
      * 
      * @param stats
      *            Statistics for each table involved in the join, referenced by
@@ -240,11 +440,14 @@ public class JoinOptimizer {
      * @param explain
      *            Indicates whether your code should explain its query plan or
      *            simply execute it
-     * @return A List<LogicalJoinNode> that stores joins in the left-deep
-     *         order in which they should be executed.
+     * @return A List<LogicalJoinNode> that stores joins in the order in which
+     *         they should be executed: the joins under each join of the plan
+     *         tree come before it, which is how {@link LogicalPlan} builds
+     *         the tree back from the list.
      * @throws ParsingException
      *             when stats or filter selectivities is missing a table in the
-     *             join, or or when another internal error occurs
+     *             join, when the joins do not connect all of their tables, or
+     *             when another internal error occurs
      */
 
     public List<LogicalJoinNode> orderJoins(
@@ -252,37 +455,38 @@ public class JoinOptimizer {
             Map<String, Double> filterSelectivities, boolean explain)
             throws ParsingException {
 
-        // some code goes here
-        //Replace the following
-        int n = joins.size();
-        PlanCache planCache = new PlanCache();
-        for (int i = 1; i <= n; i ++) {//从长度为1到长度为n
-            Set<Set<LogicalJoinNode>> subsets = enumerateSubsets(joins,i);
-            Iterator<Set<LogicalJoinNode>> subsetIt = subsets.iterator();
-            while (subsetIt.hasNext()){ //内部分别对应一段集合
-                //构造集合
-                double optcost = Double.MAX_VALUE;
-                List<LogicalJoinNode> bestList = null;
-                int card = 0;
-                Set<LogicalJoinNode> nodeSet = subsetIt.next();
-                Iterator<LogicalJoinNode> setIt = nodeSet.iterator();
-                while (setIt.hasNext()) {
-                    LogicalJoinNode node = setIt.next();
-                    CostCard csa = computeCostAndCardOfSubplan(stats,filterSelectivities,node,nodeSet,optcost,planCache);
-                    if (csa != null ) {
-                        optcost = csa.cost;
-                        bestList = csa.plan;
-                        card = csa.card;
-                    }
-                }
-                planCache.addPlan(nodeSet,optcost,card,bestList);
-            }
+        // 子查询的连接和同一个表上的连接不在图里,放到最后
+        List<LogicalJoinNode> tableJoins = new ArrayList<>();
+        List<LogicalJoinNode> lastJoins = new ArrayList<>();
+        for (LogicalJoinNode j : joins) {
+            if (j instanceof LogicalSubplanJoinNode || j.t1Alias.equals(j.t2Alias))
+                lastJoins.add(j);
+            else
+                tableJoins.add(j);
         }
-        //Set<Set<LogicalJoinNode>> nset = enumerateSubsets(joins,n);
-        Set<LogicalJoinNode> allSet = enumerateSubsets(joins,n).iterator().next();
-        List<LogicalJoinNode> resultList = planCache.getOrder(allSet);
+        if (tableJoins.isEmpty()) { //单表查询没有连接要排
+            return new ArrayList<>(joins);
+        }
+        Search search = new Search(new JoinGraph(tableJoins), stats, filterSelectivities);
+        JoinGraph g = search.g;
+        PlanMemo memo;
+        if (g.size() > maxDpRelations())
+            memo = search.greedy();
+        else if (g.size() >= parallelDpRelations())
+            memo = search.inLevels();
+        else
+            memo = search.exhaustive();
+        if (!memo.has(g.all()))
+            throw new ParsingException("Query does not include join expressions joining all nodes!");
+        search.chooseAlgorithms(memo, g.all());
+        List<LogicalJoinNode> resultList = memo.order(g, g.all());
+        resultList.addAll(lastJoins);
         if (explain) {
-            printJoins(resultList,planCache,stats,filterSelectivities);
+            for (LogicalJoinNode j : resultList) {
+                if (j.algorithm != null)
+                    System.out.println("Join " + j + " by " + j.algorithm + ": " + j.algorithmReason);
+            }
+            printJoins(resultList, g, memo, stats, filterSelectivities);
         }
         return resultList;
     }
@@ -290,164 +494,309 @@ public class JoinOptimizer {
     // ===================== Private Methods =================================
 
     /**
-     * This is a helper method that computes the cost and cardinality of joining
-     * joinToRemove to joinSet (joinSet should contain joinToRemove), given that
-     * all of the subsets of size joinSet.size() - 1 have already been computed
-     * and stored in PlanCache pc.
-     * 
-     * @param stats
-     *            table stats for all of the tables, referenced by table names
-     *            rather than alias (see {@link #orderJoins})
-     * @param filterSelectivities
-     *            the selectivities of the filters over each of the tables
-     *            (where tables are indentified by their alias or name if no
-     *            alias is given)
-     * @param joinToRemove
-     *            the join to remove from joinSet
-     * @param joinSet
-     *            the set of joins being considered
-     * @param bestCostSoFar
-     *            the best way to join joinSet so far (minimum of previous
-     *            invocations of computeCostAndCardOfSubplan for this joinSet,
-     *            from returned CostCard)
-     * @param pc
-     *            the PlanCache for this join; should have subplans for all
-     *            plans of size joinSet.size()-1
-     * @return A {@link CostCard} objects desribing the cost, cardinality,
-     *         optimal subplan
-     * @throws ParsingException
-     *             when stats, filterSelectivities, or pc object is missing
-     *             tables involved in join
+     * One search for the order of the joins of a graph: the cost and
+     * cardinality of scanning each table, and each join in both orientations.
      */
-    @SuppressWarnings("unchecked")
-    private CostCard computeCostAndCardOfSubplan(
-            Map<String, TableStats> stats,
-            Map<String, Double> filterSelectivities,
-            LogicalJoinNode joinToRemove, Set<LogicalJoinNode> joinSet,
-            double bestCostSoFar, PlanCache pc) throws ParsingException {
-
-        LogicalJoinNode j = joinToRemove;
-
-        List<LogicalJoinNode> prevBest;
-
-        if (this.p.getTableId(j.t1Alias) == null)
-            throw new ParsingException("Unknown table " + j.t1Alias);
-        if (this.p.getTableId(j.t2Alias) == null)
-            throw new ParsingException("Unknown table " + j.t2Alias);
-
-        String table1Name = Database.getCatalog().getTableName(
-                this.p.getTableId(j.t1Alias));
-        String table2Name = Database.getCatalog().getTableName(
-                this.p.getTableId(j.t2Alias));
-        String table1Alias = j.t1Alias;
-        String table2Alias = j.t2Alias;
-
-        Set<LogicalJoinNode> news = new HashSet<>(joinSet);
-        news.remove(j);
-
-        double t1cost, t2cost;
-        int t1card, t2card;
-        boolean leftPkey, rightPkey;
-
-        if (news.isEmpty()) { // base case -- both are base relations
-            prevBest = new ArrayList<>();
-            t1cost = stats.get(table1Name).estimateScanCost();
-            t1card = stats.get(table1Name).estimateTableCardinality(
-                    filterSelectivities.get(j.t1Alias));
-            leftPkey = isPkey(j.t1Alias, j.f1PureName);
-
-            t2cost = table2Alias == null ? 0 : stats.get(table2Name)
-                    .estimateScanCost();
-            t2card = table2Alias == null ? 0 : stats.get(table2Name)
-                    .estimateTableCardinality(
-                            filterSelectivities.get(j.t2Alias));
-            rightPkey = table2Alias != null && isPkey(table2Alias,
-                    j.f2PureName);
-        } else {
-            // news is not empty -- figure best way to join j to news
-            prevBest = pc.getOrder(news);
+    private class Search {
+        final JoinGraph g;
+        final Map<String, TableStats> stats;
+        final double[] scanCost;
+        final int[] scanCard;
+        // 每个连接的两个方向,以及两边的字段是不是主键
+        final LogicalJoinNode[][] oriented;
+        final boolean[][] pkeys;
+
+        Search(JoinGraph g, Map<String, TableStats> stats,
+                Map<String, Double> filterSelectivities) throws ParsingException {
+            this.g = g;
+            this.stats = stats;
+            scanCost = new double[g.size()];
+            scanCard = new int[g.size()];
+            for (int r = 0; r < g.size(); r++) {
+                String alias = g.alias(r);
+                if (p.getTableId(alias) == null)
+                    throw new ParsingException("Unknown table " + alias);
+                TableStats s = stats.get(Database.getCatalog().getTableName(p.getTableId(alias)));
+                //physicalPlan可能给表选了索引扫描
+                Double access = p.getScanCost(alias);
+                scanCost[r] = access != null ? access : s.estimateScanCost();
+                scanCard[r] = s.estimateTableCardinality(filterSelectivities.get(alias));
+            }
+            oriented = new LogicalJoinNode[g.numJoins()][];
+            pkeys = new boolean[g.numJoins()][];
+            for (int e = 0; e < g.numJoins(); e++) {
+                LogicalJoinNode j = g.join(e);
+                // 复制一份,选出的算法记在结果里的连接上,不改调用者的
+                oriented[e] = new LogicalJoinNode[] {
+                        new LogicalJoinNode(j.t1Alias, j.t2Alias, j.f1PureName, j.f2PureName, j.p),
+                        j.swapInnerOuter() };
+                pkeys[e] = new boolean[] { isPkey(j.t1Alias, j.f1PureName),
+                        isPkey(j.t2Alias, j.f2PureName) };
+            }
+        }
+
+        /** @return a dense or sparse memo holding the scan of every table */
+        PlanMemo newMemo(boolean dense) {
+            PlanMemo memo = dense ? new PlanMemo(g.size()) : new PlanMemo();
+            for (int r = 0; r < g.size(); r++)
+                memo.setScan(r, scanCost[r], scanCard[r]);
+            return memo;
+        }
+
+        /** Find the best plan for every connected set, one pair of sets at a time. */
+        PlanMemo exhaustive() {
+            PlanMemo memo = newMemo(true);
+            g.enumeratePairs((left, right) -> join(memo, left, right));
+            return memo;
+        }
+
+        /**
+         * Find the best plan for every connected set, costing the sets of
+         * each size in parallel after all smaller sets.
+         */
+        PlanMemo inLevels() {
+            PlanMemo memo = newMemo(true);
+            boolean[] seen = new boolean[1 << g.size()];
+            long[] level = new long[g.size()];
+            for (int r = 0; r < level.length; r++)
+                level[r] = 1L << r;
+            while (level.length > 0) {
+                // 上一层的每个连通集合加一个邻居,得到这一层的连通集合
+                long[] next = new long[Math.max(16, level.length)];
+                int count = 0;
+                for (long s : level) {
+                    for (long rest = g.neighbours(s); rest != 0; rest &= rest - 1) {
+                        long t = s | Long.lowestOneBit(rest);
+                        if (seen[(int) t])
+                            continue;
+                        seen[(int) t] = true;
+                        if (count == next.length)
+                            next = Arrays.copyOf(next, 2 * count);
+                        next[count++] = t;
+                    }
+                }
+                level = Arrays.copyOf(next, count);
+                if (count > 0)
+                    Database.getWorkerPool().invoke(new LevelTask(memo, level, 0, count));
+            }
+            return memo;
+        }
 
-            // possible that we have not cached an answer, if subset
-            // includes a cross product
-            if (prevBest == null) {
-                return null;
+        /** Costs the sets level[lo..hi) of one size, splitting them among workers. */
+        private class LevelTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            private final PlanMemo memo;
+            private final long[] level;
+            private final int lo, hi;
+
+            LevelTask(PlanMemo memo, long[] level, int lo, int hi) {
+                this.memo = memo;
+                this.level = level;
+                this.lo = lo;
+                this.hi = hi;
             }
 
-            double prevBestCost = pc.getCost(news);
-            int bestCard = pc.getCard(news);
-
-            // estimate cost of right subtree
-            if (doesJoin(prevBest, table1Alias)) { // j.t1 is in prevBest
-                t1cost = prevBestCost; // left side just has cost of whatever
-                                       // left
-                // subtree is
-                t1card = bestCard;
-                leftPkey = hasPkey(prevBest);
-
-                t2cost = j.t2Alias == null ? 0 : stats.get(table2Name)
-                        .estimateScanCost();
-                t2card = j.t2Alias == null ? 0 : stats.get(table2Name)
-                        .estimateTableCardinality(
-                                filterSelectivities.get(j.t2Alias));
-                rightPkey = j.t2Alias != null && isPkey(j.t2Alias,
-                        j.f2PureName);
-            } else if (doesJoin(prevBest, j.t2Alias)) { // j.t2 is in prevbest
-                                                        // (both
-                // shouldn't be)
-                t2cost = prevBestCost; // left side just has cost of whatever
-                                       // left
-                // subtree is
-                t2card = bestCard;
-                rightPkey = hasPkey(prevBest);
-                t1cost = stats.get(table1Name).estimateScanCost();
-                t1card = stats.get(table1Name).estimateTableCardinality(
-                        filterSelectivities.get(j.t1Alias));
-                leftPkey = isPkey(j.t1Alias, j.f1PureName);
+            @Override
+            protected void compute() {
+                if (hi - lo <= MIN_SETS_PER_TASK) {
+                    for (int i = lo; i < hi; i++)
+                        costSet(memo, level[i]);
+                    return;
+                }
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new LevelTask(memo, level, lo, mid),
+                        new LevelTask(memo, level, mid, hi));
+            }
+        }
 
-            } else {
-                // don't consider this plan if one of j.t1 or j.t2
-                // isn't a table joined in prevBest (cross product)
-                return null;
+        /**
+         * Find the best plan for set by joining each way of splitting it in
+         * two connected sets, one holding its lowest table, whose plans are
+         * already in memo.
+         */
+        private void costSet(PlanMemo memo, long set) {
+            long low = Long.lowestOneBit(set);
+            for (long left = (set - 1) & set; left != 0; left = (left - 1) & set) {
+                long right = set & ~left;
+                if ((left & low) != 0 && memo.has(left) && memo.has(right)
+                        && (g.neighbours(left) & right) != 0)
+                    join(memo, left, right);
+            }
+        }
+
+        /**
+         * Order the joins greedily, by greedy operator ordering: starting
+         * from the single tables, keep joining the two joined sets whose join
+         * has the fewest tuples, the cheapest one among those, until one set
+         * is left. Sets are joined whatever their size, so the plan can be
+         * bushy. This takes time polynomial in the number of tables.
+         */
+        PlanMemo greedy() {
+            PlanMemo memo = newMemo(false);
+            List<Long> sets = new ArrayList<>();
+            for (int r = 0; r < g.size(); r++)
+                sets.add(1L << r);
+            while (sets.size() > 1) {
+                int bestA = -1, bestB = -1;
+                int best = -1;
+                for (int a = 0; a < sets.size(); a++) {
+                    long neighbours = g.neighbours(sets.get(a));
+                    for (int b = a + 1; b < sets.size(); b++) {
+                        if ((neighbours & sets.get(b)) == 0)
+                            continue;
+                        long t = sets.get(a) | sets.get(b);
+                        if (!memo.has(t))
+                            join(memo, sets.get(a), sets.get(b));
+                        int u = memo.find(t);
+                        if (best < 0 || memo.card[u] < memo.card[best]
+                                || memo.card[u] == memo.card[best] && memo.cost[u] < memo.cost[best]) {
+                            best = u;
+                            bestA = a;
+                            bestB = b;
+                        }
+                    }
+                }
+                if (best < 0) // 图不连通
+                    return memo;
+                sets.set(bestA, sets.get(bestA) | sets.get(bestB));
+                sets.remove(bestB);
+            }
+            return memo;
+        }
+
+        /**
+         * Cost joining the best plans for the disjoint sets left and right,
+         * which must already be in memo, and keep the result in memo if it is
+         * the cheapest plan for their union so far. Every join between the two
+         * sides is tried, with either side read as the outer side of the join
+         * operator. Plans of the same cost are told apart by their outer side
+         * and last join, so the plan kept does not depend on the order plans
+         * are tried in.
+         */
+        void join(PlanMemo memo, long left, long right) {
+            int l = memo.find(left), r = memo.find(right);
+            boolean leftBase = Long.bitCount(left) == 1, rightBase = Long.bitCount(right) == 1;
+            double lcost = memo.cost[l], rcost = memo.cost[r];
+            int lcard = memo.card[l], rcard = memo.card[r];
+            List<Integer> edges = g.joinsBetween(left, right);
+            boolean anyPkey = memo.pkey[l] || memo.pkey[r];
+            for (int e : edges)
+                anyPkey |= pkeys[e][0] || pkeys[e][1];
+            int u = memo.slot(left | right);
+
+            for (int e : edges) {
+                // forward: the join's first table is on the left side
+                boolean forward = (left & (1L << g.from(e))) != 0;
+                LogicalJoinNode j = oriented[e][forward ? 0 : 1];
+                LogicalJoinNode j2 = oriented[e][forward ? 1 : 0];
+                boolean leftPkey = leftBase ? pkeys[e][forward ? 0 : 1] : memo.pkey[l];
+                boolean rightPkey = rightBase ? pkeys[e][forward ? 1 : 0] : memo.pkey[r];
+
+                // case where the left set is the outer side
+                double cost1 = joinCost(j, lcard, rcard, lcost, rcost, rightBase);
+                double cost2 = joinCost(j2, rcard, lcard, rcost, lcost, leftBase);
+                int card = estimateJoinCardinality(j, lcard, rcard, leftPkey,
+                        rightPkey, stats);
+                long outer = left;
+                if (cost2 < cost1) {
+                    j = j2;
+                    cost1 = cost2;
+                    outer = right;
+                }
+                if (memo.join[u] != null && (cost1 > memo.cost[u] || cost1 == memo.cost[u]
+                        && !breaksTie(outer, e, j, memo, u)))
+                    continue;
+                memo.cost[u] = cost1;
+                memo.card[u] = card;
+                memo.pkey[u] = anyPkey;
+                memo.outer[u] = outer;
+                memo.edge[u] = e;
+                memo.join[u] = j;
             }
         }
 
-        // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
-
-        LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
-        if (cost2 < cost1) {
-            boolean tmp;
-            j = j2;
-            cost1 = cost2;
-            tmp = rightPkey;
-            rightPkey = leftPkey;
-            leftPkey = tmp;
+        /** @return the cost of j by the cheapest algorithm */
+        private double joinCost(LogicalJoinNode j, int card1, int card2,
+                double cost1, double cost2, boolean innerBase) {
+            double cost = Double.MAX_VALUE;
+            for (Algorithm a : ALGORITHMS)
+                cost = Math.min(cost, algorithmCost(a, j, card1, card2, cost1, cost2, innerBase));
+            return cost;
         }
-        if (cost1 >= bestCostSoFar)
-            return null;
 
-        CostCard cc = new CostCard();
+        /**
+         * @return the cost of j by algorithm a, with an inner side that is a
+         *         base table or the result of other joins. Nested loops scan
+         *         a base inner side once per block, and compute any other
+         *         once into a {@link Materialize} that is then read once per
+         *         block; only a base inner side can be probed through an
+         *         index.
+         */
+        private double algorithmCost(Algorithm a, LogicalJoinNode j, int card1, int card2,
+                double cost1, double cost2, boolean innerBase) {
+            switch (a) {
+            case HASH:
+                return estimateHashJoinCost(j, card1, card2, cost1, cost2);
+            case INDEX_NESTED_LOOPS:
+                return innerBase ? estimateIndexJoinCost(j, card1, card2, cost1, cost2) : Double.MAX_VALUE;
+            default:
+                boolean blocks = a == Algorithm.BLOCK_NESTED_LOOPS;
+                if (innerBase)
+                    return blocks ? estimateJoinCost(j, card1, card2, cost1, cost2)
+                            : estimateNestedLoopsJoinCost(j, card1, card2, cost1, cost2);
+                return (blocks ? estimateJoinCost(j, card1, card2, cost1, card2)
+                        : estimateNestedLoopsJoinCost(j, card1, card2, cost1, card2)) + cost2 + card2;
+            }
+        }
 
-        cc.card = estimateJoinCardinality(j, t1card, t2card, leftPkey,
-                rightPkey, stats);
-        cc.cost = cost1;
-        cc.plan = new ArrayList<>(prevBest);
-        cc.plan.add(j); // prevbest is left -- add new join to end
-        return cc;
+        /**
+         * Set the algorithm of each join of the plan for set in memo to the
+         * cheapest one, with the estimated cost of every algorithm as the
+         * reason.
+         */
+        void chooseAlgorithms(PlanMemo memo, long set) {
+            if (Long.bitCount(set) < 2)
+                return;
+            int s = memo.find(set);
+            long outer = memo.outer[s], inner = set & ~outer;
+            chooseAlgorithms(memo, outer);
+            chooseAlgorithms(memo, inner);
+            int o = memo.find(outer), i = memo.find(inner);
+            LogicalJoinNode j = memo.join[s];
+            double[] costs = new double[ALGORITHMS.length];
+            List<Algorithm> byCost = new ArrayList<>();
+            for (Algorithm a : ALGORITHMS) {
+                costs[a.ordinal()] = algorithmCost(a, j, memo.card[o], memo.card[i],
+                        memo.cost[o], memo.cost[i], Long.bitCount(inner) == 1);
+                byCost.add(a);
+            }
+            byCost.sort(Comparator.comparingDouble(a -> costs[a.ordinal()]));
+            StringBuilder reason = new StringBuilder();
+            StringBuilder unusable = new StringBuilder();
+            for (Algorithm a : byCost) {
+                if (costs[a.ordinal()] == Double.MAX_VALUE) {
+                    unusable.append(unusable.length() == 0 ? "; not applicable: " : ", ").append(a);
+                } else {
+                    reason.append(reason.length() == 0 ? "" : " <= ").append(a)
+                            .append(String.format(" %.0f", costs[a.ordinal()]));
+                }
+            }
+            j.algorithm = byCost.get(0);
+            j.algorithmReason = reason.append(unusable).toString();
+        }
     }
 
     /**
-     * Return true if the specified table is in the list of joins, false
-     * otherwise
+     * @return whether a plan whose last join is j, join e of the graph with
+     *         outer as its outer side, is preferred to the plan of the same
+     *         cost at index u of memo
      */
-    private boolean doesJoin(List<LogicalJoinNode> joinlist, String table) {
-        for (LogicalJoinNode j : joinlist) {
-            if (j.t1Alias.equals(table)
-                    || (j.t2Alias != null && j.t2Alias.equals(table)))
-                return true;
-        }
-        return false;
+    private static boolean breaksTie(long outer, int e, LogicalJoinNode j, PlanMemo memo, int u) {
+        if (outer != memo.outer[u])
+            return outer < memo.outer[u];
+        if (e != memo.edge[u])
+            return e < memo.edge[u];
+        return j.t1Alias.compareTo(memo.join[u].t1Alias) < 0;
     }
 
     /**
@@ -466,20 +815,6 @@ public class JoinOptimizer {
         return pkey1.equals(field);
     }
 
-    /**
-     * Return true if a primary key field is joined by one of the joins in
-     * joinlist
-     */
-    private boolean hasPkey(List<LogicalJoinNode> joinlist) {
-        for (LogicalJoinNode j : joinlist) {
-            if (isPkey(j.t1Alias, j.f1PureName)
-                    || (j.t2Alias != null && isPkey(j.t2Alias, j.f2PureName)))
-                return true;
-        }
-        return false;
-
-    }
-
     /**
      * Helper function to display a Swing window with a tree representation of
      * the specified list of joins. See {@link #orderJoins}, which may want to
@@ -487,8 +822,10 @@ public class JoinOptimizer {
      * 
      * @param js
      *            the join plan to visualize
-     * @param pc
-     *            the PlanCache accumulated whild building the optimal plan
+     * @param g
+     *            the join graph of the tables of the plan
+     * @param memo
+     *            the PlanMemo accumulated while building the optimal plan
      * @param stats
      *            table statistics for base tables
      * @param selectivities
@@ -496,7 +833,7 @@ public class JoinOptimizer {
      *            (where tables are indentified by their alias or name if no
      *            alias is given)
      */
-    private void printJoins(List<LogicalJoinNode> js, PlanCache pc,
+    private void printJoins(List<LogicalJoinNode> js, JoinGraph g, PlanMemo memo,
             Map<String, TableStats> stats,
             Map<String, Double> selectivities) {
 
@@ -517,6 +854,8 @@ public class JoinOptimizer {
         // int k;
         DefaultMutableTreeNode root = null, treetop = null;
         HashSet<LogicalJoinNode> pathSoFar = new HashSet<>();
+        // 每个表目前所在的已连接集合
+        Map<String, Long> joinedWith = new HashMap<>();
         boolean neither;
 
         System.out.println(js);
@@ -526,15 +865,23 @@ public class JoinOptimizer {
 
             String table1Name = Database.getCatalog().getTableName(
                     this.p.getTableId(j.t1Alias));
-            String table2Name = Database.getCatalog().getTableName(
-                    this.p.getTableId(j.t2Alias));
+            String table2Name = j.t2Alias == null ? null : Database.getCatalog()
+                    .getTableName(this.p.getTableId(j.t2Alias));
+            long set = 0;
+            for (String alias : new String[] { j.t1Alias, j.t2Alias }) {
+                int r = g.relation(alias);
+                if (r >= 0)
+                    set |= joinedWith.getOrDefault(alias, 1L << r);
+            }
+            for (long rest = set; rest != 0; rest &= rest - 1)
+                joinedWith.put(g.alias(Long.numberOfTrailingZeros(rest)), set);
+            int s = set == 0 ? -1 : memo.find(set);
 
-            // Double c = pc.getCost(pathSoFar);
             neither = true;
 
-            root = new DefaultMutableTreeNode("Join " + j + " (Cost ="
-                    + pc.getCost(pathSoFar) + ", card = "
-                    + pc.getCard(pathSoFar) + ")");
+            root = new DefaultMutableTreeNode("Join " + j + (s < 0 ? "" : " (Cost ="
+                    + memo.cost[s] + ", card = "
+                    + memo.card[s] + ")"));
             DefaultMutableTreeNode n = m.get(j.t1Alias);
             if (n == null) { // never seen this table before
                 n = new DefaultMutableTreeNode(j.t1Alias
@@ -574,10 +921,10 @@ public class JoinOptimizer {
             m.put(j.t2Alias, root);
 
             // unless this table doesn't join with other tables,
-            // all tables are accessed from root
+            // all tables joined with it are accessed from root
             if (!neither) {
-                for (String key : m.keySet()) {
-                    m.put(key, root);
+                for (long rest = set; rest != 0; rest &= rest - 1) {
+                    m.put(g.alias(Long.numberOfTrailingZeros(rest)), root);
                 }
             }
 
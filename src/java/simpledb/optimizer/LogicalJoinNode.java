@@ -25,6 +25,12 @@ public class LogicalJoinNode {
     /** The join predicate */
     public Predicate.Op p;
 
+    /** The join operator orderJoins chose to run this join with (may be null, for instantiateJoin to pick one). */
+    public JoinOptimizer.Algorithm algorithm;
+
+    /** Why orderJoins chose algorithm: the estimated cost of each algorithm. */
+    public String algorithmReason;
+
     public LogicalJoinNode() {
     }
 
@@ -4,6 +4,8 @@ import simpledb.common.Database;
 import simpledb.ParsingException;
 import simpledb.common.Type;
 import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeScan;
 import simpledb.storage.*;
 import simpledb.transaction.TransactionId;
 
@@ -30,6 +32,8 @@ public class LogicalPlan {
     private final List<LogicalFilterNode> filters;
     private final Map<String, OpIterator> subplanMap;
     private final Map<String,Integer> tableMap;
+    //physicalPlan给每个表选的访问路径的代价
+    private final Map<String,Double> scanCosts;
 
     private final List<LogicalSelectListNode> selectList;
     private String groupByField = null;
@@ -48,6 +52,7 @@ public class LogicalPlan {
         tables = new ArrayList<>();
         subplanMap = new HashMap<>();
         tableMap = new HashMap<>();
+        scanCosts = new HashMap<>();
 
         selectList = new ArrayList<>();
         this.query = "";
@@ -79,6 +84,14 @@ public class LogicalPlan {
         return tableMap.get(alias);
     }
     
+    /** Get the estimated cost of reading the table with the specified alias
+        by the access path {@link #physicalPlan} chose for it, an index scan or
+        a sequential scan, or null if no plan has been built yet.
+    */
+    Double getScanCost(String alias) {
+        return scanCosts.get(alias);
+    }
+
     public Map<String,Integer> getTableAliasToIdMapping()
     {
         return this.tableMap;
@@ -274,8 +287,167 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /** Pages a worker of a parallel scan is given at least */
+    public static final int MIN_PAGES_PER_WORKER = 64;
+
+    private static int maxWorkers = 0;
+
+    /** Set the most workers a table may be scanned with in parallel; 0 means
+     *  one per processor, 1 turns parallel scans off.
+     */
+    public static void setMaxWorkers(int workers) {
+        maxWorkers = workers;
+    }
+
+    /** @return how many workers should scan a table of numPages pages: one for
+     *  every MIN_PAGES_PER_WORKER pages, up to the most set by {@link #setMaxWorkers}
+     */
+    public static int degreeOfParallelism(int numPages) {
+        int max = maxWorkers > 0 ? maxWorkers : Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(max, numPages / MIN_PAGES_PER_WORKER));
+    }
+
+    /** Build an aggregate over a scan of a HeapFile, under any number of
+     *  filters, that scans the table with several workers in parallel.
+     *  Every worker scans a range of pages through the filters and aggregates
+     *  it; the parallel {@link Aggregate} then merges the workers' groups.
+     *  @return the parallel plan, or null if plan is not such a scan or the
+     *    table is too small to be worth splitting
+     */
+    private OpIterator parallelAggregate(TransactionId t, OpIterator plan, int afield, int gfield,
+                                         Aggregator.Op op) {
+        List<Predicate> preds = new ArrayList<>();
+        while (plan instanceof Filter) {
+            preds.add(((Filter) plan).getPredicate());
+            plan = ((Filter) plan).getChildren()[0];
+        }
+        if (!(plan instanceof SeqScan)) {
+            return null;
+        }
+        SeqScan scan = (SeqScan) plan;
+        DbFile f = Database.getCatalog().getDatabaseFile(scan.getTableId());
+        if (!(f instanceof HeapFile)) {
+            return null;
+        }
+        int pages = ((HeapFile) f).numPages();
+        int workers = degreeOfParallelism(pages);
+        if (workers <= 1) {
+            return null;
+        }
+        OpIterator[] parts = new OpIterator[workers];
+        for (int i = 0; i < workers; i++) {
+            //最后一个范围一直扫到文件末尾
+            int end = i == workers - 1 ? -1 : (int) ((long) pages * (i + 1) / workers);
+            OpIterator part = new SeqScan(t, scan.getTableId(), scan.getAlias(),
+                    (int) ((long) pages * i / workers), end);
+            for (int j = preds.size() - 1; j >= 0; j--) {
+                part = new Filter(preds.get(j), part);
+            }
+            parts[i] = part;
+        }
+        return new Aggregate(parts, afield, gfield, op);
+    }
+
+    /** Choose how to read a table whose tuples are filtered by plan: a scan of
+     *  a BTreeFile under filters on its key can read only the keys they select
+     *  with a {@link BTreeScan}, for an EQUALS filter by looking the key up,
+     *  and for a range from its lower bound along the leaf chain to its upper
+     *  bound. The index scan is chosen when {@link TableStats#estimateIndexScanCost}
+     *  of the selectivity of those filters is below the cost of scanning the
+     *  whole table; the filters the index does not serve stay above it.
+     *  @return the plan to read the table with, which is plan itself when
+     *    the sequential scan is cheaper or no index applies
+     */
+    private OpIterator accessPath(TransactionId t, OpIterator plan, TableStats s, boolean explain) {
+        List<Predicate> preds = new ArrayList<>();
+        OpIterator scan = plan;
+        while (scan instanceof Filter) {
+            preds.add(((Filter) scan).getPredicate());
+            scan = ((Filter) scan).getChildren()[0];
+        }
+        if (!(scan instanceof SeqScan)) {
+            return plan;
+        }
+        SeqScan ss = (SeqScan) scan;
+        scanCosts.put(ss.getAlias(), s.estimateScanCost());
+        DbFile f = Database.getCatalog().getDatabaseFile(ss.getTableId());
+        if (!(f instanceof BTreeFile)) {
+            return plan;
+        }
+        int key = ((BTreeFile) f).keyField();
+        //键上最严格的等值条件、下界和上界
+        Predicate eq = null, lower = null, upper = null;
+        double eqSel = 1.0, lowerSel = 1.0, upperSel = 1.0;
+        for (Predicate p : preds) {
+            if (p.getField() != key) {
+                continue;
+            }
+            double sel = s.estimateSelectivity(key, p.getOp(), p.getOperand());
+            switch (p.getOp()) {
+                case EQUALS:
+                    if (eq == null || sel < eqSel) { eq = p; eqSel = sel; }
+                    break;
+                case GREATER_THAN:
+                case GREATER_THAN_OR_EQ:
+                    if (lower == null || sel < lowerSel) { lower = p; lowerSel = sel; }
+                    break;
+                case LESS_THAN:
+                case LESS_THAN_OR_EQ:
+                    if (upper == null || sel < upperSel) { upper = p; upperSel = sel; }
+                    break;
+                default:
+                    break;
+            }
+        }
+        Predicate from, to = null;
+        double sel;
+        if (eq != null) {
+            from = eq;
+            sel = eqSel;
+        } else if (lower != null) {
+            from = lower;
+            to = upper;
+            //两个界之间的部分
+            sel = upper == null ? lowerSel : Math.max(0.0, lowerSel + upperSel - 1.0);
+        } else if (upper != null) {
+            from = upper;
+            sel = upperSel;
+        } else {
+            return plan;
+        }
+        double indexCost = s.estimateIndexScanCost(sel);
+        double scanCost = s.estimateScanCost();
+        String range = ss.getTupleDesc().getFieldName(key) + " " + from.getOp() + " " + from.getOperand()
+                + (to == null ? "" : " and " + to.getOp() + " " + to.getOperand());
+        if (indexCost >= scanCost) {
+            if (explain) {
+                System.out.println(String.format("Scan %s by sequential scan: sequential scan %.0f <= index on %s %.0f",
+                        ss.getAlias(), scanCost, range, indexCost));
+            }
+            return plan;
+        }
+        if (explain) {
+            System.out.println(String.format("Scan %s by index on %s: index %.0f < sequential scan %.0f",
+                    ss.getAlias(), range, indexCost, scanCost));
+        }
+        scanCosts.put(ss.getAlias(), indexCost);
+        OpIterator result = new BTreeScan(t, ss.getTableId(), ss.getAlias(),
+                new IndexPredicate(from.getOp(), from.getOperand()),
+                to == null ? null : new IndexPredicate(to.getOp(), to.getOperand()));
+        for (int i = preds.size() - 1; i >= 0; i--) {
+            if (preds.get(i) != from && preds.get(i) != to) {
+                result = new Filter(preds.get(i), result);
+            }
+        }
+        return result;
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link OpIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
+     *   A table stored in a BTreeFile and filtered on its key may be read with an index scan
+     *   instead of a sequential scan (see {@link #accessPath}).
+     *   An aggregate over a single large table is computed by several workers in parallel, each
+     *   scanning part of the table (see {@link #degreeOfParallelism}).
      *  @param t The transaction that the returned OpIterator will run as a part of
      *  @param baseTableStats a HashMap providing a {@link TableStats}
      *    object for each table used in the LogicalPlan.  This should
@@ -344,6 +516,15 @@ public class LogicalPlan {
 
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
         }
+
+        scanCosts.clear();
+        for (LogicalScanNode table : tables) {
+            TableStats s = statsMap.get(Database.getCatalog().getTableName(table.t));
+            if (s == null) {
+                continue;
+            }
+            subplanMap.put(table.alias, accessPath(t, subplanMap.get(table.alias), s, explain));
+        }
         
         JoinOptimizer jo = new JoinOptimizer(this,joins);
 
@@ -459,12 +640,17 @@ public class LogicalPlan {
 
         if (hasAgg) {
             TupleDesc td = node.getTupleDesc();
-            Aggregate aggNode;
+            OpIterator aggNode;
             try {
-                aggNode = new Aggregate(node,
-                                        td.fieldNameToIndex(aggField),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField),
-                                getAggOp(aggOp));
+                int afield = td.fieldNameToIndex(aggField);
+                int gfield = groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField);
+                aggNode = null;
+                if (joins.isEmpty()) {
+                    aggNode = parallelAggregate(t, node, afield, gfield, getAggOp(aggOp));
+                }
+                if (aggNode == null) {
+                    aggNode = new Aggregate(node, afield, gfield, getAggOp(aggOp));
+                }
             } catch (NoSuchElementException | IllegalArgumentException e) {
                 throw new simpledb.ParsingException(e);
             }
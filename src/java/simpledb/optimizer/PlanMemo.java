@@ -0,0 +1,118 @@
+package simpledb.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The best plan found so far for connected sets of relations of a
+ * {@link JoinGraph}, in flat arrays. A dense memo has an entry for every set,
+ * at the index of the bitmask of the set; a sparse one gives entries to sets
+ * as they are added, for graphs too large for a dense memo, and must only be
+ * used by one thread. The plan of a set of two or more relations is its last
+ * join: which join of the graph it is, oriented outer table first, and the
+ * set of relations on its outer side; the rest of the set is on its inner
+ * side.
+ */
+class PlanMemo {
+
+    double[] cost;
+    int[] card;
+    /** whether the plan joins on a primary key of some table */
+    boolean[] pkey;
+    long[] outer;
+    int[] edge;
+    LogicalJoinNode[] join;
+
+    // 稀疏时每个集合在数组里的位置;稠密时为null
+    private final Map<Long, Integer> slots;
+
+    /** Constructor for a dense memo of the sets of relations relations */
+    PlanMemo(int relations) {
+        slots = null;
+        allocate(1 << relations);
+    }
+
+    /** Constructor for a sparse memo */
+    PlanMemo() {
+        slots = new HashMap<>();
+        allocate(16);
+    }
+
+    private void allocate(int size) {
+        cost = new double[size];
+        card = new int[size];
+        pkey = new boolean[size];
+        outer = new long[size];
+        edge = new int[size];
+        join = new LogicalJoinNode[size];
+    }
+
+    /** @return the index of the entry of set, or -1 if a sparse memo has none */
+    int find(long set) {
+        if (slots == null)
+            return (int) set;
+        Integer s = slots.get(set);
+        return s == null ? -1 : s;
+    }
+
+    /** @return the index of the entry of set, giving it one in a sparse memo */
+    int slot(long set) {
+        int s = find(set);
+        if (s >= 0)
+            return s;
+        s = slots.size();
+        if (s == cost.length) {
+            int size = 2 * s;
+            cost = Arrays.copyOf(cost, size);
+            card = Arrays.copyOf(card, size);
+            pkey = Arrays.copyOf(pkey, size);
+            outer = Arrays.copyOf(outer, size);
+            edge = Arrays.copyOf(edge, size);
+            join = Arrays.copyOf(join, size);
+        }
+        slots.put(set, s);
+        return s;
+    }
+
+    /** Set the plan of a single relation r: a scan of its table */
+    void setScan(int r, double scanCost, int scanCard) {
+        int s = slot(1L << r);
+        cost[s] = scanCost;
+        card[s] = scanCard;
+    }
+
+    /** @return whether the memo has a plan for set */
+    boolean has(long set) {
+        int s = find(set);
+        return s >= 0 && (join[s] != null || Long.bitCount(set) == 1);
+    }
+
+    /**
+     * @return the joins of the plan tree for set in the order they run in,
+     *         which LogicalPlan turns back into the tree: the joins of the
+     *         outer side, then of the inner side, then the last join, then
+     *         any other joins of the graph between the two sides
+     */
+    List<LogicalJoinNode> order(JoinGraph g, long set) {
+        List<LogicalJoinNode> out = new ArrayList<>();
+        addOrder(g, set, out);
+        return out;
+    }
+
+    private void addOrder(JoinGraph g, long set, List<LogicalJoinNode> out) {
+        if (Long.bitCount(set) < 2)
+            return;
+        int s = find(set);
+        long inner = set & ~outer[s];
+        addOrder(g, outer[s], out);
+        addOrder(g, inner, out);
+        out.add(join[s]);
+        for (int e : g.joinsBetween(outer[s], inner)) {
+            if (e != edge[s])
+                out.add(g.join(e));
+        }
+    }
+}
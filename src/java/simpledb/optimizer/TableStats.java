@@ -6,7 +6,11 @@ import simpledb.common.Type;
 import simpledb.execution.Predicate;
 import simpledb.execution.SeqScan;
 import simpledb.storage.*;
+import simpledb.common.DbException;
+import simpledb.index.BTreeFile;
 import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
 
 import java.util.HashMap;
 import java.util.Iterator;
@@ -26,6 +30,12 @@ public class TableStats {
 
     static final int IOCOSTPERPAGE = 1000;
 
+    /**
+     * How many times the cost of a page read in sequence a page read at a
+     * random place in the file costs, such as the pages an index scan reads.
+     */
+    static final double RANDOM_IO_RATIO = 4.0;
+
     public static TableStats getTableStats(String tablename) {
         return statsMap.get(tablename);
     } //根据tablename获取对应的元数据
@@ -70,7 +80,7 @@ public class TableStats {
     static final int NUM_HIST_BINS = 100;
 
     private int tableId_;
-    private HeapFile tableFile_;
+    private int pageNum_;
     private TupleDesc tableDesc_;
     private int ioCostPerPage_;
     private int tupleNum_;
@@ -160,8 +170,15 @@ public class TableStats {
         }
 
 
-        HeapFile file = (HeapFile) Database.getCatalog().getDatabaseFile(tableid);
+        ioCostPerPage_ = ioCostPerPage;
+        DbFile dbFile = Database.getCatalog().getDatabaseFile(tableid);
+        if (!(dbFile instanceof HeapFile)) {
+            scanFile(dbFile);
+            return;
+        }
+        HeapFile file = (HeapFile) dbFile;
         int pageNum = file.numPages();
+        pageNum_ = pageNum;
         Iterator<Tuple> tupleIt;
         for(int i = 0; i < pageNum; i ++) {
             HeapPageId pageId = new HeapPageId(tableid,i);
@@ -176,8 +193,6 @@ public class TableStats {
             }
         }
         InitHisMap();
-        ioCostPerPage_ = ioCostPerPage;
-        tableFile_ = file;
 
         for(int i = 0; i < pageNum; i ++) {
             HeapPageId pageId = new HeapPageId(tableid,i);
@@ -191,6 +206,34 @@ public class TableStats {
         }
     }
 
+    /**
+     * Compute the statistics of a table that is not a HeapFile, such as a
+     * BTreeFile, by reading its tuples through the buffer pool in a
+     * transaction of its own.
+     */
+    private void scanFile(DbFile file) {
+        pageNum_ = file instanceof BTreeFile ? ((BTreeFile) file).numPages() : 1;
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = file.iterator(tid);
+        try {
+            it.open();
+            while (it.hasNext()) {
+                tupleNum_ += 1;
+                UpdateValuesMap(it.next());
+            }
+            InitHisMap();
+            it.rewind();
+            while (it.hasNext()) {
+                AddTupleToHis(it.next());
+            }
+        } catch (DbException | TransactionAbortedException e) {
+            throw new RuntimeException("cannot compute the statistics of table " + tableId_, e);
+        } finally {
+            it.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
     /**
      * Estimates the cost of sequentially scanning the file, given that the cost
      * to read a page is costPerPageIO. You can assume that there are no seeks
@@ -206,10 +249,36 @@ public class TableStats {
     public double estimateScanCost() {
         // some code goes here
         //return 0;
-        double pageNum = tableFile_.numPages();
+        double pageNum = pageNum_;
         return 2.0 * pageNum * ioCostPerPage_;
     }
 
+    /**
+     * Estimates the cost of reading the tuples of a BTreeFile whose keys match
+     * an index predicate of the given selectivity: descending from the root
+     * to the first matching leaf, then following the leaf chain over that
+     * fraction of the pages. Each of these pages may lie anywhere in the file,
+     * so it costs {@link #RANDOM_IO_RATIO} times a page of
+     * {@link #estimateScanCost}.
+     *
+     * @param selectivity
+     *            The selectivity of the predicates the index serves
+     * @return The estimated cost of the index scan, or Double.MAX_VALUE if the
+     *         table is not a BTreeFile
+     */
+    public double estimateIndexScanCost(double selectivity) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId_);
+        if (!(file instanceof BTreeFile)) {
+            return Double.MAX_VALUE;
+        }
+        // 内部页的扇出:每项是一个键加一个子页指针
+        int keyLen = tableDesc_.getFieldType(((BTreeFile) file).keyField()).getLen();
+        double fanout = Math.max(2, BufferPool.getPageSize() / (keyLen + Type.INT_TYPE.getLen()));
+        double height = Math.max(1, Math.ceil(Math.log(Math.max(pageNum_, 1)) / Math.log(fanout)));
+        double leaves = Math.ceil(selectivity * pageNum_);
+        return (height + leaves) * 2.0 * ioCostPerPage_ * RANDOM_IO_RATIO;
+    }
+
     /**
      * This method returns the number of tuples in the relation, given that a
      * predicate with selectivity selectivityFactor is applied.
@@ -9,9 +9,10 @@ import simpledb.transaction.TransactionId;
 import java.io.*;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -29,8 +30,6 @@ import java.util.concurrent.locks.ReentrantLock;
 public class BufferPool {
     /** Bytes per page, including header. */
     private static final int DEFAULT_PAGE_SIZE = 4096;
-    private static final int MAX_TRYACQUIRE_NUM = 50000;
-    private static final long TIMEOUT = 2500;
 
     private static int pageSize = DEFAULT_PAGE_SIZE;
     
@@ -41,19 +40,50 @@ public class BufferPool {
     //private ArrayList<Page> pages_;
     private ConcurrentMap<Integer,Page> pages_;
     private int maxPageNum_;
-    private ConcurrentLinkedQueue<Integer> fifoQueue_;
+    private final EvictionPolicy evictionPolicy_;
     private LockManager lockManager_;
+    private final AtomicLong hitCount_;
+    private final AtomicLong missCount_;
+    /** 缓冲池每向磁盘写一次页面就加一,预读据此丢弃可能过期的页面 */
+    private final AtomicLong writeSeq_;
+    /** 预读进来但还没有被访问过的页面 */
+    private final Set<Integer> prefetched_;
+    /** 正在被预读的页面,getPage遇到时等待预读完成而不是重复读盘 */
+    private final ConcurrentMap<Integer,CompletableFuture<Page>> loading_;
+    private volatile boolean readAheadEnabled_;
+    private volatile ReadAhead readAhead_;
+    /** 每个事务以READ_WRITE取过或者更新过的页面,提交和中止时只需要看这些页面 */
+    private final ConcurrentMap<TransactionId,Set<PageId>> txnWritten_;
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Creates a BufferPool that caches up to numPages pages, using the
+     * scan-resistant 2Q policy to pick pages to evict.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
-        // some code goes here
+        this(numPages,new TwoQueueEvictionPolicy(numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts pages
+     * in the order chosen by the given policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param evictionPolicy the policy deciding which clean page to evict.
+     */
+    public BufferPool(int numPages, EvictionPolicy evictionPolicy) {
         pages_ = new ConcurrentHashMap<Integer,Page>();
         maxPageNum_ = numPages;
-        fifoQueue_ = new ConcurrentLinkedQueue<Integer>();
+        evictionPolicy_ = evictionPolicy;
         lockManager_ = new LockManager();
+        hitCount_ = new AtomicLong(0);
+        missCount_ = new AtomicLong(0);
+        writeSeq_ = new AtomicLong(0);
+        prefetched_ = ConcurrentHashMap.newKeySet();
+        loading_ = new ConcurrentHashMap<Integer,CompletableFuture<Page>>();
+        readAheadEnabled_ = true;
+        readAhead_ = null;
+        txnWritten_ = new ConcurrentHashMap<TransactionId,Set<PageId>>();
     }
     
     public static int getPageSize() {
@@ -70,6 +100,142 @@ public class BufferPool {
     	BufferPool.pageSize = DEFAULT_PAGE_SIZE;
     }
 
+    /** @return the most pages this pool caches */
+    public int getNumPages() {
+        return maxPageNum_;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy_;
+    }
+
+    /** @return the number of getPage calls served from the pool */
+    public long getHitCount() {
+        return hitCount_.get();
+    }
+
+    /** @return the number of getPage calls that had to read the page from disk */
+    public long getMissCount() {
+        return missCount_.get();
+    }
+
+    /** Turn read-ahead for sequential scans on or off. */
+    public void setReadAheadEnabled(boolean enabled) {
+        readAheadEnabled_ = enabled;
+    }
+
+    /**
+     * @return the read-ahead component scans report their pages to, or null
+     *         if read-ahead is turned off
+     */
+    public ReadAhead getReadAhead() {
+        if (!readAheadEnabled_) {
+            return null;
+        }
+        ReadAhead readAhead = readAhead_;
+        if (readAhead == null) {
+            synchronized (this) {
+                if (readAhead_ == null) {
+                    readAhead_ = new ReadAhead(this,ReadAhead.DEFAULT_THREADS);
+                }
+                readAhead = readAhead_;
+            }
+        }
+        return readAhead;
+    }
+
+    /**
+     * Remember that tid may dirty the page. Under strict two-phase locking a
+     * transaction can only dirty pages it fetched with READ_WRITE, so these
+     * are the only pages commit and abort have to look at.
+     */
+    private void recordWrite(TransactionId tid, PageId pid) {
+        if (tid != null) {
+            txnWritten_.computeIfAbsent(tid,k -> ConcurrentHashMap.newKeySet()).add(pid);
+        }
+    }
+
+    /** @return the most prefetched pages that may wait in the pool unused */
+    private int maxPrefetched() {
+        return Math.max(1,maxPageNum_ / 4);
+    }
+
+    /** @return the cached page, without locking or counting an access; for read-ahead */
+    Page peekPage(PageId pid) {
+        return pages_.get(pid.hashCode());
+    }
+
+    /**
+     * Read a page into the pool ahead of a scan. No lock is taken: the page is
+     * read as it is on disk, and is only added if no page was written since
+     * the read started and the page is still not cached.
+     * <p>
+     * A prefetched page never takes the place of a page in use. It goes into
+     * a free frame or replaces a clean page that no transaction but the
+     * scanning one holds a lock on and that is not itself an unused
+     * prefetched page. No more than a quarter of the pool may hold prefetched
+     * pages that were not used yet. A getPage call that misses on a page being
+     * prefetched waits for the prefetch instead of reading the page again.
+     *
+     * @param tid the transaction of the scan the page is read ahead for
+     * @return the cached page, or null if it could not be added
+     */
+    Page prefetchPage(PageId pid, TransactionId tid) {
+        if (prefetched_.size() >= maxPrefetched()) {
+            return null;
+        }
+        int hashcode = pid.hashCode();
+        CompletableFuture<Page> loading = new CompletableFuture<Page>();
+        if (loading_.putIfAbsent(hashcode,loading) != null) {
+            return null;
+        }
+        Page page = null;
+        try {
+            page = loadPrefetched(pid,hashcode,tid);
+            return page;
+        } finally {
+            loading_.remove(hashcode,loading);
+            loading.complete(page);
+        }
+    }
+
+    private Page loadPrefetched(PageId pid, int hashcode, TransactionId tid) {
+        long seq = writeSeq_.get();
+        Page cached = pages_.get(hashcode);
+        if (cached != null) {
+            return cached;
+        }
+        Page page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+        if (page == null) {
+            return null;
+        }
+        synchronized (this) {
+            cached = pages_.get(hashcode);
+            if (cached != null) {
+                return cached;
+            }
+            if (writeSeq_.get() != seq) {
+                return null;
+            }
+            if (pages_.size() >= maxPageNum_) {
+                Integer victim = evictionPolicy_.evict(hash -> {
+                    Page p = pages_.get(hash);
+                    return p == null || (p.isDirty() == null && !prefetched_.contains(hash)
+                            && !lockManager_.IsLockedByOther(hash,tid));
+                });
+                if (victim == null) {
+                    return null;
+                }
+                pages_.remove(victim);
+                prefetched_.remove(victim);
+            }
+            pages_.put(hashcode,page);
+            evictionPolicy_.recordInsert(hashcode);
+            prefetched_.add(hashcode);
+        }
+        return page;
+    }
+
     /**
      * Retrieve the specified page with the associated permissions.
      * Will acquire a lock and may block if that lock is held by another
@@ -89,32 +255,59 @@ public class BufferPool {
         throws TransactionAbortedException, DbException {
         // some code goes here
         //首先寻找有没有符合要求的
-        long requestSeq = lockManager_.AddRequest(pid,tid,perm);
-        long start = System.currentTimeMillis();
-        while (!lockManager_.AcquireLock(pid,tid,perm,requestSeq)){
-            long now = System.currentTimeMillis();
-            if (now - start > TIMEOUT) {
-                throw new TransactionAbortedException();
-            }
+        //拿不到锁时在该页面的等待队列上阻塞,被选为死锁的牺牲者时abort
+        if (!lockManager_.AcquireLock(pid,tid,perm)) {
+            throw new TransactionAbortedException();
+        }
+        if (perm == Permissions.READ_WRITE) {
+            recordWrite(tid,pid);
         }
         int hashcode = pid.hashCode();
-        if (pages_.containsKey(hashcode)) {
-            Page result = pages_.get(hashcode);
+        Page result = pages_.get(hashcode);
+        if (result != null) {
+            hitCount_.incrementAndGet();
+            evictionPolicy_.recordAccess(hashcode);
+            prefetched_.remove(hashcode);
             return result;
         }
-        //到了这里说明没有
-        int size = pages_.size();
-        if (size >= maxPageNum_) {
-            //throw new DbException(String.format("The pages.size is %d,add new page error from getPage",size));
-            evictPage();
+        //同一个页面同时只读一次盘:如果预读或者别的事务正在读这个页面,等它读完
+        CompletableFuture<Page> loading = new CompletableFuture<Page>();
+        CompletableFuture<Page> other;
+        while ((other = loading_.putIfAbsent(hashcode,loading)) != null) {
+            other.join();
+            Page cached = pages_.get(hashcode);
+            if (cached != null) {
+                hitCount_.incrementAndGet();
+                evictionPolicy_.recordAccess(hashcode);
+                prefetched_.remove(hashcode);
+                return cached;
+            }
         }
-        DbFile dbfile = Database.getCatalog().getDatabaseFile(pid.getTableId());
-        Page page = dbfile.readPage(pid);
-        pages_.put(hashcode,page);
-        if (!fifoQueue_.contains(hashcode)) {
-            fifoQueue_.add(hashcode);
+        Page page = null;
+        try {
+            Page cached = pages_.get(hashcode);
+            if (cached != null) {
+                hitCount_.incrementAndGet();
+                evictionPolicy_.recordAccess(hashcode);
+                prefetched_.remove(hashcode);
+                return page = cached;
+            }
+            //到了这里说明没有
+            missCount_.incrementAndGet();
+            int size = pages_.size();
+            if (size >= maxPageNum_) {
+                //throw new DbException(String.format("The pages.size is %d,add new page error from getPage",size));
+                evictPage();
+            }
+            DbFile dbfile = Database.getCatalog().getDatabaseFile(pid.getTableId());
+            page = dbfile.readPage(pid);
+            pages_.put(hashcode,page);
+            evictionPolicy_.recordInsert(hashcode);
+            return page;
+        } finally {
+            loading_.remove(hashcode,loading);
+            loading.complete(page);
         }
-        return page;
     }
 
     /**
@@ -162,6 +355,7 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid, boolean commit) {
         // some code goes here
         // not necessary for lab1|lab2
+        //只处理这个事务可能修改过的页面,不扫描整个缓冲池,也不持有缓冲池的锁
         if (commit) {
             try {
                 flushPages(tid);
@@ -175,6 +369,7 @@ public class BufferPool {
                 ioe.printStackTrace();
             }
         }
+        txnWritten_.remove(tid);
         lockManager_.ReleaseAllLocks(tid);
     }
 
@@ -193,21 +388,24 @@ public class BufferPool {
      *
      *
      */
-    private void updatePagePool(List<Page> pagelist,TransactionId tid) throws DbException{
+    private synchronized void updatePagePool(List<Page> pagelist,TransactionId tid) throws DbException{
         int size = pagelist.size();
         for (int i = 0 ; i < size; i ++) {
             Page page =  pagelist.get(i);
             page.markDirty(true,tid);
+            recordWrite(tid,page.getId());
             int hashcode = page.getId().hashCode(); //注意是要得出pid的hashcode
             if (pages_.containsKey(hashcode)) {
                 Page oldPage = pages_.get(hashcode);
                 oldPage = page; //更新
+                evictionPolicy_.recordAccess(hashcode);
             } else {
                 //暂且先不考虑超出的情况
                 if(pages_.size() >= maxPageNum_)  {
                     evictPage();
                 }
                 pages_.put(hashcode,page);
+                evictionPolicy_.recordInsert(hashcode);
             }
         }
     }
@@ -254,21 +452,25 @@ public class BufferPool {
     public synchronized void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-        Iterator<Integer> keysetIt = fifoQueue_.iterator();
-        while (keysetIt.hasNext()) {
-            int key = keysetIt.next();
-            Page page = pages_.get(key);
-            PageId pageId = page.getId();
-            DbFile file = Database.getCatalog().getDatabaseFile(pageId.getTableId());
-
+        List<Page> dirty = new ArrayList<Page>();
+        for (Page page : pages_.values()) {
             TransactionId dirtier = page.isDirty();
             if (dirtier != null) {
                 Database.getLogFile().logWrite(dirtier, page.getBeforeImage(),page);
-                Database.getLogFile().force();
-                file.writePage(page);
-                page.markDirty(false,null);
+                dirty.add(page);
             }
         }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        //先写日志:所有页面的日志记录只需要一次刷盘
+        Database.getLogFile().force();
+        for (Page page : dirty) {
+            DbFile file = Database.getCatalog().getDatabaseFile(page.getId().getTableId());
+            file.writePage(page);
+            writeSeq_.incrementAndGet();
+            page.markDirty(false,null);
+        }
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -283,17 +485,10 @@ public class BufferPool {
         // some code goes here
         // not necessary for lab1
         int hashcode = pid.hashCode();
-        if (pages_.containsKey(hashcode)) {
-            pages_.remove(hashcode);
-        } else {
-            return;
-        }
-        Iterator<Integer> it = fifoQueue_.iterator();
-        while (it.hasNext()) {
-            int hash = it.next();
-            if (hash == hashcode) {
-                it.remove();
-            }
+        writeSeq_.incrementAndGet();
+        prefetched_.remove(hashcode);
+        if (pages_.remove(hashcode) != null) {
+            evictionPolicy_.recordRemove(hashcode);
         }
     }
 
@@ -315,21 +510,34 @@ public class BufferPool {
                 Database.getLogFile().logWrite(dirtier, page.getBeforeImage(),page);
                 Database.getLogFile().force();
                 file.writePage(page);
+                writeSeq_.incrementAndGet();
                 page.markDirty(false,null);
             }
         } //写入
     }
 
-    private synchronized void RecoverPages(TransactionId tid) throws IOException {
-        Iterator<Page> pageIt = pages_.values().iterator();
-        while (pageIt.hasNext()) {
-            Page page =  pageIt.next();
-            if (tid.equals(page.isDirty())) { //只要等于tid就写回
+    /**
+     * Roll back the pages dirtied by tid to their before images.
+     * <p>
+     * Like {@link #flushPages}, this only looks at the pages tid fetched with
+     * READ_WRITE and does not hold the buffer pool monitor: tid holds
+     * exclusive locks on every page it dirtied, and with NO STEAL dirty pages
+     * are never evicted, so no other thread changes these pages meanwhile.
+     */
+    private void RecoverPages(TransactionId tid) throws IOException {
+        Set<PageId> written = txnWritten_.get(tid);
+        if (written == null) {
+            return;
+        }
+        for (PageId pid : written) {
+            Page page = pages_.get(pid.hashCode());
+            if (page != null && tid.equals(page.isDirty())) { //只要等于tid就写回
                 DbFile file = Database.getCatalog().getDatabaseFile(page.getId().getTableId());
                 try {
                     int hashcode = page.getId().hashCode();
                     Page hpage =  page.getBeforeImage();
                     file.writePage(hpage);
+                    writeSeq_.incrementAndGet();
                     pages_.put(hashcode,hpage);
                 } catch (IOException e) {
                     System.out.println("The flush page error in flushForTid");
@@ -340,27 +548,43 @@ public class BufferPool {
     }
 
     /** Write all pages of the specified transaction to disk.
+     * <p>
+     * Only the pages tid fetched with READ_WRITE or updated are looked at, so
+     * the cost depends on the pages the transaction touched, not on the size
+     * of the pool. See {@link #RecoverPages} for why no monitor is needed.
      */
-    public synchronized  void flushPages(TransactionId tid) throws IOException {
+    public void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
-        Iterator<Page> pageIt = pages_.values().iterator();
-        while (pageIt.hasNext()) {
-            Page page =  pageIt.next();
-            if (tid.equals(page.isDirty())) { //只要等于tid就写回
-                DbFile file = Database.getCatalog().getDatabaseFile(page.getId().getTableId());
-                try {
-                    Database.getLogFile().logWrite(tid, page.getBeforeImage(),page); //对日志每次进行写之前
-                    Database.getLogFile().force();
-                    file.writePage(page);
-                    page.setBeforeImage();
-                } catch (IOException e) {
-                    System.out.println("The flush page error in flushForTid");
-                    e.printStackTrace();
-                }
-                page.markDirty(false,null);
+        Set<PageId> written = txnWritten_.get(tid);
+        if (written == null) {
+            return;
+        }
+        List<Page> dirty = new ArrayList<Page>();
+        for (PageId pid : written) {
+            Page page = pages_.get(pid.hashCode());
+            if (page != null && tid.equals(page.isDirty())) { //只要等于tid就写回
+                Database.getLogFile().logWrite(tid, page.getBeforeImage(),page); //对日志每次进行写之前
+                dirty.add(page);
             }
         }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        //所有页面的日志记录一起刷盘,并且和并发提交的事务共享一次fsync
+        Database.getLogFile().force();
+        for (Page page : dirty) {
+            DbFile file = Database.getCatalog().getDatabaseFile(page.getId().getTableId());
+            try {
+                file.writePage(page);
+                writeSeq_.incrementAndGet();
+                page.setBeforeImage();
+            } catch (IOException e) {
+                System.out.println("The flush page error in flushForTid");
+                e.printStackTrace();
+            }
+            page.markDirty(false,null);
+        }
     }
 
     /**
@@ -370,17 +594,26 @@ public class BufferPool {
     private synchronized  void evictPage() throws DbException {
         // some code goes here
         // not necessary for lab1
-        Iterator<Integer> fifoIterator = fifoQueue_.iterator();
-        while (fifoIterator.hasNext()) {
-            int hash = fifoIterator.next();
-            Page page = pages_.get(hash);
-            if (page.isDirty() == null) {
-                fifoIterator.remove();
-                pages_.remove(hash);
+        //NO STEAL: 只能驱逐干净的页面;预读进来还没用过的页面留到最后再驱逐
+        while (true) {
+            Integer victim = evictionPolicy_.evict(hash -> {
+                Page page = pages_.get(hash);
+                return page == null || (page.isDirty() == null && !prefetched_.contains(hash));
+            });
+            if (victim == null) {
+                victim = evictionPolicy_.evict(hash -> {
+                    Page page = pages_.get(hash);
+                    return page == null || page.isDirty() == null;
+                });
+            }
+            if (victim == null) {
+                throw new DbException("no undirty page to evict");
+            }
+            prefetched_.remove(victim);
+            if (pages_.remove(victim) != null) {
                 return;
             }
         }
-        throw new DbException("no undirty page to evict");
     }
 
 }
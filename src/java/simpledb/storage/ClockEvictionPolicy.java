@@ -0,0 +1,131 @@
+package simpledb.storage;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * CLOCK (second chance) eviction. Resident pages sit in a circular array of
+ * frames, each with a reference bit. A hit only sets the bit, so the getPage
+ * path is O(1). On eviction the hand sweeps the frames, clearing set bits and
+ * taking the first page whose bit is already clear.
+ * <p>
+ * A freshly loaded page starts with a clear bit: a page touched exactly once
+ * (typically by a sequential scan) is evicted on the next sweep, while pages
+ * that were hit again since they were loaded survive it.
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+    private int[] keys_;
+    private boolean[] referenced_;
+    private boolean[] used_;
+    private int frameNum_;
+    private int hand_;
+    private final Map<Integer,Integer> frameOf_;
+    private final ArrayDeque<Integer> freeFrames_;
+
+    /**
+     * @param capacity the expected number of resident pages; the policy grows
+     *                 if the buffer pool temporarily holds more
+     */
+    public ClockEvictionPolicy(int capacity) {
+        int size = Math.max(capacity, 1);
+        keys_ = new int[size];
+        referenced_ = new boolean[size];
+        used_ = new boolean[size];
+        frameNum_ = 0;
+        hand_ = 0;
+        frameOf_ = new HashMap<Integer,Integer>();
+        freeFrames_ = new ArrayDeque<Integer>();
+    }
+
+    @Override
+    public synchronized void recordAccess(int key) {
+        Integer frame = frameOf_.get(key);
+        if (frame != null) {
+            referenced_[frame] = true;
+        }
+    }
+
+    @Override
+    public synchronized void recordInsert(int key) {
+        Integer frame = frameOf_.get(key);
+        if (frame != null) {
+            referenced_[frame] = true;
+            return;
+        }
+        int slot;
+        if (!freeFrames_.isEmpty()) {
+            slot = freeFrames_.poll();
+        } else {
+            if (frameNum_ == keys_.length) {
+                grow();
+            }
+            slot = frameNum_ ++;
+        }
+        keys_[slot] = key;
+        referenced_[slot] = false;
+        used_[slot] = true;
+        frameOf_.put(key,slot);
+    }
+
+    @Override
+    public synchronized void recordRemove(int key) {
+        Integer frame = frameOf_.remove(key);
+        if (frame != null) {
+            release(frame);
+        }
+    }
+
+    @Override
+    public synchronized Integer evict(IntPredicate evictable) {
+        if (frameOf_.isEmpty()) {
+            return null;
+        }
+        //两圈之内一定能把所有的引用位清空,再找不到说明全部不可驱逐
+        int steps = 2 * frameNum_;
+        for (int i = 0; i < steps; i ++) {
+            int slot = hand_;
+            hand_ = (hand_ + 1) % frameNum_;
+            if (!used_[slot]) {
+                continue;
+            }
+            if (referenced_[slot]) {
+                referenced_[slot] = false;
+                continue;
+            }
+            int key = keys_[slot];
+            if (evictable.test(key)) {
+                frameOf_.remove(key);
+                release(slot);
+                return key;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return "CLOCK";
+    }
+
+    private void release(int slot) {
+        used_[slot] = false;
+        referenced_[slot] = false;
+        freeFrames_.push(slot);
+    }
+
+    private void grow() {
+        int size = keys_.length * 2;
+        int[] keys = new int[size];
+        boolean[] referenced = new boolean[size];
+        boolean[] used = new boolean[size];
+        System.arraycopy(keys_,0,keys,0,frameNum_);
+        System.arraycopy(referenced_,0,referenced,0,frameNum_);
+        System.arraycopy(used_,0,used,0,frameNum_);
+        keys_ = keys;
+        referenced_ = referenced;
+        used_ = used;
+    }
+}
@@ -0,0 +1,56 @@
+package simpledb.storage;
+
+import java.util.function.IntPredicate;
+
+/**
+ * EvictionPolicy decides which resident page the BufferPool should drop when
+ * it is full. Pages are identified by the same key BufferPool uses for its
+ * page table (the hash code of the PageId).
+ * <p>
+ * The BufferPool tells the policy about every hit and every newly installed
+ * page; both notifications must run in O(1) since they sit on the getPage
+ * path. Only {@link #evict} is allowed to look at more than one page.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @see BufferPool#BufferPool(int, EvictionPolicy)
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Called when a page that is already resident is requested again.
+     *
+     * @param key the page table key of the page
+     */
+    void recordAccess(int key);
+
+    /**
+     * Called after a page has been installed in the buffer pool, either
+     * because it was read from disk or because a DbFile handed back a new page.
+     *
+     * @param key the page table key of the page
+     */
+    void recordInsert(int key);
+
+    /**
+     * Called when a page leaves the buffer pool without going through
+     * {@link #evict}, e.g. by BufferPool.discardPage.
+     *
+     * @param key the page table key of the page
+     */
+    void recordRemove(int key);
+
+    /**
+     * Pick a victim page and forget about it.
+     *
+     * @param evictable tells whether the page with the given key may be
+     *                  evicted right now (e.g. it is not dirty)
+     * @return the key of the chosen page, or null if no resident page is evictable
+     */
+    Integer evict(IntPredicate evictable);
+
+    /**
+     * @return the name of this policy, used by benchmarks and debugging output
+     */
+    String getName();
+}
@@ -0,0 +1,51 @@
+package simpledb.storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Evicts pages in the order they were brought into the buffer pool, ignoring
+ * later accesses. This is the policy BufferPool originally hard-coded; it is
+ * kept as a baseline for the scan-resistant policies.
+ */
+public class FifoEvictionPolicy implements EvictionPolicy {
+
+    private final LinkedHashSet<Integer> queue_;
+
+    public FifoEvictionPolicy() {
+        queue_ = new LinkedHashSet<Integer>();
+    }
+
+    @Override
+    public void recordAccess(int key) {
+    }
+
+    @Override
+    public synchronized void recordInsert(int key) {
+        queue_.add(key);
+    }
+
+    @Override
+    public synchronized void recordRemove(int key) {
+        queue_.remove(key);
+    }
+
+    @Override
+    public synchronized Integer evict(IntPredicate evictable) {
+        Iterator<Integer> it = queue_.iterator();
+        while (it.hasNext()) {
+            int key = it.next();
+            if (evictable.test(key)) {
+                it.remove();
+                return key;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return "FIFO";
+    }
+}
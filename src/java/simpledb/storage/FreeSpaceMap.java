@@ -0,0 +1,207 @@
+package simpledb.storage;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records how many empty tuple slots each page of a HeapFile has,
+ * so HeapFile.insertTuple can go straight to a page with room instead of
+ * reading every page of the file.
+ * <p>
+ * The map is kept in memory and updated by every insert and delete. It is
+ * also persisted next to the heap file, in a file with the suffix ".fsm" that
+ * starts with a header (the format and the length of the heap file it
+ * describes) followed by one int per page. An entry on disk is written
+ * whenever its page is written, so the persisted map always describes the
+ * pages as they are on disk. If the map file is missing, has the wrong number
+ * of entries, or a header that does not match the heap file, it is rebuilt
+ * from the page headers. Code that writes a heap file without going through
+ * HeapFile, such as HeapFileEncoder, must {@link #delete} its map first.
+ * <p>
+ * The map is only a hint: the caller must check the page itself once it holds
+ * the lock, and report back what it found with {@link #update}.
+ */
+public class FreeSpaceMap {
+
+    public static final String SUFFIX = ".fsm";
+
+    //文件头:格式和所描述的堆文件的长度
+    private static final int FORMAT = 0x46534d01;
+    private static final int HEADER_BYTES = 12;
+
+    private final File dataFile_;
+    private final PageChannel data_;
+    private final File mapFile_;
+    private final TupleDesc td_;
+    private int[] freeSlots_;
+    private int size_; //已知的页面数, -1表示还没有加载
+    private final BitSet hasSpace_;
+    private RandomAccessFile mapRaf_;
+
+    public FreeSpaceMap(File dataFile, PageChannel data, TupleDesc td) {
+        dataFile_ = dataFile;
+        data_ = data;
+        mapFile_ = new File(dataFile.getPath() + SUFFIX);
+        td_ = td;
+        freeSlots_ = new int[16];
+        size_ = -1;
+        hasSpace_ = new BitSet();
+        mapRaf_ = null;
+    }
+
+    /**
+     * Delete the map persisted for a heap file, which is about to be written
+     * by something other than HeapFile.
+     */
+    public static void delete(File dataFile) {
+        new File(dataFile.getPath() + SUFFIX).delete();
+    }
+
+    /** @return the file the map is persisted in */
+    public File getMapFile() {
+        return mapFile_;
+    }
+
+    /**
+     * Find a page with at least one empty slot.
+     *
+     * @param from the first page number to consider
+     * @param numPages the current number of pages in the heap file
+     * @return a page number in [from, numPages), or -1 if every page is full
+     */
+    public synchronized int nextPageWithSpace(int from, int numPages) throws IOException {
+        ensureLoaded(numPages);
+        int pgNo = hasSpace_.nextSetBit(from);
+        return (pgNo >= 0 && pgNo < numPages) ? pgNo : -1;
+    }
+
+    /** @return the number of empty slots recorded for the page */
+    public synchronized int getFreeSlots(int pgNo) throws IOException {
+        ensureLoaded(pagesOnDisk());
+        return pgNo < size_ ? freeSlots_[pgNo] : 0;
+    }
+
+    /**
+     * Record the number of empty slots of a page as seen in the buffer pool.
+     */
+    public synchronized void update(int pgNo, int freeSlots) {
+        grow(pgNo + 1);
+        set(pgNo,freeSlots);
+    }
+
+    /**
+     * Record the number of empty slots of a page that was just written to
+     * disk, and persist the entry.
+     */
+    public synchronized void pageWritten(int pgNo, int freeSlots) throws IOException {
+        ensureLoaded(pagesOnDisk());
+        update(pgNo,freeSlots);
+        writeEntry(pgNo,freeSlots);
+        writeHeader();
+    }
+
+    /** Close the map file; it is reopened on the next write. */
+    public synchronized void close() throws IOException {
+        if (mapRaf_ != null) {
+            mapRaf_.close();
+            mapRaf_ = null;
+        }
+    }
+
+    private void set(int pgNo, int freeSlots) {
+        freeSlots_[pgNo] = freeSlots;
+        hasSpace_.set(pgNo,freeSlots > 0);
+    }
+
+    private void grow(int pages) {
+        if (pages > freeSlots_.length) {
+            freeSlots_ = Arrays.copyOf(freeSlots_,Math.max(pages,freeSlots_.length * 2));
+        }
+        if (size_ >= 0 && pages > size_) {
+            size_ = pages;
+        }
+    }
+
+    private int pagesOnDisk() {
+        return (int) (data_.length() / BufferPool.getPageSize());
+    }
+
+    private void ensureLoaded(int numPages) throws IOException {
+        if (size_ < 0) {
+            load(numPages);
+        } else if (numPages > size_) {
+            //有页面绕过了HeapFile被追加到了文件末尾
+            int known = size_;
+            grow(numPages);
+            scanHeaders(known,numPages);
+        }
+    }
+
+    private void load(int numPages) throws IOException {
+        grow(numPages);
+        if (mapFile_.exists() && mapFile_.length() == HEADER_BYTES + 4L * numPages) {
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(mapFile_)));
+            try {
+                if (dis.readInt() == FORMAT && dis.readLong() == data_.length()) {
+                    for (int i = 0; i < numPages; i ++) {
+                        set(i,dis.readInt());
+                    }
+                    size_ = numPages;
+                    return;
+                }
+            } finally {
+                dis.close();
+            }
+        }
+        size_ = numPages;
+        scanHeaders(0,numPages);
+        openMap().setLength(0);
+        writeHeader();
+        for (int i = 0; i < numPages; i ++) {
+            writeEntry(i,freeSlots_[i]);
+        }
+    }
+
+    /** Rebuild entries [from, to) from the header bitmaps of the pages on disk. */
+    private void scanHeaders(int from, int to) throws IOException {
+        if (from >= to) {
+            return;
+        }
+        int pageSize = BufferPool.getPageSize();
+        int numSlots = (pageSize * 8) / (td_.getSize() * 8 + 1);
+        byte[] header = new byte[(numSlots + 7) / 8];
+        for (int pgNo = from; pgNo < to; pgNo ++) {
+            if (data_.read((long) pageSize * pgNo,header) < header.length) {
+                throw new EOFException("page " + pgNo + " of " + dataFile_ + " is truncated");
+            }
+            int used = 0;
+            for (int slot = 0; slot < numSlots; slot ++) {
+                if (((header[slot / 8] >> (slot % 8)) & 1) == 1) {
+                    used ++;
+                }
+            }
+            set(pgNo,numSlots - used);
+        }
+    }
+
+    private void writeEntry(int pgNo, int freeSlots) throws IOException {
+        RandomAccessFile raf = openMap();
+        raf.seek(HEADER_BYTES + 4L * pgNo);
+        raf.writeInt(freeSlots);
+    }
+
+    private void writeHeader() throws IOException {
+        RandomAccessFile raf = openMap();
+        raf.seek(0);
+        raf.writeInt(FORMAT);
+        raf.writeLong(data_.length());
+    }
+
+    private RandomAccessFile openMap() throws IOException {
+        if (mapRaf_ == null) {
+            mapRaf_ = new RandomAccessFile(mapFile_,"rw");
+        }
+        return mapRaf_;
+    }
+}
@@ -8,6 +8,7 @@ import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -33,12 +34,33 @@ public class HeapFile implements DbFile {
     private File file_;
     private TupleDesc tupleDesc_;
     private int heapId_;
+    private final PageChannel channel_;
+    private final FreeSpaceMap freeSpaceMap_;
+    private final boolean mmap_;
 
     public HeapFile(File f, TupleDesc td) {
+        this(f,td,false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     * @param mmap
+     *            if true, pages are read through a memory mapping of the
+     *            file instead of read system calls. This suits read-mostly
+     *            tables; writes still go through the file channel.
+     */
+    public HeapFile(File f, TupleDesc td, boolean mmap) {
         // some code goes here
         file_ = f;
         heapId_ = f.getAbsoluteFile().hashCode(); //用来进行唯一的标识
         tupleDesc_ = td;
+        channel_ = new PageChannel(f);
+        freeSpaceMap_ = new FreeSpaceMap(f,channel_,td);
+        mmap_ = mmap;
     }
 
     /**
@@ -51,6 +73,20 @@ public class HeapFile implements DbFile {
         return file_;
     }
 
+    /**
+     * Returns true if pages of this HeapFile are read through a memory mapping.
+     */
+    public boolean isMemoryMapped() {
+        return mmap_;
+    }
+
+    /**
+     * Returns the map of empty slots per page used to place inserted tuples.
+     */
+    public FreeSpaceMap getFreeSpaceMap() {
+        return freeSpaceMap_;
+    }
+
     /**
      * Returns an ID uniquely identifying this HeapFile. Implementation note:
      * you will need to generate this tableid somewhere to ensure that each
@@ -81,48 +117,71 @@ public class HeapFile implements DbFile {
     public Page readPage(PageId pid) { //从file里面提取出来相应的page
         // some code goes here
         int tableId = pid.getTableId(),pgNo = pid.getPageNumber(),pgsize = BufferPool.getPageSize();
-        int fileLen = (int) file_.length();
-        //System.out.println(String.format("pid,tableId: %d,pgNo: %d,size: %d,pageSize: %d",tableId,pgNo,fileLen,pgsize));
-        if ((pgNo + 1) * pgsize > fileLen) {
-            //System.out.println(String.format("Over the length from readPage,%d,%d",(pgNo + 1)*pgsize,fileLen));
-            return null;
-        }
         try {
-            RandomAccessFile raf = new RandomAccessFile(file_,"r");
-            int offset = BufferPool.getPageSize() * pgNo;
-            raf.seek(offset);
+            long offset = (long) pgsize * pgNo;
+            if (offset + pgsize > channel_.length() && offset + pgsize > channel_.refreshLength()) {
+                return null;
+            }
+            if (mmap_) {
+                ByteBuffer mapped = channel_.map(offset,pgsize);
+                if (mapped != null) {
+                    return new HeapPage(new HeapPageId(tableId,pgNo),mapped);
+                }
+            }
             byte[] data = new byte[pgsize];
-            raf.read(data,0,pgsize);
-            HeapPageId hpId = new HeapPageId(tableId,pgNo);
-            HeapPage heapPage = new HeapPage(hpId,data);
-            raf.close();
-            return heapPage;
-        } catch (Exception e) {
-            //System.out.println();
+            if (channel_.read(offset,data) < pgsize) {
+                return null;
+            }
+            return new HeapPage(new HeapPageId(tableId,pgNo),data);
+        } catch (IOException e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * Read count adjacent pages starting at pgNo with one scattering read.
+     * Like readPage, this bypasses the buffer pool and takes no locks.
+     *
+     * @return the pages read, fewer than count if the file ends first
+     */
+    public List<Page> readPages(int pgNo, int count) throws IOException {
+        int pgsize = BufferPool.getPageSize();
+        count = Math.max(0,Math.min(count,numPages() - pgNo));
+        if (mmap_) {
+            //映射模式下逐页构建即可,没有系统调用需要合并
+            List<Page> pages = new ArrayList<Page>(count);
+            for (int i = 0; i < count; i ++) {
+                pages.add(readPage(new HeapPageId(heapId_,pgNo + i)));
+            }
+            return pages;
+        }
+        byte[][] data = new byte[count][pgsize];
+        int read = channel_.read((long) pgsize * pgNo,data);
+        List<Page> pages = new ArrayList<Page>(read);
+        for (int i = 0; i < read; i ++) {
+            pages.add(new HeapPage(new HeapPageId(heapId_,pgNo + i),data[i]));
+        }
+        return pages;
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException { //写入一个新的page
         // some code goes here
         // not necessary for lab1
         int pageNum = page.getId().getPageNumber();
-        RandomAccessFile raf = new RandomAccessFile(file_,"rw");
-        int offset = BufferPool.getPageSize() * pageNum;
-        raf.seek(offset);
-        raf.write(page.getPageData());
+        channel_.write((long) BufferPool.getPageSize() * pageNum,page.getPageData());
+        if (page instanceof HeapPage) {
+            freeSpaceMap_.pageWritten(pageNum,((HeapPage) page).getNumEmptySlots());
+        }
     }
 
     /**
      * Returns the number of pages in this HeapFile.
      */
-    public int numPages() { //根据这个文件的大小计算出来即可
+    public int numPages() { //根据缓存的文件长度计算出来即可
         // some code goes here
-        //System.out.println(file_.length());
-        int num = (int) Math.floor(file_.length() * 1.0 / BufferPool.getPageSize());
-        return num;
+        return (int) (channel_.length() / BufferPool.getPageSize());
     }
 
     // see DbFile.java for javadocs
@@ -131,31 +190,40 @@ public class HeapFile implements DbFile {
         // some code goes here
         // not necessary for lab1
         List<Page> list = new ArrayList<Page>();
-        HeapPage result = null;
-        RecordId recordId = t.getRecordId();
-        int pageNum = numPages(),i;
-        for (i = 0; i <pageNum; i ++) {
-            HeapPageId pageId = new HeapPageId(heapId_,i);
-            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,pageId,Permissions.READ_ONLY);
+        BufferPool bufferPool = Database.getBufferPool();
+        //通过free space map直接找到有空位的页面,而不是逐页扫描
+        int pgNo = freeSpaceMap_.nextPageWithSpace(0,numPages());
+        while (pgNo != -1) {
+            HeapPageId pageId = new HeapPageId(heapId_,pgNo);
+            boolean held = bufferPool.holdsLock(tid,pageId);
+            HeapPage page = (HeapPage) bufferPool.getPage(tid,pageId,Permissions.READ_WRITE);
             if (page.getNumEmptySlots() > 0) {
-                page = (HeapPage) Database.getBufferPool().getPage(tid,pageId,Permissions.READ_WRITE);
                 page.insertTuple(t);
-                result = page;
-                break;
-            } else {
-                Database.getBufferPool().unsafeReleasePage(tid,pageId);//将这个锁释放掉
+                freeSpaceMap_.update(pgNo,page.getNumEmptySlots());
+                list.add(page);
+                return list;
             }
+            freeSpaceMap_.update(pgNo,0);
+            if (!held) {
+                bufferPool.unsafeReleasePage(tid,pageId);//没有修改这个页面,将这个锁释放掉
+            }
+            pgNo = freeSpaceMap_.nextPageWithSpace(pgNo + 1,numPages());
         }
-        if (i >= pageNum) { //需要增加新的页,前面的已经写满了,这个地方由于没有经过getPage获得锁就进行了写,所以需要考虑加锁
-            HeapPageId heapPageId = new HeapPageId(heapId_,i);
-            HeapPage newPgae = new HeapPage(heapPageId,HeapPage.createEmptyPageData());
-            newPgae.insertTuple(t);
-            writePage(newPgae);
-            newPgae = (HeapPage) Database.getBufferPool().getPage(tid,heapPageId,Permissions.READ_ONLY);
-            result = newPgae;
+        //前面的页都已经写满了,在文件末尾追加一个空页,再通过getPage加锁后写入
+        while (true) {
+            HeapPageId heapPageId;
+            synchronized (this) {
+                heapPageId = new HeapPageId(heapId_,numPages());
+                writePage(new HeapPage(heapPageId,HeapPage.createEmptyPageData()));
+            }
+            HeapPage newPage = (HeapPage) bufferPool.getPage(tid,heapPageId,Permissions.READ_WRITE);
+            if (newPage.getNumEmptySlots() > 0) {
+                newPage.insertTuple(t);
+                freeSpaceMap_.update(heapPageId.getPageNumber(),newPage.getNumEmptySlots());
+                list.add(newPage);
+                return list;
+            }
         }
-        list.add(result);
-        return list;
     }
 
     // see DbFile.java for javadocs
@@ -170,6 +238,7 @@ public class HeapFile implements DbFile {
         result = (HeapPage) Database.getBufferPool().getPage(tid,pageid,Permissions.READ_WRITE);
         result.markDirty(true,tid);
         result.deleteTuple(t);
+        freeSpaceMap_.update(pageid.getPageNumber(),result.getNumEmptySlots());
 
         list.add(result);
         return list;
@@ -180,5 +249,13 @@ public class HeapFile implements DbFile {
         // some code goes here
         return new HeapFileIterator(this,tid);
     }
+
+    /**
+     * @return an iterator over the tuples of pages firstPage to endPage - 1,
+     *         for scanning parts of the file in parallel
+     */
+    public DbFileIterator iterator(TransactionId tid, int firstPage, int endPage) {
+        return new HeapFileIterator(this,tid,firstPage,endPage);
+    }
 }
 
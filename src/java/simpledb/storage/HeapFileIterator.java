@@ -6,72 +6,109 @@ import simpledb.common.Permissions;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
+/**
+ * Iterates over the tuples of a HeapFile page by page, or over those of a
+ * range of its pages.
+ */
 public class HeapFileIterator implements DbFileIterator{
 
     private HeapFile hpFile_;
     private TransactionId tid_;
     private Iterator<Tuple> tupleIterator_;
     private int currPageNo_;
+    private ReadAhead.Stream readAhead_;
+    private final int firstPage_;
+    private final int endPage_; //-1表示一直到文件末尾
 
     public HeapFileIterator(HeapFile file,TransactionId tid) {
+        this(file,tid,0,-1);
+    }
+
+    /**
+     * An iterator over the tuples of pages firstPage to endPage - 1 of file;
+     * an endPage of -1 means up to the last page.
+     */
+    public HeapFileIterator(HeapFile file,TransactionId tid,int firstPage,int endPage) {
         hpFile_ = file;
         tid_ = tid;
         tupleIterator_ = null;
-        currPageNo_ = 0;
+        firstPage_ = firstPage;
+        endPage_ = endPage;
+        currPageNo_ = firstPage;
+        readAhead_ = null;
+    }
+
+    /** @return one past the last page to read */
+    private int endPage() {
+        int numPages = hpFile_.numPages();
+        return endPage_ < 0 ? numPages : Math.min(endPage_,numPages);
     }
 
     private Iterator<Tuple> getTupleIterator(int pgno) throws TransactionAbortedException,DbException {
         HeapPageId pgId = new HeapPageId(hpFile_.getId(),pgno);
-        Page page = Database.getBufferPool().getPage(tid_,pgId, Permissions.READ_WRITE); //这个地方应该和bufferpool直接交互
+        //扫描只需要共享锁,删除或者插入修改页面时再升级为排他锁
+        Page page = Database.getBufferPool().getPage(tid_,pgId, Permissions.READ_ONLY);
         HeapPage heapPage = (HeapPage) page;
         if (page == null) {
             System.out.println("The heapPage is null");
         }
+        if (readAhead_ != null) {
+            readAhead_.access(pgId,page);
+        }
         return heapPage.iterator();
     }
 
 
     @Override
     public void open() throws DbException, TransactionAbortedException {
-        currPageNo_ = 0;
+        currPageNo_ = firstPage_;
+        //整个文件时保持原来的行为,空的范围不取任何页面
+        boolean range = firstPage_ > 0 || endPage_ >= 0;
+        if (range && firstPage_ >= endPage()) {
+            tupleIterator_ = Collections.emptyIterator();
+            return;
+        }
+        ReadAhead readAhead = Database.getBufferPool().getReadAhead();
+        if (readAhead != null) {
+            int tableId = hpFile_.getId();
+            readAhead_ = readAhead.newStream(tid_,(pid,page) -> {
+                int next = pid.getPageNumber() + 1;
+                return next < endPage() ? new HeapPageId(tableId,next) : null;
+            });
+        }
         tupleIterator_ = getTupleIterator(currPageNo_);
     }
 
     @Override
     public boolean hasNext() throws DbException, TransactionAbortedException {
-        if (tupleIterator_ != null && tupleIterator_.hasNext()) {
-            return true;
+        if (tupleIterator_ == null) {
+            return false;
         }
-        while (currPageNo_ + 1 < hpFile_.numPages()) {
-            Iterator<Tuple> nextIt = getTupleIterator(currPageNo_ + 1);
-            if (nextIt != null && nextIt.hasNext()) {
-                return true;
+        //留住取到的页面迭代器,next()不需要再取一次页面
+        while (!tupleIterator_.hasNext()) {
+            if (currPageNo_ + 1 >= endPage()) {
+                return false;
             }
-            currPageNo_ += 1;
+            currPageNo_ ++;
+            tupleIterator_ = getTupleIterator(currPageNo_);
         }
-        return false;
+        return true;
     }
 
     @Override
     public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
-        //return null;
         if(tupleIterator_ == null) {
             throw new NoSuchElementException("The tupleIterator is null from HeapFileIterator");
         }
-        if (tupleIterator_.hasNext()) {
-            return tupleIterator_.next();
-        }
-        //考虑进入下一页
-        if(currPageNo_ + 1 < hpFile_.numPages()) {
-            currPageNo_ ++;
-            tupleIterator_ = getTupleIterator(currPageNo_);
-            return tupleIterator_.next();
+        if (!hasNext()) {
+            //已经没有下一页了
+            throw new NoSuchElementException("Not have next Page from tupleIterator next");
         }
-        //已经没有下一页了
-        throw new NoSuchElementException("Not have next Page from tupleIterator next");
+        return tupleIterator_.next();
     }
 
     @Override
@@ -82,7 +119,8 @@ public class HeapFileIterator implements DbFileIterator{
 
     @Override
     public void close() {
-        currPageNo_ = 0;
+        currPageNo_ = firstPage_;
         tupleIterator_ = null;
+        readAhead_ = null;
     }
 }
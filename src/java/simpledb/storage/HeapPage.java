@@ -5,6 +5,7 @@ import simpledb.transaction.TransactionId;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
@@ -45,10 +46,27 @@ public class HeapPage implements Page {
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id,new DataInputStream(new ByteArrayInputStream(data)));
+        setBeforeImage();
+    }
+
+    /**
+     * Create a HeapPage directly over a region of a memory mapped HeapFile,
+     * without copying the page into a byte array first. The region is only
+     * read while the page is constructed.
+     * <p>
+     * No before image is taken up front: as long as the page is unmodified it
+     * is its own before image, and the first insert or delete copies it (see
+     * {@link #setBeforeImage}). Clean mapped pages therefore cost no copy at all.
+     */
+    public HeapPage(HeapPageId id, ByteBuffer mapped) throws IOException {
+        this(id,new DataInputStream(new ByteBufferInputStream(mapped.duplicate())));
+    }
+
+    private HeapPage(HeapPageId id, DataInputStream dis) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
 
         // allocate and read the header slots of this page
         header = new byte[getHeaderSize()]; //这个getHeaderSize怎么实现呢？？
@@ -66,7 +84,37 @@ public class HeapPage implements Page {
         dis.close();
         lastTid_ = null;
         isdirty_ = false;
-        setBeforeImage();
+    }
+
+    /** Reads a ByteBuffer, e.g. a mapped region of a file, as an InputStream. */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf_;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            buf_ = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf_.hasRemaining() ? buf_.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf_.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len,buf_.remaining());
+            buf_.get(b,off,len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0,Math.min(n,buf_.remaining()));
+            buf_.position(buf_.position() + k);
+            return k;
+        }
     }
 
     /** Retrieve the number of tuples on this page.
@@ -94,6 +142,10 @@ public class HeapPage implements Page {
             {
                 oldDataRef = oldData;
             }
+            if (oldDataRef == null) {
+                //映射的页面在第一次修改之前就是它自己的before image
+                oldDataRef = getPageData();
+            }
             return new HeapPage(pid,oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
@@ -7,6 +7,8 @@ import simpledb.transaction.TransactionId;
 import simpledb.common.Debug;
 
 import java.io.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.lang.reflect.*;
 
@@ -37,6 +39,21 @@ must not be declared synchronized and must begin with a block like:
        }
     }
 </pre>
+
+<u> Group commit: </u>
+<p>
+
+{@link #force} makes every record appended so far durable, but
+concurrent callers share fsyncs instead of issuing one each.  The first
+caller that finds the log not yet durable up to its last record becomes
+the leader: it may wait up to the configured flush wait for more
+callers to join, then fsyncs once, covering every record appended
+before the fsync started.  The other callers wait for a flush that
+covers their records.  Records are counted with a sequence number
+rather than a file offset, since offsets change when the log is
+truncated.  A caller that holds the LogFile monitor cannot wait for a
+leader (the leader needs the monitor to see which records exist), so
+it fsyncs by itself.
 */
 
 /**
@@ -96,6 +113,22 @@ public class LogFile {
 
     final Map<Long,Long> tidToFirstLogRecord = new HashMap<>();
 
+    /** Default time a group commit leader waits for more committers to join. */
+    public static final long DEFAULT_FLUSH_WAIT_MICROS = 0;
+    /** Default number of waiting committers after which the leader flushes at once. */
+    public static final int DEFAULT_MAX_BATCH = 64;
+
+    long appended = 0; //追加过的记录数,不随日志截断而变化 //protected by this
+    private final Object flushLock = new Object(); //以下字段由flushLock保护
+    private long durable = 0; //已经刷到磁盘上的记录数
+    private long failedAt = 0; //刷盘失败时要刷到的记录数,这之前没刷成的记录不能当作已经刷盘
+    private IOException failure = null;
+    private boolean flushing = false;
+    private int waiting = 0;
+    private long forces = 0;
+    private volatile long flushWaitMicros = DEFAULT_FLUSH_WAIT_MICROS;
+    private volatile int maxBatch = DEFAULT_MAX_BATCH;
+
     /** Constructor.
         Initialize and back the log file with the specified file.
         We're not sure yet whether the caller is creating a brand new DB,
@@ -128,6 +161,7 @@ public class LogFile {
     // the log.
     void preAppend() throws IOException { //将会直接往后追加一个recard
         totalRecords++;
+        appended++;
         if(recoveryUndecided){ //将日志刷新
             recoveryUndecided = false;
             raf.seek(0);
@@ -141,6 +175,28 @@ public class LogFile {
     public synchronized int getTotalRecords() {
         return totalRecords;
     }
+
+    /**
+     * Configure group commit.
+     *
+     * @param flushWaitMicros how long a leader waits for more committers
+     *        before it fsyncs; 0 flushes at once, batching only the callers
+     *        that arrived during the previous fsync
+     * @param maxBatch the number of waiting callers at which the leader stops
+     *        waiting; 1 or less turns group commit off, so that every force
+     *        does its own fsync
+     */
+    public void setGroupCommit(long flushWaitMicros, int maxBatch) {
+        this.flushWaitMicros = flushWaitMicros;
+        this.maxBatch = maxBatch;
+    }
+
+    /** @return the number of fsyncs issued for the log so far */
+    public long getForceCount() {
+        synchronized (flushLock) {
+            return forces;
+        }
+    }
     
     /** Write an abort record to the log for the specified tid, force
         the log to disk, and perform a rollback
@@ -171,20 +227,23 @@ public class LogFile {
     }
 
     /** Write a commit record to disk for the specified tid,
-        and force the log to disk.
+        and force the log to disk.  The force happens outside the
+        LogFile monitor, so that concurrent commits share one fsync.
 
         @param tid The committing transaction.
     */
-    public synchronized void logCommit(TransactionId tid) throws IOException {
-        preAppend();
-        Debug.log("COMMIT " + tid.getId());
-        //should we verify that this is a live transaction?
-        raf.writeInt(COMMIT_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(currentOffset);
-        currentOffset = raf.getFilePointer();
+    public void logCommit(TransactionId tid) throws IOException {
+        synchronized (this) {
+            preAppend();
+            Debug.log("COMMIT " + tid.getId());
+            //should we verify that this is a live transaction?
+            raf.writeInt(COMMIT_RECORD);
+            raf.writeLong(tid.getId());
+            raf.writeLong(currentOffset);
+            currentOffset = raf.getFilePointer();
+            tidToFirstLogRecord.remove(tid.getId());
+        }
         force();
-        tidToFirstLogRecord.remove(tid.getId());
     }
 
     /** Write an UPDATE record to disk for the specified tid and page
@@ -264,7 +323,7 @@ public class LogFile {
             }
             pid = (PageId)idConsts[0].newInstance(idArgs);
 
-            Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
+            Constructor<?> pageConst = pageClass.getConstructor(pid.getClass(), byte[].class);
             int pageSize = raf.readInt();
 
             byte[] pageData = new byte[pageSize];
@@ -274,10 +333,10 @@ public class LogFile {
             pageArgs[0] = pid;
             pageArgs[1] = pageData;
 
-            newPage = (Page)pageConsts[0].newInstance(pageArgs);
+            newPage = (Page)pageConst.newInstance(pageArgs);
 
             //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
-        } catch (ClassNotFoundException | InvocationTargetException | IllegalAccessException | InstantiationException e){
+        } catch (ClassNotFoundException | NoSuchMethodException | InvocationTargetException | IllegalAccessException | InstantiationException e){
             e.printStackTrace();
             throw new IOException();
         }
@@ -429,6 +488,10 @@ public class LogFile {
         }
 
         Debug.log("TRUNCATING LOG;  WAS " + raf.length() + " BYTES ; NEW START : " + minLogRecord + " NEW LENGTH: " + (raf.length() - minLogRecord));
+        //新日志在替换旧日志之前刷盘,这样截断之前追加的记录都已经持久化了
+        logNew.getChannel().force(true);
+        logNew.close();
+        markDurable(appended);
         raf.close();
         logFile.delete();
         newFile.renameTo(logFile);
@@ -701,8 +764,124 @@ public class LogFile {
         raf.seek(curOffset);
     }
 
-    public  synchronized void force() throws IOException {
-        raf.getChannel().force(true);
+    /**
+     * Force every record appended so far to disk. Concurrent callers share
+     * fsyncs; see the group commit note at the top of this file.
+     */
+    public void force() throws IOException {
+        if (Thread.holdsLock(this)) {
+            //持有LogFile的锁时不能等待leader,自己刷盘
+            long target = appended;
+            sync(raf.getChannel());
+            markDurable(target);
+            return;
+        }
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        if (maxBatch <= 1) {
+            synchronized (this) {
+                sync(raf.getChannel());
+                markDurable(appended);
+            }
+            return;
+        }
+        synchronized (flushLock) {
+            while (durable < target) {
+                if (target <= failedAt) {
+                    throw new IOException("fsync of the log failed", failure);
+                }
+                if (!flushing) {
+                    flushing = true;
+                    break;
+                }
+                waiting++;
+                if (waiting + 1 >= maxBatch) {
+                    //加上leader凑够了一批,叫醒正在等待的leader
+                    flushLock.notifyAll();
+                }
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                } finally {
+                    waiting--;
+                }
+            }
+            if (durable >= target) {
+                return;
+            }
+        }
+        lead();
+    }
+
+    /**
+     * Flush for everyone waiting: wait for the batch to fill, then fsync once.
+     * If the fsync fails, the waiters whose records it was to cover throw
+     * instead of returning.
+     */
+    private void lead() throws IOException {
+        long end = -1;
+        boolean synced = false;
+        try {
+            long waitMicros = flushWaitMicros;
+            if (waitMicros > 0) {
+                synchronized (flushLock) {
+                    long deadline = System.nanoTime() + waitMicros * 1000;
+                    long left;
+                    while (waiting + 1 < maxBatch && (left = deadline - System.nanoTime()) > 0) {
+                        flushLock.wait(left / 1000000, (int) (left % 1000000));
+                    }
+                }
+            }
+            FileChannel channel;
+            synchronized (this) {
+                //持有monitor时没有写了一半的记录
+                end = appended;
+                channel = raf.getChannel();
+            }
+            try {
+                sync(channel);
+            } catch (ClosedChannelException e) {
+                //日志被截断了,截断时已经刷过盘
+            } catch (IOException e) {
+                synchronized (flushLock) {
+                    failedAt = Math.max(failedAt, end);
+                    failure = e;
+                }
+                throw e;
+            }
+            synced = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            synchronized (flushLock) {
+                flushing = false;
+                if (synced && end > durable) {
+                    durable = end;
+                }
+                flushLock.notifyAll();
+            }
+        }
+    }
+
+    private void sync(FileChannel channel) throws IOException {
+        channel.force(true);
+        synchronized (flushLock) {
+            forces++;
+        }
+    }
+
+    private void markDurable(long upTo) {
+        synchronized (flushLock) {
+            if (upTo > durable) {
+                durable = upTo;
+            }
+            flushLock.notifyAll();
+        }
     }
 
 }
@@ -0,0 +1,149 @@
+package simpledb.storage;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * LRU-K eviction (O'Neil, O'Neil and Weikum). The victim is the page whose
+ * K-th most recent reference is the oldest. Pages referenced fewer than K
+ * times have an infinite backward K-distance and are evicted first, in LRU
+ * order, so a page read once by a scan never displaces a page that has been
+ * referenced K times.
+ * <p>
+ * Pages with fewer than K references live in an access-ordered list, so
+ * eviction in the common case (a scan flowing through the pool) is O(1). Only
+ * when no such page can be evicted does the policy scan the remaining pages
+ * for the oldest K-th reference. The reference history of evicted pages is
+ * kept for up to {@code capacity} pages, so a page that is re-read soon after
+ * being evicted is recognised as hot.
+ */
+public class LruKEvictionPolicy implements EvictionPolicy {
+
+    public static final int DEFAULT_K = 2;
+
+    private final int k_;
+    private long clock_;
+    /** 每个常驻页面最近K次访问的逻辑时间, history[0]为最近一次, 0表示没有 */
+    private final Map<Integer,long[]> history_;
+    private final LinkedHashSet<Integer> cold_;
+    private final Set<Integer> hot_;
+    private final LinkedHashMap<Integer,long[]> retained_;
+
+    public LruKEvictionPolicy(int capacity) {
+        this(capacity,DEFAULT_K);
+    }
+
+    /**
+     * @param capacity the number of pages in the buffer pool; also bounds the
+     *                 history kept for evicted pages
+     * @param k the number of references tracked per page, at least 1
+     */
+    public LruKEvictionPolicy(final int capacity, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("LRU-K needs k >= 1");
+        }
+        k_ = k;
+        clock_ = 0;
+        history_ = new HashMap<Integer,long[]>();
+        cold_ = new LinkedHashSet<Integer>();
+        hot_ = new HashSet<Integer>();
+        retained_ = new LinkedHashMap<Integer,long[]>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer,long[]> eldest) {
+                return size() > Math.max(capacity,1);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void recordAccess(int key) {
+        long[] refs = history_.get(key);
+        if (refs == null) {
+            return;
+        }
+        reference(refs);
+        classify(key,refs);
+    }
+
+    @Override
+    public synchronized void recordInsert(int key) {
+        long[] refs = history_.get(key);
+        if (refs == null) {
+            refs = retained_.remove(key);
+            if (refs == null) {
+                refs = new long[k_];
+            }
+            history_.put(key,refs);
+        }
+        reference(refs);
+        classify(key,refs);
+    }
+
+    @Override
+    public synchronized void recordRemove(int key) {
+        forget(key);
+    }
+
+    @Override
+    public synchronized Integer evict(IntPredicate evictable) {
+        Iterator<Integer> it = cold_.iterator();
+        while (it.hasNext()) {
+            int key = it.next();
+            if (evictable.test(key)) {
+                forget(key);
+                return key;
+            }
+        }
+        Integer victim = null;
+        long oldest = Long.MAX_VALUE;
+        for (int key : hot_) {
+            long kth = history_.get(key)[k_ - 1];
+            if (kth < oldest && evictable.test(key)) {
+                oldest = kth;
+                victim = key;
+            }
+        }
+        if (victim != null) {
+            forget(victim);
+        }
+        return victim;
+    }
+
+    @Override
+    public String getName() {
+        return "LRU-" + k_;
+    }
+
+    private void reference(long[] refs) {
+        System.arraycopy(refs,0,refs,1,k_ - 1);
+        refs[0] = ++ clock_;
+    }
+
+    private void classify(int key,long[] refs) {
+        if (refs[k_ - 1] != 0) {
+            cold_.remove(key);
+            hot_.add(key);
+        } else {
+            //重新插入到末尾,保持冷页面按最近访问排序
+            cold_.remove(key);
+            cold_.add(key);
+        }
+    }
+
+    private void forget(int key) {
+        long[] refs = history_.remove(key);
+        cold_.remove(key);
+        hot_.remove(key);
+        if (refs != null) {
+            retained_.put(key,refs);
+        }
+    }
+}
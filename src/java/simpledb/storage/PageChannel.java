@@ -0,0 +1,216 @@
+package simpledb.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PageChannel is the single open FileChannel a DbFile reads and writes its
+ * pages through.
+ * <p>
+ * Single pages are read and written with positional I/O, which does not move
+ * the channel position, so concurrent readers and writers need no locking.
+ * Runs of adjacent pages can be read with one scattering read, which does use
+ * the channel position and is serialized on the channel.
+ * <p>
+ * The file length is cached and kept up to date by the writes that go through
+ * this channel, so asking for the number of pages costs no system call. If the
+ * file is changed behind the channel's back, {@link #refreshLength} re-reads it.
+ * <p>
+ * The file can also be read through read-only memory mappings, one per
+ * segment of {@link #SEGMENT_SIZE} bytes, so that a page can be looked at in
+ * place without a system call or a copy. Writes through the channel show up in
+ * the mappings, since both go through the same OS page cache.
+ */
+public class PageChannel {
+
+    /** Size of one memory mapped segment of the file. */
+    public static final long SEGMENT_SIZE = 1L << 26;
+
+    private final File file_;
+    private volatile FileChannel channel_;
+    private final AtomicLong length_;
+    /** 每次修改都替换整个数组,所以读的时候不需要加锁 */
+    private volatile MappedByteBuffer[] segments_;
+
+    public PageChannel(File file) {
+        file_ = file;
+        channel_ = null;
+        length_ = new AtomicLong(-1);
+        segments_ = new MappedByteBuffer[0];
+    }
+
+    /** 第一次使用时才打开文件,这样没有被访问过的表不会占用文件描述符 */
+    private FileChannel channel() throws IOException {
+        FileChannel channel = channel_;
+        if (channel == null) {
+            synchronized (this) {
+                channel = channel_;
+                if (channel == null) {
+                    channel = new RandomAccessFile(file_,"rw").getChannel();
+                    length_.set(channel.size());
+                    channel_ = channel;
+                }
+            }
+        }
+        return channel;
+    }
+
+    /** @return the length of the file in bytes, without touching the disk */
+    public long length() {
+        long length = length_.get();
+        if (length >= 0) {
+            return length;
+        }
+        if (!file_.exists()) {
+            return 0;
+        }
+        try {
+            channel();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return length_.get();
+    }
+
+    /** Re-read the file length, after the file was changed without this channel. */
+    public long refreshLength() throws IOException {
+        long size = channel().size();
+        length_.set(size);
+        return size;
+    }
+
+    /**
+     * Read data.length bytes at the given offset.
+     *
+     * @return the number of bytes read, less than data.length only at the end of the file
+     */
+    public int read(long position, byte[] data) throws IOException {
+        FileChannel channel = channel();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf,position + buf.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        return buf.position();
+    }
+
+    /**
+     * Read adjacent pages starting at the given offset with one scattering
+     * read, one buffer per page.
+     *
+     * @return the number of pages read in full
+     */
+    public int read(long position, byte[][] pages) throws IOException {
+        FileChannel channel = channel();
+        ByteBuffer[] bufs = new ByteBuffer[pages.length];
+        long total = 0;
+        for (int i = 0; i < pages.length; i ++) {
+            bufs[i] = ByteBuffer.wrap(pages[i]);
+            total += pages[i].length;
+        }
+        long done = 0;
+        synchronized (channel) {
+            channel.position(position);
+            while (done < total) {
+                long n = channel.read(bufs);
+                if (n < 0) {
+                    break;
+                }
+                done += n;
+            }
+        }
+        int full = 0;
+        while (full < bufs.length && !bufs[full].hasRemaining()) {
+            full ++;
+        }
+        return full;
+    }
+
+    /** Write data at the given offset, growing the file if needed. */
+    public void write(long position, byte[] data) throws IOException {
+        FileChannel channel = channel();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining()) {
+            channel.write(buf,position + buf.position());
+        }
+        long end = position + data.length;
+        length_.accumulateAndGet(end,Math::max);
+    }
+
+    /**
+     * Append data at the end of the file.
+     *
+     * @return the offset it was written at
+     */
+    public synchronized long append(byte[] data) throws IOException {
+        long position = length();
+        write(position,data);
+        return position;
+    }
+
+    /**
+     * Return a read-only view of size bytes of the file at the given offset,
+     * backed by a memory mapping of the segment the bytes are in.
+     *
+     * @return the view, or null if the bytes run past the end of the file or
+     *         across two segments
+     */
+    public ByteBuffer map(long position, int size) throws IOException {
+        int seg = (int) (position / SEGMENT_SIZE);
+        int offset = (int) (position % SEGMENT_SIZE);
+        if (offset + size > SEGMENT_SIZE) {
+            return null;
+        }
+        MappedByteBuffer[] segments = segments_;
+        MappedByteBuffer segment = seg < segments.length ? segments[seg] : null;
+        if (segment == null || segment.capacity() < offset + size) {
+            segment = mapSegment(seg,offset + size);
+            if (segment == null) {
+                return null;
+            }
+        }
+        ByteBuffer view = segment.duplicate();
+        view.limit(offset + size);
+        view.position(offset);
+        return view.slice();
+    }
+
+    /** (Re)map a segment that is missing or was mapped when the file was shorter. */
+    private synchronized MappedByteBuffer mapSegment(int seg, int needed) throws IOException {
+        MappedByteBuffer[] segments = segments_;
+        if (seg < segments.length && segments[seg] != null && segments[seg].capacity() >= needed) {
+            return segments[seg];
+        }
+        long start = seg * SEGMENT_SIZE;
+        if (start + needed > length() && start + needed > refreshLength()) {
+            return null;
+        }
+        long size = Math.min(SEGMENT_SIZE,length() - start);
+        MappedByteBuffer segment = channel().map(FileChannel.MapMode.READ_ONLY,start,size);
+        segments = Arrays.copyOf(segments,Math.max(segments.length,seg + 1));
+        segments[seg] = segment;
+        segments_ = segments;
+        return segment;
+    }
+
+    /** Force the file contents to disk. */
+    public void force() throws IOException {
+        channel().force(false);
+    }
+
+    /** Close the channel; it is reopened on the next access. */
+    public synchronized void close() throws IOException {
+        if (channel_ != null) {
+            channel_.close();
+            channel_ = null;
+            length_.set(-1);
+            segments_ = new MappedByteBuffer[0];
+        }
+    }
+}
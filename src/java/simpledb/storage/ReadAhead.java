@@ -0,0 +1,267 @@
+package simpledb.storage;
+
+import simpledb.transaction.TransactionId;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ReadAhead pulls the pages a sequential scan is about to read into the
+ * buffer pool on a small pool of background I/O threads, so that the scan
+ * finds them cached instead of waiting for a synchronous read at every page
+ * boundary.
+ * <p>
+ * A scan opens a {@link Stream} and reports every page it moves to. Once the
+ * stream has seen a few pages in order, it asks the I/O threads to walk ahead
+ * of the scan along its {@link Successor} function: the next page number for a
+ * HeapFile, the right sibling pointer for the leaves of a BTreeFile. At most
+ * one walk per stream is in flight. When the successor can name the next page
+ * without the current one, as for a HeapFile, the walk hands its reads to all
+ * I/O threads at once; a chain of sibling pointers is followed one read at a
+ * time.
+ * <p>
+ * The read-ahead distance K adapts to the scan: it is about twice the number
+ * of pages the scan consumes while one page is read, i.e. the I/O latency
+ * divided by the time the scan spends per page, clamped to
+ * [{@link #MIN_DISTANCE}, {@link #MAX_DISTANCE}]. A fast scan over slow
+ * storage reads far ahead; a slow scan or a cached file barely at all.
+ * <p>
+ * Scans of cached tables should not pay for read-ahead. Unless the last walk
+ * loaded pages, a walk is only started if the page after the current one is
+ * missing from the pool, and every walk that is skipped or finds all its pages
+ * cached doubles the number of pages the scan moves before the next try, up to
+ * 2^{@link #MAX_BACKOFF} times.
+ * <p>
+ * Prefetched pages are loaded without locks and never replace a page another
+ * transaction is using: see {@link BufferPool#prefetchPage}.
+ */
+public class ReadAhead {
+
+    /** 连续访问多少个页面之后才认为是顺序扫描 */
+    public static final int SEQUENTIAL_THRESHOLD = 2;
+    public static final int MIN_DISTANCE = 2;
+    public static final int MAX_DISTANCE = 32;
+    public static final int DEFAULT_THREADS = 4;
+    public static final int MAX_BACKOFF = 6;
+
+    /**
+     * Gives the page a scan reads after pid.
+     */
+    public interface Successor {
+        /**
+         * @param pid the current page
+         * @param page the current page, or null if it is not loaded yet
+         * @return the next page of the scan, or null at the end or if it
+         *         cannot be told without the current page
+         */
+        PageId next(PageId pid, Page page);
+    }
+
+    private final BufferPool bufferPool_;
+    private final ThreadPoolExecutor executor_;
+    private final AtomicInteger prefetched_;
+
+    public ReadAhead(BufferPool bufferPool, int threads) {
+        bufferPool_ = bufferPool;
+        executor_ = new ThreadPoolExecutor(threads,threads,1,TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),r -> {
+                    Thread t = new Thread(r,"simpledb-readahead");
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor_.allowCoreThreadTimeOut(true);
+        prefetched_ = new AtomicInteger(0);
+    }
+
+    /** @return the number of pages read into the buffer pool ahead of a scan */
+    public int getPrefetchedCount() {
+        return prefetched_.get();
+    }
+
+    /**
+     * Start tracking a new scan.
+     *
+     * @param tid the transaction running the scan
+     */
+    public Stream newStream(TransactionId tid, Successor successor) {
+        return new Stream(tid,successor);
+    }
+
+    /**
+     * The read-ahead state of one scan. Not thread safe: a stream belongs to
+     * the iterator that created it.
+     */
+    public class Stream {
+        private final TransactionId tid_;
+        private final Successor successor_;
+        private PageId last_;
+        private Page lastPage_;
+        private int sequential_;
+        private int sinceWalk_;
+        private long lastAccessNanos_;
+        /** 扫描每个页面花费的时间和读一个页面的时间,都是滑动平均 */
+        private double gapNanos_;
+        private volatile double ioNanos_;
+        private volatile int distance_;
+        private final AtomicBoolean inFlight_;
+        /** 连续多少次预读没有读到新页面 */
+        private volatile int backoff_;
+        private boolean walked_;
+        /** 当前这次预读还没有完成的读操作数,包括遍历本身 */
+        private final AtomicInteger pending_;
+
+        private Stream(TransactionId tid, Successor successor) {
+            tid_ = tid;
+            successor_ = successor;
+            last_ = null;
+            lastPage_ = null;
+            sequential_ = 0;
+            sinceWalk_ = 0;
+            lastAccessNanos_ = 0;
+            gapNanos_ = 0;
+            ioNanos_ = 0;
+            distance_ = MIN_DISTANCE;
+            inFlight_ = new AtomicBoolean(false);
+            pending_ = new AtomicInteger(0);
+            backoff_ = 0;
+            walked_ = false;
+        }
+
+        /** @return the current read-ahead distance in pages */
+        public int getDistance() {
+            return distance_;
+        }
+
+        /**
+         * Report that the scan moved to page pid.
+         *
+         * @param page the page, as returned by the buffer pool
+         */
+        public void access(PageId pid, Page page) {
+            if (pid.equals(last_)) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (last_ != null && pid.equals(successor_.next(last_,lastPage_))) {
+                sequential_ ++;
+                long gap = now - lastAccessNanos_;
+                gapNanos_ = gapNanos_ == 0 ? gap : 0.75 * gapNanos_ + 0.25 * gap;
+            } else {
+                //跳跃访问,重新开始判断
+                sequential_ = 0;
+                sinceWalk_ = 0;
+            }
+            last_ = pid;
+            lastPage_ = page;
+            lastAccessNanos_ = now;
+            if (sequential_ < SEQUENTIAL_THRESHOLD) {
+                return;
+            }
+            sinceWalk_ ++;
+            int distance = adaptDistance();
+            int every = Math.max(1,distance / 2) << backoff_;
+            if (sinceWalk_ < every) {
+                return;
+            }
+            sinceWalk_ = 0;
+            if (backoff_ > 0 || !walked_) {
+                //上次预读没有读到页面,先在扫描线程里看一下下一页是否已经在缓冲池中
+                walked_ = true;
+                PageId next = successor_.next(pid,page);
+                if (next == null || bufferPool_.peekPage(next) != null) {
+                    backoff_ = Math.min(backoff_ + 1,MAX_BACKOFF);
+                    return;
+                }
+            }
+            if (inFlight_.compareAndSet(false,true)) {
+                submit(pid,page,distance);
+            }
+        }
+
+        private int adaptDistance() {
+            int distance = MIN_DISTANCE;
+            if (ioNanos_ > 0 && gapNanos_ > 0) {
+                distance = (int) Math.ceil(2 * ioNanos_ / gapNanos_);
+            }
+            distance = Math.max(MIN_DISTANCE,Math.min(MAX_DISTANCE,distance));
+            distance_ = distance;
+            return distance;
+        }
+
+        private void submit(PageId from, Page fromPage, int distance) {
+            pending_.set(1);
+            if (!execute(() -> walk(from,fromPage,distance))) {
+                done();
+            }
+        }
+
+        private boolean execute(Runnable task) {
+            try {
+                executor_.execute(task);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+
+        /** 最后一个完成的读操作结束这次预读 */
+        private void done() {
+            if (pending_.decrementAndGet() == 0) {
+                inFlight_.set(false);
+            }
+        }
+
+        /** Runs on an I/O thread: load the next distance pages after from. */
+        private void walk(PageId from, Page fromPage, int distance) {
+            boolean cached = true;
+            try {
+                PageId pid = successor_.next(from,fromPage);
+                for (int i = 0; i < distance && pid != null; i ++) {
+                    Page page = bufferPool_.peekPage(pid);
+                    if (page != null) {
+                        pid = successor_.next(pid,page);
+                        continue;
+                    }
+                    cached = false;
+                    PageId next = successor_.next(pid,null);
+                    if (next != null) {
+                        //不需要这个页面就知道下一个页面,交给其他线程并行读
+                        PageId target = pid;
+                        pending_.incrementAndGet();
+                        if (!execute(() -> { prefetch(target); done(); })) {
+                            pending_.decrementAndGet();
+                            prefetch(target);
+                        }
+                        pid = next;
+                        continue;
+                    }
+                    page = prefetch(pid);
+                    if (page == null) {
+                        break; //缓冲池里没有可以替换的页面了
+                    }
+                    pid = successor_.next(pid,page);
+                }
+            } finally {
+                backoff_ = cached ? Math.min(backoff_ + 1,MAX_BACKOFF) : 0;
+                done();
+            }
+        }
+
+        private Page prefetch(PageId pid) {
+            try {
+                long start = System.nanoTime();
+                Page page = bufferPool_.prefetchPage(pid,tid_);
+                if (page != null) {
+                    long io = System.nanoTime() - start;
+                    ioNanos_ = ioNanos_ == 0 ? io : 0.75 * ioNanos_ + 0.25 * io;
+                    prefetched_.incrementAndGet();
+                }
+                return page;
+            } catch (RuntimeException e) {
+                //预读只是一个提示,出错时让扫描自己去读
+                return null;
+            }
+        }
+    }
+}
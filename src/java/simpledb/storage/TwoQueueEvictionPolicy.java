@@ -0,0 +1,118 @@
+package simpledb.storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Full 2Q eviction (Johnson and Shasha). New pages enter a FIFO queue A1in.
+ * Pages evicted from A1in leave their key behind in a ghost queue A1out; a
+ * page that is read again while its key is still in A1out is considered hot
+ * and goes to the LRU queue Am. Hits in A1in are deliberately ignored, so a
+ * sequential scan only ever cycles through A1in and cannot flush Am.
+ * <p>
+ * All queues are linked hash sets, so every notification is O(1).
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+
+    private final int kin_;
+    private final int kout_;
+    private final LinkedHashSet<Integer> a1in_;
+    private final LinkedHashSet<Integer> a1out_;
+    private final LinkedHashSet<Integer> am_;
+
+    /**
+     * Uses the sizes recommended in the 2Q paper: A1in holds a quarter of the
+     * pool and A1out remembers half as many keys as the pool holds pages.
+     */
+    public TwoQueueEvictionPolicy(int capacity) {
+        this(Math.max(capacity / 4,1),Math.max(capacity / 2,1));
+    }
+
+    /**
+     * @param kin the target size of A1in
+     * @param kout the number of ghost keys remembered in A1out
+     */
+    public TwoQueueEvictionPolicy(int kin, int kout) {
+        kin_ = kin;
+        kout_ = kout;
+        a1in_ = new LinkedHashSet<Integer>();
+        a1out_ = new LinkedHashSet<Integer>();
+        am_ = new LinkedHashSet<Integer>();
+    }
+
+    @Override
+    public synchronized void recordAccess(int key) {
+        if (am_.remove(key)) {
+            am_.add(key);
+        }
+    }
+
+    @Override
+    public synchronized void recordInsert(int key) {
+        if (am_.contains(key)) {
+            recordAccess(key);
+        } else if (a1in_.contains(key)) {
+            return;
+        } else if (a1out_.remove(key)) {
+            am_.add(key);
+        } else {
+            a1in_.add(key);
+        }
+    }
+
+    @Override
+    public synchronized void recordRemove(int key) {
+        if (!a1in_.remove(key)) {
+            am_.remove(key);
+        }
+    }
+
+    @Override
+    public synchronized Integer evict(IntPredicate evictable) {
+        Integer victim;
+        if (a1in_.size() > kin_ || am_.isEmpty()) {
+            victim = evictFrom(a1in_,evictable);
+            if (victim != null) {
+                remember(victim);
+                return victim;
+            }
+            return evictFrom(am_,evictable);
+        }
+        victim = evictFrom(am_,evictable);
+        if (victim != null) {
+            return victim;
+        }
+        victim = evictFrom(a1in_,evictable);
+        if (victim != null) {
+            remember(victim);
+        }
+        return victim;
+    }
+
+    @Override
+    public String getName() {
+        return "2Q";
+    }
+
+    private Integer evictFrom(LinkedHashSet<Integer> queue,IntPredicate evictable) {
+        Iterator<Integer> it = queue.iterator();
+        while (it.hasNext()) {
+            int key = it.next();
+            if (evictable.test(key)) {
+                it.remove();
+                return key;
+            }
+        }
+        return null;
+    }
+
+    private void remember(int key) {
+        a1out_.add(key);
+        if (a1out_.size() > kout_) {
+            Iterator<Integer> it = a1out_.iterator();
+            it.next();
+            it.remove();
+        }
+    }
+}
@@ -6,8 +6,28 @@ import simpledb.storage.PageId;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-
+/**
+ * LockManager implements page-level strict two-phase locking with shared and
+ * exclusive locks.
+ * <p>
+ * Every page has a {@link LockState} holding the current lock holders and a
+ * FIFO queue of waiting {@link LockRequest}s. A transaction that cannot get
+ * its lock parks on the LockState monitor of that page and is woken up only
+ * when the lock on that page is released or changes type, so blocked
+ * transactions neither spin nor contend on a global monitor.
+ * <p>
+ * Waiting requests are granted in arrival order. The only exception is a lock
+ * upgrade: a transaction that already holds a shared lock and asks for the
+ * exclusive lock is served before the queue, since every request queued
+ * behind it is waiting for that shared lock to go away anyway.
+ * <p>
+ * Blocked requests are also edges of a {@link WaitsForGraph}. A blocked
+ * transaction checks the graph for a cycle through itself when it starts
+ * waiting and whenever the page it waits on changes; if it finds one, the
+ * youngest transaction on the cycle is aborted. Lock waits have no timeout.
+ */
 public class LockManager {
 
     public enum LockType {
@@ -18,12 +38,23 @@ public class LockManager {
         private LockType lockType_;
         private TransactionId tid_;
         private long seqno_;
+        private int pageHash_;
+        private boolean granted_;
+        private boolean aborted_;
+        /** 阻塞变化的次数,等待者据此判断是否需要重新检测死锁 */
+        private long version_;
+        /** the transactions this request waits for; guarded by the WaitsForGraph */
+        Set<TransactionId> blockers_;
 
-        public LockRequest(LockType locktype,TransactionId tid,long seqno) {
+        public LockRequest(LockType locktype,TransactionId tid,long seqno,int pageHash) {
             lockType_ = locktype;
             tid_ = tid;
-            //isWaiting_ = true; //初始化时都处于等待状态
             seqno_ = seqno;
+            pageHash_ = pageHash;
+            granted_ = false;
+            aborted_ = false;
+            version_ = 0;
+            blockers_ = Collections.emptySet();
         }
 
         public LockType getLockType() {
@@ -38,73 +69,173 @@ public class LockManager {
             return seqno_;
         }
 
+        public int getPageHash() {
+            return pageHash_;
+        }
+
+        public boolean isGranted() {
+            return granted_;
+        }
+
     }
 
+    /**
+     * The lock held on one page. The LockState object is also the monitor that
+     * transactions waiting for this page park on; all fields are guarded by it.
+     */
     public class LockState {
         private LockType lockType_;
-        private TransactionId tid_; //设置读锁对应的只能是null
-        private ConcurrentMap<Integer,TransactionId> shardMap_;
+        private final Set<TransactionId> holders_;
+        private final LinkedList<LockRequest> waiters_; //等待队列,按到达顺序排列
 
         public LockState() {
             lockType_ = LockType.NULL_TYPE;
-            shardMap_ = new ConcurrentHashMap<Integer,TransactionId>();
-            tid_ = null;
+            holders_ = new LinkedHashSet<TransactionId>();
+            waiters_ = new LinkedList<LockRequest>();
         }
 
-        public TransactionId getTid() {
-            return tid_;
+        /** @return one of the transactions holding this lock, or null if it is free */
+        public synchronized TransactionId getTid() {
+            return holders_.isEmpty() ? null : holders_.iterator().next();
         }
-        public LockType getLockType() {
+
+        public synchronized LockType getLockType() {
             return lockType_;
         }
 
-        public void setTid(TransactionId tid) {
-            tid_ = tid;
-        }
-        public void setLockType(LockType lockType) {
-            lockType_ = lockType;
-        }
-        private void updateState(LockType lockType,TransactionId tid) {
-            lockType_ = lockType;
-            tid_ = tid;
+        private boolean holds(TransactionId tid,LockType lockType) {
+            if (!holders_.contains(tid)) {
+                return false;
+            }
+            return lockType.equals(LockType.SHARED_TYPE) || lockType_.equals(LockType.EXCLUSIVE_TYPE);
         }
-        public boolean canAcquire(LockType lockType,TransactionId tid) {
-            boolean result = false;
+
+        private boolean canAcquire(LockType lockType,TransactionId tid) {
             if (lockType_.equals(LockType.NULL_TYPE)) {
+                return true;
+            } else if (lockType_.equals(LockType.SHARED_TYPE)) {
                 if (lockType.equals(LockType.SHARED_TYPE)) {
-                    shardMap_.put((int) tid.getId(),tid);
+                    return true;
                 }
-                updateState(lockType,tid);
-                result = true;
-            } else if (lockType_.equals(LockType.SHARED_TYPE)) {
-                if (lockType.equals(lockType_)) {
-                    shardMap_.put((int) tid.getId(),tid);
-                    updateState(lockType,tid);
-                    result = true;
-                } else {
-                    if (tid.equals(tid_) && shardMap_.size() == 1) {
-                        shardMap_.remove((int) tid.getId());
-                        updateState(lockType,tid);
-                        result = true;
-                    } else {
-                        result = false;
+                return holders_.size() == 1 && holders_.contains(tid); //升级
+            }
+            return holders_.contains(tid);
+        }
+
+        private void grant(LockRequest request) {
+            waitsFor_.remove(request);
+            request.granted_ = true;
+            holders_.add(request.tid_);
+            if (request.lockType_.equals(LockType.EXCLUSIVE_TYPE) || lockType_.equals(LockType.NULL_TYPE)) {
+                lockType_ = request.lockType_;
+            }
+        }
+
+        /**
+         * Grant every waiting request that can run now: upgrades first, then
+         * the queue in FIFO order up to the first request that still conflicts.
+         * The waits-for edges of the requests left waiting are brought up to date.
+         *
+         * @return true if a request was granted or the blockers of a waiting
+         *         request changed, i.e. if waiters need to be woken up
+         */
+        private boolean grantWaiters() {
+            boolean granted = false;
+            Iterator<LockRequest> it = waiters_.iterator();
+            while (it.hasNext()) {
+                LockRequest request = it.next();
+                if (holders_.contains(request.tid_) && canAcquire(request.lockType_,request.tid_)) {
+                    it.remove();
+                    grant(request);
+                    granted = true;
+                }
+            }
+            it = waiters_.iterator();
+            while (it.hasNext()) {
+                LockRequest request = it.next();
+                if (!canAcquire(request.lockType_,request.tid_)) {
+                    break;
+                }
+                it.remove();
+                grant(request);
+                granted = true;
+            }
+            return updateBlockers() || granted;
+        }
+
+        private Set<TransactionId> blockersOf(LockRequest request) {
+            Set<TransactionId> blockers = new HashSet<TransactionId>();
+            boolean upgrade = holders_.contains(request.tid_);
+            if (request.lockType_.equals(LockType.EXCLUSIVE_TYPE) || lockType_.equals(LockType.EXCLUSIVE_TYPE)) {
+                blockers.addAll(holders_);
+            }
+            if (!upgrade) {
+                //FIFO: 排在前面的请求也会阻塞当前请求
+                for (LockRequest ahead : waiters_) {
+                    if (ahead == request) {
+                        break;
                     }
+                    blockers.add(ahead.tid_);
+                }
+            }
+            blockers.remove(request.tid_);
+            return blockers;
+        }
+
+        private boolean updateBlockers() {
+            boolean changed = false;
+            for (LockRequest request : waiters_) {
+                Set<TransactionId> blockers = blockersOf(request);
+                if (!blockers.equals(request.blockers_)) {
+                    waitsFor_.setBlockers(request,blockers);
+                    request.version_ ++;
+                    changed = true;
                 }
-            } else if (lockType_.equals(LockType.EXCLUSIVE_TYPE)) {
-                result = tid_.equals(tid); //这个时候不需要变
             }
-            return result;
+            return changed;
+        }
+
+        private void abort(LockRequest request) {
+            request.aborted_ = true;
+            waitsFor_.remove(request);
+        }
+
+        /**
+         * Drop every lock and waiting request of tid on this page.
+         *
+         * @return true if waiters need to be woken up
+         */
+        private boolean release(TransactionId tid) {
+            boolean changed = holders_.remove(tid);
+            if (holders_.isEmpty()) {
+                lockType_ = LockType.NULL_TYPE;
+            }
+            Iterator<LockRequest> it = waiters_.iterator();
+            while (it.hasNext()) {
+                LockRequest request = it.next();
+                if (request.tid_.equals(tid)) {
+                    abort(request);
+                    it.remove();
+                    changed = true;
+                }
+            }
+            return grantWaiters() || changed;
         }
 
     }
 
-    private ConcurrentMap<Integer,LinkedList<LockRequest>> lockTable_;
-    private ConcurrentMap<Integer,LockState> lockStates_;
+    private final ConcurrentMap<Integer,LockState> lockStates_;
+    /** 每个事务持有或者正在等待的页面,用来在事务结束时只释放这些页面 */
+    private final ConcurrentMap<TransactionId,Set<Integer>> txnPages_;
+    private final AtomicLong seqno_;
+    private final WaitsForGraph waitsFor_;
 
 
     public LockManager() {
-        lockTable_ = new ConcurrentHashMap<Integer,LinkedList<LockRequest>>();
         lockStates_ = new ConcurrentHashMap<Integer,LockState>();
+        txnPages_ = new ConcurrentHashMap<TransactionId,Set<Integer>>();
+        seqno_ = new AtomicLong(0);
+        waitsFor_ = new WaitsForGraph();
     }
 
     private LockType perm2LockType(Permissions perm) {
@@ -117,94 +248,167 @@ public class LockManager {
         return lockType;
     }
 
-    public synchronized long AddRequest(PageId pageId, TransactionId tid, Permissions perm) { //只可有一个线程访问,达到互斥访问的效果
-        int hashcode = pageId.hashCode();
-
-        LockType lockType = perm2LockType(perm);
-        if (!lockTable_.containsKey(hashcode)) {
-            lockTable_.put(hashcode,new LinkedList<LockRequest>());
-            lockStates_.put(hashcode,new LockState());
-        }
-        Random random = new Random();
-        long seqno = random.nextLong();
-        lockTable_.get(hashcode).add(new LockRequest(lockType,tid,seqno));
-        return seqno;
+    private LockState getLockState(int hashcode) {
+        return lockStates_.computeIfAbsent(hashcode,k -> new LockState());
     }
 
-    public synchronized boolean AcquireLock(PageId pageId,TransactionId tid,Permissions perm,long seqno) {
+    private Set<Integer> pagesOf(TransactionId tid) {
+        return txnPages_.computeIfAbsent(tid,k -> ConcurrentHashMap.newKeySet());
+    }
 
+    /**
+     * Acquire a lock on the page on behalf of tid, blocking until it is
+     * granted. The wait ends early if tid is chosen as the victim of a
+     * deadlock, or if its request is cancelled because the transaction
+     * completed in another thread.
+     *
+     * @return true if the lock is held when this method returns, false if
+     *         the transaction has to abort
+     */
+    public boolean AcquireLock(PageId pageId,TransactionId tid,Permissions perm) {
         int hashcode = pageId.hashCode();
         LockType lockType = perm2LockType(perm);
-        LockState state = lockStates_.get(hashcode);
+        LockState state = getLockState(hashcode);
+        LockRequest request;
+        long seen;
 
-        boolean canAcquire = state.canAcquire(lockType,tid);
-        if (!canAcquire) {
-            return false;
-        } else { //其中包含了null,也就是没有锁占用的情况
-            boolean isfound = false;
-            Iterator<LockRequest> requestIt = lockTable_.get(hashcode).iterator();
-            while (requestIt.hasNext()) {
-                LockRequest request = requestIt.next();
-                long seq = request.getSeqno();
-                if (seq == seqno) {
-                    //request.setWaiting_(false); //取消等待
-                    isfound = true;
-                    break;
-                }
+        synchronized (state) {
+            if (state.holds(tid,lockType)) {
+                return true;
             }
-            return isfound;
-        }
-    }
-
-    public synchronized void ReleaseLock(int pageHash,TransactionId tid) {
-        int hashcode = pageHash;
-        LockType currType = lockStates_.get(hashcode).getLockType();
-        TransactionId currTid = lockStates_.get(hashcode).getTid();
-        if (lockTable_.containsKey(hashcode)) {
-            Iterator<LockRequest> requestIterator = lockTable_.get(hashcode).iterator();
-            while (requestIterator.hasNext()) {
-                LockRequest request = requestIterator.next();
-                if (request.getTid().equals(tid)) {
-                    if (currType.equals(LockType.EXCLUSIVE_TYPE) && tid.equals(currTid)) {
-                        lockStates_.get(hashcode).setTid(null);
-                        lockStates_.get(hashcode).setLockType(LockType.NULL_TYPE);
-                        lockStates_.get(hashcode).shardMap_.clear();
-                    } else if (currType.equals(LockType.SHARED_TYPE)) { //通常情况下,当前为共享锁的话
-                        int shardCnt = lockStates_.get(hashcode).shardMap_.size();
-                        if (shardCnt <= 1 && tid.equals(currTid)) {
-                            lockStates_.get(hashcode).setTid(null);
-                            lockStates_.get(hashcode).setLockType(LockType.NULL_TYPE);
-                            lockStates_.get(hashcode).shardMap_.clear();
-                        } else {
-                            lockStates_.get(hashcode).shardMap_.remove((int) tid.getId());
-                            lockStates_.get(hashcode).setTid(lockStates_.get(hashcode).shardMap_.values().iterator().next());
-                        }
+            pagesOf(tid).add(hashcode);
+            request = new LockRequest(lockType,tid,seqno_.getAndIncrement(),hashcode);
+            state.waiters_.add(request);
+            if (state.grantWaiters()) {
+                state.notifyAll();
+            }
+            if (request.granted_) {
+                return true;
+            }
+            seen = request.version_;
+        }
+
+        boolean granted = false;
+        try {
+            while (true) {
+                //检测死锁时不持有任何页面的monitor
+                TransactionId victim = waitsFor_.findVictim(tid);
+                if (tid.equals(victim)) {
+                    return false;
+                } else if (victim != null) {
+                    abortWaiting(victim);
+                }
+                synchronized (state) {
+                    while (!request.granted_ && !request.aborted_ && request.version_ == seen) {
+                        state.wait();
                     }
-                    requestIterator.remove();//移除这一项
+                    if (request.granted_) {
+                        granted = true;
+                        return true;
+                    }
+                    if (request.aborted_) {
+                        return false;
+                    }
+                    seen = request.version_;
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            if (!granted) {
+                cancel(state,request);
+            }
         }
     }
 
-    public synchronized void ReleaseAllLocks(TransactionId tid) {
-        Iterator<Integer> it = lockTable_.keySet().iterator();
-        while (it.hasNext()) {
-            int hash = it.next();
-            ReleaseLock(hash,tid);
+    private void cancel(LockState state,LockRequest request) {
+        synchronized (state) {
+            if (state.waiters_.remove(request)) {
+                state.abort(request);
+                state.grantWaiters();
+                state.notifyAll();
+            }
         }
     }
 
-    public synchronized boolean IsHolding(PageId pageId,TransactionId tid) {
-        int hashcode = pageId.hashCode();
-        if (!lockStates_.containsKey(hashcode)) {
+    /**
+     * Abort every blocked request of the deadlock victim and wake its thread up.
+     */
+    private void abortWaiting(TransactionId victim) {
+        for (LockRequest request : waitsFor_.waitingRequests(victim)) {
+            LockState state = lockStates_.get(request.pageHash_);
+            if (state != null) {
+                cancel(state,request);
+            }
+        }
+    }
+
+    public void ReleaseLock(int pageHash,TransactionId tid) {
+        Set<Integer> pages = txnPages_.get(tid);
+        if (pages != null) {
+            pages.remove(pageHash);
+        }
+        releasePage(pageHash,tid);
+    }
+
+    private void releasePage(int pageHash,TransactionId tid) {
+        LockState state = lockStates_.get(pageHash);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.release(tid)) {
+                state.notifyAll();
+            }
+        }
+    }
+
+    public void ReleaseAllLocks(TransactionId tid) {
+        Set<Integer> pages = txnPages_.remove(tid);
+        if (pages == null) {
+            return;
+        }
+        for (int hash : pages) {
+            releasePage(hash,tid);
+        }
+    }
+
+    public boolean IsHolding(PageId pageId,TransactionId tid) {
+        LockState state = lockStates_.get(pageId.hashCode());
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            return state.holders_.contains(tid);
+        }
+    }
+
+    /**
+     * @return true if a transaction other than tid holds a lock on the page
+     *         with this hash (any transaction, if tid is null)
+     */
+    public boolean IsLockedByOther(int pageHash,TransactionId tid) {
+        LockState state = lockStates_.get(pageHash);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            for (TransactionId holder : state.holders_) {
+                if (!holder.equals(tid)) {
+                    return true;
+                }
+            }
             return false;
         }
-        return lockStates_.get(hashcode).tid_.equals(tid);
     }
 
-    public synchronized TransactionId getHoldingTid(PageId pageId) {
-        int hash = pageId.hashCode();
-        return lockStates_.get(hash).tid_;
+    public TransactionId getHoldingTid(PageId pageId) {
+        LockState state = lockStates_.get(pageId.hashCode());
+        if (state == null) {
+            return null;
+        }
+        return state.getTid();
     }
 
 
@@ -0,0 +1,117 @@
+package simpledb.transaction;
+
+import java.util.*;
+
+/**
+ * The waits-for graph used by LockManager to detect deadlocks.
+ * <p>
+ * There is an edge T1 -> T2 when a lock request of T1 is blocked because T2
+ * holds a conflicting lock on the same page, or T2 is queued ahead of it.
+ * Edges live on the blocked {@link LockManager.LockRequest}s themselves and
+ * are replaced whenever the page the request waits on changes, so the graph
+ * is kept up to date incrementally instead of being rebuilt for every check.
+ * <p>
+ * Lock ordering: callers may hold a LockState monitor when calling into the
+ * graph, but the graph never calls back into a LockState.
+ */
+class WaitsForGraph {
+
+    /** 每个事务当前被阻塞的请求 */
+    private final Map<TransactionId,Set<LockManager.LockRequest>> waiting_;
+
+    WaitsForGraph() {
+        waiting_ = new HashMap<TransactionId,Set<LockManager.LockRequest>>();
+    }
+
+    /**
+     * Record that request is blocked by the given transactions, replacing the
+     * edges it had before.
+     */
+    synchronized void setBlockers(LockManager.LockRequest request,Set<TransactionId> blockers) {
+        request.blockers_ = blockers;
+        waiting_.computeIfAbsent(request.getTid(),k -> new HashSet<LockManager.LockRequest>()).add(request);
+    }
+
+    /** Drop the edges of a request that was granted or cancelled. */
+    synchronized void remove(LockManager.LockRequest request) {
+        Set<LockManager.LockRequest> requests = waiting_.get(request.getTid());
+        if (requests != null) {
+            requests.remove(request);
+            if (requests.isEmpty()) {
+                waiting_.remove(request.getTid());
+            }
+        }
+        request.blockers_ = Collections.emptySet();
+    }
+
+    /** @return the requests tid is currently blocked on */
+    synchronized List<LockManager.LockRequest> waitingRequests(TransactionId tid) {
+        Set<LockManager.LockRequest> requests = waiting_.get(tid);
+        if (requests == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<LockManager.LockRequest>(requests);
+    }
+
+    private Set<TransactionId> successors(TransactionId tid) {
+        Set<LockManager.LockRequest> requests = waiting_.get(tid);
+        if (requests == null) {
+            return Collections.emptySet();
+        }
+        if (requests.size() == 1) {
+            return requests.iterator().next().blockers_;
+        }
+        Set<TransactionId> result = new HashSet<TransactionId>();
+        for (LockManager.LockRequest request : requests) {
+            result.addAll(request.blockers_);
+        }
+        return result;
+    }
+
+    /**
+     * Look for a cycle through start and pick the transaction to abort.
+     *
+     * @return the youngest transaction on a cycle through start, or null if
+     *         start is not deadlocked
+     */
+    synchronized TransactionId findVictim(TransactionId start) {
+        List<TransactionId> cycle = findCycle(start);
+        if (cycle == null) {
+            return null;
+        }
+        TransactionId victim = null;
+        for (TransactionId tid : cycle) {
+            if (victim == null || tid.getId() > victim.getId()) {
+                victim = tid;
+            }
+        }
+        return victim;
+    }
+
+    /** Iterative DFS from start; returns the path back to start, if any. */
+    private List<TransactionId> findCycle(TransactionId start) {
+        Set<TransactionId> visited = new HashSet<TransactionId>();
+        Deque<TransactionId> path = new ArrayDeque<TransactionId>();
+        Deque<Iterator<TransactionId>> stack = new ArrayDeque<Iterator<TransactionId>>();
+        visited.add(start);
+        path.addLast(start);
+        stack.push(successors(start).iterator());
+        while (!stack.isEmpty()) {
+            Iterator<TransactionId> it = stack.peek();
+            if (!it.hasNext()) {
+                stack.pop();
+                path.removeLast();
+                continue;
+            }
+            TransactionId next = it.next();
+            if (next.equals(start)) {
+                return new ArrayList<TransactionId>(path);
+            }
+            if (visited.add(next)) {
+                path.addLast(next);
+                stack.push(successors(next).iterator());
+            }
+        }
+        return null;
+    }
+}
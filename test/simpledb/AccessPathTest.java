@@ -0,0 +1,188 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.IndexNestedLoopJoin;
+import simpledb.execution.IndexPredicate;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeScan;
+import simpledb.index.BTreeUtility;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+public class AccessPathTest extends SimpleDbTestBase {
+
+  private static final int ROWS = 20000;
+
+  private BTreeFile index;
+  private final List<List<Integer>> tuples = new ArrayList<>();
+  private Map<String, TableStats> stats;
+  private TransactionId tid;
+
+  /** An indexed table of ROWS (c0, c1) tuples keyed on c0, with random values below ROWS */
+  @Before public void setUp() throws Exception {
+    BTreeFile f = BTreeUtility.createRandomBTreeFile(2, ROWS, ROWS, null, tuples, 0);
+    index = BTreeUtility.openBTreeFile(2, "c", f.getFile(), 0);
+    stats = new HashMap<>();
+    stats.put(Database.getCatalog().getTableName(index.getId()), new TableStats(index.getId(), 1000));
+    tid = new TransactionId();
+  }
+
+  @After public void tearDown() {
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /** The plan of a scan of the indexed table as t, under filters {field, op, constant} */
+  private OpIterator plan(String[]... filters) throws Exception {
+    LogicalPlan lp = new LogicalPlan();
+    // addScan和addProjectField每次都打印一行
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+    try {
+      lp.addScan(index.getId(), "t");
+      for (String[] f : filters)
+        lp.addFilter("t." + f[0], op(f[1]), f[2]);
+      lp.addProjectField("t.c0", null);
+      lp.addProjectField("t.c1", null);
+    } finally {
+      System.setOut(out);
+    }
+    return lp.physicalPlan(tid, stats, false);
+  }
+
+  private static Predicate.Op op(String s) {
+    switch (s) {
+      case "=": return Predicate.Op.EQUALS;
+      case ">": return Predicate.Op.GREATER_THAN;
+      case ">=": return Predicate.Op.GREATER_THAN_OR_EQ;
+      case "<": return Predicate.Op.LESS_THAN;
+      default: return Predicate.Op.LESS_THAN_OR_EQ;
+    }
+  }
+
+  /** @return the scan at the bottom of the left spine of plan */
+  private static OpIterator leaf(OpIterator plan) {
+    while (plan instanceof Operator)
+      plan = ((Operator) plan).getChildren()[0];
+    return plan;
+  }
+
+  /** @return how many tuples plan returns */
+  private static int count(OpIterator plan) throws Exception {
+    int n = 0;
+    plan.open();
+    while (plan.hasNext()) {
+      plan.next();
+      n++;
+    }
+    plan.close();
+    return n;
+  }
+
+  /** @return how many generated tuples have low < c0 <= high and c1 < c1Below */
+  private int expected(int low, int high, int c1Below) {
+    int n = 0;
+    for (List<Integer> t : tuples) {
+      if (t.get(0) > low && t.get(0) <= high && t.get(1) < c1Below)
+        n++;
+    }
+    return n;
+  }
+
+  /** An equality filter on the key is looked up in the index; other filters stay above it. */
+  @Test public void equalityUsesIndex() throws Exception {
+    int key = tuples.get(0).get(0);
+    OpIterator plan = plan(new String[] { "c0", "=", "" + key }, new String[] { "c1", "<", "10000" });
+    OpIterator scan = leaf(plan);
+    assertTrue(scan instanceof BTreeScan);
+    assertEquals(Predicate.Op.EQUALS, ((BTreeScan) scan).getIndexPredicate().getOp());
+    assertNull(((BTreeScan) scan).getUpperBound());
+    assertEquals(expected(key - 1, key, 10000), count(plan));
+  }
+
+  /** A narrow range on the key is read along the leaf chain between its bounds. */
+  @Test public void rangeUsesLeafChain() throws Exception {
+    OpIterator plan = plan(new String[] { "c0", ">", "1000" }, new String[] { "c0", "<=", "1500" });
+    OpIterator scan = leaf(plan);
+    assertTrue(scan instanceof BTreeScan);
+    assertEquals(Predicate.Op.GREATER_THAN, ((BTreeScan) scan).getIndexPredicate().getOp());
+    assertNotNull(((BTreeScan) scan).getUpperBound());
+    assertEquals(expected(1000, 1500, ROWS), count(plan));
+
+    // 只有上界也从最左边的叶子读起
+    plan = plan(new String[] { "c0", "<=", "500" });
+    assertTrue(leaf(plan) instanceof BTreeScan);
+    assertEquals(expected(Integer.MIN_VALUE, 500, ROWS), count(plan));
+  }
+
+  /** A filter selecting most of the table, or one not on the key, is cheaper as a sequential scan. */
+  @Test public void unselectiveUsesSeqScan() throws Exception {
+    OpIterator plan = plan(new String[] { "c0", ">", "1000" });
+    assertTrue(leaf(plan) instanceof SeqScan);
+    assertEquals(expected(1000, Integer.MAX_VALUE, ROWS), count(plan));
+
+    plan = plan(new String[] { "c1", "=", "7" });
+    assertTrue(leaf(plan) instanceof SeqScan);
+  }
+
+  /** The index scan costs less than the sequential scan only for selective predicates. */
+  @Test public void indexScanCost() throws Exception {
+    TableStats s = stats.get(Database.getCatalog().getTableName(index.getId()));
+    assertTrue(s.estimateIndexScanCost(0.001) < s.estimateScanCost());
+    assertTrue(s.estimateIndexScanCost(0.5) > s.estimateScanCost());
+    assertTrue(s.estimateIndexScanCost(0.01) < s.estimateIndexScanCost(0.1));
+
+    HeapFile heap = SystemTestUtil.createRandomHeapFile(2, 100, 100, null, null, "c");
+    assertEquals(Double.MAX_VALUE, new TableStats(heap.getId(), 1000).estimateIndexScanCost(0.001), 0.0);
+  }
+
+  /** An index nested loops join probes a table read by an index scan, keeping its key range. */
+  @Test public void joinProbesIndexScan() throws Exception {
+    HeapFile outer = SystemTestUtil.createRandomHeapFile(2, 500, ROWS, null, null, "c");
+    OpIterator inner = new BTreeScan(tid, index.getId(), "t",
+        new IndexPredicate(Predicate.Op.GREATER_THAN, new IntField(ROWS / 2)), null);
+    assertTrue(IndexNestedLoopJoin.canProbe(inner, 0));
+    int probed = count(new IndexNestedLoopJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+        new SeqScan(tid, outer.getId(), "a"), inner));
+    int scanned = count(new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+        new SeqScan(tid, outer.getId(), "a"), new BTreeScan(tid, index.getId(), "t",
+            new IndexPredicate(Predicate.Op.GREATER_THAN, new IntField(ROWS / 2)), null)));
+    assertTrue(probed > 0);
+    assertEquals(scanned, probed);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(AccessPathTest.class);
+  }
+}
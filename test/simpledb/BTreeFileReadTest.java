@@ -207,6 +207,46 @@ public class BTreeFileReadTest extends SimpleDbTestBase {
 
 	}
 
+	/**
+	 * Unit test for BTreeFile.indexIterator() over a range with an upper bound
+	 */
+	@Test public void indexIteratorRange() throws Exception {
+		BTreeFile twoLeafPageFile = BTreeUtility.createBTreeFile(2, 520,
+				null, null, 0);
+		Field low = new IntField(100);
+		Field high = new IntField(400);
+
+		// 100 < key <= 400, in key order
+		DbFileIterator it = twoLeafPageFile.indexIterator(tid,
+				new IndexPredicate(Op.GREATER_THAN, low), new IndexPredicate(Op.LESS_THAN_OR_EQ, high));
+		it.open();
+		int count = 0;
+		Field last = low;
+		while(it.hasNext()) {
+			Field key = it.next().getField(0);
+			assertTrue(key.compare(Op.GREATER_THAN, last));
+			assertTrue(key.compare(Op.LESS_THAN_OR_EQ, high));
+			last = key;
+			count++;
+		}
+		assertEquals(300, count);
+		it.close();
+
+		// an upper bound below the lower one selects nothing
+		it = twoLeafPageFile.indexIterator(tid,
+				new IndexPredicate(Op.GREATER_THAN_OR_EQ, high), new IndexPredicate(Op.LESS_THAN, low));
+		it.open();
+		assertFalse(it.hasNext());
+		it.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void indexIteratorLowerUpperBound() throws Exception {
+		BTreeFile file = BTreeUtility.createBTreeFile(2, 20, null, null, 0);
+		file.indexIterator(tid, new IndexPredicate(Op.GREATER_THAN, new IntField(1)),
+				new IndexPredicate(Op.GREATER_THAN, new IntField(5)));
+	}
+
 	/**
 	 * JUnit suite target
 	 */
@@ -1,8 +1,6 @@
 package simpledb;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -42,10 +40,8 @@ public class BufferPoolWriteTest extends TestUtil.CreateHeapFile {
     		List<Page> dirtypages = new ArrayList<>();
     		for(int i = 0; i < duplicates; i++) {
     			// create a blank page
-    			BufferedOutputStream bw = new BufferedOutputStream(new FileOutputStream(super.getFile(), true));
-                byte[] emptyData = HeapPage.createEmptyPageData();
-                bw.write(emptyData);
-                bw.close();
+    			super.writePage(new HeapPage(new HeapPageId(super.getId(), super.numPages()),
+    					HeapPage.createEmptyPageData()));
     			HeapPage p = new HeapPage(new HeapPageId(super.getId(), super.numPages() - 1),
     					HeapPage.createEmptyPageData());
     	        p.insertTuple(t);
@@ -140,6 +136,36 @@ public class BufferPoolWriteTest extends TestUtil.CreateHeapFile {
     	assertEquals(10, count);
     }
 
+    /**
+     * Commit and abort only touch the pages of their own transaction: pages
+     * dirtied through insertTuple as well as pages fetched with READ_WRITE
+     * and marked dirty directly.
+     */
+    @Test public void completeOnlyOwnPages() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 2, null, null);
+        BufferPool bp = Database.getBufferPool();
+        HeapPageId p0 = new HeapPageId(hf.getId(), 0);
+        HeapPageId p1 = new HeapPageId(hf.getId(), 1);
+
+        TransactionId tid2 = new TransactionId();
+        HeapPage page1 = (HeapPage) bp.getPage(tid2, p1, Permissions.READ_WRITE);
+        page1.markDirty(true, tid2);
+
+        bp.deleteTuple(tid, ((HeapPage) bp.getPage(tid, p0, Permissions.READ_ONLY)).iterator().next());
+        HeapPage page0 = (HeapPage) bp.getPage(tid, p0, Permissions.READ_ONLY);
+        assertEquals(tid, page0.isDirty());
+
+        bp.transactionComplete(tid2, true);
+        assertNull(page1.isDirty());
+        assertEquals(tid, page0.isDirty());
+
+        bp.transactionComplete(tid, false);
+        page0 = (HeapPage) bp.getPage(tid2, p0, Permissions.READ_ONLY);
+        assertNull(page0.isDirty());
+        assertEquals(0, page0.getNumEmptySlots());
+        bp.transactionComplete(tid2);
+    }
+
     /**
      * JUnit suite target
      */
@@ -1,7 +1,11 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.PrintWriter;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
@@ -15,6 +19,7 @@ import simpledb.TestUtil.SkeletonFile;
 import simpledb.common.Database;
 import simpledb.common.Utility;
 import simpledb.storage.DbFile;
+import simpledb.storage.HeapFile;
 import simpledb.storage.TupleDesc;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
@@ -104,6 +109,25 @@ public class CatalogTest extends SimpleDbTestBase {
     	assertEquals(f, Database.getCatalog().getDatabaseFile(id2));
     }
 
+    /**
+     * Check that loadSchema reads the per-table mmap option
+     */
+    @Test public void loadSchemaMmapOption() throws Exception {
+    	File schema = File.createTempFile("catalog", ".txt");
+    	schema.deleteOnExit();
+    	String plain = SystemTestUtil.getUUID(), mapped = SystemTestUtil.getUUID();
+    	try (PrintWriter w = new PrintWriter(schema)) {
+    		w.println(plain + " (a int, b int)");
+    		w.println(mapped + " (a int pk, b string) mmap");
+    	}
+    	Database.getCatalog().loadSchema(schema.getAbsolutePath());
+    	HeapFile p = (HeapFile) Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId(plain));
+    	HeapFile m = (HeapFile) Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId(mapped));
+    	assertFalse(p.isMemoryMapped());
+    	assertTrue(m.isMemoryMapped());
+    	assertEquals("a", Database.getCatalog().getPrimaryKey(m.getId()));
+    }
+
     /**
      * JUnit suite target
      */
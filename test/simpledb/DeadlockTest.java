@@ -7,6 +7,8 @@ import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import junit.framework.JUnit4TestAdapter;
 import simpledb.common.Database;
 import simpledb.common.Permissions;
@@ -219,6 +221,31 @@ public class DeadlockTest extends TestUtil.CreateHeapFile {
     System.out.println("testUpgradeWriteDeadlock resolved deadlock");
   }
 
+  /**
+   * The waits-for graph should break a deadlock as soon as it forms, by
+   * aborting only the youngest transaction on the cycle.
+   */
+  @Test public void testDeadlockVictimAbortedPromptly() throws Exception {
+    LockGrabber lg1Read = startGrabber(tid1, p0, Permissions.READ_ONLY);
+    LockGrabber lg2Read = startGrabber(tid2, p1, Permissions.READ_ONLY);
+    lg1Read.join();
+    lg2Read.join();
+
+    LockGrabber lg1Write = startGrabber(tid1, p1, Permissions.READ_WRITE);
+    Thread.sleep(POLL_INTERVAL);
+    long start = System.currentTimeMillis();
+    LockGrabber lg2Write = startGrabber(tid2, p0, Permissions.READ_WRITE);
+    lg2Write.join(WAIT_INTERVAL);
+    lg1Write.join(WAIT_INTERVAL);
+    long elapsed = System.currentTimeMillis() - start;
+
+    // tid2 is younger than tid1, so it is the one to go
+    assertNotNull(lg2Write.getError());
+    assertTrue(lg1Write.acquired());
+    assertTrue("deadlock took " + elapsed + " ms to resolve", elapsed < WAIT_INTERVAL);
+    bp.transactionComplete(tid1);
+  }
+
   /**
    * JUnit suite target
    */
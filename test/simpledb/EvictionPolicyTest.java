@@ -0,0 +1,127 @@
+package simpledb;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import simpledb.storage.*;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class EvictionPolicyTest {
+
+    private static final int CAPACITY = 8;
+
+    /**
+     * Load `hot` pages and touch them twice, then stream `scan` one-off pages
+     * through a pool of CAPACITY pages. Returns the keys that are still resident.
+     */
+    private Set<Integer> runHotThenScan(EvictionPolicy policy, int hot, int scan) {
+        Set<Integer> resident = new HashSet<>();
+        for (int i = 0; i < hot; i++) {
+            load(policy, resident, i);
+        }
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < hot; i++) {
+                policy.recordAccess(i);
+            }
+        }
+        for (int i = 1000; i < 1000 + scan; i++) {
+            load(policy, resident, i);
+        }
+        return resident;
+    }
+
+    private void load(EvictionPolicy policy, Set<Integer> resident, int key) {
+        if (resident.size() >= CAPACITY) {
+            Integer victim = policy.evict(k -> true);
+            assertNotNull(victim);
+            assertTrue(resident.remove(victim));
+        }
+        policy.recordInsert(key);
+        resident.add(key);
+    }
+
+    /**
+     * Unit test for FIFO: the scan should push everything out.
+     */
+    @Test public void fifoIsNotScanResistant() {
+        Set<Integer> resident = runHotThenScan(new FifoEvictionPolicy(), 4, 100);
+        for (int i = 0; i < 4; i++) {
+            assertFalse(resident.contains(i));
+        }
+    }
+
+    /**
+     * Unit test for CLOCK: referenced pages get a second chance.
+     */
+    @Test public void clockSecondChance() {
+        ClockEvictionPolicy clock = new ClockEvictionPolicy(4);
+        for (int i = 0; i < 4; i++) {
+            clock.recordInsert(i);
+        }
+        clock.recordAccess(0);
+        clock.recordAccess(2);
+        assertEquals(Integer.valueOf(1), clock.evict(k -> true));
+        assertEquals(Integer.valueOf(3), clock.evict(k -> true));
+    }
+
+    /**
+     * Unit test for LRU-K: pages referenced K times survive a long scan.
+     */
+    @Test public void lruKScanResistant() {
+        Set<Integer> resident = runHotThenScan(new LruKEvictionPolicy(CAPACITY), 4, 100);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(resident.contains(i));
+        }
+    }
+
+    /**
+     * Unit test for 2Q: a page re-read while in A1out is promoted to Am and
+     * survives a following scan.
+     */
+    @Test public void twoQueuePromotesFromGhost() {
+        TwoQueueEvictionPolicy twoq = new TwoQueueEvictionPolicy(CAPACITY);
+        Set<Integer> resident = new HashSet<>();
+        for (int i = 0; i < CAPACITY + 1; i++) {
+            load(twoq, resident, i);
+        }
+        // key 0 was evicted from A1in and is remembered in A1out
+        assertFalse(resident.contains(0));
+        load(twoq, resident, 0);
+        for (int i = 1000; i < 1100; i++) {
+            load(twoq, resident, i);
+        }
+        assertTrue(resident.contains(0));
+    }
+
+    /**
+     * Unit test for all policies: pages that are not evictable are skipped,
+     * and evict returns null when nothing can be evicted.
+     */
+    @Test public void skipsUnevictable() {
+        EvictionPolicy[] policies = new EvictionPolicy[] {
+                new FifoEvictionPolicy(), new ClockEvictionPolicy(4),
+                new LruKEvictionPolicy(4), new TwoQueueEvictionPolicy(4) };
+        for (EvictionPolicy policy : policies) {
+            for (int i = 0; i < 4; i++) {
+                policy.recordInsert(i);
+            }
+            policy.recordAccess(3);
+            assertEquals(policy.getName(), Integer.valueOf(3), policy.evict(k -> k == 3));
+            assertNull(policy.getName(), policy.evict(k -> k == 3));
+            policy.recordRemove(0);
+            policy.recordRemove(1);
+            assertEquals(policy.getName(), Integer.valueOf(2), policy.evict(k -> true));
+            assertNull(policy.getName(), policy.evict(k -> true));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
@@ -0,0 +1,108 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.execution.ExternalSorter;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HashEquiJoinTest extends SimpleDbTestBase {
+
+  /** A budget that holds only a few hundred tuples, so most partitions spill. */
+  private static final long SMALL_BUDGET = 32 << 10;
+
+  private static final TupleDesc INTS = new TupleDesc(
+      new Type[] { Type.INT_TYPE, Type.INT_TYPE });
+  private static final TupleDesc STRINGS = new TupleDesc(
+      new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+
+  /** n tuples (key, position) with random keys below keys; with skew half of them have key 0 */
+  private static OpIterator input(TupleDesc td, int n, Random rand, int keys, boolean skew) {
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      // 倾斜时一半的元组是同一个键
+      int k = skew && rand.nextBoolean() ? 0 : rand.nextInt(keys);
+      Tuple t = new Tuple(td);
+      t.setField(0, td.getFieldType(0) == Type.INT_TYPE
+          ? new IntField(k) : new StringField("key" + k, Type.STRING_LEN));
+      t.setField(1, new IntField(i));
+      tuples.add(t);
+    }
+    return new TupleIterator(td, tuples);
+  }
+
+  /** Join both inputs with HashEquiJoin and with nested loops and compare. */
+  private static void check(TupleDesc td, int n1, int n2, int keys, boolean skew, long budget)
+      throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    Join expected = new Join(pred, input(td, n1, new Random(1), keys, skew),
+        input(td, n2, new Random(2), keys, skew));
+    HashEquiJoin actual = new HashEquiJoin(pred, input(td, n1, new Random(1), keys, skew),
+        input(td, n2, new Random(2), keys, skew), budget);
+    // rewind replays the join from the spilled partitions
+    TestUtil.compareDbIteratorsUnordered(expected, actual);
+  }
+
+  /** Everything fits in memory. */
+  @Test public void inMemory() throws Exception {
+    check(INTS, 2000, 2000, 500, false, ExternalSorter.DEFAULT_MEMORY_BYTES);
+  }
+
+  /** Most partitions spill and are joined from disk. */
+  @Test public void spilled() throws Exception {
+    check(INTS, 3000, 3000, 1000, false, SMALL_BUDGET);
+    check(STRINGS, 3000, 2000, 1000, false, SMALL_BUDGET);
+  }
+
+  /** Partitions too large for the budget are partitioned again, or joined in chunks when one key dominates. */
+  @Test public void skewed() throws Exception {
+    check(INTS, 2000, 600, 1000, true, SMALL_BUDGET);
+    check(INTS, 3000, 1000, 3000, false, 4 << 10);
+  }
+
+  /** Rewind in the middle of the first pass still writes every spilled child2 tuple. */
+  @Test public void rewindEarly() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin op = new HashEquiJoin(pred, input(INTS, 2000, new Random(1), 300, false),
+        input(INTS, 2000, new Random(2), 300, false), SMALL_BUDGET);
+    op.open();
+    List<String> all = TestUtil.sortedTuples(op);
+    op.rewind();
+    for (int i = 0; i < 10; i++)
+      op.next();
+    op.close();
+
+    op = new HashEquiJoin(pred, input(INTS, 2000, new Random(1), 300, false),
+        input(INTS, 2000, new Random(2), 300, false), SMALL_BUDGET);
+    op.open();
+    op.next();
+    op.rewind();
+    assertEquals(all, TestUtil.sortedTuples(op));
+    op.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HashEquiJoinTest.class);
+  }
+}
@@ -82,6 +82,88 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Unit test for HeapFile.readPages(): a scattering read of adjacent
+     * pages returns the same pages as readPage(), and stops at the end of
+     * the file.
+     */
+    @Test
+    public void readPages() throws Exception {
+        HeapFile threePageFile = SystemTestUtil.createRandomHeapFile(2, 1200,
+                null, null);
+        assertEquals(3, threePageFile.numPages());
+
+        List<Page> pages = threePageFile.readPages(1, 5);
+        assertEquals(2, pages.size());
+        for (int i = 0; i < pages.size(); i++) {
+            HeapPageId pid = new HeapPageId(threePageFile.getId(), i + 1);
+            assertEquals(pid, pages.get(i).getId());
+            assertArrayEquals(threePageFile.readPage(pid).getPageData(),
+                    pages.get(i).getPageData());
+        }
+        assertNull(threePageFile.readPage(new HeapPageId(threePageFile.getId(), 3)));
+    }
+
+    /**
+     * Unit test for HeapFile.iterator() over a range of pages: ranges that
+     * cover the file return every tuple once, and an empty range none.
+     */
+    @Test
+    public void rangeIterators() throws Exception {
+        HeapFile threePageFile = SystemTestUtil.createRandomHeapFile(2, 1200,
+                null, null);
+        assertEquals(3, threePageFile.numPages());
+
+        List<List<Integer>> scanned = new ArrayList<List<Integer>>();
+        int[][] ranges = { { 0, 1 }, { 1, 2 }, { 2, -1 }, { 3, 3 } };
+        for (int[] range : ranges) {
+            DbFileIterator it = threePageFile.iterator(tid, range[0], range[1]);
+            it.open();
+            while (it.hasNext())
+                scanned.add(SystemTestUtil.tupleToList(it.next()));
+            it.close();
+        }
+        SystemTestUtil.matchTuples(threePageFile, tid, scanned);
+    }
+
+    /**
+     * Unit test for HeapFile.readPage() in mmap mode: pages built over the
+     * mapped file match the pages read with a system call.
+     */
+    @Test
+    public void readPageMapped() throws Exception {
+        HeapFile mapped = new HeapFile(hf.getFile(), td, true);
+        Database.getCatalog().addTable(mapped, SystemTestUtil.getUUID());
+        assertTrue(mapped.isMemoryMapped());
+        HeapPageId pid = new HeapPageId(mapped.getId(), 0);
+        HeapPage page = (HeapPage) mapped.readPage(pid);
+        assertEquals(484, page.getNumEmptySlots());
+        assertArrayEquals(hf.readPage(pid).getPageData(), page.getPageData());
+        assertNull(mapped.readPage(new HeapPageId(mapped.getId(), 1)));
+    }
+
+    /**
+     * A mapped page is copied on its first modification: the file and the
+     * before image keep the old contents until the page is written back.
+     */
+    @Test
+    public void mappedPageCopyOnWrite() throws Exception {
+        HeapFile mapped = new HeapFile(hf.getFile(), td, true);
+        Database.getCatalog().addTable(mapped, SystemTestUtil.getUUID());
+        HeapPageId pid = new HeapPageId(mapped.getId(), 0);
+        byte[] before = mapped.readPage(pid).getPageData();
+
+        HeapPage page = (HeapPage) mapped.readPage(pid);
+        assertArrayEquals(before, page.getBeforeImage().getPageData());
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+        assertEquals(483, page.getNumEmptySlots());
+        assertArrayEquals(before, page.getBeforeImage().getPageData());
+        assertArrayEquals(before, mapped.readPage(pid).getPageData());
+
+        mapped.writePage(page);
+        assertEquals(483, ((HeapPage) mapped.readPage(pid)).getNumEmptySlots());
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
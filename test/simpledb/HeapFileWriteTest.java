@@ -12,7 +12,9 @@ import simpledb.storage.*;
 import simpledb.systemtest.SystemTestUtil;
 import simpledb.transaction.TransactionId;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
     private TransactionId tid;
@@ -90,6 +92,57 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         it.close();
     }
 
+    /**
+     * Inserts should go to the page with room found through the free-space
+     * map, also when the map is loaded back from disk by a new HeapFile.
+     */
+    @Test public void insertUsesFreeSpaceMap() throws Exception {
+        HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
+                null);
+        int tableId = smallFile.getId();
+        int numTuples = (BufferPool.getPageSize()*8) / (8 * 8 + 1);
+        int headerSize = (int) Math.ceil(numTuples / 8.0);
+        byte[] empty = new byte[numTuples * 8 + headerSize];
+        byte[] full = new byte[numTuples * 8 + headerSize];
+        Arrays.fill(full, (byte) 0xFFFFFFFF);
+
+        smallFile.writePage(new HeapPage(new HeapPageId(tableId, 0), full));
+        smallFile.writePage(new HeapPage(new HeapPageId(tableId, 1), full));
+        smallFile.writePage(new HeapPage(new HeapPageId(tableId, 2), empty));
+        smallFile.writePage(new HeapPage(new HeapPageId(tableId, 3), full));
+        assertTrue(smallFile.getFreeSpaceMap().getMapFile().exists());
+
+        HeapFile reopened = new HeapFile(smallFile.getFile(), smallFile.getTupleDesc());
+        assertEquals(numTuples, reopened.getFreeSpaceMap().getFreeSlots(2));
+        List<Page> pages = reopened.insertTuple(tid, Utility.getHeapTuple(1, 2));
+        assertEquals(2, pages.get(0).getId().getPageNumber());
+        assertEquals(numTuples - 1, reopened.getFreeSpaceMap().getFreeSlots(2));
+        assertEquals(4, reopened.numPages());
+    }
+
+    /**
+     * A heap file rewritten by HeapFileEncoder to the same number of pages
+     * must not pick up the map persisted for its old contents.
+     */
+    @Test public void rewrittenFileRebuildsFreeSpaceMap() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
+                tuples);
+        int numTuples = (BufferPool.getPageSize()*8) / (8 * 8 + 1);
+        int headerSize = (int) Math.ceil(numTuples / 8.0);
+        byte[] full = new byte[numTuples * 8 + headerSize];
+        Arrays.fill(full, (byte) 0xFFFFFFFF);
+        smallFile.writePage(new HeapPage(new HeapPageId(smallFile.getId(), 0), full));
+        smallFile.getFreeSpaceMap().close();
+        assertEquals(0, new HeapFile(smallFile.getFile(), smallFile.getTupleDesc())
+                .getFreeSpaceMap().getFreeSlots(0));
+
+        HeapFileEncoder.convert(tuples, smallFile.getFile(), BufferPool.getPageSize(), 2);
+        HeapFile rewritten = new HeapFile(smallFile.getFile(), smallFile.getTupleDesc());
+        assertEquals(1, rewritten.numPages());
+        assertEquals(numTuples - 3, rewritten.getFreeSpaceMap().getFreeSlots(0));
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,173 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.Filter;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.IndexNestedLoopJoin;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+
+  private BTreeFile index;
+  private TransactionId tid;
+
+  /** An indexed table of 3000 (key, value) tuples with random keys below 500 */
+  @Before public void setUp() throws Exception {
+    index = BTreeUtility.createRandomBTreeFile(2, 3000, 500, null, null, 0);
+    Database.getCatalog().addTable(index, UUID.randomUUID().toString());
+    tid = new TransactionId();
+  }
+
+  @After public void tearDown() {
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /** n tuples (key, position) of table alias, with random keys below keys */
+  private static OpIterator input(String alias, int n, long seed, int keys) {
+    TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+        new String[] { alias + ".k", alias + ".v" });
+    Random rand = new Random(seed);
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new IntField(rand.nextInt(keys)));
+      t.setField(1, new IntField(i));
+      tuples.add(t);
+    }
+    return new TupleIterator(td, tuples);
+  }
+
+  /** The indexed table, keeping only tuples whose value is above 250 if filtered */
+  private OpIterator inner(boolean filtered) {
+    OpIterator scan = new SeqScan(tid, index.getId(), "b");
+    if (!filtered)
+      return scan;
+    return new Filter(new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(250)), scan);
+  }
+
+  /** Join n outer tuples with the index and with nested loops and compare. */
+  private void check(Predicate.Op op, int n, boolean filtered, int batch) throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, op, 0);
+    Join expected = new Join(pred, input("a", n, 1, 600), inner(filtered));
+    IndexNestedLoopJoin actual = new IndexNestedLoopJoin(pred, input("a", n, 1, 600), inner(filtered), batch);
+    assertTrue(TestUtil.compareDbIteratorsUnordered(expected, actual).size() > 0);
+  }
+
+  /** Every supported predicate matches a nested loops join, with and without filters on the inner table. */
+  @Test public void allPredicates() throws Exception {
+    check(Predicate.Op.EQUALS, 2000, false, IndexNestedLoopJoin.DEFAULT_BATCH_TUPLES);
+    check(Predicate.Op.EQUALS, 2000, true, 64);
+    Predicate.Op[] ops = { Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ,
+        Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ };
+    for (Predicate.Op op : ops) {
+      check(op, 40, false, 16);
+      check(op, 40, true, 16);
+    }
+  }
+
+  /** Sorted probes reuse the leaves they walked instead of descending from the root for each key. */
+  @Test public void sortedProbesReuseLeaves() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    IndexNestedLoopJoin sorted = new IndexNestedLoopJoin(pred, input("a", 2000, 1, 500), inner(false));
+    IndexNestedLoopJoin unsorted = new IndexNestedLoopJoin(pred, input("a", 2000, 1, 500), inner(false), 1);
+    sorted.open();
+    unsorted.open();
+    assertEquals(TestUtil.sortedTuples(unsorted), TestUtil.sortedTuples(sorted));
+    // 500个不同的键,排序后只在跳过了不止一个叶子页时才从根开始找
+    assertTrue(sorted.getDescents() < 100);
+    assertTrue(unsorted.getDescents() > 1000);
+    sorted.close();
+    unsorted.close();
+  }
+
+  /** The optimizer probes an indexed inner table and hashes one without an index. */
+  @Test public void optimizerPicksIndexJoin() throws Exception {
+    String key = new SeqScan(tid, index.getId(), "b").getTupleDesc().getFieldName(0);
+    LogicalJoinNode lj = new LogicalJoinNode("a", "b", "a.k", key, Predicate.Op.EQUALS);
+    OpIterator indexed = JoinOptimizer.instantiateJoin(lj, input("a", 10, 1, 5), inner(true));
+    assertTrue(indexed instanceof IndexNestedLoopJoin);
+    OpIterator hashed = JoinOptimizer.instantiateJoin(
+        new LogicalJoinNode("a", "c", "a.k", "c.k", Predicate.Op.EQUALS),
+        input("a", 10, 1, 5), input("c", 10, 2, 5));
+    assertTrue(hashed instanceof HashEquiJoin);
+
+    LogicalPlan plan = new LogicalPlan();
+    plan.addScan(index.getId(), "b");
+    JoinOptimizer jo = new JoinOptimizer(plan, new ArrayList<>());
+    double scanCost = index.numPages() * 1000.0;
+    double nested = jo.estimateJoinCost(lj, 2000, 3000, 1000, scanCost);
+    double probed = jo.estimateIndexJoinCost(lj, 2000, 3000, 1000, scanCost);
+    assertTrue(probed < nested);
+  }
+
+  /** orderJoins probes the index for a few outer tuples and hashes many, whose probes would read every leaf. */
+  @Test public void optimizerCostsIndexJoin() throws Exception {
+    String key = new SeqScan(tid, index.getId(), "b").getTupleDesc().getFieldName(0);
+    Map<String, TableStats> stats = new HashMap<>();
+    stats.put(Database.getCatalog().getTableName(index.getId()), new TableStats(index.getId(), 1000));
+    for (int rows : new int[] { 5, 20000 }) {
+      HeapFile outer = SystemTestUtil.createRandomHeapFile(2, rows, 500, null, null, "c");
+      stats.put(Database.getCatalog().getTableName(outer.getId()), new TableStats(outer.getId(), 1000));
+      LogicalPlan plan = new LogicalPlan();
+      plan.addScan(outer.getId(), "a");
+      plan.addScan(index.getId(), "b");
+      Map<String, Double> selectivities = new HashMap<>();
+      selectivities.put("a", 1.0);
+      selectivities.put("b", 1.0);
+      LogicalJoinNode lj = new JoinOptimizer(plan, Collections.singletonList(
+          new LogicalJoinNode("a", "b", "a.c0", key, Predicate.Op.EQUALS)))
+          .orderJoins(stats, selectivities, false).get(0);
+      OpIterator j = JoinOptimizer.instantiateJoin(lj, new SeqScan(tid, outer.getId(), "a"), inner(false));
+      if (rows == 5) {
+        assertEquals(lj.algorithmReason, JoinOptimizer.Algorithm.INDEX_NESTED_LOOPS, lj.algorithm);
+        assertTrue(j instanceof IndexNestedLoopJoin);
+      } else {
+        assertEquals(lj.algorithmReason, JoinOptimizer.Algorithm.HASH, lj.algorithm);
+        assertTrue(j instanceof HashEquiJoin);
+      }
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+  }
+}
@@ -13,6 +13,7 @@ import simpledb.common.Type;
 import simpledb.execution.Aggregator;
 import simpledb.execution.IntegerAggregator;
 import simpledb.execution.OpIterator;
+import simpledb.storage.Tuple;
 import simpledb.systemtest.SimpleDbTestBase;
 
 public class IntegerAggregatorTest extends SimpleDbTestBase {
@@ -130,6 +131,31 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * AVG and MIN over values whose sum does not fit in an int, and which are
+   * all larger than any small starting minimum
+   */
+  @Test public void mergeLargeValues() throws Exception {
+    int big = Integer.MAX_VALUE - 1;
+    OpIterator scan = TestUtil.createTupleList(width1,
+        new int[] { 1, big, 1, big, 1, big - 6 });
+    IntegerAggregator avgAgg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.AVG);
+    IntegerAggregator minAgg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.MIN);
+    scan.open();
+    while (scan.hasNext()) {
+      Tuple t = scan.next();
+      avgAgg.mergeTupleIntoGroup(t);
+      minAgg.mergeTupleIntoGroup(t);
+    }
+
+    OpIterator it = avgAgg.iterator();
+    it.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(width1, new int[] { 1, big - 2 }), it);
+    it = minAgg.iterator();
+    it.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(width1, new int[] { 1, big - 6 }), it);
+  }
+
   /**
    * Test IntegerAggregator.iterator() for OpIterator behaviour
    */
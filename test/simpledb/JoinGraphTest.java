@@ -0,0 +1,106 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.execution.Predicate;
+import simpledb.optimizer.JoinGraph;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class JoinGraphTest extends SimpleDbTestBase {
+
+  private static LogicalJoinNode join(int t1, int t2) {
+    return new LogicalJoinNode("t" + t1, "t" + t2, "c0", "c0", Predicate.Op.EQUALS);
+  }
+
+  private static boolean connected(JoinGraph g, long set) {
+    long reached = Long.lowestOneBit(set);
+    while (true) {
+      long next = (reached | g.neighbours(reached)) & set;
+      if (next == reached)
+        return reached == set;
+      reached = next;
+    }
+  }
+
+  /**
+   * Enumerate the pairs of g, checking that each is a pair of disjoint
+   * connected sets joined to each other and comes after every pair that
+   * builds one of its sets.
+   *
+   * @return how many pairs there are
+   */
+  private static int checkPairs(JoinGraph g) {
+    Set<Long> used = new HashSet<>();
+    Set<String> seen = new HashSet<>();
+    int[] pairs = { 0 };
+    g.enumeratePairs((left, right) -> {
+      assertEquals(0, left & right);
+      assertTrue(connected(g, left) && connected(g, right));
+      assertTrue((g.neighbours(left) & right) != 0);
+      assertFalse("pair after a use of its union", used.contains(left | right));
+      assertTrue(seen.add(Math.min(left, right) + "," + Math.max(left, right)));
+      used.add(left);
+      used.add(right);
+      pairs[0]++;
+    });
+    return pairs[0];
+  }
+
+  /** The numbers of pairs of chains, cycles, stars and cliques are the known ones. */
+  @Test public void pairs() throws Exception {
+    for (int n = 2; n <= 10; n++) {
+      List<LogicalJoinNode> chain = new ArrayList<>();
+      List<LogicalJoinNode> star = new ArrayList<>();
+      List<LogicalJoinNode> clique = new ArrayList<>();
+      for (int i = 1; i < n; i++) {
+        chain.add(join(i - 1, i));
+        star.add(join(0, i));
+      }
+      for (int i = 0; i < n; i++)
+        for (int j = i + 1; j < n; j++)
+          clique.add(join(i, j));
+      List<LogicalJoinNode> cycle = new ArrayList<>(chain);
+      if (n > 2)
+        cycle.add(join(n - 1, 0));
+      assertEquals((n * n * n - n) / 6, checkPairs(new JoinGraph(chain)));
+      assertEquals((n - 1) << (n - 2), checkPairs(new JoinGraph(star)));
+      assertEquals(((int) Math.pow(3, n) - (2 << n) + 1) / 2, checkPairs(new JoinGraph(clique)));
+      if (n > 2)
+        assertEquals((n * n * n - 2 * n * n + n) / 2, checkPairs(new JoinGraph(cycle)));
+    }
+  }
+
+  /** Each relation is numbered once, in the order it first appears. */
+  @Test public void numbering() throws Exception {
+    List<LogicalJoinNode> joins = new ArrayList<>();
+    joins.add(join(3, 1));
+    joins.add(join(1, 2));
+    joins.add(join(2, 3));
+    JoinGraph g = new JoinGraph(joins);
+    assertEquals(3, g.size());
+    assertEquals("t3", g.alias(0));
+    assertEquals(2, g.relation("t2"));
+    assertEquals(-1, g.relation("t0"));
+    assertEquals(0b110, g.neighbours(0b001));
+    assertEquals(2, g.joinsBetween(0b001, 0b110).size());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(JoinGraphTest.class);
+  }
+}
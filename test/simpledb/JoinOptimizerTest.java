@@ -11,9 +11,14 @@ import org.junit.Test;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Utility;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.Join;
+import simpledb.execution.OpIterator;
 import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
 import simpledb.optimizer.JoinOptimizer;
 import simpledb.optimizer.LogicalJoinNode;
+import simpledb.optimizer.LogicalPlan;
 import simpledb.optimizer.TableStats;
 import simpledb.storage.BufferPool;
 import simpledb.storage.HeapFile;
@@ -384,6 +389,215 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
                 && (result.get(0).t1Alias.equals("hobbies") || result.get(0).t2Alias.equals("hobbies")));
     }
 
+    /**
+     * Order the joins of a star of 16 tables around t0; the other tables
+     * have different filter selectivities
+     */
+    private List<LogicalJoinNode> orderStar(List<LogicalJoinNode> nodes)
+            throws ParsingException {
+        LogicalPlan lp = new LogicalPlan();
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put(tableName1, stats1);
+        stats.put(tableName2, stats2);
+        Map<String, Double> filterSelectivities = new HashMap<>();
+        for (int i = 0; i < 16; i++) {
+            lp.addScan(i == 0 ? tableId2 : tableId1, "t" + i);
+            filterSelectivities.put("t" + i, 1.0 / (1 + i % 4));
+        }
+        return new JoinOptimizer(lp, nodes).orderJoins(stats,
+                filterSelectivities, false);
+    }
+
+    /**
+     * A 16-table star join is ordered quickly, and every join in the order
+     * shares a table with the joins before it, so no cross product is formed
+     */
+    @Test(timeout = 20000)
+    public void starOrderJoinsTest() throws ParsingException {
+        List<LogicalJoinNode> nodes = new ArrayList<>();
+        for (int i = 1; i < 16; i++)
+            nodes.add(new LogicalJoinNode("t0", "t" + i, "c" + (i % 10), "c0",
+                    Predicate.Op.EQUALS));
+        List<LogicalJoinNode> result = orderStar(nodes);
+        Assert.assertEquals(nodes.size(), result.size());
+        Set<String> joined = new HashSet<>();
+        for (LogicalJoinNode j : result) {
+            Assert.assertTrue(joined.isEmpty() || joined.contains(j.t1Alias)
+                    || joined.contains(j.t2Alias));
+            joined.add(j.t1Alias);
+            joined.add(j.t2Alias);
+        }
+        Assert.assertEquals(16, joined.size());
+
+        // t14和t15只互相连接,和其他表只能做笛卡尔积
+        nodes.remove(nodes.size() - 1);
+        nodes.remove(nodes.size() - 1);
+        nodes.add(new LogicalJoinNode("t14", "t15", "c0", "c1",
+                Predicate.Op.EQUALS));
+        try {
+            orderStar(nodes);
+            Assert.fail("expected a ParsingException for a cross product");
+        } catch (ParsingException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Each join algorithm has its own cost: hashing reads both sides once and
+     * pays for spilling past its memory budget, nested loops with one-page
+     * blocks scan the inner side more often than with full blocks, and only
+     * equality joins can be hashed
+     */
+    @Test
+    public void joinAlgorithmCostTest() throws ParsingException {
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(tableId1, "t1");
+        lp.addScan(tableId2, "t2");
+        JoinOptimizer jo = new JoinOptimizer(lp, new ArrayList<>());
+        LogicalJoinNode equals = new LogicalJoinNode("t1", "t2", "c1", "c2",
+                Predicate.Op.EQUALS);
+        LogicalJoinNode less = new LogicalJoinNode("t1", "t2", "c1", "c2",
+                Predicate.Op.LESS_THAN);
+
+        Assert.assertEquals(1000 + 2000 + 100 + 200,
+                jo.estimateHashJoinCost(equals, 100, 200, 1000, 2000), 1e-9);
+        Assert.assertEquals(Double.MAX_VALUE,
+                jo.estimateHashJoinCost(less, 100, 200, 1000, 2000), 0);
+        // 一千万个元组放不进默认的内存预算,溢出的部分要写出再读回
+        int big = 10_000_000;
+        Assert.assertTrue(jo.estimateHashJoinCost(equals, big, 200, 1000, 2000)
+                > 1000 + 2000 + big + 200);
+        Assert.assertTrue(jo.estimateNestedLoopsJoinCost(less, 100000, 200, 1000, 2000)
+                > jo.estimateJoinCost(less, 100000, 200, 1000, 2000));
+        Assert.assertTrue(jo.estimateHashJoinCost(equals, 100000, 200, 1000, 2000)
+                < jo.estimateJoinCost(equals, 100000, 200, 1000, 2000));
+    }
+
+    /**
+     * orderJoins records the cheapest algorithm of each join and why, and
+     * instantiateJoin builds the operator of that algorithm
+     */
+    @Test
+    public void chooseJoinAlgorithmTest() throws ParsingException {
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(tableId1, "t1");
+        lp.addScan(tableId2, "t2");
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put(tableName1, stats1);
+        stats.put(tableName2, stats2);
+        Map<String, Double> filterSelectivities = new HashMap<>();
+        filterSelectivities.put("t1", 1.0);
+        filterSelectivities.put("t2", 1.0);
+
+        LogicalJoinNode hashed = new JoinOptimizer(lp, Collections.singletonList(
+                new LogicalJoinNode("t1", "t2", "c1", "c2", Predicate.Op.EQUALS)))
+                .orderJoins(stats, filterSelectivities, false).get(0);
+        Assert.assertEquals(JoinOptimizer.Algorithm.HASH, hashed.algorithm);
+        Assert.assertTrue(hashed.algorithmReason,
+                hashed.algorithmReason.startsWith("hash "));
+        Assert.assertTrue(hashed.algorithmReason,
+                hashed.algorithmReason.contains("block nested loops "));
+
+        LogicalJoinNode looped = new JoinOptimizer(lp, Collections.singletonList(
+                new LogicalJoinNode("t1", "t2", "c1", "c2", Predicate.Op.LESS_THAN)))
+                .orderJoins(stats, filterSelectivities, false).get(0);
+        Assert.assertEquals(JoinOptimizer.Algorithm.BLOCK_NESTED_LOOPS, looped.algorithm);
+        Assert.assertTrue(looped.algorithmReason,
+                looped.algorithmReason.contains("not applicable: hash"));
+
+        TransactionId tid = new TransactionId();
+        OpIterator[] kinds = new OpIterator[JoinOptimizer.Algorithm.values().length];
+        for (JoinOptimizer.Algorithm a : JoinOptimizer.Algorithm.values()) {
+            LogicalJoinNode lj = new LogicalJoinNode("t1", "t2", "c1", "c2",
+                    Predicate.Op.EQUALS);
+            lj.algorithm = a;
+            kinds[a.ordinal()] = JoinOptimizer.instantiateJoin(lj,
+                    new SeqScan(tid, tableId1, "t1"), new SeqScan(tid, tableId2, "t2"));
+        }
+        Assert.assertTrue(kinds[JoinOptimizer.Algorithm.BLOCK_NESTED_LOOPS.ordinal()] instanceof Join);
+        Assert.assertTrue(kinds[JoinOptimizer.Algorithm.NESTED_LOOPS.ordinal()] instanceof Join);
+        Assert.assertTrue(kinds[JoinOptimizer.Algorithm.HASH.ordinal()] instanceof HashEquiJoin);
+        // t2不是B+树,没法按索引连接,退回按谓词选
+        Assert.assertTrue(kinds[JoinOptimizer.Algorithm.INDEX_NESTED_LOOPS.ordinal()] instanceof HashEquiJoin);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * In a chain of small tables with one large table in the middle, the two
+     * ends are joined on their own before being joined to each other: the
+     * plan is bushy, and the plan LogicalPlan builds from it finds every
+     * result of the query
+     */
+    @Test
+    public void bushyOrderJoinsTest() throws Exception {
+        final int IO_COST = 101;
+        final int[] ROWS = { 20, 20, 2000, 20, 20, 20 };
+        LogicalPlan lp = new LogicalPlan();
+        Map<String, TableStats> stats = new HashMap<>();
+        Map<String, Double> filterSelectivities = new HashMap<>();
+        List<LogicalJoinNode> nodes = new ArrayList<>();
+        // 链上每个c1值对应的前缀结果数
+        Map<Integer, Integer> prefixes = new HashMap<>();
+        for (int i = 0; i < ROWS.length; i++) {
+            List<List<Integer>> tuples = new ArrayList<>();
+            HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS[i], 20,
+                    null, tuples, "c");
+            stats.put(Database.getCatalog().getTableName(f.getId()),
+                    new TableStats(f.getId(), IO_COST));
+            lp.addScan(f.getId(), "t" + i);
+            filterSelectivities.put("t" + i, 1.0);
+            Map<Integer, Integer> next = new HashMap<>();
+            for (List<Integer> t : tuples) {
+                int matches = i == 0 ? 1 : prefixes.getOrDefault(t.get(0), 0);
+                next.merge(t.get(1), matches, Integer::sum);
+            }
+            prefixes = next;
+            if (i > 0) {
+                lp.addJoin("t" + (i - 1) + ".c1", "t" + i + ".c0",
+                        Predicate.Op.EQUALS);
+                nodes.add(new LogicalJoinNode("t" + (i - 1), "t" + i, "c1",
+                        "c0", Predicate.Op.EQUALS));
+            }
+        }
+        lp.addProjectField("t0.c0", null);
+
+        List<LogicalJoinNode> result = new JoinOptimizer(lp, nodes)
+                .orderJoins(stats, filterSelectivities, false);
+        Assert.assertEquals(nodes.size(), result.size());
+        // 模拟LogicalPlan合并子计划,找一个两边都是连接的连接
+        Map<String, Set<String>> joined = new HashMap<>();
+        boolean bushy = false;
+        for (LogicalJoinNode j : result) {
+            Set<String> left = joined.getOrDefault(j.t1Alias,
+                    new HashSet<>(Collections.singleton(j.t1Alias)));
+            Set<String> right = joined.getOrDefault(j.t2Alias,
+                    new HashSet<>(Collections.singleton(j.t2Alias)));
+            Assert.assertNotSame(left, right);
+            bushy |= left.size() > 1 && right.size() > 1;
+            left.addAll(right);
+            for (String alias : left)
+                joined.put(alias, left);
+        }
+        Assert.assertTrue("expected a bushy plan: " + result, bushy);
+        Assert.assertEquals(ROWS.length, joined.get("t0").size());
+
+        int expected = 0;
+        for (int count : prefixes.values())
+            expected += count;
+        TransactionId tid = new TransactionId();
+        OpIterator plan = lp.physicalPlan(tid, stats, false);
+        plan.open();
+        int count = 0;
+        while (plan.hasNext()) {
+            plan.next();
+            count++;
+        }
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        Assert.assertTrue(expected > 0);
+        Assert.assertEquals(expected, count);
+    }
+
     /**
      * Test a much-larger join ordering, to confirm that it executes in a
      * reasonable amount of time
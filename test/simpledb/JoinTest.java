@@ -8,6 +8,10 @@ import junit.framework.JUnit4TestAdapter;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import simpledb.common.Utility;
 import simpledb.execution.Join;
 import simpledb.execution.JoinPredicate;
@@ -15,6 +19,7 @@ import simpledb.execution.OpIterator;
 import simpledb.execution.Predicate;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
 import simpledb.systemtest.SimpleDbTestBase;
 
 public class JoinTest extends SimpleDbTestBase {
@@ -112,6 +117,59 @@ public class JoinTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(eqJoin, op);
   }
 
+  /** A list of (key, position) tuples that counts how often it is rewound */
+  private static class CountingList extends TupleIterator {
+    private static final long serialVersionUID = 1L;
+    int rewinds = 0;
+
+    CountingList(int n, int keys) {
+      super(Utility.getTupleDesc(2), tuples(n, keys));
+    }
+
+    private static List<Tuple> tuples(int n, int keys) {
+      List<Tuple> tuples = new ArrayList<>();
+      for (int i = 0; i < n; i++)
+        tuples.add(Utility.getHeapTuple(new int[] { i % keys, i }));
+      return tuples;
+    }
+
+    @Override public void rewind() {
+      rewinds++;
+      super.rewind();
+    }
+  }
+
+  /**
+   * Unit test for Join.getNext() with child1 read in several blocks: child2 is
+   * scanned once per block, and the result matches a tuple-at-a-time join.
+   */
+  @Test public void blockJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.LESS_THAN, 0);
+    CountingList outer = new CountingList(1500, 37);
+    CountingList inner = new CountingList(40, 37);
+    List<String> want = new ArrayList<>();
+    for (Tuple t1 : CountingList.tuples(1500, 37))
+      for (Tuple t2 : CountingList.tuples(40, 37))
+        if (pred.filter(t1, t2))
+          want.add(t1.toString() + "\t" + t2.toString());
+    Collections.sort(want);
+
+    // two int fields: 504 tuples to a page, so three one-page blocks
+    Join op = new Join(pred, outer, inner, 1);
+    op.open();
+    List<String> got = TestUtil.sortedTuples(op);
+    assertEquals(2, inner.rewinds);
+    assertEquals(want, got);
+    op.rewind();
+    int again = 0;
+    while (op.hasNext()) {
+      op.next();
+      again++;
+    }
+    assertEquals(want.size(), again);
+    op.close();
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,71 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.execution.IntKeyTable;
+import simpledb.execution.KeyTable;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class KeyTableTest extends SimpleDbTestBase {
+
+    /** Ids are dense and given in the order keys are first added. */
+    @Test public void intKeysGetDenseIds() {
+        KeyTable table = KeyTable.forType(Type.INT_TYPE);
+        assertEquals(0, table.getOrAdd(new IntField(7)));
+        assertEquals(1, table.getOrAdd(new IntField(-3)));
+        assertEquals(0, table.getOrAdd(new IntField(7)));
+        assertEquals(2, table.getOrAdd(new IntField(0)));
+        assertEquals(3, table.size());
+        assertEquals(1, table.find(new IntField(-3)));
+        assertEquals(-1, table.find(new IntField(8)));
+        assertEquals(new IntField(-3), table.getKey(1));
+    }
+
+    /** Keys that collide in the low bits and keys added past many resizes are all still found. */
+    @Test public void intKeysSurviveGrowth() {
+        IntKeyTable table = new IntKeyTable();
+        int n = 100000;
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, table.getOrAdd(i << 12));
+        }
+        assertEquals(n, table.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, table.find(i << 12));
+            assertEquals(i << 12, table.getInt(i));
+        }
+        assertEquals(-1, table.find(1));
+    }
+
+    /** String keys are compared by their characters, including chars above 0xff. */
+    @Test public void stringKeys() {
+        KeyTable table = KeyTable.forType(Type.STRING_TYPE);
+        int n = 5000;
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, table.getOrAdd(new StringField("key" + i, Type.STRING_LEN)));
+        }
+        assertEquals(n, table.getOrAdd(new StringField("", Type.STRING_LEN)));
+        assertEquals(n + 1, table.getOrAdd(new StringField("Ł", Type.STRING_LEN)));
+        assertEquals(n + 2, table.getOrAdd(new StringField("A", Type.STRING_LEN)));
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, table.find(new StringField("key" + i, Type.STRING_LEN)));
+        }
+        assertEquals(n, table.find(new StringField("", Type.STRING_LEN)));
+        assertEquals(-1, table.find(new StringField("key", Type.STRING_LEN)));
+        assertEquals(new StringField("key42", Type.STRING_LEN), table.getKey(42));
+        assertEquals(n + 3, table.size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(KeyTableTest.class);
+    }
+}
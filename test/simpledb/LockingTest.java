@@ -9,8 +9,10 @@ import simpledb.common.Database;
 import simpledb.common.Permissions;
 import simpledb.common.Utility;
 import simpledb.storage.BufferPool;
+import simpledb.storage.DbFileIterator;
 import simpledb.storage.HeapPageId;
 import simpledb.storage.PageId;
+import simpledb.storage.Tuple;
 import simpledb.transaction.TransactionId;
 
 public class LockingTest extends TestUtil.CreateHeapFile {
@@ -193,6 +195,70 @@ public class LockingTest extends TestUtil.CreateHeapFile {
     bp.getPage(tid1, p1, Permissions.READ_WRITE);
   }
 
+  /**
+   * Unit test for BufferPool.getPage() assuming locking.
+   * Blocked transactions are woken up in arrival order when the lock is
+   * released: a queued writer is not overtaken by a later reader.
+   */
+  @Test public void waitersWokenInOrder() throws Exception {
+    TransactionId tid3 = new TransactionId();
+    bp.getPage(tid1, p0, Permissions.READ_ONLY);
+
+    TestUtil.LockGrabber writer = new TestUtil.LockGrabber(tid2, p0, Permissions.READ_WRITE);
+    writer.start();
+    Thread.sleep(TIMEOUT);
+    TestUtil.LockGrabber reader = new TestUtil.LockGrabber(tid3, p0, Permissions.READ_ONLY);
+    reader.start();
+    Thread.sleep(TIMEOUT);
+    assertEquals(false, writer.acquired());
+    assertEquals(false, reader.acquired());
+
+    bp.transactionComplete(tid1);
+    writer.join(TIMEOUT);
+    assertEquals(true, writer.acquired());
+    Thread.sleep(TIMEOUT);
+    assertEquals(false, reader.acquired());
+
+    bp.transactionComplete(tid2);
+    reader.join(TIMEOUT);
+    assertEquals(true, reader.acquired());
+    bp.transactionComplete(tid3);
+  }
+
+  /**
+   * A scan takes shared locks: another transaction can read the pages it
+   * scanned, but not write them.
+   */
+  @Test public void scanTakesSharedLocks() throws Exception {
+    DbFileIterator it = empty.iterator(tid1);
+    it.open();
+    while (it.hasNext()) {
+      it.next();
+    }
+    it.close();
+
+    grabLock(tid2, p0, Permissions.READ_ONLY, true);
+    grabLock(tid2, p1, Permissions.READ_ONLY, true);
+    grabLock(tid2, p1, Permissions.READ_WRITE, false);
+  }
+
+  /**
+   * Deleting a scanned tuple upgrades the shared lock of its page only.
+   */
+  @Test public void scanThenDeleteUpgrades() throws Exception {
+    DbFileIterator it = empty.iterator(tid1);
+    it.open();
+    Tuple t = it.next();
+    empty.deleteTuple(tid1, t);
+    while (it.hasNext()) {
+      it.next();
+    }
+    it.close();
+
+    grabLock(tid2, p0, Permissions.READ_ONLY, false);
+    grabLock(tid2, p1, Permissions.READ_ONLY, true);
+  }
+
   /**
    * JUnit suite target
    */
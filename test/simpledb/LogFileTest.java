@@ -0,0 +1,92 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.storage.LogFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.TransactionId;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class LogFileTest extends SimpleDbTestBase {
+
+    private static final int THREADS = 8;
+
+    private File file;
+    private LogFile log;
+
+    @Before public void setUp() throws Exception {
+        file = File.createTempFile("logfiletest", ".log");
+        file.deleteOnExit();
+        log = new LogFile(file);
+    }
+
+    @After public void tearDown() {
+        file.delete();
+    }
+
+    /** Append a record and force it from THREADS threads at once. */
+    private void forceConcurrently() throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        final List<Throwable> errors = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    barrier.await();
+                    log.logXactionBegin(new TransactionId());
+                    log.force();
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    /**
+     * Concurrent forces share fsyncs: with a flush wait long enough for all
+     * callers to join, one fsync covers every record.
+     */
+    @Test public void groupCommitSharesForces() throws Exception {
+        log.setGroupCommit(2000000, THREADS);
+        forceConcurrently();
+        assertEquals(1, log.getForceCount());
+    }
+
+    /** With group commit turned off every force does its own fsync. */
+    @Test public void groupCommitOff() throws Exception {
+        log.setGroupCommit(0, 1);
+        forceConcurrently();
+        assertEquals(THREADS, log.getForceCount());
+    }
+
+    /** A force with nothing new in the log does not fsync again. */
+    @Test public void forceIsIdempotent() throws Exception {
+        log.logXactionBegin(new TransactionId());
+        log.force();
+        log.force();
+        assertEquals(1, log.getForceCount());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LogFileTest.class);
+    }
+}
@@ -0,0 +1,106 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.Materialize;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class MaterializeTest extends SimpleDbTestBase {
+
+  private static final TupleDesc TD = new TupleDesc(
+      new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+
+  /** n tuples (position, a string naming the tuple) */
+  private static OpIterator input(int n) {
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      Tuple t = new Tuple(TD);
+      t.setField(0, new IntField(i));
+      t.setField(1, new StringField("row" + i, Type.STRING_LEN));
+      tuples.add(t);
+    }
+    return new TupleIterator(TD, tuples);
+  }
+
+  /** Read op to the end, checking it returns the n tuples of input(n) in order. */
+  private static void checkAll(OpIterator op, int n) throws Exception {
+    for (int i = 0; i < n; i++) {
+      assertTrue(op.hasNext());
+      Tuple t = op.next();
+      assertEquals(new IntField(i), t.getField(0));
+      assertEquals(new StringField("row" + i, Type.STRING_LEN), t.getField(1));
+    }
+    assertFalse(op.hasNext());
+  }
+
+  /** Within the budget the tuples stay in memory, and rewind replays them. */
+  @Test public void inMemory() throws Exception {
+    Materialize op = new Materialize(input(1000));
+    op.open();
+    assertFalse(op.isSpilled());
+    checkAll(op, 1000);
+    // 子节点已经关了,rewind不能再读它
+    op.rewind();
+    checkAll(op, 1000);
+    op.close();
+  }
+
+  /** Past the budget the tuples are spilled and replayed from disk. */
+  @Test public void spilled() throws Exception {
+    Materialize op = new Materialize(input(5000), 64 << 10);
+    op.open();
+    assertTrue(op.isSpilled());
+    checkAll(op, 5000);
+    op.rewind();
+    op.next();
+    op.rewind();
+    checkAll(op, 5000);
+    op.close();
+
+    // 再打开会重新读子节点
+    op.open();
+    checkAll(op, 5000);
+    op.close();
+  }
+
+  /** A nested loops join over a materialized inner side finds every match. */
+  @Test public void joinInner() throws Exception {
+    Join join = new Join(new JoinPredicate(0, Predicate.Op.LESS_THAN, 0),
+        input(300), new Materialize(input(200), 4 << 10));
+    join.open();
+    int count = 0;
+    while (join.hasNext()) {
+      Tuple t = join.next();
+      assertTrue(((IntField) t.getField(0)).getValue() < ((IntField) t.getField(2)).getValue());
+      count++;
+    }
+    join.close();
+    assertEquals(199 * 200 / 2, count);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(MaterializeTest.class);
+  }
+}
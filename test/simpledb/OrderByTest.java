@@ -0,0 +1,129 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.execution.ExternalSorter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+  private static final TupleDesc TD = new TupleDesc(
+      new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE });
+
+  /** n tuples (random key, a string naming the tuple, its position) */
+  private static OpIterator input(int n, int keys) {
+    Random rand = new Random(7);
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      Tuple t = new Tuple(TD);
+      t.setField(0, new IntField(rand.nextInt(keys)));
+      t.setField(1, new StringField("row" + i + "éŁ", Type.STRING_LEN));
+      t.setField(2, new IntField(i));
+      tuples.add(t);
+    }
+    return new TupleIterator(TD, tuples);
+  }
+
+  /** Read op to the end, checking it is sorted on field 0 and stable. */
+  private static int checkSorted(OpIterator op, boolean asc) throws Exception {
+    int count = 0;
+    int lastKey = 0, lastPos = -1;
+    while (op.hasNext()) {
+      Tuple t = op.next();
+      int key = ((IntField) t.getField(0)).getValue();
+      int pos = ((IntField) t.getField(2)).getValue();
+      assertEquals(new StringField("row" + pos + "éŁ", Type.STRING_LEN), t.getField(1));
+      if (count > 0) {
+        assertTrue(asc ? key >= lastKey : key <= lastKey);
+        if (key == lastKey)
+          assertTrue(pos > lastPos);
+      }
+      lastKey = key;
+      lastPos = pos;
+      count++;
+    }
+    return count;
+  }
+
+  /** Within the budget the sort writes no runs. */
+  @Test public void sortInMemory() throws Exception {
+    OrderBy op = new OrderBy(0, true, input(1000, 50));
+    op.open();
+    assertEquals(1000, checkSorted(op, true));
+    op.close();
+  }
+
+  /** Past the budget the sort spills runs and merges them, descending too. */
+  @Test public void sortExternal() throws Exception {
+    // 一个元组大约一百多字节,预算只够几百个元组,又只够合并两个run,要合并好几趟
+    OrderBy asc = new OrderBy(0, true, input(20000, 500), 64 << 10);
+    asc.open();
+    assertEquals(20000, checkSorted(asc, true));
+    asc.close();
+
+    OrderBy desc = new OrderBy(0, false, input(20000, 500), 64 << 10);
+    desc.open();
+    assertEquals(20000, checkSorted(desc, false));
+    desc.close();
+  }
+
+  /** Rewind replays the merged output without reading the child again. */
+  @Test public void rewindReplaysRuns() throws Exception {
+    OrderBy op = new OrderBy(0, true, input(5000, 100), 64 << 10);
+    op.open();
+    assertEquals(5000, checkSorted(op, true));
+    op.getChildren()[0].close();
+    op.rewind();
+    assertEquals(5000, checkSorted(op, true));
+    op.close();
+  }
+
+  /** The sorter really does write runs for a small budget and none for a large one. */
+  @Test public void runCount() throws Exception {
+    OpIterator in = input(5000, 100);
+    ExternalSorter small = new ExternalSorter(TD, (a, b) -> 0, 64 << 10);
+    ExternalSorter large = new ExternalSorter(TD, (a, b) -> 0, ExternalSorter.DEFAULT_MEMORY_BYTES);
+    in.open();
+    while (in.hasNext()) {
+      Tuple t = in.next();
+      small.add(t);
+      large.add(t);
+    }
+    small.finish();
+    large.finish();
+    assertTrue(small.getRunCount() > 0);
+    assertTrue(small.getRunCount() <= 2);
+    assertEquals(0, large.getRunCount());
+    for (int i = 0; i < 5000; i++) {
+      assertEquals(i, ((IntField) small.next().getField(2)).getValue());
+    }
+    assertFalse(small.hasNext());
+    small.close();
+    large.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(OrderByTest.class);
+  }
+}
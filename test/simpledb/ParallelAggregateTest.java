@@ -0,0 +1,242 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+public class ParallelAggregateTest extends SimpleDbTestBase {
+
+  private static final int WORKERS = 4;
+  private static final Aggregator.Op[] OPS = { Aggregator.Op.MIN, Aggregator.Op.MAX,
+      Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.COUNT };
+
+  private HeapFile table;
+  private TransactionId tid;
+
+  /**
+   * A table of three int columns, large enough to be split among WORKERS
+   * workers: c0 has about 1000 distinct values, c1 below 10
+   */
+  @Before public void setUp() throws Exception {
+    int rows = WORKERS * LogicalPlan.MIN_PAGES_PER_WORKER * 340;
+    table = SystemTestUtil.createRandomHeapFile(3, rows, 1000, null, null, "c");
+    Database.resetBufferPool(table.numPages() + 10);
+    tid = new TransactionId();
+  }
+
+  @After public void tearDown() {
+    LogicalPlan.setMaxWorkers(0);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /** Every output tuple of op, which is opened and closed, as sorted strings. */
+  private static List<String> run(OpIterator op) throws Exception {
+    op.open();
+    try {
+      return TestUtil.sortedTuples(op);
+    } finally {
+      op.close();
+    }
+  }
+
+  /** Scans of WORKERS page ranges of the table, each keeping values of c1 below 10 */
+  private OpIterator[] parts() {
+    int pages = table.numPages();
+    OpIterator[] parts = new OpIterator[WORKERS];
+    for (int i = 0; i < WORKERS; i++) {
+      SeqScan scan = new SeqScan(tid, table.getId(), "t", pages * i / WORKERS,
+          i == WORKERS - 1 ? -1 : pages * (i + 1) / WORKERS);
+      parts[i] = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(10)), scan);
+    }
+    return parts;
+  }
+
+  private OpIterator whole() {
+    return new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(10)),
+        new SeqScan(tid, table.getId(), "t"));
+  }
+
+  /** Every op, without grouping and grouped on many and on few values, matches one aggregator. */
+  @Test public void intAggregates() throws Exception {
+    for (Aggregator.Op op : OPS) {
+      for (int gfield : new int[] { Aggregator.NO_GROUPING, 0, 1 }) {
+        Aggregate parallel = new Aggregate(parts(), 2, gfield, op);
+        assertTrue(parallel.isParallel());
+        List<String> want = run(new Aggregate(whole(), 2, gfield, op));
+        assertEquals(op + " by " + gfield, want, run(parallel));
+        // rewind返回同样的结果,不重新计算
+        parallel.open();
+        parallel.rewind();
+        int n = 0;
+        while (parallel.hasNext()) {
+          parallel.next();
+          n++;
+        }
+        parallel.close();
+        assertEquals(want.size(), n);
+      }
+    }
+  }
+
+  /** n tuples (name, value) with names drawn from groups strings */
+  private static OpIterator strings(int n, long seed, int groups) {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE },
+        new String[] { "s.name", "s.value" });
+    Random rand = new Random(seed);
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new StringField("name" + rand.nextInt(groups), Type.STRING_LEN));
+      t.setField(1, new IntField(rand.nextInt(100)));
+      tuples.add(t);
+    }
+    return new TupleIterator(td, tuples);
+  }
+
+  /** String group keys, and COUNT over a string field, are merged like int ones. */
+  @Test public void stringAggregates() throws Exception {
+    OpIterator[] parts = new OpIterator[WORKERS];
+    List<Tuple> all = new ArrayList<>();
+    for (int i = 0; i < WORKERS; i++) {
+      parts[i] = strings(3000, i, 200);
+      parts[i].open();
+      while (parts[i].hasNext())
+        all.add(parts[i].next());
+      parts[i].close();
+    }
+    TupleDesc td = parts[0].getTupleDesc();
+    for (Aggregator.Op op : OPS) {
+      assertEquals(run(new Aggregate(new TupleIterator(td, all), 1, 0, op)),
+          run(new Aggregate(parts, 1, 0, op)));
+    }
+    assertEquals(run(new Aggregate(new TupleIterator(td, all), 0, 1, Aggregator.Op.COUNT)),
+        run(new Aggregate(parts, 0, 1, Aggregator.Op.COUNT)));
+    assertEquals(run(new Aggregate(new TupleIterator(td, all), 0, Aggregator.NO_GROUPING,
+        Aggregator.Op.COUNT)), run(new Aggregate(parts, 0, Aggregator.NO_GROUPING, Aggregator.Op.COUNT)));
+  }
+
+  /** A part that fails on open */
+  private static class Failing extends Operator {
+    private static final long serialVersionUID = 1L;
+    private final TupleDesc td;
+
+    Failing(TupleDesc td) {
+      this.td = td;
+    }
+
+    public void open() throws DbException {
+      throw new DbException("part failed");
+    }
+
+    public void rewind() {
+    }
+
+    protected Tuple fetchNext() {
+      return null;
+    }
+
+    public TupleDesc getTupleDesc() {
+      return td;
+    }
+
+    public OpIterator[] getChildren() {
+      return new OpIterator[0];
+    }
+
+    public void setChildren(OpIterator[] children) {
+    }
+  }
+
+  /** The exception of a part is thrown by open(). */
+  @Test public void failingPart() throws Exception {
+    OpIterator[] parts = parts();
+    parts[2] = new Failing(parts[0].getTupleDesc());
+    try {
+      new Aggregate(parts, 2, 0, Aggregator.Op.SUM).open();
+      fail("expected the part's DbException");
+    } catch (DbException e) {
+      assertEquals("part failed", e.getMessage());
+    }
+  }
+
+  /** The plan of an aggregate over the table, with at most workers workers. */
+  private OpIterator plan(String op, boolean grouped, int workers) throws Exception {
+    LogicalPlan.setMaxWorkers(workers);
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(table.getId(), "t");
+    lp.addFilter("t.c1", Predicate.Op.LESS_THAN, "500");
+    lp.addAggregate(op, "t.c2", grouped ? "t.c0" : null);
+    if (grouped)
+      lp.addProjectField("t.c0", null);
+    lp.addProjectField("t.c2", op);
+    Map<String, TableStats> stats = new HashMap<>();
+    stats.put(Database.getCatalog().getTableName(table.getId()), new TableStats(table.getId(), 1000));
+    return lp.physicalPlan(tid, stats, false);
+  }
+
+  /** The optimizer aggregates a large table in parallel, with the same results. */
+  @Test public void parallelPlans() throws Exception {
+    for (String op : new String[] { "sum", "count", "min", "max", "avg" }) {
+      for (boolean grouped : new boolean[] { false, true }) {
+        OpIterator serial = plan(op, grouped, 1);
+        OpIterator parallel = plan(op, grouped, WORKERS);
+        Aggregate agg = (Aggregate) ((Operator) parallel).getChildren()[0];
+        assertTrue(agg.isParallel());
+        assertEquals(WORKERS, agg.getChildren().length);
+        assertTrue(!((Aggregate) ((Operator) serial).getChildren()[0]).isParallel());
+        List<String> want = run(serial);
+        assertTrue(want.size() > 0);
+        assertEquals(op, want, run(parallel));
+      }
+    }
+  }
+
+  /** A table of too few pages is not split. */
+  @Test public void degreeOfParallelism() {
+    LogicalPlan.setMaxWorkers(WORKERS);
+    assertEquals(1, LogicalPlan.degreeOfParallelism(LogicalPlan.MIN_PAGES_PER_WORKER - 1));
+    assertEquals(2, LogicalPlan.degreeOfParallelism(2 * LogicalPlan.MIN_PAGES_PER_WORKER));
+    assertEquals(WORKERS, LogicalPlan.degreeOfParallelism(100 * LogicalPlan.MIN_PAGES_PER_WORKER));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelAggregateTest.class);
+  }
+}
@@ -0,0 +1,130 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.execution.Predicate;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ParallelJoinOrderTest extends SimpleDbTestBase {
+
+  private static final int[] ROWS = { 100, 1000, 3000, 10000 };
+
+  private HeapFile[] tables;
+  private Map<String, TableStats> stats;
+
+  @Before public void setUp() throws Exception {
+    tables = new HeapFile[ROWS.length];
+    stats = new HashMap<>();
+    for (int i = 0; i < ROWS.length; i++) {
+      tables[i] = SystemTestUtil.createRandomHeapFile(2, ROWS[i], 1000, null, null, "c");
+      stats.put(Database.getCatalog().getTableName(tables[i].getId()),
+          new TableStats(tables[i].getId(), 100));
+    }
+  }
+
+  @After public void tearDown() {
+    JoinOptimizer.setMaxDpRelations(0);
+    JoinOptimizer.setParallelDpRelations(0);
+  }
+
+  /**
+   * The joins of a random connected query of n tables: a tree of joins, each
+   * table joined to an earlier one, and a few more joins
+   */
+  private static List<LogicalJoinNode> randomJoins(int n, Random rand) {
+    List<LogicalJoinNode> joins = new ArrayList<>();
+    for (int i = 1; i < n; i++)
+      joins.add(new LogicalJoinNode("t" + rand.nextInt(i), "t" + i, "c" + rand.nextInt(2),
+          "c" + rand.nextInt(2), Predicate.Op.EQUALS));
+    for (int k = 0; k < n / 4; k++) {
+      int a = rand.nextInt(n), b = rand.nextInt(n);
+      if (a != b)
+        joins.add(new LogicalJoinNode("t" + a, "t" + b, "c1", "c1", Predicate.Op.EQUALS));
+    }
+    return joins;
+  }
+
+  /** Order joins over tables t0..tn-1, aliases of the test tables with seeded filter selectivities. */
+  private List<LogicalJoinNode> order(List<LogicalJoinNode> joins, int n, long seed) throws Exception {
+    Random rand = new Random(seed);
+    LogicalPlan lp = new LogicalPlan();
+    Map<String, Double> selectivities = new HashMap<>();
+    for (int i = 0; i < n; i++) {
+      lp.addScan(tables[rand.nextInt(tables.length)].getId(), "t" + i);
+      selectivities.put("t" + i, 0.05 + rand.nextDouble());
+    }
+    return new JoinOptimizer(lp, joins).orderJoins(stats, selectivities, false);
+  }
+
+  /**
+   * Check that result orders all of joins into a plan tree over the n tables,
+   * merging the joined sets of tables the way LogicalPlan does: each join
+   * either joins two sets, or is between two tables already in one set.
+   */
+  private static void checkConnected(List<LogicalJoinNode> joins, List<LogicalJoinNode> result, int n) {
+    assertEquals(joins.size(), result.size());
+    Map<String, Set<String>> joined = new HashMap<>();
+    for (LogicalJoinNode j : result) {
+      Set<String> left = joined.getOrDefault(j.t1Alias, new HashSet<>(Collections.singleton(j.t1Alias)));
+      Set<String> right = joined.getOrDefault(j.t2Alias, new HashSet<>(Collections.singleton(j.t2Alias)));
+      left.addAll(right);
+      for (String alias : left)
+        joined.put(alias, left);
+    }
+    assertEquals(n, joined.get("t0").size());
+  }
+
+  /** Costing the sets of each size in parallel finds the same plans as searching pair by pair. */
+  @Test public void sameOrders() throws Exception {
+    Random rand = new Random(7);
+    for (int q = 0; q < 12; q++) {
+      int n = 6 + rand.nextInt(8);
+      List<LogicalJoinNode> joins = randomJoins(n, rand);
+      JoinOptimizer.setParallelDpRelations(JoinOptimizer.MAX_DP_RELATIONS + 1);
+      List<LogicalJoinNode> serial = order(joins, n, q);
+      JoinOptimizer.setParallelDpRelations(2);
+      List<LogicalJoinNode> parallel = order(joins, n, q);
+      checkConnected(joins, serial, n);
+      assertEquals(serial.toString(), parallel.toString());
+    }
+  }
+
+  /** Queries above the exhaustive limit are ordered greedily into one tree, without cross products. */
+  @Test(timeout = 20000) public void greedy() throws Exception {
+    Random rand = new Random(11);
+    JoinOptimizer.setMaxDpRelations(8);
+    for (int n : new int[] { 9, 20, 40, 63 }) {
+      List<LogicalJoinNode> joins = randomJoins(n, rand);
+      checkConnected(joins, order(joins, n, n), n);
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelJoinOrderTest.class);
+  }
+}
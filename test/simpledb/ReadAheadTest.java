@@ -0,0 +1,98 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 40;
+
+    /** A HeapFile that counts its page reads. */
+    static class CountingHeapFile extends HeapFile {
+        final AtomicInteger reads = new AtomicInteger(0);
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads.incrementAndGet();
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingHeapFile createTable(List<List<Integer>> tuples) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * PAGES, 1000, null, tuples);
+        CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    @After public void tearDown() {
+        Database.getBufferPool().setReadAheadEnabled(true);
+    }
+
+    /**
+     * A sequential scan gets pages read ahead of it, sees every tuple, and
+     * reads no page twice.
+     */
+    @Test public void sequentialScanIsPrefetched() throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        List<List<Integer>> tuples = new ArrayList<>();
+        CountingHeapFile table = createTable(tuples);
+
+        SystemTestUtil.matchTuples(table, tuples);
+        assertTrue(bp.getReadAhead().getPrefetchedCount() > 0);
+        assertEquals(PAGES, table.reads.get());
+        assertTrue(bp.getMissCount() < PAGES);
+    }
+
+    /**
+     * In a pool much smaller than the table, read-ahead is capped to a
+     * quarter of the pool; the scan must still see every tuple and read
+     * every page once.
+     */
+    @Test public void smallPool() throws Exception {
+        Database.resetBufferPool(8);
+        List<List<Integer>> tuples = new ArrayList<>();
+        CountingHeapFile table = createTable(tuples);
+
+        SystemTestUtil.matchTuples(table, tuples);
+        assertEquals(PAGES, table.reads.get());
+    }
+
+    /**
+     * With read-ahead turned off every page is read by the scan itself.
+     */
+    @Test public void disabled() throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.setReadAheadEnabled(false);
+        assertNull(bp.getReadAhead());
+        List<List<Integer>> tuples = new ArrayList<>();
+        CountingHeapFile table = createTable(tuples);
+
+        SystemTestUtil.matchTuples(table, tuples);
+        assertEquals(PAGES, bp.getMissCount());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
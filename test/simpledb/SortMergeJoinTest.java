@@ -0,0 +1,125 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.execution.Predicate;
+import simpledb.execution.SortMergeJoin;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+  private static final Type[] INTS = { Type.INT_TYPE, Type.INT_TYPE };
+  private static final Type[] STRINGS = { Type.STRING_TYPE, Type.INT_TYPE };
+
+  /** n tuples (key, position) of table alias, with random keys below keys */
+  private static OpIterator input(String alias, Type[] types, int n, long seed, int keys) {
+    TupleDesc td = new TupleDesc(types, new String[] { alias + ".k", alias + ".v" });
+    Random rand = new Random(seed);
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      int k = rand.nextInt(keys);
+      Tuple t = new Tuple(td);
+      t.setField(0, types[0] == Type.INT_TYPE
+          ? new IntField(k) : new StringField("key" + (100 + k), Type.STRING_LEN));
+      t.setField(1, new IntField(i));
+      tuples.add(t);
+    }
+    return new TupleIterator(td, tuples);
+  }
+
+  /** Join two inputs with SortMergeJoin and with nested loops and compare. */
+  private static void check(Predicate.Op op, Type[] types, boolean presorted, long budget)
+      throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, op, 0);
+    Join expected = new Join(pred, input("a", types, 400, 1, 60), input("b", types, 300, 2, 60));
+    OpIterator a = input("a", types, 400, 1, 60);
+    OpIterator b = input("b", types, 300, 2, 60);
+    if (presorted) {
+      a = new OrderBy(0, true, a);
+      b = new OrderBy(0, true, b);
+    }
+    SortMergeJoin actual = new SortMergeJoin(pred, a, b, budget);
+    assertTrue(TestUtil.compareDbIteratorsUnordered(expected, actual).size() > 0);
+  }
+
+  /** Every supported predicate matches a nested loops join, for unsorted and sorted inputs. */
+  @Test public void allPredicates() throws Exception {
+    Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+        Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN,
+        Predicate.Op.GREATER_THAN_OR_EQ, Predicate.Op.NOT_EQUALS };
+    for (Predicate.Op op : ops) {
+      check(op, INTS, false, 16 << 20);
+      check(op, INTS, true, 16 << 20);
+    }
+  }
+
+  /** String keys, and inputs sorted in runs on disk. */
+  @Test public void stringsAndSpilledSort() throws Exception {
+    check(Predicate.Op.EQUALS, STRINGS, false, 16 << 20);
+    check(Predicate.Op.EQUALS, INTS, false, 16 << 10);
+    check(Predicate.Op.GREATER_THAN, STRINGS, false, 16 << 10);
+  }
+
+  /** The output is sorted on the key of the outer input. */
+  @Test public void outputOrder() throws Exception {
+    SortMergeJoin eq = new SortMergeJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+        input("a", INTS, 400, 1, 60), input("b", INTS, 300, 2, 60));
+    SortMergeJoin lt = new SortMergeJoin(new JoinPredicate(0, Predicate.Op.LESS_THAN, 0),
+        input("a", INTS, 400, 1, 60), input("b", INTS, 300, 2, 60));
+    assertEquals(0, SortMergeJoin.sortedOn(eq));
+    assertEquals(2, SortMergeJoin.sortedOn(lt));
+    for (SortMergeJoin j : new SortMergeJoin[] { eq, lt }) {
+      int f = j.getSortedField();
+      j.open();
+      int last = Integer.MIN_VALUE;
+      while (j.hasNext()) {
+        int k = ((IntField) j.next().getField(f)).getValue();
+        assertTrue(k >= last);
+        last = k;
+      }
+      j.close();
+    }
+  }
+
+  /** instantiateJoin merges inputs that arrive sorted on the join key, and hashes those that do not. */
+  @Test public void optimizerPicksMergeForSortedInputs() throws Exception {
+    LogicalJoinNode lj = new LogicalJoinNode("a", "b", "a.k", "b.k", Predicate.Op.EQUALS);
+    OpIterator sorted = JoinOptimizer.instantiateJoin(lj,
+        new OrderBy(0, true, input("a", INTS, 10, 1, 5)),
+        new OrderBy(0, true, input("b", INTS, 10, 2, 5)));
+    assertTrue(sorted instanceof SortMergeJoin);
+    OpIterator unsorted = JoinOptimizer.instantiateJoin(lj,
+        new OrderBy(1, true, input("a", INTS, 10, 1, 5)),
+        new OrderBy(0, true, input("b", INTS, 10, 2, 5)));
+    assertTrue(unsorted instanceof HashEquiJoin);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(SortMergeJoinTest.class);
+  }
+}
@@ -3,12 +3,15 @@ package simpledb;
 import simpledb.common.*;
 import simpledb.execution.OpIterator;
 import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
 import java.io.*;
 import java.util.*;
 
+import org.junit.After;
+
 import static org.junit.Assert.*;
 
 public class TestUtil {
@@ -122,6 +125,37 @@ public class TestUtil {
         assertFalse(actual.hasNext());
     }
 
+    /**
+     * @return the remaining tuples of an open iterator as sorted strings, so
+     *   that the output of two plans can be compared regardless of order
+     */
+    public static List<String> sortedTuples(OpIterator it)
+            throws DbException, TransactionAbortedException {
+        List<String> out = new ArrayList<>();
+        while (it.hasNext())
+            out.add(it.next().toString());
+        Collections.sort(out);
+        return out;
+    }
+
+    /**
+     * Check that actual returns the tuples expected returns, in any order,
+     *   both when first read and again after a rewind. Opens and closes both.
+     * @return the tuples of expected, as {@link #sortedTuples} gives them
+     */
+    public static List<String> compareDbIteratorsUnordered(OpIterator expected, OpIterator actual)
+            throws DbException, TransactionAbortedException {
+        expected.open();
+        actual.open();
+        List<String> want = sortedTuples(expected);
+        assertEquals(want, sortedTuples(actual));
+        actual.rewind();
+        assertEquals(want, sortedTuples(actual));
+        actual.close();
+        expected.close();
+        return want;
+    }
+
     /**
      * Check to see if every tuple in expected matches <b>some</b> tuple
      *   in actual via compareTuples. Note that actual may be a superset.
@@ -389,6 +423,10 @@ public class TestUtil {
             }
         }
 
+        @After public void deleteFreeSpaceMaps() {
+            SystemTestUtil.deleteFreeSpaceMaps();
+        }
+
         protected HeapFile empty;
         private final File emptyFile;
     }
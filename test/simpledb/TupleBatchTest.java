@@ -0,0 +1,185 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.BatchIterator;
+import simpledb.execution.BatchRows;
+import simpledb.execution.Filter;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.IntegerAggregator;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.Project;
+import simpledb.execution.RowBatches;
+import simpledb.execution.SeqScan;
+import simpledb.execution.StringAggregator;
+import simpledb.execution.TupleBatch;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+public class TupleBatchTest extends SimpleDbTestBase {
+
+  private static final Predicate.Op[] OPS = { Predicate.Op.EQUALS, Predicate.Op.NOT_EQUALS,
+      Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN,
+      Predicate.Op.GREATER_THAN_OR_EQ, Predicate.Op.LIKE };
+
+  private HeapFile table;
+  private TransactionId tid;
+
+  /** A table of 5000 tuples with three int columns below 100 */
+  @Before public void setUp() throws Exception {
+    table = SystemTestUtil.createRandomHeapFile(3, 5000, 100, null, null);
+    tid = new TransactionId();
+  }
+
+  @After public void tearDown() {
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  private OpIterator scan() {
+    return new SeqScan(tid, table.getId(), "t");
+  }
+
+  /** n tuples (name, position) with names drawn from a few strings */
+  private static OpIterator strings(int n) {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+    String[] names = { "apple", "apricot", "banana", "band", "", "zebraé" };
+    Random rand = new Random(1);
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new StringField(names[rand.nextInt(names.length)], Type.STRING_LEN));
+      t.setField(1, new IntField(i));
+      tuples.add(t);
+    }
+    return new TupleIterator(td, tuples);
+  }
+
+  /** Every row of op read through next(), as strings in order. */
+  private static List<String> rows(OpIterator op) throws Exception {
+    List<String> out = new ArrayList<>();
+    op.open();
+    while (op.hasNext())
+      out.add(op.next().toString());
+    op.close();
+    return out;
+  }
+
+  /** Every row of op read a batch at a time, as strings in order. */
+  private static List<String> batches(BatchIterator op) throws Exception {
+    List<String> out = new ArrayList<>();
+    op.open();
+    TupleBatch b;
+    while ((b = op.nextBatch()) != null) {
+      assertTrue(b.numRows() > 0 && b.numRows() <= TupleBatch.DEFAULT_ROWS);
+      for (int i = 0; i < b.numRows(); i++)
+        out.add(b.getTuple(i).toString());
+    }
+    op.close();
+    return out;
+  }
+
+  /** Filtering batches keeps the same rows as filtering tuples, for int and string columns. */
+  @Test public void filter() throws Exception {
+    for (Predicate.Op op : OPS) {
+      Predicate p = new Predicate(1, op, new IntField(40));
+      assertEquals(rows(new Filter(p, scan())), batches(new Filter(p, scan())));
+      // 两个过滤叠在一起,第二个在第一个的选择向量上继续筛
+      Predicate q = new Predicate(2, Predicate.Op.GREATER_THAN, new IntField(70));
+      assertEquals(rows(new Filter(q, new Filter(p, scan()))),
+          batches(new Filter(q, new Filter(p, scan()))));
+    }
+    for (String s : new String[] { "apricot", "ban", "", "zebraé" }) {
+      for (Predicate.Op op : OPS) {
+        Predicate p = new Predicate(0, op, new StringField(s, Type.STRING_LEN));
+        assertEquals(rows(new Filter(p, strings(3000))), batches(new Filter(p, strings(3000))));
+      }
+    }
+  }
+
+  /** Projected batches pick the columns of the child's batches, and BatchRows turns them back into rows. */
+  @Test public void projectAndAdapters() throws Exception {
+    List<Integer> fields = Arrays.asList(2, 0);
+    Type[] types = { Type.INT_TYPE, Type.INT_TYPE };
+    Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(50));
+    List<String> want = rows(new Project(fields, types, new Filter(p, scan())));
+    assertEquals(want, batches(new Project(fields, types, new Filter(p, scan()))));
+    assertEquals(want, rows(new BatchRows(new Project(fields, types, new Filter(p, scan())))));
+    // a child that only produces rows is read into batches
+    assertEquals(rows(strings(2500)), batches(new RowBatches(strings(2500))));
+    assertEquals(rows(strings(2500)), rows(new BatchRows(new RowBatches(strings(2500)))));
+  }
+
+  /** Aggregating batches gives the groups that aggregating tuples gives. */
+  @Test public void aggregate() throws Exception {
+    Predicate p = new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(25));
+    for (Aggregator.Op aop : new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.COUNT,
+        Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.AVG }) {
+      for (int gfield : new int[] { Aggregator.NO_GROUPING, 0 }) {
+        // the tuples of the filtered scan, read as rows so the aggregate cannot use batches
+        List<Tuple> tuples = new ArrayList<>();
+        OpIterator f = new Filter(p, scan());
+        f.open();
+        while (f.hasNext())
+          tuples.add(f.next());
+        f.close();
+        OpIterator rowInput = new TupleIterator(scan().getTupleDesc(), tuples);
+        List<String> want = rows(new Aggregate(rowInput, 2, gfield, aop));
+        List<String> got = batches(new Aggregate(new Filter(p, scan()), 2, gfield, aop));
+        Collections.sort(want);
+        Collections.sort(got);
+        assertEquals(want, got);
+      }
+    }
+    // string groups are aggregated from rows
+    assertTrue(new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.SUM).mergesBatches());
+    assertFalse(new IntegerAggregator(0, Type.STRING_TYPE, 1, Aggregator.Op.SUM).mergesBatches());
+    assertFalse(new StringAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.COUNT).mergesBatches());
+    List<String> want = rows(new Aggregate(strings(3000), 1, 0, Aggregator.Op.SUM));
+    List<String> got = rows(new Aggregate(new RowBatches(strings(3000)), 1, 0, Aggregator.Op.SUM));
+    assertEquals(want, got);
+  }
+
+  /** A hash join read as batches produces the rows it produces as tuples. */
+  @Test public void hashJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 1);
+    Predicate small = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(10));
+    List<String> want = rows(new HashEquiJoin(pred, scan(), new Filter(small, scan())));
+    List<String> got = batches(new HashEquiJoin(pred, scan(), new Filter(small, scan())));
+    assertTrue(want.size() > TupleBatch.DEFAULT_ROWS);
+    assertEquals(want, got);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TupleBatchTest.class);
+  }
+}
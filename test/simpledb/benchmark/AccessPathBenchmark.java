@@ -0,0 +1,99 @@
+package simpledb.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.Predicate;
+import simpledb.execution.Project;
+import simpledb.execution.SeqScan;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.IntField;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Reads a BTreeFile of 200000 rows keyed on c0 under filters on the key that
+ * select one key, 1%, 10% and 60% of the table, and reports the milliseconds
+ * of the plan LogicalPlan builds, with the access path it chose, next to a
+ * sequential scan under the same filters and projection.
+ * <p>
+ * Run with {@code ant runbench -Dbench=AccessPathBenchmark}.
+ */
+public class AccessPathBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        BTreeFile f = BTreeUtility.createRandomBTreeFile(2, ROWS, ROWS, null, null, 0);
+        BTreeFile index = BTreeUtility.openBTreeFile(2, "c", f.getFile(), 0);
+        Database.resetBufferPool(index.numPages() + 10);
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put(Database.getCatalog().getTableName(index.getId()), new TableStats(index.getId(), 1000));
+
+        System.out.printf("%-12s %-12s %10s %10s%n", "filter", "chosen", "chosen ms", "scan ms");
+        run("c0 = 777", index, stats, Predicate.Op.EQUALS, 777, null, 0);
+        run("1%", index, stats, Predicate.Op.GREATER_THAN, 1000, Predicate.Op.LESS_THAN, 3000);
+        run("10%", index, stats, Predicate.Op.GREATER_THAN, 1000, Predicate.Op.LESS_THAN, 21000);
+        run("60%", index, stats, Predicate.Op.GREATER_THAN, 80000, null, 0);
+    }
+
+    /**
+     * Time the plan under the filters t.c0 op1 v1 and, unless op2 is null,
+     * t.c0 op2 v2, as LogicalPlan builds it and as a sequential scan
+     */
+    private static void run(String name, BTreeFile index, Map<String, TableStats> stats,
+            Predicate.Op op1, int v1, Predicate.Op op2, int v2) throws Exception {
+        Predicate.Op[] ops = op2 == null ? new Predicate.Op[] { op1 } : new Predicate.Op[] { op1, op2 };
+        int[] values = { v1, v2 };
+        String chosen = "";
+        double[] ms = new double[2];
+        for (int pass = 0; pass < 2; pass++) {
+            //预热一次
+            for (int r = -1; r < ROUNDS; r++) {
+                long start = System.nanoTime();
+                TransactionId tid = new TransactionId();
+                OpIterator plan;
+                if (pass == 0) {
+                    LogicalPlan lp = new LogicalPlan();
+                    // addScan和addProjectField每次都打印一行
+                    PrintStream out = System.out;
+                    System.setOut(new PrintStream(new ByteArrayOutputStream()));
+                    lp.addScan(index.getId(), "t");
+                    for (int i = 0; i < ops.length; i++)
+                        lp.addFilter("t.c0", ops[i], "" + values[i]);
+                    lp.addProjectField("t.c1", null);
+                    System.setOut(out);
+                    plan = lp.physicalPlan(tid, stats, false);
+                    OpIterator scan = plan;
+                    while (scan instanceof Operator)
+                        scan = ((Operator) scan).getChildren()[0];
+                    chosen = scan instanceof SeqScan ? "seq scan" : "index scan";
+                } else {
+                    plan = new SeqScan(tid, index.getId(), "t");
+                    for (int i = 0; i < ops.length; i++)
+                        plan = new Filter(new Predicate(0, ops[i], new IntField(values[i])), plan);
+                    plan = new Project(Collections.singletonList(1), new Type[] { Type.INT_TYPE }, plan);
+                }
+                plan.open();
+                while (plan.hasNext())
+                    plan.next();
+                plan.close();
+                Database.getBufferPool().transactionComplete(tid);
+                if (r >= 0)
+                    ms[pass] += (System.nanoTime() - start) / 1e6 / ROUNDS;
+            }
+        }
+        System.out.printf("%-12s %-12s %10.1f %10.1f%n", name, chosen, ms[0], ms[1]);
+    }
+}
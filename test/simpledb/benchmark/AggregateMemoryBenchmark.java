@@ -0,0 +1,63 @@
+package simpledb.benchmark;
+
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.Aggregator;
+import simpledb.execution.IntegerAggregator;
+import simpledb.execution.OpIterator;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+/**
+ * Measures the heap an IntegerAggregator holds after merging a few million
+ * tuples, for a GROUP BY with few groups and one with a group for every two
+ * tuples, and the time it takes to merge them and read the result. Tuples are
+ * made fresh for every merge, as a scan would.
+ * <p>
+ * Run with {@code ant runbench -Dbench=AggregateMemoryBenchmark}.
+ */
+public class AggregateMemoryBenchmark {
+
+    private static final int TUPLES = 2_000_000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-8s %10s %12s %10s%n", "op", "groups", "heap MB", "ms");
+        for (Aggregator.Op op : new Aggregator.Op[] {Aggregator.Op.SUM, Aggregator.Op.AVG}) {
+            run(op, 10);
+            run(op, TUPLES / 2);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void run(Aggregator.Op op, int groups) throws Exception {
+        TupleDesc td = Utility.getTupleDesc(2);
+        long before = usedHeap();
+        long start = System.nanoTime();
+        IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE, 1, op);
+        for (int i = 0; i < TUPLES; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i % groups));
+            t.setField(1, new IntField(i));
+            agg.mergeTupleIntoGroup(t);
+        }
+        long heap = usedHeap() - before;
+        OpIterator it = agg.iterator();
+        it.open();
+        long check = 0;
+        while (it.hasNext()) {
+            check += ((IntField) it.next().getField(1)).getValue();
+        }
+        it.close();
+        long ms = (System.nanoTime() - start) / 1000000;
+        System.out.printf("%-8s %10d %12.1f %10d   (checksum %d)%n", op, groups,
+                heap / 1048576.0, ms, check);
+    }
+}
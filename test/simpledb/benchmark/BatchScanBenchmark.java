@@ -0,0 +1,102 @@
+package simpledb.benchmark;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs scan-filter-aggregate queries over a table held in the buffer pool,
+ * once with every operator passing tuples through next() and once with
+ * batches, and reports the rows scanned per second.
+ * <p>
+ * Run with {@code ant runbench -Dbench=BatchScanBenchmark}.
+ */
+public class BatchScanBenchmark {
+
+    private static final int ROWS = 1_000_000;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(3, ROWS, 1000, null, null);
+        Database.resetBufferPool(f.numPages() + 10);
+        System.out.printf("%-28s %-6s %14s%n", "query", "mode", "rows/s");
+        for (int i = 0; i < 4; i++) {
+            run("sum(c2) where c1 < 500", f, Aggregator.NO_GROUPING);
+            run("sum(c2) where c1 < 500 by c0", f, 0);
+        }
+    }
+
+    private static void run(String query, HeapFile f, int gfield) throws Exception {
+        for (boolean batches : new boolean[] {false, true}) {
+            long start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                TransactionId tid = new TransactionId();
+                OpIterator child = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(500)),
+                        new SeqScan(tid, f.getId(), "t"));
+                if (!batches)
+                    child = new RowsOnly(child);
+                Aggregate agg = new Aggregate(child, 2, gfield, Aggregator.Op.SUM);
+                agg.open();
+                while (agg.hasNext())
+                    agg.next();
+                agg.close();
+                Database.getBufferPool().transactionComplete(tid);
+            }
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-28s %-6s %14.0f%n", query, batches ? "batch" : "row", ROUNDS * ROWS / secs);
+        }
+    }
+
+    /** Hides the batches of its child so the operator above reads rows. */
+    private static class RowsOnly extends Operator {
+        private static final long serialVersionUID = 1L;
+        private OpIterator child;
+
+        RowsOnly(OpIterator child) {
+            this.child = child;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+            super.open();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+            return child.hasNext() ? child.next() : null;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public OpIterator[] getChildren() {
+            return new OpIterator[] {child};
+        }
+
+        public void setChildren(OpIterator[] children) {
+            child = children[0];
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package simpledb.benchmark;
+
+import simpledb.benchmark.HashJoinBenchmark.Generator;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.Predicate;
+
+/**
+ * Joins two generated inputs with the nested loops Join for several block
+ * sizes and reports how many child2 tuples it read and the time. With a
+ * block of b tuples child2 is read once per b child1 tuples.
+ * <p>
+ * Run with {@code ant runbench -Dbench=BlockJoinBenchmark}.
+ */
+public class BlockJoinBenchmark {
+
+    private static final int OUTER = 20_000;
+    private static final int INNER = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%12s %14s %10s %10s%n", "block pages", "inner read", "results", "ms");
+        for (int pages : new int[] {1, 8, Join.defaultBlockPages()}) {
+            run(pages);
+        }
+    }
+
+    private static void run(int pages) throws Exception {
+        Generator left = new Generator(OUTER, OUTER, 1);
+        Generator right = new Generator(INNER, OUTER, 2);
+        Join join = new Join(new JoinPredicate(0, Predicate.Op.EQUALS, 0), left, right, pages);
+        long start = System.nanoTime();
+        join.open();
+        long out = 0;
+        while (join.hasNext()) {
+            join.next();
+            out++;
+        }
+        join.close();
+        long ms = (System.nanoTime() - start) / 1000000;
+        System.out.printf("%12d %14d %10d %10d%n", pages, right.read, out, ms);
+    }
+}
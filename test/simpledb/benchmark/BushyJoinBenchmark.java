@@ -0,0 +1,101 @@
+package simpledb.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simpledb.common.Database;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs a chain of six joins, t0.c1 = t1.c0 and so on, over small tables with
+ * a large table t2 in the middle, and reports the milliseconds of the plan
+ * JoinOptimizer orders, which may be bushy, and of the left-deep plan joining
+ * the tables in order t0, t1, ... t5. Both count the same rows.
+ * <p>
+ * Run with {@code ant runbench -Dbench=BushyJoinBenchmark}.
+ */
+public class BushyJoinBenchmark {
+
+    private static final int[] ROWS = { 2000, 2000, 200000, 2000, 2000, 2000 };
+    private static final int VALUES = 2000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile[] tables = new HeapFile[ROWS.length];
+        Map<String, TableStats> stats = new HashMap<>();
+        int pages = 0;
+        for (int i = 0; i < ROWS.length; i++) {
+            tables[i] = SystemTestUtil.createRandomHeapFile(2, ROWS[i], VALUES, null, null, "c");
+            String name = Database.getCatalog().getTableName(tables[i].getId());
+            stats.put(name, new TableStats(tables[i].getId(), 1000));
+            pages += tables[i].numPages();
+        }
+        Database.resetBufferPool(pages + 10);
+        List<LogicalJoinNode> joins = new ArrayList<>();
+        for (int i = 1; i < ROWS.length; i++)
+            joins.add(new LogicalJoinNode("t" + (i - 1), "t" + i, "c1", "c0", Predicate.Op.EQUALS));
+        //预热,不输出
+        run(tables, stats, joins, true, false);
+        run(tables, stats, joins, false, false);
+        run(tables, stats, joins, true, true);
+        run(tables, stats, joins, false, true);
+    }
+
+    private static void run(HeapFile[] tables, Map<String, TableStats> stats,
+            List<LogicalJoinNode> joins, boolean optimized, boolean print) throws Exception {
+        long rows = 0;
+        String order = "";
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            TransactionId tid = new TransactionId();
+            OpIterator plan;
+            if (optimized) {
+                LogicalPlan lp = new LogicalPlan();
+                // addScan和addJoin每次都打印一行
+                PrintStream out = System.out;
+                System.setOut(new PrintStream(new ByteArrayOutputStream()));
+                for (int i = 0; i < tables.length; i++)
+                    lp.addScan(tables[i].getId(), "t" + i);
+                for (LogicalJoinNode j : joins)
+                    lp.addJoin(j.t1Alias + "." + j.f1PureName, j.t2Alias + "." + j.f2PureName, j.p);
+                lp.addProjectField("t0.c0", null);
+                System.setOut(out);
+                Map<String, Double> selectivities = new HashMap<>();
+                for (int i = 0; i < tables.length; i++)
+                    selectivities.put("t" + i, 1.0);
+                order = new JoinOptimizer(lp, joins).orderJoins(stats, selectivities, false).toString();
+                plan = lp.physicalPlan(tid, stats, false);
+            } else {
+                order = joins.toString();
+                plan = new SeqScan(tid, tables[0].getId(), "t0");
+                for (int i = 1; i < tables.length; i++)
+                    plan = JoinOptimizer.instantiateJoin(joins.get(i - 1), plan,
+                            new SeqScan(tid, tables[i].getId(), "t" + i));
+            }
+            plan.open();
+            while (plan.hasNext()) {
+                plan.next();
+                rows++;
+            }
+            plan.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / ROUNDS;
+        if (print)
+            System.out.printf("%-10s %10.1f ms %10d rows  %s%n", optimized ? "optimized" : "left-deep",
+                    ms, rows / ROUNDS, order);
+    }
+}
@@ -0,0 +1,57 @@
+package simpledb.benchmark;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures the cost of committing and aborting small transactions as the
+ * buffer pool grows. The pool is first filled with the pages of a table; every
+ * transaction then reads a single page and commits, or dirties a single page
+ * and commits or aborts, so the work that has to be done does not depend on
+ * the size of the pool. Writing commits are dominated by forcing the log; the
+ * read-only column shows the bookkeeping alone.
+ * <p>
+ * Run with {@code ant runbench -Dbench=CommitBenchmark}.
+ */
+public class CommitBenchmark {
+
+    private static final int[] POOL_PAGES = {100, 1000, 5000};
+    private static final int TRANSACTIONS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2,
+                POOL_PAGES[POOL_PAGES.length - 1] * 504, null, null);
+        System.out.printf("%8s %12s %12s %12s%n", "pool", "read-only/s", "commits/s", "aborts/s");
+        for (int pool : POOL_PAGES) {
+            BufferPool bp = Database.resetBufferPool(pool);
+            TransactionId fill = new TransactionId();
+            for (int p = 0; p < pool; p++) {
+                bp.getPage(fill, new HeapPageId(f.getId(), p), Permissions.READ_ONLY);
+            }
+            bp.transactionComplete(fill);
+            System.out.printf("%8d %12.0f %12.0f %12.0f%n", pool, run(bp, f, pool, null),
+                    run(bp, f, pool, true), run(bp, f, pool, false));
+        }
+    }
+
+    /** @param commit null for read-only transactions */
+    private static double run(BufferPool bp, HeapFile f, int pool, Boolean commit) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            TransactionId tid = new TransactionId();
+            HeapPageId pid = new HeapPageId(f.getId(), i % pool);
+            if (commit == null) {
+                bp.getPage(tid, pid, Permissions.READ_ONLY);
+                bp.transactionComplete(tid, true);
+                continue;
+            }
+            Page page = bp.getPage(tid, pid, Permissions.READ_WRITE);
+            page.markDirty(true, tid);
+            bp.transactionComplete(tid, commit);
+        }
+        return TRANSACTIONS / ((System.nanoTime() - start) / 1e9);
+    }
+}
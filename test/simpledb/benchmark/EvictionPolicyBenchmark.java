@@ -0,0 +1,74 @@
+package simpledb.benchmark;
+
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Compares buffer pool hit ratios of the eviction policies on a mixed
+ * workload: a large fact table is scanned sequentially while point lookups
+ * hit a small dimension table that fits in the pool.
+ * <p>
+ * Run with {@code ant runbench -Dbench=EvictionPolicyBenchmark}.
+ */
+public class EvictionPolicyBenchmark {
+
+    private static final int POOL_PAGES = BufferPool.DEFAULT_PAGES;
+    private static final int FACT_PAGES = 400;
+    private static final int DIM_PAGES = 30;
+    private static final int SCANS = 3;
+    /** point lookups issued between two consecutive pages of the scan */
+    private static final int LOOKUPS_PER_SCAN_PAGE = 2;
+    private static final int TUPLES_PER_PAGE = 504;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("Creating tables...");
+        HeapFile fact = SystemTestUtil.createRandomHeapFile(2, FACT_PAGES * TUPLES_PER_PAGE, null, null);
+        HeapFile dim = SystemTestUtil.createRandomHeapFile(2, DIM_PAGES * TUPLES_PER_PAGE, null, null);
+
+        System.out.printf("pool=%d pages, fact=%d pages, dim=%d pages, %d scans%n",
+                POOL_PAGES, fact.numPages(), dim.numPages(), SCANS);
+        System.out.printf("%-8s %10s %10s %12s %10s%n", "policy", "hit%", "dim hit%", "misses", "ms");
+
+        EvictionPolicy[] policies = new EvictionPolicy[] {
+                new FifoEvictionPolicy(),
+                new ClockEvictionPolicy(POOL_PAGES),
+                new LruKEvictionPolicy(POOL_PAGES),
+                new TwoQueueEvictionPolicy(POOL_PAGES) };
+        for (EvictionPolicy policy : policies) {
+            run(policy, fact, dim);
+        }
+    }
+
+    private static void run(EvictionPolicy policy, HeapFile fact, HeapFile dim) throws Exception {
+        BufferPool pool = Database.resetBufferPool(POOL_PAGES, policy);
+        Random r = new Random(42);
+        long dimHits = 0, dimLookups = 0;
+        long start = System.currentTimeMillis();
+        for (int scan = 0; scan < SCANS; scan++) {
+            TransactionId scanTid = new TransactionId();
+            for (int pgNo = 0; pgNo < fact.numPages(); pgNo++) {
+                pool.getPage(scanTid, new HeapPageId(fact.getId(), pgNo), Permissions.READ_ONLY);
+                for (int i = 0; i < LOOKUPS_PER_SCAN_PAGE; i++) {
+                    TransactionId tid = new TransactionId();
+                    long misses = pool.getMissCount();
+                    pool.getPage(tid, new HeapPageId(dim.getId(), r.nextInt(DIM_PAGES)), Permissions.READ_ONLY);
+                    if (pool.getMissCount() == misses) {
+                        dimHits++;
+                    }
+                    dimLookups++;
+                    pool.transactionComplete(tid);
+                }
+            }
+            pool.transactionComplete(scanTid);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        long hits = pool.getHitCount(), misses = pool.getMissCount();
+        System.out.printf("%-8s %10.2f %10.2f %12d %10d%n", policy.getName(),
+                100.0 * hits / (hits + misses), 100.0 * dimHits / dimLookups, misses, elapsed);
+    }
+}
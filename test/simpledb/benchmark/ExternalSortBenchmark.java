@@ -0,0 +1,115 @@
+package simpledb.benchmark;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import simpledb.common.Type;
+import simpledb.execution.ExternalSorter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+/**
+ * Sorts a generated input of (int key, string, int) tuples with OrderBy,
+ * once with the whole heap as its budget, which is how OrderBy used to sort,
+ * and once with the default budget, and reports the time and the heap in use
+ * once the sort is done. With the default heap the largest input does not fit
+ * in memory; the unbounded sort then fails with OutOfMemoryError while the
+ * external sort finishes.
+ * <p>
+ * Run with {@code ant runbench -Dbench=ExternalSortBenchmark}.
+ */
+public class ExternalSortBenchmark {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] {Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE});
+
+    /** Generates n tuples with random keys without holding them. */
+    static class Generator implements OpIterator {
+        private static final long serialVersionUID = 1L;
+        private final int n;
+        private Random rand;
+        private int i;
+
+        Generator(int n) {
+            this.n = n;
+        }
+
+        public void open() {
+            rand = new Random(42);
+            i = 0;
+        }
+
+        public boolean hasNext() {
+            return i < n;
+        }
+
+        public Tuple next() {
+            if (i >= n)
+                throw new NoSuchElementException();
+            Tuple t = new Tuple(TD);
+            t.setField(0, new IntField(rand.nextInt()));
+            t.setField(1, new StringField("customer#" + i, Type.STRING_LEN));
+            t.setField(2, new IntField(i++));
+            return t;
+        }
+
+        public void rewind() {
+            open();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return TD;
+        }
+
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-10s %10s %10s %10s%n", "budget", "tuples", "ms", "heap MB");
+        for (int n : new int[] {1_000_000, 8_000_000}) {
+            run(n, Long.MAX_VALUE);
+            run(n, ExternalSorter.DEFAULT_MEMORY_BYTES);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void run(int n, long budget) throws Exception {
+        String name = budget == Long.MAX_VALUE ? "unbounded" : (budget >> 20) + " MB";
+        long before = usedHeap();
+        long start = System.nanoTime();
+        OrderBy op = new OrderBy(0, true, new Generator(n), budget);
+        try {
+            op.open();
+        } catch (OutOfMemoryError e) {
+            op = null;
+            System.out.printf("%-10s %10d   OutOfMemoryError after %d ms%n", name, n,
+                    (System.nanoTime() - start) / 1000000);
+            return;
+        }
+        long heap = usedHeap() - before;
+        long count = 0;
+        int last = Integer.MIN_VALUE;
+        while (op.hasNext()) {
+            int key = ((IntField) op.next().getField(0)).getValue();
+            if (key < last)
+                throw new IllegalStateException("output not sorted");
+            last = key;
+            count++;
+        }
+        op.close();
+        long ms = (System.nanoTime() - start) / 1000000;
+        System.out.printf("%-10s %10d %10d %10.1f%n", name, count, ms, heap / 1048576.0);
+    }
+}
@@ -0,0 +1,83 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.LogFile;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.Transaction;
+
+/**
+ * Measures commits per second against the number of committing threads, with
+ * group commit off (one fsync per force), with group commit flushing at once,
+ * and with a leader that waits a little for more committers. Every thread
+ * inserts into its own table, so the transactions never wait for each other's
+ * locks and the log is the only shared resource.
+ * <p>
+ * Run with {@code ant runbench -Dbench=GroupCommitBenchmark}.
+ */
+public class GroupCommitBenchmark {
+
+    private static final long RUN_MILLIS = 2000;
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    public static void main(String[] args) throws Exception {
+        //预热,不输出
+        run(null, 4, 0, LogFile.DEFAULT_MAX_BATCH);
+        System.out.printf("%-12s %8s %12s %14s%n", "mode", "threads", "commits/s", "fsyncs/commit");
+        for (int threads : THREADS) {
+            run("off", threads, 0, 1);
+            run("group", threads, 0, LogFile.DEFAULT_MAX_BATCH);
+            run("group+200us", threads, 200, threads);
+        }
+        Database.getLogFile().setGroupCommit(LogFile.DEFAULT_FLUSH_WAIT_MICROS, LogFile.DEFAULT_MAX_BATCH);
+    }
+
+    private static void run(String mode, int threads, long waitMicros, int maxBatch) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        final LogFile log = Database.getLogFile();
+        log.setGroupCommit(waitMicros, maxBatch);
+        final AtomicLong commits = new AtomicLong(0);
+        final long deadline = System.currentTimeMillis() + RUN_MILLIS;
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final HeapFile table = SystemTestUtil.createRandomHeapFile(2, 0, null, null);
+            Thread t = new Thread(() -> {
+                int value = 0;
+                while (System.currentTimeMillis() < deadline) {
+                    Transaction tr = new Transaction();
+                    try {
+                        tr.start();
+                        Database.getBufferPool().insertTuple(tr.getId(), table.getId(),
+                                Utility.getHeapTuple(value++, 2));
+                        tr.commit();
+                        commits.incrementAndGet();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            workers.add(t);
+        }
+        long forces = log.getForceCount();
+        long start = System.nanoTime();
+        for (Thread t : workers) {
+            t.start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        long wall = System.nanoTime() - start;
+        if (mode == null) {
+            return;
+        }
+        System.out.printf("%-12s %8d %12.1f %14.2f%n", mode, threads, commits.get() * 1e9 / wall,
+                (double) (log.getForceCount() - forces) / commits.get());
+    }
+}
@@ -0,0 +1,98 @@
+package simpledb.benchmark;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import simpledb.common.Utility;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+/**
+ * Joins two generated inputs of (key, value) tuples with HashEquiJoin and
+ * reports the time and how many tuples it read from each child. A join that
+ * reads its build side in fixed chunks reads the probe side once per chunk;
+ * a hybrid hash join reads each child once and rereads only what it spilled.
+ * <p>
+ * Run with {@code ant runbench -Dbench=HashJoinBenchmark}.
+ */
+public class HashJoinBenchmark {
+
+    private static final int PROBE_TUPLES = 1_000_000;
+
+    /** Generates n tuples with random keys below keys and counts the tuples read. */
+    static class Generator implements OpIterator {
+        private static final long serialVersionUID = 1L;
+        private final TupleDesc td = Utility.getTupleDesc(2);
+        private final int n;
+        private final int keys;
+        private final long seed;
+        private Random rand;
+        private int i;
+        long read;
+
+        Generator(int n, int keys, long seed) {
+            this.n = n;
+            this.keys = keys;
+            this.seed = seed;
+        }
+
+        public void open() {
+            rand = new Random(seed);
+            i = 0;
+        }
+
+        public boolean hasNext() {
+            return i < n;
+        }
+
+        public Tuple next() {
+            if (i >= n)
+                throw new NoSuchElementException();
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(rand.nextInt(keys)));
+            t.setField(1, new IntField(i++));
+            read++;
+            return t;
+        }
+
+        public void rewind() {
+            open();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return td;
+        }
+
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%10s %10s %12s %12s %10s%n", "build", "probe", "build read", "probe read", "ms");
+        for (int build : new int[] {100_000, 400_000, 1_000_000}) {
+            run(build);
+        }
+    }
+
+    private static void run(int build) throws Exception {
+        Generator left = new Generator(build, build, 1);
+        Generator right = new Generator(PROBE_TUPLES, build, 2);
+        long start = System.nanoTime();
+        HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), left, right);
+        join.open();
+        long out = 0;
+        while (join.hasNext()) {
+            join.next();
+            out++;
+        }
+        join.close();
+        long ms = (System.nanoTime() - start) / 1000000;
+        System.out.printf("%10d %10d %12d %12d %10d   (%d results)%n", build, PROBE_TUPLES,
+                left.read, right.read, ms, out);
+    }
+}
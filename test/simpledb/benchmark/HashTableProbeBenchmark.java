@@ -0,0 +1,92 @@
+package simpledb.benchmark;
+
+import simpledb.common.Type;
+import simpledb.execution.KeyTable;
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Compares a HashMap keyed by Field, as the GROUP BY and hash join operators
+ * used to keep, with the open-addressing KeyTable they use now. Each table is
+ * built over a set of distinct int or string keys and then probed with a mix
+ * of keys that are present and keys that are not, in random order; build and
+ * probe rates are reported in millions of keys per second.
+ * <p>
+ * Run with {@code ant runbench -Dbench=HashTableProbeBenchmark}.
+ */
+public class HashTableProbeBenchmark {
+
+    private static final int PROBES = 4_000_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        System.out.printf("%-8s %10s %-10s %12s %12s%n", "type", "keys", "table", "build M/s", "probe M/s");
+        for (int keys : new int[] {1000, 1_000_000}) {
+            run(Type.INT_TYPE, keys);
+            run(Type.STRING_TYPE, keys);
+        }
+    }
+
+    private static Field key(Type type, int i) {
+        return type == Type.INT_TYPE ? new IntField(i * 7) : new StringField("customer#" + (i * 7), Type.STRING_LEN);
+    }
+
+    private static void run(Type type, int keys) {
+        Field[] build = new Field[keys];
+        for (int i = 0; i < keys; i++) {
+            build[i] = key(type, i);
+        }
+        // 建表的键按随机顺序到达;探测用新建的Field,像另一张表的元组一样,一半命中,一半不命中
+        Random rand = new Random(42);
+        Field[] order = build.clone();
+        for (int i = keys - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            Field f = order[i];
+            order[i] = order[j];
+            order[j] = f;
+        }
+        Field[] probe = new Field[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            int k = rand.nextInt(keys * 2);
+            probe[i] = k % 2 == 0 ? key(type, k / 2) : key(type, k / 2 * 7 + 1);
+        }
+
+        double mapBuild = 0, mapProbe = 0, tableBuild = 0, tableProbe = 0;
+        long check = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            HashMap<Field, Integer> map = new HashMap<>();
+            for (Field f : order) {
+                map.putIfAbsent(f, map.size());
+            }
+            long mid = System.nanoTime();
+            for (Field f : probe) {
+                Integer id = map.get(f);
+                check += id == null ? -1 : id;
+            }
+            long end = System.nanoTime();
+            mapBuild = Math.max(mapBuild, keys * 1000.0 / (mid - start));
+            mapProbe = Math.max(mapProbe, PROBES * 1000.0 / (end - mid));
+
+            start = System.nanoTime();
+            KeyTable table = KeyTable.forType(type);
+            for (Field f : order) {
+                table.getOrAdd(f);
+            }
+            mid = System.nanoTime();
+            for (Field f : probe) {
+                check -= table.find(f);
+            }
+            end = System.nanoTime();
+            tableBuild = Math.max(tableBuild, keys * 1000.0 / (mid - start));
+            tableProbe = Math.max(tableProbe, PROBES * 1000.0 / (end - mid));
+        }
+        String name = type == Type.INT_TYPE ? "int" : "string";
+        System.out.printf("%-8s %10d %-10s %12.1f %12.1f%n", name, keys, "HashMap", mapBuild, mapProbe);
+        System.out.printf("%-8s %10d %-10s %12.1f %12.1f   (checksum %d)%n", name, keys, "KeyTable", tableBuild, tableProbe, check);
+    }
+}
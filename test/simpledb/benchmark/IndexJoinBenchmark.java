@@ -0,0 +1,63 @@
+package simpledb.benchmark;
+
+import simpledb.benchmark.HashJoinBenchmark.Generator;
+import simpledb.common.Database;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.IndexNestedLoopJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.storage.BufferPool;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Joins generated outer inputs with a B+ tree table on its key: by hashing a
+ * full scan of the table with HashEquiJoin, and by probing the index with
+ * IndexNestedLoopJoin, once with every outer tuple probed in arrival order
+ * (batches of one) and once with sorted batches. Reports the time, the pages
+ * read into the buffer pool and how often the probes descended from the root.
+ * <p>
+ * Run with {@code ant runbench -Dbench=IndexJoinBenchmark}.
+ */
+public class IndexJoinBenchmark {
+
+    private static final int ROWS = 300_000;
+    private static final int KEYS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        BTreeFile index = BTreeUtility.createRandomBTreeFile(2, ROWS, KEYS, null, null, 0);
+        Database.getCatalog().addTable(index, SystemTestUtil.getUUID());
+        System.out.printf("%8s %-22s %10s %10s %10s %8s%n", "outer", "operator", "results", "misses", "descents", "ms");
+        for (int outer : new int[] {100, 1_000, 20_000, 200_000}) {
+            run(index, outer, "HashEquiJoin", 0);
+            run(index, outer, "IndexNLJ unsorted", 1);
+            run(index, outer, "IndexNLJ sorted", IndexNestedLoopJoin.DEFAULT_BATCH_TUPLES);
+        }
+    }
+
+    private static void run(BTreeFile index, int outer, String name, int batch) throws Exception {
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        Generator left = new Generator(outer, KEYS, 1);
+        SeqScan right = new SeqScan(tid, index.getId(), "b");
+        OpIterator join = batch == 0 ? new HashEquiJoin(pred, left, right)
+                : new IndexNestedLoopJoin(pred, left, right, batch);
+        long start = System.nanoTime();
+        join.open();
+        long out = 0;
+        while (join.hasNext()) {
+            join.next();
+            out++;
+        }
+        long ms = (System.nanoTime() - start) / 1000000;
+        int descents = join instanceof IndexNestedLoopJoin ? ((IndexNestedLoopJoin) join).getDescents() : 0;
+        join.close();
+        bp.transactionComplete(tid);
+        System.out.printf("%8d %-22s %10d %10d %10d %8d%n", outer, name, out, bp.getMissCount(), descents, ms);
+    }
+}
@@ -0,0 +1,98 @@
+package simpledb.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import simpledb.common.Database;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.DbFile;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs three joins with each algorithm JoinOptimizer can choose that applies
+ * to them, and reports the milliseconds each took next to the algorithm
+ * orderJoins chose and its estimated costs: an equality join of 2000 and
+ * 20000 rows, a non-equality join of 300 and 3000 rows, and an equality
+ * join of 20 rows with a BTreeFile of 200000 rows on its key.
+ * <p>
+ * Run with {@code ant runbench -Dbench=JoinChoiceBenchmark}.
+ */
+public class JoinChoiceBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        DbFile small = SystemTestUtil.createRandomHeapFile(2, 2000, 5000, null, null, "c");
+        DbFile large = SystemTestUtil.createRandomHeapFile(2, 20000, 5000, null, null, "c");
+        DbFile left = SystemTestUtil.createRandomHeapFile(2, 300, 5000, null, null, "c");
+        DbFile right = SystemTestUtil.createRandomHeapFile(2, 3000, 5000, null, null, "c");
+        DbFile few = SystemTestUtil.createRandomHeapFile(2, 20, 200000, null, null, "c");
+        DbFile index = BTreeUtility.createRandomBTreeFile(2, 200000, 200000, null, null, 0);
+        Database.getCatalog().addTable(index, "indexed");
+        String key = new SeqScan(new TransactionId(), index.getId(), "b").getTupleDesc().getFieldName(0);
+        Map<String, TableStats> stats = new HashMap<>();
+        for (DbFile f : new DbFile[] { small, large, left, right, few, index })
+            stats.put(Database.getCatalog().getTableName(f.getId()), new TableStats(f.getId(), 1000));
+
+        System.out.printf("%-10s %-20s %10s%n", "join", "algorithm", "ms");
+        run("equality", small, large, new LogicalJoinNode("a", "b", "c0", "c0", Predicate.Op.EQUALS), stats);
+        run("less than", left, right, new LogicalJoinNode("a", "b", "c0", "c0", Predicate.Op.LESS_THAN), stats);
+        run("indexed", few, index, new LogicalJoinNode("a", "b", "c0", key, Predicate.Op.EQUALS), stats);
+    }
+
+    private static void run(String name, DbFile a, DbFile b, LogicalJoinNode join,
+            Map<String, TableStats> stats) throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        // addScan每次都打印一行
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        lp.addScan(a.getId(), "a");
+        lp.addScan(b.getId(), "b");
+        System.setOut(out);
+        Map<String, Double> selectivities = new HashMap<>();
+        selectivities.put("a", 1.0);
+        selectivities.put("b", 1.0);
+        LogicalJoinNode chosen = new JoinOptimizer(lp, Collections.singletonList(join))
+                .orderJoins(stats, selectivities, false).get(0);
+        System.out.printf("%-10s chose %s %s: %s%n", name, chosen, chosen.algorithm, chosen.algorithmReason);
+        boolean outerA = chosen.t1Alias.equals("a");
+        for (JoinOptimizer.Algorithm algorithm : JoinOptimizer.Algorithm.values()) {
+            if (algorithm == JoinOptimizer.Algorithm.HASH && join.p != Predicate.Op.EQUALS
+                    || algorithm == JoinOptimizer.Algorithm.INDEX_NESTED_LOOPS
+                            && !((outerA ? b : a) instanceof BTreeFile))
+                continue;
+            chosen.algorithm = algorithm;
+            //预热一次
+            time(chosen, outerA ? a : b, outerA ? b : a);
+            long start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++)
+                time(chosen, outerA ? a : b, outerA ? b : a);
+            System.out.printf("%-10s %-20s %10.1f%n", "", algorithm,
+                    (System.nanoTime() - start) / 1e6 / ROUNDS);
+        }
+    }
+
+    /** Run join once over scans of outer and inner */
+    private static void time(LogicalJoinNode join, DbFile outer, DbFile inner) throws Exception {
+        TransactionId tid = new TransactionId();
+        OpIterator plan = JoinOptimizer.instantiateJoin(join,
+                new SeqScan(tid, outer.getId(), join.t1Alias), new SeqScan(tid, inner.getId(), join.t2Alias));
+        plan.open();
+        while (plan.hasNext())
+            plan.next();
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
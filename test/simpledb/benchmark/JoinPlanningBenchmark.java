@@ -0,0 +1,122 @@
+package simpledb.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simpledb.common.Database;
+import simpledb.execution.Predicate;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Times JoinOptimizer.orderJoins on chain, cycle and star queries of 4 to 16
+ * relations, and reports the milliseconds one ordering takes: searching the
+ * pairs of connected sets on one thread, costing the sets of each size in
+ * parallel, and ordering greedily, which is also timed for up to 63
+ * relations. The relations are aliases of four tables of 100 to 20000 rows;
+ * the center of a star is the largest. A search is not timed beyond a size
+ * whose ordering took more than LIMIT_MS.
+ * <p>
+ * Run with {@code ant runbench -Dbench=JoinPlanningBenchmark}.
+ */
+public class JoinPlanningBenchmark {
+
+    private static final int[] ROWS = { 20000, 100, 1000, 5000 };
+    private static final long LIMIT_MS = 20000;
+    // 每个规模至少测这么久,取平均
+    private static final long MIN_MS = 500;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile[] tables = new HeapFile[ROWS.length];
+        Map<String, TableStats> stats = new HashMap<>();
+        for (int i = 0; i < ROWS.length; i++) {
+            tables[i] = SystemTestUtil.createRandomHeapFile(2, ROWS[i], 1000, null, null, "c");
+            String name = Database.getCatalog().getTableName(tables[i].getId());
+            stats.put(name, new TableStats(tables[i].getId(), 1000));
+        }
+        String[] modes = { "pairs", "levels", "greedy" };
+        //预热,不输出
+        for (int i = 0; i < 3; i++) {
+            for (String mode : modes) {
+                setMode(mode);
+                time(tables, stats, "chain", 8);
+                time(tables, stats, "star", 8);
+            }
+        }
+        System.out.printf("%d processors%n", Runtime.getRuntime().availableProcessors());
+        for (String shape : new String[] { "chain", "cycle", "star" }) {
+            System.out.printf("%-10s", shape);
+            for (String mode : modes)
+                System.out.printf(" %12s", mode + " ms");
+            System.out.println();
+            boolean[] stopped = new boolean[modes.length];
+            for (int n : new int[] { 4, 6, 8, 10, 11, 12, 13, 14, 15, 16, 24, 32, 48, 63 }) {
+                System.out.printf("%-10d", n);
+                for (int m = 0; m < modes.length; m++) {
+                    if (stopped[m] || (n > JoinOptimizer.MAX_DP_RELATIONS && !modes[m].equals("greedy"))) {
+                        System.out.printf(" %12s", "-");
+                        continue;
+                    }
+                    setMode(modes[m]);
+                    double ms = time(tables, stats, shape, n);
+                    stopped[m] = ms > LIMIT_MS;
+                    System.out.printf(" %12.3f", ms);
+                }
+                System.out.println();
+            }
+        }
+        setMode(null);
+    }
+
+    /** Make orderJoins search the given way, or the default way for null. */
+    private static void setMode(String mode) {
+        if (mode == null) {
+            JoinOptimizer.setMaxDpRelations(0);
+            JoinOptimizer.setParallelDpRelations(0);
+        } else if (mode.equals("greedy")) {
+            JoinOptimizer.setMaxDpRelations(1);
+        } else {
+            JoinOptimizer.setMaxDpRelations(JoinOptimizer.MAX_DP_RELATIONS);
+            JoinOptimizer.setParallelDpRelations(mode.equals("levels") ? 2 : JoinOptimizer.MAX_DP_RELATIONS + 1);
+        }
+    }
+
+    /** @return the average milliseconds of ordering the joins of a query of the given shape */
+    private static double time(HeapFile[] tables, Map<String, TableStats> stats, String shape, int n)
+            throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        Map<String, Double> selectivities = new HashMap<>();
+        // addScan每次都打印一行
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        for (int i = 0; i < n; i++) {
+            lp.addScan(tables[i % tables.length].getId(), "t" + i);
+            selectivities.put("t" + i, 1.0);
+        }
+        System.setOut(out);
+        List<LogicalJoinNode> joins = new ArrayList<>();
+        for (int i = 1; i < n; i++) {
+            String other = shape.equals("star") ? "t0" : "t" + (i - 1);
+            joins.add(new LogicalJoinNode(other, "t" + i, "c" + (i % 2), "c0", Predicate.Op.EQUALS));
+        }
+        if (shape.equals("cycle"))
+            joins.add(new LogicalJoinNode("t" + (n - 1), "t0", "c1", "c1", Predicate.Op.EQUALS));
+        int runs = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            new JoinOptimizer(lp, joins).orderJoins(stats, selectivities, false);
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MIN_MS * 1_000_000L);
+        return elapsed / 1e6 / runs;
+    }
+}
@@ -0,0 +1,88 @@
+package simpledb.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures transaction throughput and CPU use of lock waits as the number of
+ * concurrent transactions goes up. Every transaction takes exclusive locks on
+ * two of a handful of hot pages (in page order, so there are no deadlocks),
+ * holds them for a moment as if doing I/O, and commits.
+ * <p>
+ * CPU is reported in cores: the CPU time of all worker threads divided by the
+ * wall clock time. With parked waiters it should stay near the number of
+ * transactions that can actually run, not the number of threads.
+ * <p>
+ * Run with {@code ant runbench -Dbench=LockContentionBenchmark}.
+ */
+public class LockContentionBenchmark {
+
+    private static final int HOT_PAGES = 4;
+    private static final long RUN_MILLIS = 2000;
+    private static final long HOLD_MILLIS = 1;
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+
+    public static void main(String[] args) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, HOT_PAGES * 504, null, null);
+        System.out.printf("%8s %12s %10s %10s%n", "threads", "commits/s", "aborts", "cpu cores");
+        for (int threads : THREADS) {
+            run(f, threads);
+        }
+    }
+
+    private static void run(final HeapFile f, int threads) throws Exception {
+        final BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        final ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        final AtomicLong commits = new AtomicLong(0);
+        final AtomicLong aborts = new AtomicLong(0);
+        final AtomicLong cpuNanos = new AtomicLong(0);
+        final long deadline = System.currentTimeMillis() + RUN_MILLIS;
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final int seed = i;
+            Thread t = new Thread(() -> {
+                Random r = new Random(seed);
+                while (System.currentTimeMillis() < deadline) {
+                    TransactionId tid = new TransactionId();
+                    int a = r.nextInt(HOT_PAGES), b = r.nextInt(HOT_PAGES);
+                    try {
+                        bp.getPage(tid, new HeapPageId(f.getId(), Math.min(a, b)), Permissions.READ_WRITE);
+                        bp.getPage(tid, new HeapPageId(f.getId(), Math.max(a, b)), Permissions.READ_WRITE);
+                        Thread.sleep(HOLD_MILLIS);
+                        commits.incrementAndGet();
+                    } catch (TransactionAbortedException e) {
+                        aborts.incrementAndGet();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        bp.transactionComplete(tid);
+                    }
+                }
+                cpuNanos.addAndGet(mx.getCurrentThreadCpuTime());
+            });
+            workers.add(t);
+        }
+        long start = System.nanoTime();
+        for (Thread t : workers) {
+            t.start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        long wall = System.nanoTime() - start;
+        System.out.printf("%8d %12.1f %10d %10.2f%n", threads,
+                commits.get() * 1e9 / wall, aborts.get(), (double) cpuNanos.get() / wall);
+    }
+}
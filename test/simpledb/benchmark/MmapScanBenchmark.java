@@ -0,0 +1,51 @@
+package simpledb.benchmark;
+
+import simpledb.common.Database;
+import simpledb.storage.BufferPool;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.HeapFile;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures full scans of a table much larger than the buffer pool, so that
+ * every page is a buffer pool miss, with pages read by system calls and with
+ * pages built over a memory mapping of the file. The file stays in the OS page
+ * cache, so this measures the cost of a miss rather than the disk.
+ * <p>
+ * Run with {@code ant runbench -Dbench=MmapScanBenchmark}.
+ */
+public class MmapScanBenchmark {
+
+    private static final int PAGES = 2000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, PAGES * 504, null, null);
+        System.out.printf("%-8s %12s %14s%n", "mode", "pages/s", "tuples/s");
+        for (int i = 0; i < 2; i++) {
+            run("read", new HeapFile(f.getFile(), f.getTupleDesc(), false));
+            run("mmap", new HeapFile(f.getFile(), f.getTupleDesc(), true));
+        }
+    }
+
+    private static void run(String mode, HeapFile f) throws Exception {
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        long tuples = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            TransactionId tid = new TransactionId();
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+                tuples++;
+            }
+            it.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-8s %12.0f %14.0f%n", mode, ROUNDS * PAGES / secs, tuples / secs);
+    }
+}
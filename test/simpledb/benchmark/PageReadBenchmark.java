@@ -0,0 +1,90 @@
+package simpledb.benchmark;
+
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.PageChannel;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures raw page read throughput of a heap file from several threads:
+ * opening a RandomAccessFile per page (what HeapFile.readPage used to do),
+ * positional reads through one shared PageChannel, and scattering reads of
+ * runs of adjacent pages. The file is small enough to stay in the OS page
+ * cache, so this measures the per-read overhead rather than the disk. Only
+ * the raw bytes are read; no HeapPages are built.
+ * <p>
+ * Run with {@code ant runbench -Dbench=PageReadBenchmark}.
+ */
+public class PageReadBenchmark {
+
+    private static final int PAGES = 2000;
+    private static final int ROUNDS = 5;
+    private static final int BATCH = 16;
+    private static final int[] THREADS = {1, 4};
+
+    interface Reader {
+        void readAll(HeapFile f) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, PAGES * 504, null, null);
+        Reader reopen = hf -> {
+            int pgsize = BufferPool.getPageSize();
+            for (int i = 0; i < hf.numPages(); i++) {
+                RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "r");
+                raf.seek((long) pgsize * i);
+                raf.read(new byte[pgsize], 0, pgsize);
+                raf.close();
+            }
+        };
+        PageChannel channel = new PageChannel(f.getFile());
+        Reader positional = hf -> {
+            int pgsize = BufferPool.getPageSize();
+            for (int i = 0; i < hf.numPages(); i++) {
+                channel.read((long) pgsize * i, new byte[pgsize]);
+            }
+        };
+        Reader scattering = hf -> {
+            int pgsize = BufferPool.getPageSize();
+            for (int i = 0; i < hf.numPages(); i += BATCH) {
+                channel.read((long) pgsize * i, new byte[Math.min(BATCH, hf.numPages() - i)][pgsize]);
+            }
+        };
+
+        System.out.printf("%-12s %8s %12s%n", "reader", "threads", "pages/s");
+        for (int threads : THREADS) {
+            run("reopen", reopen, f, threads);
+            run("positional", positional, f, threads);
+            run("scattering", scattering, f, threads);
+        }
+    }
+
+    private static void run(String name, Reader reader, HeapFile f, int threads) throws Exception {
+        reader.readAll(f); // warm up
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Thread(() -> {
+                try {
+                    for (int r = 0; r < ROUNDS; r++) {
+                        reader.readAll(f);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread t : workers) {
+            t.start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-12s %8d %12.0f%n", name, threads, (double) threads * ROUNDS * PAGES / secs);
+    }
+}
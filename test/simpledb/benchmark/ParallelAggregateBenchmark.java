@@ -0,0 +1,66 @@
+package simpledb.benchmark;
+
+import simpledb.common.Database;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.OpIterator;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Aggregates a table held in the buffer pool with 1, 2, 4 ... workers, up to
+ * twice the number of processors, each scanning its own range of pages, and
+ * reports the rows aggregated per second. "low" groups on a column with 10
+ * distinct values; "high" groups on a column with about as many distinct
+ * values as there are rows, where merging the workers' groups is most of the
+ * work.
+ * <p>
+ * Run with {@code ant runbench -Dbench=ParallelAggregateBenchmark}.
+ */
+public class ParallelAggregateBenchmark {
+
+    private static final int ROWS = 1_000_000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        //按第0列分组:high里取值和行数差不多多,low里只有10个值
+        HeapFile high = SystemTestUtil.createRandomHeapFile(2, ROWS, ROWS, null, null);
+        HeapFile low = SystemTestUtil.createRandomHeapFile(2, ROWS, 10, null, null);
+        Database.resetBufferPool(high.numPages() + low.numPages() + 10);
+        int cores = Runtime.getRuntime().availableProcessors();
+        //预热,不输出
+        run(low, 1, null);
+        run(high, 2, null);
+        System.out.printf("%d processors%n%-6s %8s %14s%n", cores, "groups", "workers", "rows/s");
+        for (int workers = 1; workers <= 2 * cores || workers <= 4; workers *= 2) {
+            run(low, workers, "low");
+            run(high, workers, "high");
+        }
+    }
+
+    private static void run(HeapFile f, int workers, String label) throws Exception {
+        int pages = f.numPages();
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            TransactionId tid = new TransactionId();
+            OpIterator[] parts = new OpIterator[workers];
+            for (int i = 0; i < workers; i++) {
+                parts[i] = new SeqScan(tid, f.getId(), "t", (int) ((long) pages * i / workers),
+                        i == workers - 1 ? -1 : (int) ((long) pages * (i + 1) / workers));
+            }
+            Aggregate agg = new Aggregate(parts, 1, 0, Aggregator.Op.AVG);
+            agg.open();
+            while (agg.hasNext()) {
+                agg.next();
+            }
+            agg.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        if (label != null) {
+            System.out.printf("%-6s %8d %14.0f%n", label, workers, ROUNDS * ROWS / secs);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures the throughput of N concurrent read-only scans of one table, each
+ * in its own transaction. The table fits in the buffer pool, so the scans only
+ * compete for locks and CPU. Every transaction holds its locks for a moment
+ * after the scan, as if doing more work, so that lock waits show even on a
+ * single core.
+ * <p>
+ * "shared" is the HeapFile iterator SeqScan uses; "exclusive" reads the same
+ * pages with READ_WRITE, as scans used to, for comparison. With exclusive
+ * locks the scans run one at a time whatever the number of threads and cores.
+ * <p>
+ * Run with {@code ant runbench -Dbench=ParallelScanBenchmark}.
+ */
+public class ParallelScanBenchmark {
+
+    private static final int PAGES = 20;
+    private static final long RUN_MILLIS = 2000;
+    private static final long HOLD_MILLIS = 1;
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, PAGES * 504, null, null);
+        //预热,不输出
+        run(f, 4, false, false);
+        run(f, 4, true, false);
+        System.out.printf("%-10s %8s %12s %10s%n", "locks", "threads", "scans/s", "cores");
+        for (int threads : THREADS) {
+            run(f, threads, false, true);
+            run(f, threads, true, true);
+        }
+    }
+
+    private static void run(final HeapFile f, int threads, final boolean shared, boolean print)
+            throws Exception {
+        final BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        final AtomicLong scans = new AtomicLong(0);
+        final long deadline = System.currentTimeMillis() + RUN_MILLIS;
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(() -> {
+                while (System.currentTimeMillis() < deadline) {
+                    TransactionId tid = new TransactionId();
+                    try {
+                        if (shared) {
+                            DbFileIterator it = f.iterator(tid);
+                            it.open();
+                            while (it.hasNext()) {
+                                it.next();
+                            }
+                            it.close();
+                        } else {
+                            for (int p = 0; p < f.numPages(); p++) {
+                                HeapPage page = (HeapPage) bp.getPage(tid,
+                                        new HeapPageId(f.getId(), p), Permissions.READ_WRITE);
+                                Iterator<Tuple> it = page.iterator();
+                                while (it.hasNext()) {
+                                    it.next();
+                                }
+                            }
+                        }
+                        Thread.sleep(HOLD_MILLIS);
+                        scans.incrementAndGet();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        bp.transactionComplete(tid);
+                    }
+                }
+            });
+            workers.add(t);
+        }
+        long start = System.nanoTime();
+        for (Thread t : workers) {
+            t.start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        long wall = System.nanoTime() - start;
+        if (print) {
+            System.out.printf("%-10s %8d %12.1f %10d%n", shared ? "shared" : "exclusive", threads,
+                    scans.get() * 1e9 / wall, Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
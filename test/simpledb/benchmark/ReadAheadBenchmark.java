@@ -0,0 +1,72 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.concurrent.locks.LockSupport;
+
+import simpledb.common.Database;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures full scans of a table with and without read-ahead. The file sits in
+ * the OS page cache, so every page read is slowed down by a fixed simulated
+ * device latency to make the overlap of I/O and scanning visible.
+ * <p>
+ * Run with {@code ant runbench -Dbench=ReadAheadBenchmark}.
+ */
+public class ReadAheadBenchmark {
+
+    private static final int PAGES = 500;
+    private static final int ROUNDS = 3;
+    private static final long LATENCY_NANOS = 200_000;
+
+    /** A HeapFile whose page reads take at least LATENCY_NANOS. */
+    static class SlowHeapFile extends HeapFile {
+        SlowHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            long until = System.nanoTime() + LATENCY_NANOS;
+            Page page = super.readPage(pid);
+            while (System.nanoTime() < until) {
+                LockSupport.parkNanos(until - System.nanoTime());
+            }
+            return page;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, PAGES * 504, null, null);
+        SlowHeapFile slow = new SlowHeapFile(f.getFile(), f.getTupleDesc());
+        Database.getCatalog().addTable(slow, SystemTestUtil.getUUID());
+        System.out.printf("%-10s %12s %10s%n", "readahead", "pages/s", "misses");
+        for (int i = 0; i < 2; i++) {
+            run(false, slow);
+            run(true, slow);
+        }
+    }
+
+    private static void run(boolean readAhead, HeapFile f) throws Exception {
+        long misses = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            bp.setReadAheadEnabled(readAhead);
+            TransactionId tid = new TransactionId();
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+            }
+            it.close();
+            bp.transactionComplete(tid);
+            misses += bp.getMissCount();
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-10s %12.0f %10d%n", readAhead ? "on" : "off",
+                ROUNDS * PAGES / secs, misses / ROUNDS);
+    }
+}
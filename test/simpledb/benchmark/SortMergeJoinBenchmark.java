@@ -0,0 +1,45 @@
+package simpledb.benchmark;
+
+import simpledb.benchmark.HashJoinBenchmark.Generator;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SortMergeJoin;
+
+/**
+ * Compares SortMergeJoin with the other join operators on generated inputs:
+ * a selective range join {@code a.k > b.k}, where a has only small keys so
+ * each of its tuples matches a short prefix of b, against the nested loops
+ * Join; and an equi-join of two unsorted inputs against HashEquiJoin.
+ * <p>
+ * Run with {@code ant runbench -Dbench=SortMergeJoinBenchmark}.
+ */
+public class SortMergeJoinBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-8s %-14s %10s %10s %10s %10s%n", "pred", "operator", "outer", "inner", "results", "ms");
+        JoinPredicate gt = new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0);
+        run("a > b", "Join", new Join(gt, new Generator(5_000, 100, 1), new Generator(50_000, 1_000_000, 2)), 5_000, 50_000);
+        run("a > b", "SortMergeJoin", new SortMergeJoin(gt, new Generator(5_000, 100, 1), new Generator(50_000, 1_000_000, 2)), 5_000, 50_000);
+
+        JoinPredicate eq = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        int n = 1_000_000;
+        run("a = b", "HashEquiJoin", new HashEquiJoin(eq, new Generator(n, n, 1), new Generator(n, n, 2)), n, n);
+        run("a = b", "SortMergeJoin", new SortMergeJoin(eq, new Generator(n, n, 1), new Generator(n, n, 2)), n, n);
+    }
+
+    private static void run(String pred, String name, OpIterator join, int outer, int inner) throws Exception {
+        long start = System.nanoTime();
+        join.open();
+        long out = 0;
+        while (join.hasNext()) {
+            join.next();
+            out++;
+        }
+        join.close();
+        long ms = (System.nanoTime() - start) / 1000000;
+        System.out.printf("%-8s %-14s %10d %10d %10d %10d%n", pred, name, outer, inner, out, ms);
+    }
+}
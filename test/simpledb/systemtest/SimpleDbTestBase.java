@@ -1,5 +1,6 @@
 package simpledb.systemtest;
 
+import org.junit.After;
 import org.junit.Before;
 
 import simpledb.common.Database;
@@ -16,5 +17,12 @@ public class SimpleDbTestBase {
 	@Before	public void setUp() throws Exception {					
 		Database.reset();
 	}
+
+	/**
+	 * Delete the free space maps of the heap files the test created.
+	 */
+	@After public void deleteFreeSpaceMaps() {
+		SystemTestUtil.deleteFreeSpaceMaps();
+	}
 	
 }
@@ -3,6 +3,7 @@ package simpledb.systemtest;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -152,6 +153,19 @@ public class SystemTestUtil {
         }
     }
 
+    /**
+     * Delete the free space maps of the heap files in the catalog, which
+     * would otherwise outlive the temporary heap files themselves.
+     */
+    public static void deleteFreeSpaceMaps() {
+        Iterator<Integer> it = Database.getCatalog().tableIdIterator();
+        while (it.hasNext()) {
+            DbFile f = Database.getCatalog().getDatabaseFile(it.next());
+            if (f instanceof HeapFile)
+                FreeSpaceMap.delete(((HeapFile) f).getFile());
+        }
+    }
+
     /**
      * Returns number of bytes of RAM used by JVM after calling System.gc many times.
      * @return amount of RAM (in bytes) used by JVM